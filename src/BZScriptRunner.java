@@ -2,7 +2,10 @@ import com.ibatis.common.jdbc.ScriptRunner;
 
 import java.io.*;
 import java.sql.*;
+import java.util.ArrayList;
 import java.util.regex.Pattern;
+
+import database.SqlBackend;
 /*
  * Jun 25, zqian
  * This is a useful program which could be used to call the sql scripte from Java.
@@ -75,13 +78,46 @@ public class BZScriptRunner {
         return newFileName;
     }
 
+    /*
+     * on a backend without stored procedures (H2) the procedures of storedprocs.sql are run in Java instead
+     */
     public void callSP(String spName ) throws SQLException {
+        if (!SqlBackend.forConnection(con2).supportsProcedures()) {
+            if (spName.equals("find_values")) {
+                findValues();
+                return;
+            }
+            throw new SQLException("Stored procedure " + spName + " needs a MySQL database");
+        }
         CallableStatement callableStatement = con2.prepareCall("CALL " + spName + ";");
         callableStatement.executeUpdate();
         callableStatement.close();
     }
 
+    /*
+     * find_values of storedprocs.sql: Attribute_Value gets the distinct values of every column in AttributeColumns
+     */
+    private void findValues() throws SQLException {
+        ArrayList<String[]> columns = new ArrayList<String[]>();
+        Statement st = con2.createStatement();
+        ResultSet rs = st.executeQuery("SELECT TABLE_NAME, COLUMN_NAME FROM AttributeColumns;");
+        while (rs.next()) {
+            columns.add(new String[] { rs.getString("TABLE_NAME"), rs.getString("COLUMN_NAME") });
+        }
+        rs.close();
+
+        st.execute("DROP TABLE IF EXISTS Attribute_Value;");
+        st.execute("CREATE TABLE Attribute_Value (COLUMN_NAME VARCHAR(30), VALUE VARCHAR(30));");
+        for (String[] column : columns) {
+            st.execute("INSERT INTO Attribute_Value (SELECT distinct '" + column[1] + "', " + column[1] + " FROM " + databaseName + "." + column[0] + ");");
+        }
+        st.close();
+    }
+
     public void createSP(String scriptFileName) throws IOException, SQLException {
+        if (!SqlBackend.forConnection(con2).supportsProcedures()) {
+            return;
+        }
         String newScriptFileName = prepareFile(scriptFileName);
 
         
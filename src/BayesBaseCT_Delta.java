@@ -0,0 +1,289 @@
+/*
+ * Delta mode of BayesBaseCT_SortMerge: brings the _counts and _CT tables up to date after rows were inserted into or
+ * deleted from tables of the database, instead of rebuilding them with MakeSetup and buildCT.
+ *
+ * Preconditions: BayesBaseCT_SortMerge.buildCT has been run with LinkCorrelations = 1 and Continuous = 0, and the
+ * changes are in the schema DeltaDatabase (config, default <dbname>_delta): for a table T of the database,
+ * T_inserted holds the rows to add and T_deleted the rows to remove, both created "like" T.
+ *
+ * A _counts table is a count(*) group by over a join of database tables. When the rows D are added to a table T
+ * that occurs at the positions m1 < ... < mk of the from list, the counts change by the sum over m of the query with
+ * D at m, T + D at the positions before m and T at the positions after m. Inserted rows are counted before they are
+ * inserted and deleted rows (with a negative sign) after they are deleted, so T is the table in the database.
+ * The tables are changed one after the other, so the changes of several tables add up. Every query starts from the
+ * delta rows, the counts change at the cost of the delta instead of the database.
+ * The changes of the counts are pushed up the lattice in memory (MoebiusCTBuilder.applyDelta), which reads from _CT
+ * only the tables that the changes meet, and are added to the changed tables in _CT with UPDATE and INSERT
+ * (MoebiusCTBuilder.writeDelta). The delta tables are emptied at the end; if the run fails half way, rebuild.
+ */
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.commons.lang.StringUtils;
+
+import ct.CTCache;
+import ct.CTCursor;
+import ct.CTOperations;
+import ct.CTTable;
+import ct.MoebiusCTBuilder;
+
+public class BayesBaseCT_Delta {
+
+	static String deltaDatabase;
+
+	// "db.table AS alias" entries of the from lists, the other entries (e.g. the "T" tables of the rnids) never change
+	static final Pattern TABLE_ENTRY = Pattern.compile("^\\s*(\\S+)\\s+AS\\s+(\\S+)\\s*$", Pattern.CASE_INSENSITIVE);
+
+	/* one pvid_counts or rchain _counts query, with the from list kept as entries so that tables can be replaced */
+	static class CountsQuery {
+		String table, select, where, groupBy;
+		ArrayList<String> from;
+
+		CountsQuery(String table, String select, ArrayList<String> from, String where, String groupBy) {
+			this.table = table;
+			this.select = select;
+			this.from = from;
+			this.where = where;
+			this.groupBy = groupBy;
+		}
+
+		/* positions of table (without schema) in the from list */
+		ArrayList<Integer> positions(String table) {
+			ArrayList<Integer> positions = new ArrayList<Integer>();
+			for (int i = 0; i < from.size(); i++) {
+				Matcher m = TABLE_ENTRY.matcher(from.get(i));
+				if (m.matches() && m.group(1).replace("`", "").equalsIgnoreCase(BayesBaseCT_SortMerge.databaseName + "." + table)) {
+					positions.add(i);
+				}
+			}
+			return positions;
+		}
+
+		/* the query with the delta rows at positions[m], table + delta before it and table after it */
+		String deltaQuery(String table, String delta, ArrayList<Integer> positions, int m) {
+			ArrayList<String> entries = new ArrayList<String>(from);
+			for (int j = 0; j <= m; j++) {
+				Matcher matcher = TABLE_ENTRY.matcher(from.get(positions.get(j)));
+				matcher.matches();
+				String source = j == m ? delta : "(select * from `" + BayesBaseCT_SortMerge.databaseName + "`.`" + table + "` union all select * from " + delta + ")";
+				entries.set(positions.get(j), source + " AS " + matcher.group(2));
+			}
+			String query = "Select " + select + " from " + StringUtils.join(entries, " , ") + where;
+			if (!groupBy.isEmpty()) query = query + " group by" + groupBy;
+			return query;
+		}
+	}
+
+	public static void main(String[] args) throws Exception {
+		updateCT();
+	}
+
+	public static void updateCT() throws Exception {
+		long l = System.currentTimeMillis();
+		BayesBaseCT_SortMerge.initProgram();
+		Config conf = new Config();
+		deltaDatabase = BayesBaseCT_SortMerge.getOptionalProperty(conf, "DeltaDatabase", BayesBaseCT_SortMerge.databaseName + "_delta");
+		conf.closeFile();
+		if (!BayesBaseCT_SortMerge.opt2.equals("1") || BayesBaseCT_SortMerge.cont.equals("1")) {
+			System.out.println("The delta mode needs LinkCorrelations = 1 and Continuous = 0, run BayesBaseCT_SortMerge.buildCT instead.");
+			return;
+		}
+		BayesBaseCT_SortMerge.connectDB();
+		BayesBaseCT_SortMerge.connectDB1();
+
+		// a new builder reads only the tables that the changes meet, see MoebiusCTBuilder.applyDelta
+		MoebiusCTBuilder builder = BayesBaseCT_SortMerge.moebiusBuilder;
+		if (builder == null) {
+			builder = new MoebiusCTBuilder(BayesBaseCT_SortMerge.con2, BayesBaseCT_SortMerge.con3, BayesBaseCT_SortMerge.databaseName3);
+		}
+
+		ArrayList<CountsQuery> queries = countsQueries();
+		HashMap<String, CTTable> deltas = new HashMap<String, CTTable>();
+		TreeSet<String> tables = changedTables();
+		for (String table : tables) {
+			countInserted(table, queries, builder, deltas);
+			countDeleted(table, queries, builder, deltas);
+		}
+		long l2 = System.currentTimeMillis();
+		System.out.print("Delta Time(ms) for counts: " + (l2 - l) + " ms.\n");
+
+		LinkedHashMap<String, CTTable> changed = builder.applyDelta(deltas);
+
+		//add the changes to the tables in _CT, and delete the tuples with MULT=0 in the _counts tables (count(*) has none)
+		//and in the biggest CT tables, as CTGenerator does
+		Statement st = BayesBaseCT_SortMerge.con2.createStatement();
+		ResultSet rs = st.executeQuery("select name as RChain from lattice_set where lattice_set.length = (SELECT max(length)  FROM lattice_set);");
+		TreeSet<String> biggest = new TreeSet<String>();
+		while (rs.next()) {
+			biggest.add(rs.getString("RChain").replace("`", "") + "_CT");
+		}
+		rs.close();
+		st.close();
+
+		for (Map.Entry<String, CTTable> entry : changed.entrySet()) {
+			String name = entry.getKey();
+			builder.writeDelta(name, entry.getValue());
+			if (name.endsWith("_counts") || biggest.contains(name)) {
+				builder.removeZeroRows(name);
+			}
+			if (name.endsWith("_CT")) {
+				CTCache.invalidate(BayesBaseCT_SortMerge.databaseName3, name);
+			}
+		}
+
+		Statement st1 = BayesBaseCT_SortMerge.con1.createStatement();
+		for (String table : tables) {
+			st1.execute("truncate table `" + deltaDatabase + "`.`" + table + "_inserted`;");
+			st1.execute("truncate table `" + deltaDatabase + "`.`" + table + "_deleted`;");
+		}
+		st1.close();
+
+		BayesBaseCT_SortMerge.disconnectDB();
+		long l3 = System.currentTimeMillis();
+		System.out.print("Delta Time(ms) for ALL CT tables: " + (l3 - l) + " ms.\n");
+	}
+
+	/* the tables T with T_inserted or T_deleted in the delta schema, creating the missing one of the pair */
+	static TreeSet<String> changedTables() throws SQLException {
+		TreeSet<String> tables = new TreeSet<String>();
+		Statement st = BayesBaseCT_SortMerge.con1.createStatement();
+		ResultSet rs = st.executeQuery("show tables from `" + deltaDatabase + "`;");
+		while (rs.next()) {
+			String name = rs.getString(1);
+			if (name.endsWith("_inserted")) {
+				tables.add(name.substring(0, name.length() - "_inserted".length()));
+			} else if (name.endsWith("_deleted")) {
+				tables.add(name.substring(0, name.length() - "_deleted".length()));
+			}
+		}
+		rs.close();
+		for (String table : tables) {
+			st.execute("create table if not exists `" + deltaDatabase + "`.`" + table + "_inserted` like `" + BayesBaseCT_SortMerge.databaseName + "`.`" + table + "`;");
+			st.execute("create table if not exists `" + deltaDatabase + "`.`" + table + "_deleted` like `" + BayesBaseCT_SortMerge.databaseName + "`.`" + table + "`;");
+		}
+		st.close();
+		System.out.println("changed tables: " + tables);
+		return tables;
+	}
+
+	/* counts the rows of table_inserted, then inserts them */
+	static void countInserted(String table, ArrayList<CountsQuery> queries, MoebiusCTBuilder builder, HashMap<String, CTTable> deltas) throws SQLException {
+		String delta = "`" + deltaDatabase + "`.`" + table + "_inserted`";
+		if (isEmpty(delta)) {
+			return;
+		}
+		count(table, delta, 1, queries, builder, deltas);
+		Statement st = BayesBaseCT_SortMerge.con1.createStatement();
+		st.execute("insert into `" + BayesBaseCT_SortMerge.databaseName + "`.`" + table + "` select * from " + delta + ";");
+		st.close();
+	}
+
+	/* deletes the rows of table_deleted, then counts them */
+	static void countDeleted(String table, ArrayList<CountsQuery> queries, MoebiusCTBuilder builder, HashMap<String, CTTable> deltas) throws SQLException {
+		String delta = "`" + deltaDatabase + "`.`" + table + "_deleted`";
+		if (isEmpty(delta)) {
+			return;
+		}
+		Statement st = BayesBaseCT_SortMerge.con1.createStatement();
+		ResultSet rs = st.executeQuery("show columns from `" + BayesBaseCT_SortMerge.databaseName + "`.`" + table + "`;");
+		ArrayList<String> on = new ArrayList<String>();
+		while (rs.next()) {
+			on.add("t.`" + rs.getString(1) + "` <=> d.`" + rs.getString(1) + "`");
+		}
+		rs.close();
+		st.execute("delete t from `" + BayesBaseCT_SortMerge.databaseName + "`.`" + table + "` t join " + delta + " d on " + StringUtils.join(on, " and ") + ";");
+		st.close();
+		count(table, delta, -1, queries, builder, deltas);
+	}
+
+	/* adds sign * (change of every counts query when the rows of delta are added to table) to deltas */
+	static void count(String table, String delta, long sign, ArrayList<CountsQuery> queries, MoebiusCTBuilder builder, HashMap<String, CTTable> deltas) throws SQLException {
+		for (CountsQuery query : queries) {
+			ArrayList<Integer> positions = query.positions(table);
+			if (positions.isEmpty()) {
+				continue;
+			}
+			CTTable counts = builder.emptyTable(query.table);
+			String selectString = "MULT";
+			for (String col : counts.getColumns()) {
+				selectString += " , `" + col + "`";
+			}
+			for (int m = 0; m < positions.size(); m++) {
+				String queryString = "select " + selectString + " from (" + query.deltaQuery(table, delta, positions, m) + ") as delta_counts;";
+				System.out.println("delta counts for " + query.table + " : " + queryString);
+				CTTable part = counts.emptyCopy();
+				CTCursor.readInto(BayesBaseCT_SortMerge.con1, queryString, part);
+				for (int r = 0; r < part.getRowCount(); r++) {
+					part.setMult(r, sign * part.getMult(r));
+				}
+				CTTable sum = deltas.get(query.table);
+				if (sum == null) {
+					sum = counts.emptyCopy();
+					deltas.put(query.table, sum);
+				}
+				CTOperations.accumulate(sum, part);
+			}
+		}
+	}
+
+	static boolean isEmpty(String table) throws SQLException {
+		Statement st = BayesBaseCT_SortMerge.con1.createStatement();
+		ResultSet rs = st.executeQuery("select count(*) from " + table + ";");
+		rs.next();
+		boolean empty = rs.getLong(1) == 0;
+		rs.close();
+		st.close();
+		return empty;
+	}
+
+	/* the queries of BuildCT_Pvars and BuildCT_Rnodes_counts */
+	static ArrayList<CountsQuery> countsQueries() throws SQLException {
+		ArrayList<CountsQuery> queries = new ArrayList<CountsQuery>();
+		Statement st = BayesBaseCT_SortMerge.con2.createStatement();
+		Statement st2 = BayesBaseCT_SortMerge.con2.createStatement();
+
+		ResultSet rs = st.executeQuery("select pvid from PVariables;");
+		while (rs.next()) {
+			String pvid = rs.getString("pvid");
+			String selectString = BayesBaseCT_SortMerge.makeCommaSepQuery(st2.executeQuery("select Entries from ADT_PVariables_Select_List where pvid = '" + pvid + "';"), "Entries", " , ");
+			ArrayList<String> from = entries(st2.executeQuery("select Entries from ADT_PVariables_From_List where pvid = '" + pvid + "';"));
+			String groupByString = BayesBaseCT_SortMerge.makeCommaSepQuery(st2.executeQuery("select Entries from ADT_PVariables_GroupBy_List where pvid = '" + pvid + "';"), "Entries", " , ");
+			String whereString = BayesBaseCT_SortMerge.groundingWhereString(pvid, st2);
+			if (whereString == null) {
+				throw new SQLException("Cannot resolve the grounding of " + pvid);
+			}
+			queries.add(new CountsQuery(pvid + "_counts", selectString, from, whereString, groupByString));
+		}
+		rs.close();
+
+		rs = st.executeQuery("select name from lattice_set order by length;");
+		while (rs.next()) {
+			String rchain = rs.getString("name");
+			String selectString = BayesBaseCT_SortMerge.makeCommaSepQuery(st2.executeQuery("SELECT DISTINCT Entries FROM lattice_membership, RNodes_Select_List WHERE NAME = '" + rchain + "' AND lattice_membership.member = RNodes_Select_List.rnid;"), "Entries", " , ");
+			ArrayList<String> from = entries(st2.executeQuery("SELECT DISTINCT Entries FROM lattice_membership, RNodes_From_List WHERE NAME = '" + rchain + "' AND lattice_membership.member = RNodes_From_List.rnid;"));
+			String whereString = BayesBaseCT_SortMerge.makeCommaSepQuery(st2.executeQuery("SELECT DISTINCT Entries FROM lattice_membership, RNodes_Where_List WHERE NAME = '" + rchain + "' AND lattice_membership.member = RNodes_Where_List.rnid;"), "Entries", " and ");
+			String groupByString = BayesBaseCT_SortMerge.makeCommaSepQuery(st2.executeQuery("SELECT DISTINCT Entries FROM lattice_membership, RNodes_GroupBy_List WHERE NAME = '" + rchain + "' AND lattice_membership.member = RNodes_GroupBy_List.rnid;"), "Entries", " , ");
+			queries.add(new CountsQuery(rchain.replace("`", "") + "_counts", selectString, from, " where " + whereString, groupByString));
+		}
+		rs.close();
+		st2.close();
+		st.close();
+		return queries;
+	}
+
+	static ArrayList<String> entries(ResultSet rs) throws SQLException {
+		ArrayList<String> entries = new ArrayList<String>();
+		while (rs.next()) {
+			entries.add(rs.getString("Entries"));
+		}
+		return entries;
+	}
+}
@@ -17,12 +17,19 @@
  *  
  * */
 import java.io.IOException;
-import java.sql.DriverManager;
 import java.sql.ResultSet;
 import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import database.ConnectionPool;
 
 import javax.swing.JOptionPane;
 
@@ -32,6 +39,12 @@ import org.apache.commons.lang.StringUtils;
 
 import com.mysql.jdbc.Connection;
 import com.mysql.jdbc.exceptions.jdbc4.MySQLSyntaxErrorException;
+
+import ct.CTCache;
+import ct.DictionarySet;
+import ct.LatticeLevelScheduler;
+import ct.LatticeLevelScheduler.RChainTask;
+import ct.MoebiusCTBuilder;
 public class BayesBaseCT_SortMerge {
 
 	static Connection con1, con2, con3, con4;
@@ -43,8 +56,16 @@ public class BayesBaseCT_SortMerge {
 	static String dbPassword;
 	static String dbaddress;
 	static String opt2, cont;
+	static String inMemoryCT, writeCT; // InMemoryCT = 1: Moebius transform in memory (MoebiusCTBuilder); WriteCT = 0: keep the _CT tables in memory only
 
 	static int maxNumberOfMembers = 0;
+	static MoebiusCTBuilder moebiusBuilder;
+	static String ctThreads; // CTThreads > 1: the rchains of one lattice level are built in parallel, one pair of connections per worker
+	static LatticeLevelScheduler scheduler;
+	static final AtomicInteger fcCounter = new AtomicInteger(); // numbering of the _star, _flat, _false tables of one level
+	static String latticePruning; // LatticePruning = 1: rchains whose relationships never hold together get no _counts and _CT tables, see BuildCT_Rnodes_counts
+	static final Map<String, Long> support = new ConcurrentHashMap<String, Long>(); // rchain -> SUM(MULT) of its _counts table, 0 for rchains without support
+	static final Set<String> pruned = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>()); // the rchains LatticePruning skipped, also in lattice_pruned for the later stages
 		
 	
 	public static void main(String[] args) throws Exception {
@@ -56,6 +77,12 @@ public class BayesBaseCT_SortMerge {
 	public static void buildCT() throws Exception {
 	      
 		initProgram();
+		buildCTFromFields();
+	}
+
+	/* buildCT with the settings already in the static fields (databaseName, dbaddress, ctThreads, ...), e.g. set by
+	 * a test instead of the config file */
+	static void buildCTFromFields() throws Exception {
 		//connect to db using jdbc
 		connectDB();
 		//build _BN copy from _setup Nov 1st, 2013 Zqian
@@ -216,12 +243,22 @@ public class BayesBaseCT_SortMerge {
 	public static void CTGenerator() throws Exception{
 		
 		long l = System.currentTimeMillis(); //@zqian : CT table generating time
+		CTCache.invalidate(databaseName3); // the _CT tables are rebuilt
+		loadFunctorValues();
+		startScheduler();
 		   // handling Pvars, generating pvars_counts		
         BuildCT_Pvars();
         
         // preparing the _join part for _CT tables
 		BuildCT_Rnodes_join();
 		
+		// the rchains skipped by LatticePruning, read by MoebiusCTBuilder, CSVPrecomputor and BayesBaseH
+		Statement stPruned = con2.createStatement();
+		stPruned.execute("drop table if exists lattice_pruned;");
+		stPruned.execute("create table lattice_pruned (name varchar(256) not null, primary key (name));");
+		stPruned.close();
+		pruned.clear();
+		
 		//building the RNodes_counts tables. should be called Rchains since it goes up the lattice.
 		if(opt2.equals("1")) {
 			long l_1 = System.currentTimeMillis(); //@zqian : measure structure learning time
@@ -239,7 +276,12 @@ public class BayesBaseCT_SortMerge {
 			
 		}
 
-		if (opt2.equals("1")) {
+		moebiusBuilder = null;
+		if (opt2.equals("1") && inMemoryCT.equals("1")) {
+			// handling Rnodes with Lattice Moebius Transform, in memory: no _flat, _star, _false tables
+			BuildCT_Rnodes_Moebius();
+		}
+		else if (opt2.equals("1")) {
 			// handling Rnodes with Lattice Moebius Transform        
 			for(int len = 1; len <= 1; len++) //initialize first level of rchain lattice
 			{
@@ -263,6 +305,7 @@ public class BayesBaseCT_SortMerge {
 				System.out.println(" Rchain! are done");
 			}
 		}
+		stopScheduler();
 		
 
 		//delete the tuples with MULT=0 in the biggest CT table
@@ -280,7 +323,26 @@ public class BayesBaseCT_SortMerge {
 		
 		st.close();
 		
+		if ( RChainCreated && pruned.contains(BiggestRchain) )
+		{
+			// CP and KLD_generator read the _CT table of the biggest Rchain
+			System.out.println("\n BiggestRchain : " + BiggestRchain + " has no support and no _CT table, run with LatticePruning = 0 for CP and KLD");
+			RChainCreated = false;
+		}
+		
+		if ( moebiusBuilder != null )
+		{
 		if ( RChainCreated )
+			{
+				System.out.println("delete the rows with MULT=0 from the in-memory CT of " + BiggestRchain);
+				moebiusBuilder.getCT(BiggestRchain).removeZeroRows();
+			}
+			if ( writeCT.equals("1") )
+			{
+				moebiusBuilder.writeCTTables();
+			}
+		}
+		else if ( RChainCreated )
 		{
 			Statement st1 = con3.createStatement();
 			System.out.println("delete from `"+BiggestRchain.replace("`", "") +"_CT` where MULT='0';" );
@@ -368,6 +430,11 @@ public class BayesBaseCT_SortMerge {
 		dbaddress = conf.getProperty("dbaddress");
 		opt2 = conf.getProperty("LinkCorrelations");
 		cont = conf.getProperty("Continuous");
+		inMemoryCT = getOptionalProperty(conf, "InMemoryCT", "0");
+		writeCT = getOptionalProperty(conf, "WriteCT", "1");
+		ctThreads = getOptionalProperty(conf, "CTThreads", "1");
+		latticePruning = getOptionalProperty(conf, "LatticePruning", "0");
+		setScanMemory(conf);
 		
 		if ( conf.closeFile() != 0 )
 		{
@@ -387,6 +454,69 @@ public class BayesBaseCT_SortMerge {
 		dbaddress = conf.getProperty("dbaddress");
 		opt2 = conf.getProperty("LinkCorrelations");
 		cont = conf.getProperty("Continuous");
+		inMemoryCT = getOptionalProperty(conf, "InMemoryCT", "0");
+		writeCT = getOptionalProperty(conf, "WriteCT", "1");
+		ctThreads = getOptionalProperty(conf, "CTThreads", "1");
+		latticePruning = getOptionalProperty(conf, "LatticePruning", "0");
+		setScanMemory(conf);
+	}
+
+	static void startScheduler() {
+		int threads = Integer.parseInt(ctThreads);
+		scheduler = null;
+		if (threads > 1) {
+			System.out.println("building the rchains of each lattice level with " + threads + " threads");
+			scheduler = new LatticeLevelScheduler(threads, "jdbc:" + dbaddress + "/" + databaseName2, "jdbc:" + dbaddress + "/" + databaseName3, dbUsername, dbPassword);
+		}
+	}
+
+	static void stopScheduler() throws SQLException {
+		if (scheduler != null) {
+			scheduler.shutdown();
+			scheduler = null;
+		}
+	}
+
+	/* runs task for every rchain of length len, in parallel if there is a scheduler (CTThreads > 1).
+	 * Returns when all rchains of the level are done, so the next level can use their _CT tables */
+	static void runLevel(int len, RChainTask task) throws Exception {
+		ArrayList<String> rchains = new ArrayList<String>();
+		Statement st = con2.createStatement();
+		ResultSet rs = st.executeQuery("select name as RChain from lattice_set where lattice_set.length = " + len + ";");
+		while(rs.next()) {
+			rchains.add(rs.getString("RChain"));
+		}
+		rs.close();
+		st.close();
+
+		if (scheduler == null) {
+			for (String rchain : rchains) {
+				task.run(rchain, con2, con3);
+			}
+		} else {
+			scheduler.runLevel(rchains, task);
+		}
+	}
+
+	/* the values of every functor from Attribute_Value in _setup, so the in-memory CT tables (Sort_merge_stream,
+	 * MoebiusCTBuilder, CTCache) encode them with the same codes, see DictionarySet */
+	static void loadFunctorValues() {
+		try {
+			DictionarySet.loadFunctorValues(con2, databaseName4 + ".Attribute_Value");
+		} catch (SQLException e) {
+			System.out.println("no value dictionaries from " + databaseName4 + ".Attribute_Value: " + e.getMessage());
+		}
+	}
+
+	//ScanMemoryMB: memory for the rows buffered by one table scan, see ConnectionPool.scanStatement
+	static void setScanMemory(Config conf) {
+		ConnectionPool.scanMemory = Long.parseLong(getOptionalProperty(conf, "ScanMemoryMB", "64")) << 20;
+	}
+
+	//for options that older config files do not have
+	static String getOptionalProperty(Config conf, String key, String defaultValue) {
+		String value = conf.getProperty(key);
+		return value == null ? defaultValue : value.trim();
 	}
 
 	public static void connectDB() throws SQLException {
@@ -396,7 +526,7 @@ public class BayesBaseCT_SortMerge {
 		} catch (Exception ex) {
 			System.err.println("Unable to load MySQL JDBC driver");
 		}
-		con1 = (Connection) DriverManager.getConnection(CONN_STR1, dbUsername, dbPassword);
+		con1 = (Connection) ConnectionPool.getConnection("BayesBaseCT_SortMerge", CONN_STR1, dbUsername, dbPassword);
 		
 		String CONN_STR4 = "jdbc:" + dbaddress + "/" + databaseName4;
 		try {
@@ -404,7 +534,7 @@ public class BayesBaseCT_SortMerge {
 		} catch (Exception ex) {
 			System.err.println("Unable to load MySQL JDBC driver");
 		}
-		con4 = (Connection) DriverManager.getConnection(CONN_STR4, dbUsername, dbPassword);
+		con4 = (Connection) ConnectionPool.getConnection("BayesBaseCT_SortMerge", CONN_STR4, dbUsername, dbPassword);
 	}
 	
 	public static void connectDB1() throws SQLException {
@@ -414,7 +544,7 @@ public class BayesBaseCT_SortMerge {
 		} catch (Exception ex) {
 			System.err.println("Unable to load MySQL JDBC driver");
 		}
-		con2 = (Connection) DriverManager.getConnection(CONN_STR2, dbUsername, dbPassword);
+		con2 = (Connection) ConnectionPool.getConnection("BayesBaseCT_SortMerge", CONN_STR2, dbUsername, dbPassword);
 		
 		String CONN_STR3 = "jdbc:" + dbaddress + "/" + databaseName3;
 		try {
@@ -422,29 +552,41 @@ public class BayesBaseCT_SortMerge {
 		} catch (Exception ex) {
 			System.err.println("Unable to load MySQL JDBC driver");
 		}
-		con3 = (Connection) DriverManager.getConnection(CONN_STR3, dbUsername, dbPassword);
+		con3 = (Connection) ConnectionPool.getConnection("BayesBaseCT_SortMerge", CONN_STR3, dbUsername, dbPassword);
 		  //handle warnings
        // handleWarnings();
 	}
 		
 		
 /*building the _CT tables. Going up the Rchain lattice ( When rchain.length >=2)*/
-	public static void BuildCT_RChain_flat(int len) throws SQLException, IOException {
+	public static void BuildCT_RChain_flat(int len) throws Exception {
 		System.out.println("\n ****************** \n" +
 				"Building the _CT tables for Length = "+len +"\n" );
 
 		long l = System.currentTimeMillis(); 
 
-		Statement st = con2.createStatement();
-		ResultSet rs = st.executeQuery("select name as RChain from lattice_set where lattice_set.length = " + len + ";");
-		 int fc=0;
-		while(rs.next())
-		{
+		fcCounter.set(0);
+		final int length = len;
+		runLevel(len, new RChainTask() {
+			public void run(String rchain, java.sql.Connection con2, java.sql.Connection con3) throws Exception {
+				BuildCT_RChain_flat(rchain, length, con2, con3);
+			}
+		});
+		//System.out.println("count "+count+"\n");
+		long l2 = System.currentTimeMillis(); //@zqian : measure structure learning time
+		//System.out.print("Building Time(ms): "+(l2-l)+" ms.\n");
+		System.out.println("\n Build CT_RChain_TABLES for length = "+len+" are DONE \n" );
+
+	}
+
+	/*building the _CT table of one rchain of length >= 2, removing its members one by one */
+	public static void BuildCT_RChain_flat(String rchain, int len, java.sql.Connection con2, java.sql.Connection con3) throws SQLException, IOException {
+			if (pruned.contains(rchain)) {
+				System.out.println("\n rchain String : " + rchain + " has no support, no _CT table");
+				return;
+			}
 			long l1 = System.currentTimeMillis(); 
 
-			//System.out.print("fc ::"+ fc);
-			//  get pvid for further use
-			String rchain = rs.getString("RChain");
 			System.out.println("\n rchain String : " + rchain );
 			// Oct 16 2013
 			// initialize the cur_CT_Table, at very beginning we will use _counts table to create the _flat table
@@ -458,6 +600,7 @@ public class BayesBaseCT_SortMerge {
 			while(rs1.next())
 			{		
 				long l2 = System.currentTimeMillis(); 
+				int fc = fcCounter.getAndIncrement(); // unique suffix for the _star, _flat, _false tables of this level, also when the rchains run in parallel
 
 				String parent = rs1.getString("parent");
 			//	System.out.println("\n parent : " + parent);
@@ -547,7 +690,8 @@ public class BayesBaseCT_SortMerge {
 				//create false table					
 //				Sort_merge5.sort_merge(cur_star_Table,cur_flat_Table,cur_false_Table,con3);
 				//Sort_merge4.sort_merge(cur_star_Table,cur_flat_Table,cur_false_Table,con3);
-				Sort_merge3.sort_merge(cur_star_Table,cur_flat_Table,cur_false_Table,con3);
+				//Sort_merge3.sort_merge(cur_star_Table,cur_flat_Table,cur_false_Table,con3);
+				Sort_merge_stream.sort_merge(cur_star_Table,cur_flat_Table,cur_false_Table,con3);
 
 				
 				 //adding  covering index May 21
@@ -594,7 +738,6 @@ public class BayesBaseCT_SortMerge {
 				//System.out.println("alter table "+Next_CT_Table+" add index "+Next_CT_Table+"   ( "+IndexString4+" );");
 				st3.execute("alter table "+Next_CT_Table+" add index "+Next_CT_Table+"   ( "+IndexString4+" );");       
 
-				fc++;	
 				
 				//  close statements
 				st2.close();			
@@ -608,14 +751,6 @@ public class BayesBaseCT_SortMerge {
 			rs1.close();
 
 
-		}
-		//System.out.println("count "+count+"\n");
-		rs.close();
-		st.close();
-		long l2 = System.currentTimeMillis(); //@zqian : measure structure learning time
-		//System.out.print("Building Time(ms): "+(l2-l)+" ms.\n");
-		System.out.println("\n Build CT_RChain_TABLES for length = "+len+" are DONE \n" );
-
 	}
 	
 /* building pvars_counts*/
@@ -645,6 +780,45 @@ public static void BuildCT_Pvars() throws SQLException, IOException {
 			String GroupByString = makeCommaSepQuery(rs_6, "Entries", " , ");
 			//System.out.println("GroupBy String : " + GroupByString);
 			
+			String whereString = groundingWhereString(pvid, st2);
+			if ( whereString == null )
+			{
+				return;
+			}
+			
+			//  create the final query			
+			String queryString = "Select " + selectString + " from " + 
+								 fromString + whereString;
+			
+			if (!cont.equals("1"))
+				if (!GroupByString.isEmpty()) queryString = queryString + " group by"  + GroupByString;
+			
+			//System.out.println("Query String : " + queryString );
+			System.out.println("Create String : " + "create table "+pvid+"_counts"+" as "+queryString );
+			st3.execute("create table "+pvid+"_counts"+" as "+queryString);	
+			//adding  covering index May 21
+			//create index string
+			ResultSet rs4 = st2.executeQuery("select column_name as Entries from information_schema.columns where table_schema = '"+databaseName3+"' and table_name = '"+pvid+"_counts';");
+			String IndexString = makeIndexQuery(rs4, "Entries", " , ");
+			//System.out.println("Index String : " + IndexString);
+			st3.execute("alter table "+pvid+"_counts"+" add  index "+pvid+"_Index   ( "+IndexString+" );");
+			
+			//  close statements
+			st2.close();
+			st3.close();			
+		}
+
+		rs.close();
+		st.close();
+		long l2 = System.currentTimeMillis(); //@zqian : measure structure learning time
+		System.out.print("Building Time(ms) for Pvariables counts: "+(l2-l)+" ms.\n");
+		System.out.println("\n Pvariables are DONE \n" );
+
+	}
+
+/* the where clause of the pvid_counts query for the grounding of pvid in the Groundings table, "" if there is none.
+ * Returns null if the grounding cannot be resolved. */
+static String groundingWhereString(String pvid, Statement st2) throws SQLException {
 			/*
 			 *  Check for groundings on pvid
 			 *  If exist, add as where clause
@@ -680,7 +854,7 @@ public static void BuildCT_Pvars() throws SQLException, IOException {
 					if ( !rs0.first() )
 					{
 						System.out.println( "Failed to get pvid." );
-						return;
+						return null;
 					}
 					
 					String pvidTableName = rs0.getString( 1 );
@@ -693,7 +867,7 @@ public static void BuildCT_Pvars() throws SQLException, IOException {
 					if ( !rs0.first() )
 					{
 						System.out.println( "Failed to get pvid." );
-						return;
+						return null;
 					}
 					
 					String pvidActualId = rs0.getString( 1 );
@@ -711,45 +885,44 @@ public static void BuildCT_Pvars() throws SQLException, IOException {
 				rsGrounding.close();
 			}
 			
-			//  create the final query			
-			String queryString = "Select " + selectString + " from " + 
-								 fromString + whereString;
-			
-			if (!cont.equals("1"))
-				if (!GroupByString.isEmpty()) queryString = queryString + " group by"  + GroupByString;
-			
-			//System.out.println("Query String : " + queryString );
-			System.out.println("Create String : " + "create table "+pvid+"_counts"+" as "+queryString );
-			st3.execute("create table "+pvid+"_counts"+" as "+queryString);	
-			//adding  covering index May 21
-			//create index string
-			ResultSet rs4 = st2.executeQuery("select column_name as Entries from information_schema.columns where table_schema = '"+databaseName3+"' and table_name = '"+pvid+"_counts';");
-			String IndexString = makeIndexQuery(rs4, "Entries", " , ");
-			//System.out.println("Index String : " + IndexString);
-			st3.execute("alter table "+pvid+"_counts"+" add  index "+pvid+"_Index   ( "+IndexString+" );");
-			
-			//  close statements
-			st2.close();
-			st3.close();			
+			return whereString;
 		}
 
-		rs.close();
-		st.close();
-		long l2 = System.currentTimeMillis(); //@zqian : measure structure learning time
-		System.out.print("Building Time(ms) for Pvariables counts: "+(l2-l)+" ms.\n");
-		System.out.println("\n Pvariables are DONE \n" );
-
+/*building the RNodes_counts tables
+ * with LatticePruning = 1 an rchain one of whose parents in lattice_rel has no support has none either (Apriori): it
+ * gets no _counts and no _CT table and is listed in lattice_pruned, so its children are pruned in turn. The support
+ * of the others is the SUM(MULT) of their _counts table */
+public static void BuildCT_Rnodes_counts(int len) throws Exception {
+	if (len == 1) {
+		support.clear();
 	}
+	runLevel(len, new RChainTask() {
+		public void run(String rchain, java.sql.Connection con2, java.sql.Connection con3) throws Exception {
+			if (!latticePruning.equals("1")) {
+				BuildCT_Rnodes_counts(rchain, con2, con3);
+			}
+			else if (estimateSupport(rchain, con2) == 0) {
+				System.out.println("\n RChain : " + rchain + " has no support, pruned");
+				Statement st = con2.createStatement();
+				st.execute("insert into lattice_pruned values ('" + rchain + "');");
+				st.close();
+				support.put(rchain, 0L);
+				pruned.add(rchain);
+			}
+			else {
+				BuildCT_Rnodes_counts(rchain, con2, con3);
+				support.put(rchain, countSupport(rchain, con3));
+			}
+		}
+	});
 
-/*building the RNodes_counts tables */
-public static void BuildCT_Rnodes_counts(int len) throws SQLException, IOException {
 	
-	Statement st = con2.createStatement();
-	ResultSet rs = st.executeQuery("select name as RChain from lattice_set where lattice_set.length = " + len + ";");
-	while(rs.next()){
+	System.out.println("\n Rnodes_counts are DONE \n" );	
 
-		//  get pvid for further use
-		String rchain = rs.getString("RChain");
+}
+
+/*building the RNodes_counts table of one rchain */
+public static void BuildCT_Rnodes_counts(String rchain, java.sql.Connection con2, java.sql.Connection con3) throws SQLException, IOException {
 		System.out.println("\n RChain : " + rchain);
 
 		//  create new statement
@@ -809,11 +982,54 @@ public static void BuildCT_Rnodes_counts(int len) throws SQLException, IOExcepti
 
 	}
 
+/* upper bound for the number of groundings of rchain: the smallest support of its parents in lattice_rel, 0 if it
+ * is already known to have none */
+static long estimateSupport(String rchain, java.sql.Connection con2) throws SQLException {
+	Long known = support.get(rchain);
+	if (known != null) {
+		return known;
+	}
+	long estimate = Long.MAX_VALUE;
+	Statement st = con2.createStatement();
+	ResultSet rs = st.executeQuery("SELECT parent FROM lattice_rel WHERE child = '" + rchain + "';");
+	while (rs.next()) {
+		Long parent = support.get(rs.getString("parent"));
+		if (parent != null) {
+			estimate = Math.min(estimate, parent);
+		}
+	}
 	rs.close();
 	st.close();
+	return estimate;
+}
 	
-	System.out.println("\n Rnodes_counts are DONE \n" );	
+/* number of groundings of rchain, from its _counts table */
+static long countSupport(String rchain, java.sql.Connection con3) throws SQLException {
+	Statement st = con3.createStatement();
+	ResultSet rs = st.executeQuery("SELECT SUM(MULT) FROM `" + rchain.replace("`", "") + "_counts`;");
+	long result = rs.next() ? rs.getLong(1) : 0;
+	rs.close();
+	st.close();
+	return result;
+}
 
+/* the rchains in lattice_pruned of the _BN database of con2, for the stages after CTGenerator; none if there is no
+ * lattice_pruned table (a _BN database of an older version) */
+static Set<String> readPruned(java.sql.Connection con2) throws SQLException {
+	Set<String> rchains = new HashSet<String>();
+	Statement st = con2.createStatement();
+	try {
+		ResultSet rs = st.executeQuery("select name from lattice_pruned;");
+		while (rs.next()) {
+			rchains.add(rs.getString("name"));
+		}
+		rs.close();
+	}
+	catch (MySQLSyntaxErrorException e) {
+		// nothing was pruned
+	}
+	st.close();
+	return rchains;
 }
 
 /*building the RNodes_counts tables,count2 simply copies the counts to the CT tables*/
@@ -906,14 +1122,22 @@ public static void BuildCT_Rnodes_counts2(int len) throws SQLException, IOExcept
 }
 
 /*building the _flat tables */
-public static void BuildCT_Rnodes_flat(int len) throws SQLException, IOException {
+public static void BuildCT_Rnodes_flat(int len) throws Exception {
 	long l = System.currentTimeMillis(); //@zqian : measure structure learning time
-	Statement st = con2.createStatement();
-	ResultSet rs = st.executeQuery("select name as RChain from lattice_set where lattice_set.length = " + len + ";");
-	while(rs.next()){
+	runLevel(len, new RChainTask() {
+		public void run(String rchain, java.sql.Connection con2, java.sql.Connection con3) throws Exception {
+			BuildCT_Rnodes_flat(rchain, con2, con3);
+		}
+	});
 
-		//  get pvid for further use
-		String rchain = rs.getString("RChain");
+	long l2 = System.currentTimeMillis(); //@zqian : measure structure learning time
+	System.out.print("Building Time(ms) for Rnodes_flat: "+(l2-l)+" ms.\n");
+	System.out.println("\n Rnodes_flat are DONE \n" );
+
+}
+
+/*building the _flat table of one rchain */
+public static void BuildCT_Rnodes_flat(String rchain, java.sql.Connection con2, java.sql.Connection con3) throws SQLException, IOException {
 		System.out.println("\n rchain String : " + rchain );
 
 		//  create new statement
@@ -963,23 +1187,23 @@ public static void BuildCT_Rnodes_flat(int len) throws SQLException, IOException
 
 	}
 
-	rs.close();
-	st.close();
+/*building the _star tables*/
+public static void BuildCT_Rnodes_star(int len) throws Exception {
+	long l = System.currentTimeMillis(); //@zqian : measure structure learning time
+	runLevel(len, new RChainTask() {
+		public void run(String rchain, java.sql.Connection con2, java.sql.Connection con3) throws Exception {
+			BuildCT_Rnodes_star(rchain, con2, con3);
+		}
+	});
+
 	long l2 = System.currentTimeMillis(); //@zqian : measure structure learning time
-	System.out.print("Building Time(ms) for Rnodes_flat: "+(l2-l)+" ms.\n");
-	System.out.println("\n Rnodes_flat are DONE \n" );
+	System.out.print("Building Time(ms) for Rnodes_star: "+(l2-l)+" ms.\n");
+	System.out.println("\n Rnodes_star are DONE \n" );
 
 }
 
-/*building the _star tables*/
-public static void BuildCT_Rnodes_star(int len) throws SQLException, IOException {
-	long l = System.currentTimeMillis(); //@zqian : measure structure learning time
-	Statement st = con2.createStatement();
-	ResultSet rs = st.executeQuery("select name as RChain from lattice_set where lattice_set.length = " + len + ";");
-	while(rs.next()){
-
-		//  get pvid for further use
-		String rchain = rs.getString("RChain");
+/*building the _star table of one rchain */
+public static void BuildCT_Rnodes_star(String rchain, java.sql.Connection con2, java.sql.Connection con3) throws SQLException, IOException {
 		System.out.println("\n rchain String : " + rchain );
 
 		//  create new statement
@@ -1031,23 +1255,23 @@ public static void BuildCT_Rnodes_star(int len) throws SQLException, IOException
 
 	}
 
-	rs.close();
-	st.close();
+/*building the _false tables first and then the _CT tables*/
+public static void BuildCT_Rnodes_CT(int len) throws Exception {
+	long l = System.currentTimeMillis(); //@zqian : measure structure learning time
+	runLevel(len, new RChainTask() {
+		public void run(String rchain, java.sql.Connection con2, java.sql.Connection con3) throws Exception {
+			BuildCT_Rnodes_CT(rchain, con2, con3);
+		}
+	});
+
 	long l2 = System.currentTimeMillis(); //@zqian : measure structure learning time
-	System.out.print("Building Time(ms) for Rnodes_star: "+(l2-l)+" ms.\n");
-	System.out.println("\n Rnodes_star are DONE \n" );
+	System.out.print("Building Time(ms) for Rnodes_false and Rnodes_CT: "+(l2-l)+" ms.\n");
+	System.out.println("\n Rnodes_false and Rnodes_CT  are DONE \n" );
 
 }
 
-/*building the _false tables first and then the _CT tables*/
-public static void BuildCT_Rnodes_CT(int len) throws SQLException, IOException {
-	long l = System.currentTimeMillis(); //@zqian : measure structure learning time
-	Statement st = con2.createStatement();
-	ResultSet rs = st.executeQuery("select name as RChain from lattice_set where lattice_set.length = " + len + ";");
-	while(rs.next()){
-
-		//  get pvid for further use
-		String rchain = rs.getString("RChain");
+/*building the _false table and then the _CT table of one rchain */
+public static void BuildCT_Rnodes_CT(String rchain, java.sql.Connection con2, java.sql.Connection con3) throws SQLException, IOException {
 		System.out.println("\n rchain String : " + rchain );
 
 		//  create new statement
@@ -1056,7 +1280,8 @@ public static void BuildCT_Rnodes_CT(int len) throws SQLException, IOException {
 		/**********starting to create _flase table***using sort_merge*******************************/
 //		Sort_merge5.sort_merge("`"+rchain.replace("`", "")+"_star`","`"+rchain.replace("`", "") +"_flat`","`"+rchain.replace("`", "") +"_false`",con3);
 		//Sort_merge4.sort_merge("`"+rchain.replace("`", "")+"_star`","`"+rchain.replace("`", "") +"_flat`","`"+rchain.replace("`", "") +"_false`",con3);
-		Sort_merge3.sort_merge("`"+rchain.replace("`", "")+"_star`","`"+rchain.replace("`", "") +"_flat`","`"+rchain.replace("`", "") +"_false`",con3);
+		//Sort_merge3.sort_merge("`"+rchain.replace("`", "")+"_star`","`"+rchain.replace("`", "") +"_flat`","`"+rchain.replace("`", "") +"_false`",con3);
+		Sort_merge_stream.sort_merge("`"+rchain.replace("`", "")+"_star`","`"+rchain.replace("`", "") +"_flat`","`"+rchain.replace("`", "") +"_false`",con3);
 
       //adding  covering index May 21
 		//create index string
@@ -1097,12 +1322,14 @@ public static void BuildCT_Rnodes_CT(int len) throws SQLException, IOException {
 
 	}
 
-	rs.close();
-	st.close();
-	long l2 = System.currentTimeMillis(); //@zqian : measure structure learning time
-	System.out.print("Building Time(ms) for Rnodes_false and Rnodes_CT: "+(l2-l)+" ms.\n");
-	System.out.println("\n Rnodes_false and Rnodes_CT  are DONE \n" );
-
+/*building all the _CT tables going up the Rchain lattice in memory, the _counts and _join tables are read once.
+  The _CT tables are written back after the MULT=0 rows of the biggest Rchain are removed, see CTGenerator*/
+public static void BuildCT_Rnodes_Moebius() throws SQLException {
+	moebiusBuilder = new MoebiusCTBuilder(con2, con3, databaseName3);
+	moebiusBuilder.setPruned(pruned);
+	moebiusBuilder.loadCounts();
+	moebiusBuilder.build(maxNumberOfMembers);
+	System.out.println("\n in-memory Rnodes_CT are DONE \n" );
 }
 
 //preparing the _join part for _CT tables
@@ -46,6 +46,17 @@ import bif.BIF_IO;
 //import MLNExporter.*;
 import com.mysql.jdbc.Connection;
 
+import ct.CTSnapshot;
+import ct.CTTable;
+import ct.CTCache;
+import ct.CountIndex;
+import ct.MoebiusCTBuilder;
+import edu.cmu.tetrad.data.DataSet;
+import edu.cmu.tetrad.data.Knowledge;
+import edu.cmu.tetrad.graph.Dag;
+import edu.cmu.tetrad.search.LocalScoreCache;
+import edu.cmu.tetrad.search.LocalScoreStore;
+
 import nu.xom.ParsingException;
 
 import org.apache.commons.lang.StringUtils;
@@ -57,6 +68,9 @@ import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.sql.*;
 import java.util.ArrayList;
+import java.util.Set;
+
+import database.ConnectionPool;
 
 public class BayesBaseH {
 
@@ -71,12 +85,15 @@ public class BayesBaseH {
 	static String opt3, cont;
 	static boolean linkAnalysis;
 	static boolean Flag_UseLocal_CT; //zqian June 18, 2014
+	static String ctExtension = ".csv"; // ".ctb" if CSVPrecomputor wrote binary CT snapshots (BinaryCT = 1)
+	static boolean inProcess; // InProcessLearning = 1: CT tables and knowledge are passed to the learner in memory
 
 	static int maxNumberOfMembers = 0;
 
 	static ArrayList<String> rnode_ids;
 	static ArrayList<String> rnode_ids_1;
 	static ArrayList<String> pvar_ids;
+	static ArrayList<String> pruned_ids = new ArrayList<String>(); // rchains of the level without a _CT table, see readRNodesFromLattice
 
 	static int FirstRunning=1; // iff Running Time == 1, then generate the csv files
 	                          // else, just reuse the old csv files. May 1st @zqian.
@@ -89,25 +106,7 @@ public class BayesBaseH {
 	public static void runBBH() throws Exception {
 		initProgram(FirstRunning);
 		connectDB();
-
-		//build tables for structure learning
-        BZScriptRunner bzsr = new BZScriptRunner(databaseName,con2);
-        bzsr.runScript("src/scripts/bayesedges.sql");
-        //get maxNumberOfMembers (max length of rchain)
-        Statement st = con2.createStatement();
-        ResultSet rst = st.executeQuery("SELECT max(length) FROM lattice_set;");
-        rst.absolute(1);
-        maxNumberOfMembers = rst.getInt(1);
-        // get the longest rchain
-		String rchain=null;
-		ResultSet rst1 = st.executeQuery("Select name from lattice_set where length=" + maxNumberOfMembers + ";");
-		rst1.absolute(1);
-		rchain = rst1.getString(1);
-		System.out.println(" ##### lattice is ready for use* "); //@zqian
-		//structure learning
-		StructureLearning(con2);
-		//mapping the orig_rnid back and create a new table: Final_Path_BayesNets. //Sep 19, zqian
-		BIF_Generator.Final_Path_BayesNets(con2,rchain);
+		learnStructure();
 		//parameter learning
 		//Add setup options  Yan Sept. 10th
 				//Continuous
@@ -172,6 +171,31 @@ public class BayesBaseH {
 	}
 
 
+	/* the structure learning of runBBH on the connected databases with the settings in the static fields, which a
+	 * test sets instead of the config file: Path_BayesNets along the lattice and Final_Path_BayesNets for the
+	 * longest rchain */
+	static void learnStructure() throws Exception {
+		//build tables for structure learning
+        BZScriptRunner bzsr = new BZScriptRunner(databaseName,con2);
+        bzsr.runScript("src/scripts/bayesedges.sql");
+        //get maxNumberOfMembers (max length of rchain)
+        Statement st = con2.createStatement();
+        ResultSet rst = st.executeQuery("SELECT max(length) FROM lattice_set;");
+        rst.absolute(1);
+        maxNumberOfMembers = rst.getInt(1);
+        // get the longest rchain
+		String rchain=null;
+		ResultSet rst1 = st.executeQuery("Select name from lattice_set where length=" + maxNumberOfMembers + ";");
+		rst1.absolute(1);
+		rchain = rst1.getString(1);
+		System.out.println(" ##### lattice is ready for use* "); //@zqian
+		//structure learning
+		StructureLearning(con2);
+		LocalScoreStore.closeDefault();
+		//mapping the orig_rnid back and create a new table: Final_Path_BayesNets. //Sep 19, zqian
+		BIF_Generator.Final_Path_BayesNets(con2,rchain);
+	}
+
 	public static void StructureLearning(Connection conn) throws Exception{
 		long l = System.currentTimeMillis(); //@zqian : measure structure learning time
 
@@ -295,6 +319,30 @@ public class BayesBaseH {
 		else{
 			Flag_UseLocal_CT = false;
 		}
+		if ( BayesBaseCT_SortMerge.getOptionalProperty( conf, "BinaryCT", "0" ).equals( "1" ) )	{
+			ctExtension = CTSnapshot.EXTENSION;
+		}
+		else{
+			ctExtension = ".csv";
+		}
+		inProcess = BayesBaseCT_SortMerge.getOptionalProperty( conf, "InProcessLearning", "0" ).equals( "1" );
+		// memory cap of the local score caches of the search (MB), 0 = no cap
+		long scoreCacheMB = Long.parseLong( BayesBaseCT_SortMerge.getOptionalProperty( conf, "ScoreCacheMB", "0" ) );
+		if ( scoreCacheMB > 0 ) {
+			LocalScoreCache.setDefaultMaxBytes( scoreCacheMB << 20 );
+		}
+		// file of the local scores kept across lattice points and runs, empty = no store
+		String scoreStore = BayesBaseCT_SortMerge.getOptionalProperty( conf, "ScoreStore", "" );
+		if ( scoreStore.length() > 0 && LocalScoreStore.getDefault() == null ) {
+			try {
+				LocalScoreStore.setDefault( new LocalScoreStore( new File( scoreStore ) ) );
+			}
+			catch ( IOException e ) {
+				System.out.println( "Failed to open the local score store " + scoreStore + ": " + e.getMessage() );
+			}
+		}
+		// threads that score the candidate edges of GES, 1 = serial search (same result)
+		ca.sfu.jbn.BayesNet_Learning_main.gesThreads = Integer.parseInt( BayesBaseCT_SortMerge.getOptionalProperty( conf, "GesThreads", "1" ) );
 		
 	}
 
@@ -305,7 +353,7 @@ public class BayesBaseH {
 		} catch (Exception ex) {
 			System.err.println("Unable to load MySQL JDBC driver");
 		}
-		con1 = (Connection) DriverManager.getConnection(CONN_STR1, dbUsername, dbPassword);
+		con1 = (Connection) ConnectionPool.getConnection("BayesBaseH", CONN_STR1, dbUsername, dbPassword);
 
 		String CONN_STR2 = "jdbc:" + dbaddress + "/" + databaseName2;
 		try {
@@ -313,7 +361,7 @@ public class BayesBaseH {
 		} catch (Exception ex) {
 			System.err.println("Unable to load MySQL JDBC driver");
 		}
-		con2 = (Connection) DriverManager.getConnection(CONN_STR2, dbUsername, dbPassword);
+		con2 = (Connection) ConnectionPool.getConnection("BayesBaseH", CONN_STR2, dbUsername, dbPassword);
 
 		String CONN_STR3 = "jdbc:" + dbaddress + "/" + databaseName3;
 		try {
@@ -321,7 +369,7 @@ public class BayesBaseH {
 		} catch (Exception ex) {
 			System.err.println("Unable to load MySQL JDBC driver");
 		}
-		con3 = (Connection) DriverManager.getConnection(CONN_STR3, dbUsername, dbPassword);
+		con3 = (Connection) ConnectionPool.getConnection("BayesBaseH", CONN_STR3, dbUsername, dbPassword);
         //handle warnings
        // handleWarnings();
 	}
@@ -339,16 +387,28 @@ public class BayesBaseH {
 		for(String id : pvar_ids)
 		{
 			System.out.println("\nStarting Learning the BN Structure of pvar_ids: " + id+"\n");
-			Statement st = con3.createStatement();
-			ResultSet rs = st.executeQuery("SELECT count(*) FROM `"+id.replace("`","")+"_counts`;"); //Optimize this query, too slow, Nov 13, zqian
-			while(rs.next()){
-				NoTuples = rs.getString(1);
+			CountIndex ct = null;
+			if (inProcess) {
+				MoebiusCTBuilder builder = BayesBaseCT_SortMerge.moebiusBuilder;
+				ct = getCTTable(id.replace("`","") + "_counts", builder == null ? null : builder.getCounts(id));
+				NoTuples = "" + ct.getTable().getRowCount();
 				System.out.println("NoTuples : " + NoTuples);
 			}
+			else {
+				Statement st = con3.createStatement();
+				ResultSet rs = st.executeQuery("SELECT count(*) FROM `"+id.replace("`","")+"_counts`;"); //Optimize this query, too slow, Nov 13, zqian
+				while(rs.next()){
+					NoTuples = rs.getString(1);
+					System.out.println("NoTuples : " + NoTuples);
+				}
+			}
 
-			if(Integer.parseInt(NoTuples)>1){
+			if(Integer.parseInt(NoTuples)>1 && inProcess){
+				learnInProcess(id, ct, null, "Entity_BayesNets");
+			}
+			else if(Integer.parseInt(NoTuples)>1){
 				ca.sfu.jbn.BayesNet_Learning_main.tetradLearner(
-						databaseName+"/" + File.separator + "csv" + File.separator + id.replace("`","") + ".csv",
+						databaseName+"/" + File.separator + "csv" + File.separator + id.replace("`","") + ctExtension,
 						databaseName+"/" + File.separator + "xml" + File.separator + id.replace("`","") + ".xml"
 					);
 				bif1(id);
@@ -512,8 +572,8 @@ public class BayesBaseH {
 
 				readRNodesFromLattice(len);	 //create csv files for all rnodes
 
-				//required edges
-				for(String id : rnode_ids)			//rchain
+				//required edges, not needed in process: the knowledge is read from Path_Required_Edges and Path_Forbidden_Edges directly
+				for(String id : inProcess ? new ArrayList<String>() : rnode_ids)			//rchain
 		        {   System.out.println("\n !!!!Staring  to Export The Required Edges to "+id.replace("`","") +  "_req.xml \n");
 		        	BIFExport.Export(databaseName+"/" + File.separator + "kno" + File.separator + id.replace("`","") + "_req.xml", "Rchain", "Path_Required_Edges", id, con2);
 				   // System.out.println("export to _req.xml::rnode_id::"+id); //@zqian Test
@@ -521,7 +581,7 @@ public class BayesBaseH {
 				 }
 				//Nov25
 				//forbidden edges
-				for(String id : rnode_ids)
+				for(String id : inProcess ? new ArrayList<String>() : rnode_ids)
 				{   System.out.println("\n !!!!Staring  to Export The Forbidden Edges to "+id.replace("`","")+ "_for.xml \n");
 					BIFExport.Export(databaseName+"/" + File.separator + "kno" + File.separator + id.replace("`","") + "_for.xml", "Rchain", "Path_Forbidden_Edges", id, con2);
 				    //System.out.println("export to _for.xml::rnode_id::"+id); //@zqian Test
@@ -531,15 +591,29 @@ public class BayesBaseH {
 				String NoTuples="";
 				for(String id : rnode_ids) {
 					System.out.println("\nStarting Learning the BN Structure of rnode_ids: " + id+"\n");
-					Statement st = con3.createStatement();
-					ResultSet rs = st.executeQuery("SELECT count(*) FROM `"+id.replace("`","")+"_CT`;"); // Oct 2nd, Why not check the csv file directly?  faster for larter CT? Oct 23
+					CountIndex ct = null;
+					if (inProcess) {
+						MoebiusCTBuilder builder = BayesBaseCT_SortMerge.moebiusBuilder;
+						ct = getCTTable(id.replace("`","") + "_CT", builder == null ? null : builder.getCT(id));
+						NoTuples = "" + ct.getTable().getRowCount();
+						System.out.println("NoTuples : " + NoTuples);
+					}
+					else {
+						Statement st = con3.createStatement();
+						ResultSet rs = st.executeQuery("SELECT count(*) FROM `"+id.replace("`","")+"_CT`;"); // Oct 2nd, Why not check the csv file directly?  faster for larter CT? Oct 23
 						while(rs.next()){
 							NoTuples = rs.getString(1);
 							System.out.println("NoTuples : " + NoTuples);
 						}
-					if(Integer.parseInt(NoTuples)>1){
+					}
+					if(Integer.parseInt(NoTuples)>1 && inProcess){
+					learnInProcess(id, ct, ca.sfu.jbn.BayesNet_Learning_main.readKnowledge(con2, "Rchain", id, "Path_Required_Edges", "Path_Forbidden_Edges"), "Path_BayesNets");
+					System.out.println("The BN Structure Learning for rnode_id::"+id+"is done."); //@zqian Test
+					deleteForbiddenEdges(id);
+					}
+					else if(Integer.parseInt(NoTuples)>1){
 					ca.sfu.jbn.BayesNet_Learning_main.tetradLearner(
-									databaseName+"/" + File.separator + "csv" + File.separator + id.replace("`","") + ".csv",
+									databaseName+"/" + File.separator + "csv" + File.separator + id.replace("`","") + ctExtension,
 									databaseName+"/" + File.separator + "kno" + File.separator + id.replace("`","") + "_req.xml",
 									databaseName+"/" + File.separator + "kno" + File.separator + id.replace("`","") + "_for.xml",
 									databaseName+"/" + File.separator + "xml" + File.separator + id.replace("`","") + ".xml"
@@ -549,6 +623,13 @@ public class BayesBaseH {
 					
 					}
 				}
+				// the rchains without a _CT table (LatticePruning = 1) are not learned, they keep their required edges
+				for(String id : pruned_ids) {
+					System.out.println("\nNo CT table for rnode_ids: " + id + ", the required edges are its BN Structure\n");
+					Statement st = con2.createStatement();
+					st.execute("insert ignore into Path_BayesNets select distinct Rchain, child, parent from Path_Required_Edges where Rchain = '" + id + "';");
+					st.close();
+				}
 				
 
 
@@ -675,6 +756,7 @@ public class BayesBaseH {
 
 
 				rnode_ids.clear(); //prepare for next loop
+				pruned_ids.clear();
 
 				System.out.println(" Import is done for length = "+len+"."); //@zqian Test
 
@@ -773,7 +855,7 @@ public class BayesBaseH {
 					if(Integer.parseInt(NoTuples)>1 && len!=2){ // skip the level 2, Zqian @ Jan 28 2014, for hep,fin,imdb
 						//if(Integer.parseInt(NoTuples)>1 && len!=1){ // skip the level 2, Zqian @ Jan 28 2014, for muta
 					ca.sfu.jbn.BayesNet_Learning_main.tetradLearner(
-									databaseName+"/" + File.separator + "csv" + File.separator + id.replace("`","") + ".csv",
+									databaseName+"/" + File.separator + "csv" + File.separator + id.replace("`","") + ctExtension,
 									databaseName+"/" + File.separator + "kno" + File.separator + id.replace("`","") + "_req.xml",
 									databaseName+"/" + File.separator + "kno" + File.separator + id.replace("`","") + "_for.xml",
 									databaseName+"/" + File.separator + "xml" + File.separator + id.replace("`","") + ".xml"
@@ -862,6 +944,7 @@ public class BayesBaseH {
 
 
 				rnode_ids.clear(); //prepare for next loop
+				pruned_ids.clear();
 
 				System.out.println(" Import is done for length = "+len+"."); //@zqian Test
 
@@ -891,6 +974,7 @@ public static void readPvarFromBN() throws SQLException, IOException {
 	}
 
 public static void readRNodesFromLattice(int len) throws SQLException, IOException {
+	Set<String> pruned = BayesBaseCT_SortMerge.readPruned(con2); // no _CT table (LatticePruning = 1): nothing to learn
 	Statement st = con2.createStatement();
 	ResultSet rs = st.executeQuery("select name as RChain from lattice_set where lattice_set.length = " + len + ";");
 	while(rs.next()){
@@ -898,6 +982,10 @@ public static void readRNodesFromLattice(int len) throws SQLException, IOExcepti
 		//  get pvid for further use
 		String rchain = rs.getString("RChain");
 		System.out.println("\n RChain : " + rchain);
+		if (pruned.contains(rchain)) {
+			pruned_ids.add(rchain);
+			continue;
+		}
 		rnode_ids.add(rchain);
 		//rnode_ids_1.add(rchain);
 		
@@ -935,10 +1023,7 @@ public static void readRNodesFromLattice(int len) throws SQLException, IOExcepti
 		int j=0;
 
 			BIFImport.Import(databaseName+"/" + File.separator + "xml" + File.separator + id.replace("`","") + ".xml", id, "Path_BayesNets", con2);
-			//zqian@Oct 2nd 2013
-			//delete the edges which is already forbidden in a lower level before inserting into the database.
-		//Nov 25
-			st.execute("delete from Path_BayesNets where Rchain = '"+id+"' and (child,parent) in (select child,parent from Path_Forbidden_Edges where Rchain ='"+id+"' );"); // Oct 2nd
+			deleteForbiddenEdges(id);
 
 			System.out.println("*** imported Path_BayesNets "+rnode_ids.get(j++)+"into database");
 
@@ -946,6 +1031,33 @@ public static void readRNodesFromLattice(int len) throws SQLException, IOExcepti
 		st.close();
 	}
 
+	//zqian@Oct 2nd 2013
+	//delete the edges which is already forbidden in a lower level before inserting into the database.
+	static void deleteForbiddenEdges(String id) throws SQLException {
+		Statement st = con2.createStatement();
+		//Nov 25
+		st.execute("delete from Path_BayesNets where Rchain = '"+id+"' and (child,parent) in (select child,parent from Path_Forbidden_Edges where Rchain ='"+id+"' );"); // Oct 2nd
+		st.close();
+	}
+
+	// in-process pipeline (InProcessLearning = 1): the CT table goes to the learner as a DataSet, the learned edges go
+	// straight into tableName (Entity_BayesNets or Path_BayesNets), no csv, kno or xml files. The DataSet and the BDeu
+	// counts come from the count index of the CT table (CTCache).
+	static void learnInProcess(String id, CountIndex ct, Knowledge knowledge, String tableName) throws Exception {
+		DataSet dataset = ct.getDataSet();
+		Dag dag = ca.sfu.jbn.BayesNet_Learning_main.tetradLearner(dataset, ct.getFamilyCounts(), knowledge == null ? new Knowledge() : knowledge);
+		BIFImport.Import(ca.sfu.jbn.BayesNet_Learning_main.getLinks(dag), id, tableName, con2);
+	}
+
+	// the CT table kept in memory by the CT engine (InMemoryCT = 1), otherwise the table in the _CT database
+	/* the CT table is also shared through CTCache, CP and KLD reuse it and its count index instead of reading it again */
+	static CountIndex getCTTable(String table, CTTable inMemory) throws SQLException {
+		if (inMemory != null) {
+			return CTCache.register(databaseName3, table, inMemory);
+		}
+		return CTCache.load(con3, databaseName3, table);
+	}
+
 	public static String makeCommaSepQuery(ResultSet rs, String colName, String del) throws SQLException {
 		ArrayList<String> parts = new ArrayList<String>();
 		//String stringQuery = "";
@@ -70,11 +70,17 @@
 /*Written by Qing & Sara*/
  
 import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import database.ConnectionPool;
+
+import ct.CPEstimator;
+import ct.CTCache;
  
  
 /* finds conditional probabilities for the Bayes net parameters. Also computes log-likelihood and other scores for each node. */
@@ -89,6 +95,7 @@ public class CP {
  static String dbPassword="";
  static String dbaddress="";
  static String rchain ;
+ static boolean inMemoryCP; // InMemoryCP = 1: CP tables and scores computed in memory from the biggest CT table (estimate)
  
  
 public CP(String databaseName, String databaseName2){
@@ -117,8 +124,12 @@ public CP(String databaseName, String databaseName2){
  	 //Builds CP table for a given rchain. Right now, it's the longest one for the final result
  	 
  	 prepare(rchain, con1);
- 	 nopar(rchain, con1);
- 	 haspar(rchain,con1);
+ 	 if (inMemoryCP) {
+ 	 	 estimate(rchain, con1);
+ 	 } else {
+ 	 	 nopar(rchain, con1);
+ 	 	 haspar(rchain,con1);
+ 	 }
   	//Feb 7, 2014 @ zqian, bug: miss some nodes which ONLY act as Parent
     // fixed by add such node as a child without parent in Path_BayesNet
 
@@ -409,8 +420,8 @@ public CP(String databaseName, String databaseName2){
  	 st.execute(index);
  	
  		
-	 System.out.println("create table temp as select MULT, " + from_st + ", sum(MULT) as ParentSum from " + table_name + " group by " + from_st + ";" );
- 	 st.execute("create table temp as select MULT, " + from_st + ", sum(MULT) as ParentSum from " + table_name + " group by " + from_st + ";" );
+	 System.out.println("create table temp as select " + from_st + ", sum(MULT) as ParentSum from " + table_name + " group by " + from_st + ";" );
+ 	 st.execute("create table temp as select " + from_st + ", sum(MULT) as ParentSum from " + table_name + " group by " + from_st + ";" );
 
  	 //add index to temp table
  	 String index_temp = "ALTER TABLE temp ADD INDEX  temp_ ( "+ parent_name.get(0) +" ASC";
@@ -443,7 +454,7 @@ public CP(String databaseName, String databaseName2){
 	long local = 1;
 		
  		while(rs.next()){
-			local = Long.parseLong (rs.getString("Tuples"));
+			local = local * Long.parseLong (rs.getString("Tuples")); //all pvars not in the family, as in nopar_update
 			System.out.println("local is "+ local);
 			String sql = "update "+ table_name + " set local_mult = mult/ "+local + " ;";
 			//String sql = "update "+ table_name + " set local_mult = mult  ;";
@@ -512,6 +523,62 @@ public CP(String databaseName, String databaseName2){
  }
  
  
+ //same _CP tables and Scores as nopar and haspar, but all families are counted in one pass over the biggest CT table in memory
+ //and each _CP table is written with one bulk insert.
+ public static void estimate(String rchain, Connection con1) throws SQLException {
+ 	 java.sql.Statement st = con1.createStatement();
+ 	 String bigTable = rchain.substring(0, rchain.length()-1) + "_CT`";
+ 	 
+ 	 //children with parents, in the order of haspar
+ 	 LinkedHashMap<String, ArrayList<String>> parents = new LinkedHashMap<String, ArrayList<String>>();
+ 	 ResultSet rst = st.executeQuery("select distinct child, parent FROM Path_BayesNets where Rchain='" + rchain + "' and parent <> '';");
+ 	 while(rst.next()){
+ 	 	 if (!parents.containsKey(rst.getString(1))) {
+ 	 	 	 parents.put(rst.getString(1), new ArrayList<String>());
+ 	 	 }
+ 	 	 parents.get(rst.getString(1)).add(rst.getString(2));
+ 	 }
+ 	 //nodes without parents, as in nopar
+ 	 ArrayList<String> noparent_tables = new ArrayList<String>();
+ 	 rst = st.executeQuery("SELECT child FROM Path_BayesNets WHERE Rchain='" + rchain + 
+ 			 "' AND parent = '' and child not in (SELECT distinct child FROM Path_BayesNets WHERE parent<>'' and Rchain= '" + rchain + "');");
+ 	 while(rst.next()){
+ 	 	 noparent_tables.add(rst.getString(1));
+ 	 }
+ 	 
+ 	 LinkedHashMap<String, CPEstimator.Family> families = new LinkedHashMap<String, CPEstimator.Family>();
+ 	 for (String nodeName : noparent_tables) {
+ 	 	 families.put(nodeName, new CPEstimator.Family(nodeName, new String[0]));
+ 	 }
+ 	 for (Map.Entry<String, ArrayList<String>> entry : parents.entrySet()) {
+ 	 	 families.put(entry.getKey(), new CPEstimator.Family(entry.getKey(), entry.getValue().toArray(new String[0])));
+ 	 }
+ 	 rst = st.executeQuery("select child, Tuples from Pvars_Not_In_Family;");
+ 	 while(rst.next()){
+ 	 	 CPEstimator.Family family = families.get(rst.getString(1));
+ 	 	 if (family != null) {
+ 	 	 	 family.addTuples(rst.getLong(2));
+ 	 	 }
+ 	 }
+ 	 rst.close();
+ 	 st.close();
+ 	 
+ 	 //the CT table and its counts are shared with structure learning and KLD through CTCache
+ 	 ArrayList<CPEstimator.Family> familyList = new ArrayList<CPEstimator.Family>(families.values());
+ 	 CPEstimator.estimate(CTCache.load(con1, databaseName2, bigTable), familyList);
+ 	 
+ 	 String[] nopar_layout = { CPEstimator.CHILD, CPEstimator.CP, CPEstimator.MULT, CPEstimator.LOCAL_MULT, CPEstimator.LIKELIHOOD, CPEstimator.PRIOR };
+ 	 String[] haspar_layout = { CPEstimator.MULT, CPEstimator.CHILD, CPEstimator.PARENTS, CPEstimator.PARENT_SUM, CPEstimator.LOCAL_MULT,
+ 	 	 	 CPEstimator.CP, CPEstimator.LIKELIHOOD, CPEstimator.PRIOR };
+ 	 for (CPEstimator.Family family : familyList) {
+ 	 	 String nodeName = family.getChild();
+ 	 	 String table_name = nodeName.substring(0, nodeName.length()-1) + "_CP`";
+ 	 	 System.out.println(table_name + "\n");
+ 	 	 CPEstimator.write(con1, family, table_name, parents.containsKey(nodeName) ? haspar_layout : nopar_layout);
+ 	 }
+ 	 CPEstimator.updateScores(con1, familyList);
+ }
+ 
  //prepare for the computing of local_mult, Dec 3rd, zqian
  public static void lcoal_mult_update(String rchain, Connection con1) throws SQLException{
 	 	 
@@ -576,6 +643,7 @@ public CP(String databaseName, String databaseName2){
  	 dbPassword = conf.getProperty("dbpassword");
  	 dbaddress = conf.getProperty("dbaddress");
  	real_database=conf.getProperty("dbname");
+ 	inMemoryCP = BayesBaseCT_SortMerge.getOptionalProperty(conf, "InMemoryCP", "0").equals("1");
  }
   
  public static void connectDB() throws SQLException {
@@ -586,7 +654,7 @@ public CP(String databaseName, String databaseName2){
  	 } catch (Exception ex) {
  	 	 System.err.println("Unable to load MySQL JDBC driver");
  	 }
- 	 con1 = DriverManager.getConnection(CONN_STR1, dbUsername, dbPassword);
+ 	 con1 = ConnectionPool.getConnection("CP", CONN_STR1, dbUsername, dbPassword);
  	 java.sql.Statement st = con1.createStatement();
  	 ResultSet myrchain = st.executeQuery("select name as RChain from lattice_set where lattice_set.length = (SELECT max(length) FROM lattice_set);");
  	 myrchain.absolute(1);
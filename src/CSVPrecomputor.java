@@ -1,19 +1,26 @@
+import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.FileWriter;
 import java.io.IOException;
-import java.io.RandomAccessFile;
-import java.sql.DriverManager;
 import java.sql.ResultSet;
 import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.ArrayList;
+import java.util.Set;
+
+import database.ConnectionPool;
 
 import javax.swing.JOptionPane;
 
 import org.apache.commons.lang.StringUtils;
 
 import com.mysql.jdbc.Connection;
+
+import ct.CTSnapshot;
+import ct.CTTable;
+import ct.MoebiusCTBuilder;
 /* zqian@Nov 21, fixed on bug for loading data into csv files (have to close the file)
  * if you do not close it, sometime the program may only load part of the data from resultset into .csv file, and not easy to find it.
  * and thus will cause inconsistent output of Ges Search since the data are different with your expectation.
@@ -40,11 +47,13 @@ public class CSVPrecomputor {
 	static String dbaddress;
 
 	static String opt2;
+	static String binaryCT; // BinaryCT = 1: write binary CT snapshots (.ctb, ct.CTSnapshot) instead of .csv files
 	
 	static int maxNumberOfMembers = 0;
 
 	static ArrayList<String> rnode_ids;
 	static ArrayList<String> pvar_ids;		
+	static Set<String> pruned; // rchains without a _CT table (LatticePruning = 1), they get no .csv file
 	
 	public static void main(String[] args) throws Exception {
 		runCSV();
@@ -77,6 +86,7 @@ public class CSVPrecomputor {
 	public static void Computing_CSV() throws SQLException, IOException{
 		long l = System.currentTimeMillis();
     	readPvarFromBN(con2);	
+    	pruned = BayesBaseCT_SortMerge.readPruned(con2);
 	
        for(int len = 1; len <= maxNumberOfMembers; len++)
        {
@@ -130,6 +140,8 @@ public class CSVPrecomputor {
 		dbPassword = conf.getProperty("dbpassword");
 		dbaddress = conf.getProperty("dbaddress");
 		opt2 = conf.getProperty("LinkCorrelations");
+		binaryCT = BayesBaseCT_SortMerge.getOptionalProperty(conf, "BinaryCT", "0");
+		BayesBaseCT_SortMerge.setScanMemory(conf);
 	}
 
 
@@ -140,7 +152,7 @@ public class CSVPrecomputor {
 		} catch (Exception ex) {
 			System.err.println("Unable to load MySQL JDBC driver");
 		}
-		con1 = (Connection) DriverManager.getConnection(CONN_STR1, dbUsername, dbPassword);
+		con1 = (Connection) ConnectionPool.getConnection("CSVPrecomputor", CONN_STR1, dbUsername, dbPassword);
 
 		String CONN_STR2 = "jdbc:" + dbaddress + "/" + databaseName2;
 		try {
@@ -148,7 +160,7 @@ public class CSVPrecomputor {
 		} catch (Exception ex) {
 			System.err.println("Unable to load MySQL JDBC driver");
 		}
-		con2 = (Connection) DriverManager.getConnection(CONN_STR2, dbUsername, dbPassword);
+		con2 = (Connection) ConnectionPool.getConnection("CSVPrecomputor", CONN_STR2, dbUsername, dbPassword);
 		
 		String CONN_STR3 = "jdbc:" + dbaddress + "/" + databaseName3;
 		try {
@@ -156,7 +168,7 @@ public class CSVPrecomputor {
 		} catch (Exception ex) {
 			System.err.println("Unable to load MySQL JDBC driver");
 		}
-		con3 = (Connection) DriverManager.getConnection(CONN_STR3, dbUsername, dbPassword);
+		con3 = (Connection) ConnectionPool.getConnection("CSVPrecomputor", CONN_STR3, dbUsername, dbPassword);
         //handle warnings
        // handleWarnings();
 	}
@@ -172,38 +184,18 @@ public class CSVPrecomputor {
 				String pvid = rs.getString("pvid");
 				System.out.println("pvid : " + pvid);
 
-				//  create new statement
-				Statement st3 = con3.createStatement();
+				if (binaryCT.equals("1")) {
+					MoebiusCTBuilder builder = BayesBaseCT_SortMerge.moebiusBuilder;
+					writeSnapshot(pvid.replace("`", "") + "_counts", builder == null ? null : builder.getCounts(pvid), pvid);
+					pvar_ids.add(pvid);
+					continue;
+				}
 
 				String queryString= "SELECT * FROM `"+pvid.replace("`", "")+"_counts` where mult>0 ;";
-				ResultSet rs4 = st3.executeQuery(queryString);
 				System.out.print("query string : "+queryString);
-				
-				//  create header
-				ArrayList<String> columns = getColumns(rs4);
-				String csvHeader = StringUtils.join(columns, "\t");
-				System.out.println("\nCSV Header : " + csvHeader+ "\n");
-
-				//  create csv file
-				RandomAccessFile csv = new RandomAccessFile(databaseName+"/" + File.separator + "csv" + File.separator + pvid + ".csv", "rw");
-				csv.writeBytes(csvHeader + "\n");
-
-				ResultSet rs5 = st3.executeQuery(queryString);
-				while(rs5.next()){
-					String csvString = "";
-					for(String col : columns){
-						csvString += rs5.getString(col) + "\t";
-					}
-					csvString = csvString.substring(0, csvString.length() - 1);
-					csv.writeBytes(csvString + "\n");
-			        }
-				csv.close(); // zqian@Nov 21
+				writeCSV(queryString, databaseName+"/" + File.separator + "csv" + File.separator + pvid + ".csv");
 				//  add to ids for further use
 				pvar_ids.add(pvid);
-
-				//  close statements
-				
-				st3.close();
 				
 			}
 
@@ -220,48 +212,38 @@ public class CSVPrecomputor {
 			//  get pvid for further use
 			String rchain = rs.getString("RChain");
 			System.out.println("\n RChain : " + rchain);
+			if (pruned.contains(rchain)) {
+				System.out.println(" no support, no _CT table");
+				continue;
+			}
+
+			if (binaryCT.equals("1")) {
+				MoebiusCTBuilder builder = BayesBaseCT_SortMerge.moebiusBuilder;
+				try
+				{
+					writeSnapshot(rchain.replace("`", "") + "_CT", builder == null ? null : builder.getCT(rchain), rchain);
+				}
+				catch ( MySQLSyntaxErrorException e )
+				{
+					break;
+				}
+				rnode_ids.add(rchain);
+				continue;
+			}
 
-			//  create new statement
-			Statement st3 = con3.createStatement();
-			
 			String queryString= "SELECT * FROM `"+rchain.replace("`", "")+"_CT` where mult>0;";
-			ResultSet rs5 = null;
 			try
 			{
-				rs5 = st3.executeQuery(queryString);
+				//  reading data from _CT table into .csv file
+				writeCSV(queryString, databaseName+"/" + File.separator + "csv" + File.separator + rchain.replace("`", "") + ".csv");
 			}
 			catch ( MySQLSyntaxErrorException e )
 			{
 				//Table doesn't exist
-				st3.close();
 				break;
 			}
 			System.out.print("query string : "+queryString);
 			
-			//  create header
-			ArrayList<String> columns = getColumns(rs5);
-			String csvHeader = StringUtils.join(columns, "\t");
-			System.out.println("\n CSV Header : " + csvHeader+ "\n");
-
-			//  create csv file, reading data from _CT table into .csv file
-			RandomAccessFile csv = new RandomAccessFile(databaseName+"/" + File.separator + "csv" + File.separator + rchain.replace("`", "") + ".csv", "rw");
-			csv.setLength(0); //File must be cleared before writing
-			
-			csv.writeBytes(csvHeader + "\n");
-
-			ResultSet rs6 = st3.executeQuery(queryString);
-			while(rs6.next()){
-				String csvString = "";
-				for(String col : columns){
-					csvString += rs6.getString(col) + "\t";
-				}
-				csvString = csvString.substring(0, csvString.length() - 1);
-				csv.writeBytes(csvString + "\n");
-			}
-			csv.close(); // zqian@Nov 21
-			//  close statements
-			st3.close();
-			
 			rnode_ids.add(rchain);
 		}
 
@@ -269,6 +251,21 @@ public class CSVPrecomputor {
 		st.close();
 	}
 
+	/*
+	 * writes <id>.ctb next to where the .csv file would be, directly from the in-memory CT table if the
+	 * CT engine still has it (InMemoryCT = 1), otherwise from the table in the _CT database.
+	 * Only the rows with mult>0 are written, like the csv queries.
+	 */
+	static void writeSnapshot(String table, CTTable inMemory, String id) throws SQLException, IOException {
+		File file = new File(databaseName+"/" + File.separator + "csv" + File.separator + id.replace("`", "") + CTSnapshot.EXTENSION);
+		if (inMemory != null) {
+			CTSnapshot.write(inMemory, file);
+		} else {
+			CTSnapshot.writeTable(con3, "`" + table + "`", file);
+		}
+		System.out.println("CT snapshot : " + file);
+	}
+
 	public static void readRNodesFromLatticeTrue(int len) throws SQLException, IOException {
 		Statement st = con2.createStatement();
 		ResultSet rs = st.executeQuery("select name as RChain from lattice_set where lattice_set.length = " + len + ";");
@@ -277,9 +274,11 @@ public class CSVPrecomputor {
 			//  get pvid for further use
 			String rchain = rs.getString("RChain");
 			System.out.println("\n RChain : " + rchain);
+			if (pruned.contains(rchain)) {
+				System.out.println(" no support, no _CT table");
+				continue;
+			}
 
-			//  create new statement
-			Statement st3 = con3.createStatement();
 			String whereString="";
 			if (len>1)
 			{
@@ -293,30 +292,7 @@ public class CSVPrecomputor {
 
 			String queryString= "SELECT * FROM `"+rchain.replace("`", "")+"_CT` where  " + whereString + " and mult>0;";
 					System.out.print("query string : "+queryString);
-			ResultSet rs5 = st3.executeQuery(queryString);
-
-			//  create header
-			ArrayList<String> columns = getColumns(rs5);
-			String csvHeader = StringUtils.join(columns, "\t");
-			System.out.println("\n CSV Header : " + csvHeader+ "\n");
-
-			//  create csv file, reading data from _CT table into .csv file
-			RandomAccessFile csv = new RandomAccessFile(databaseName+"/" + File.separator + "csv" + File.separator + rchain.replace("`", "") + "True.csv", "rw");
-			
-			csv.writeBytes(csvHeader + "\n");
-
-			ResultSet rs6 = st3.executeQuery(queryString);
-			while(rs6.next()){
-				String csvString = "";
-				for(String col : columns){
-					csvString += rs6.getString(col) + "\t";
-				}
-				csvString = csvString.substring(0, csvString.length() - 1);
-				csv.writeBytes(csvString + "\n");
-			}
-			csv.close(); // zqian@Nov 21
-			//  close statements
-			st3.close();
+			writeCSV(queryString, databaseName+"/" + File.separator + "csv" + File.separator + rchain.replace("`", "") + "True.csv");
 			
 			rnode_ids.add(rchain);
 
@@ -334,9 +310,11 @@ public class CSVPrecomputor {
 			//  get pvid for further use
 			String rchain = rs.getString("RChain");
 			System.out.println("\n RChain : " + rchain);
+			if (pruned.contains(rchain)) {
+				System.out.println(" no support, no _CT table");
+				continue;
+			}
 
-			//  create new statement
-			Statement st3 = con3.createStatement();
 			String queryString= "";
 			String whereString="";
 			
@@ -360,32 +338,7 @@ public class CSVPrecomputor {
 //			String queryString= "SELECT * FROM `"+rchain.replace("`", "")+"_CT` where  " + whereString + " ;";
 			
 			System.out.print("\n query string : "+queryString);
-			ResultSet rs5 = st3.executeQuery(queryString);
-			
-			
-			//  create header
-			ArrayList<String> columns = getColumns(rs5);
-			String csvHeader = StringUtils.join(columns, "\t");
-			System.out.println("\n CSV Header : " + csvHeader+ "\n");
-
-	
-			//  create csv file, reading data from _CT table into .csv file
-			RandomAccessFile csv = new RandomAccessFile(databaseName+"/" + File.separator + "csv" + File.separator + rchain.replace("`", "") + "False.csv", "rw");
-			
-			csv.writeBytes(csvHeader + "\n");
-
-			ResultSet rs6 = st3.executeQuery(queryString);
-			while(rs6.next()){
-				String csvString = "";
-				for(String col : columns){
-					csvString += rs6.getString(col) + "\t";
-				}
-				csvString = csvString.substring(0, csvString.length() - 1);
-				csv.writeBytes(csvString + "\n");
-			}
-			csv.close(); // zqian@Nov 21
-			//  close statements
-			st3.close();
+			writeCSV(queryString, databaseName+"/" + File.separator + "csv" + File.separator + rchain.replace("`", "") + "False.csv");
 			
 			rnode_ids.add(rchain);
 
@@ -433,6 +386,41 @@ public class CSVPrecomputor {
 		//return stringQuery;
 	}
 
+	/*
+	 * writes the rows of queryString (on con3) to a tab separated csv file with a header line
+	 * -one forward-only scan with a bounded row buffer, the header comes from the result set meta data
+	 *  instead of a first run of the query
+	 */
+	static void writeCSV(String queryString, String fileName) throws SQLException, IOException {
+		Statement st3 = ConnectionPool.streamingStatement(con3, "CSVPrecomputor");
+		try {
+			ResultSet rs = st3.executeQuery(queryString);
+			
+			//  create header
+			ResultSetMetaData metaData = rs.getMetaData();
+			int columnCount = metaData.getColumnCount();
+			ArrayList<String> columns = new ArrayList<String>();
+			for (int i = 1; i <= columnCount; i++) {
+				columns.add(metaData.getColumnLabel(i));
+			}
+			String csvHeader = StringUtils.join(columns, "\t");
+			System.out.println("\n CSV Header : " + csvHeader+ "\n");
+			
+			//  create csv file
+			BufferedWriter csv = new BufferedWriter(new FileWriter(fileName));
+			csv.write(csvHeader + "\n");
+			while(rs.next()){
+				for (int i = 1; i <= columnCount; i++) {
+					csv.write(rs.getString(i) + (i < columnCount ? "\t" : "\n"));
+				}
+			}
+			csv.close();
+			rs.close();
+		} finally {
+			st3.close();
+		}
+	}
+
 	public static ArrayList<String> getColumns(ResultSet rs) throws SQLException {
 		ArrayList<String> cols = new ArrayList<String>();
 		ResultSetMetaData metaData = rs.getMetaData();
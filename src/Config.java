@@ -9,13 +9,15 @@ public class Config
     Properties configFile;
     FileReader fr;
     Reader reader;
+    //the file that is read, relative to the working directory; tests point it to their own settings
+    static String file = "cfg/subsetctcomputation.cfg";
 
     public Config()
     {
         configFile = new java.util.Properties();
         try {
         	//fr = new FileReader("src/config.cfg"); // June 17, 2014, for FunctorWrapper, NOTE: real data for FunctorWrapper, cross validation: e.g. unielwin_Training1 
-        	fr = new FileReader( "cfg/subsetctcomputation.cfg" );  // May 22, 2014 zqian, computing the score for link analysis off.
+        	fr = new FileReader( file );  // May 22, 2014 zqian, computing the score for link analysis off.
             reader = new BufferedReader(fr);
             configFile.load( reader );
         }catch(Exception eta){
@@ -81,12 +81,14 @@
  * Date: September 23, 2013 
  */
 
-import java.sql.DriverManager;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.ArrayList;
 
+import database.ConnectionPool;
+
 import com.mysql.jdbc.Connection;
 
 public class FunctorWrapper
@@ -102,6 +104,8 @@ public class FunctorWrapper
 	static boolean processingRNode = false;
 	// Global variable: true to use nodes in Markov Blanket, false to use only functor's parents and associated RNodes
 	static boolean useMarkovBlanket = true;
+	// BatchedGroundings = 1: build the target CT tables once for all groundings of a functor (GetGroundingsBatched)
+	static boolean batchedGroundings = false;
 
 	public static void main(String[] args) throws Exception
 	{
@@ -194,7 +198,14 @@ public class FunctorWrapper
 			st.execute(" INSERT INTO `Test_Node` (`FID`) VALUES('"+functorId+"') ;");
 			
 			
-			GetGroundings( functorArgs, functorArgValues, 0, functorId  );
+			if ( batchedGroundings )
+			{
+				GetGroundingsBatched( functorArgs, functorId );
+			}
+			else
+			{
+				GetGroundings( functorArgs, functorArgValues, 0, functorId  );
+			}
 			
 			// Post-processing on *_final_CT column names for RNodes 
 			postProcess( st );
@@ -245,6 +256,7 @@ public class FunctorWrapper
 		dbUsername		= conf.getProperty("dbusername");
 		dbPassword		= conf.getProperty("dbpassword");
 		dbaddress		= conf.getProperty("dbaddress");
+		batchedGroundings = BayesBaseCT_SortMerge.getOptionalProperty(conf, "BatchedGroundings", "0").equals("1");
 	}
 
 	public static void connectDBTargetSetup() throws SQLException
@@ -258,7 +270,7 @@ public class FunctorWrapper
 		{
 			System.err.println( "Unable to load MySQL JDBC driver" );
 		}
-		con0 = (Connection) DriverManager.getConnection( CONN_STR2, 
+		con0 = (Connection) ConnectionPool.getConnection( "FunctorWrapper", CONN_STR2, 
 														 dbUsername, 
 														 dbPassword );
 	}
@@ -274,7 +286,7 @@ public class FunctorWrapper
 		{
 			System.err.println( "Unable to load MySQL JDBC driver" );
 		}
-		con1 = (Connection) DriverManager.getConnection( CONN_STR2, 
+		con1 = (Connection) ConnectionPool.getConnection( "FunctorWrapper", CONN_STR2, 
 														 dbUsername, 
 														 dbPassword );
 	}
@@ -290,7 +302,7 @@ public class FunctorWrapper
 		{
 			System.err.println( "Unable to load MySQL JDBC driver" );
 		}
-		conFinal = (Connection) DriverManager.getConnection( CONN_STR2, 
+		conFinal = (Connection) ConnectionPool.getConnection( "FunctorWrapper", CONN_STR2, 
 														 dbUsername, 
 														 dbPassword );
 	}
@@ -306,7 +318,7 @@ public class FunctorWrapper
 		{
 			System.err.println( "Unable to load MySQL JDBC driver" );
 		}
-		con_preprocess = (Connection) DriverManager.getConnection( CONN_STR_preprocess, 
+		con_preprocess = (Connection) ConnectionPool.getConnection( "FunctorWrapper", CONN_STR_preprocess, 
 														 dbUsername, 
 														 dbPassword );
 	}
@@ -480,6 +492,8 @@ public class FunctorWrapper
 			}			
 			
 			int max = BayesBaseCT_SortMerge.buildCTTarget();			
+			// the target CT has the counts of all groundings, keyed by their ids, see GetArgumentKeys
+			String[] keys = GetArgumentKeys( args );
 			
 			/*
 			 * Store Results
@@ -507,6 +521,32 @@ public class FunctorWrapper
 				System.out.println( insertString );
 			st3.execute( insertString );
 			
+			StoreFinalCTs( args, functorId_orig, max, keys, st3 );
+			
+			st3.execute( "DROP TABLE GroundingsVertical" );
+			st3.close();
+			st2.execute( "DROP TABLE Groundings;" );
+			st2.close();
+			argValues.remove(index);
+			
+			groundingCount++;
+		}
+		
+		rs.close();
+		
+		st1.close();
+	}
+	
+	/*
+	 * Store Results, for the groundings in GroundingsVertical
+	 *  2. Get largest rchain to get counts
+	 *  3. Join GroundingsVertical to `<rchain>_CT` (`<pvid>_counts` if there is no rchain)
+	 *  4. Store in functor final CTs, target_parent_final_CT and target_child_final_CT
+	 * keys: null if the target CT tables are for the single grounding in GroundingsVertical,
+	 * otherwise keys[i] is the 1nid holding the primary key of args[i] (see GetArgumentKeys)
+	 */
+	public static void StoreFinalCTs( ArrayList<String> args, String functorId_orig, int max, String[] keys, Statement st3 ) throws SQLException
+	{
 			/*  2. */
 			String rchainQuery = "SELECT name FROM " + databaseName1 + "_BN.lattice_set WHERE length = " + max + ";";
 			System.out.println( rchainQuery );
@@ -521,7 +561,7 @@ public class FunctorWrapper
 			}
 			else
 			{
-				rchain = args.get(index);			
+				rchain = args.get( args.size() - 1 );			
 			}
 			rsRchain.close();
 
@@ -600,16 +640,7 @@ public class FunctorWrapper
 			}			
 		
 			String tempTableString = "";
-			if ( rchainExists )
-			{
-				tempTableString = "CREATE TABLE tempJoin AS SELECT * FROM " +  "(SELECT * FROM GroundingsVertical) G " +
-						  "JOIN (SELECT "+target_parent_select_string.substring(0, target_parent_select_string.lastIndexOf(",")-1) +" FROM " + databaseName4 +  ".`" + rchain.replace( "`","" ) +  "_CT`) A;";
-			}
-			else
-			{  // need to update using the very similar query
-				tempTableString = "CREATE TABLE tempJoin AS SELECT * FROM " +  "(SELECT * FROM GroundingsVertical) G " +
-								  "JOIN (SELECT * FROM " + databaseName4 +   ".`" + rchain.replace( "`","" ) +  "_counts`) A;";
-			}
+			tempTableString = tempJoinString( target_parent_select_string, rchain, rchainExists, args, keys );
 			
 			System.out.println("zqian: "+ tempTableString);
 			
@@ -750,16 +781,7 @@ public class FunctorWrapper
 				}
 				// end while 2
 				String sub_tempTableString = "";
-				if ( rchainExists )
-				{
-					sub_tempTableString = "CREATE TABLE tempJoin AS SELECT * FROM " +  "(SELECT * FROM GroundingsVertical) G " +
-							  "JOIN (SELECT "+current_parents_select_string.substring(0, current_parents_select_string.lastIndexOf(",")-1) +" FROM " + databaseName4 +  ".`" + rchain.replace( "`","" ) +  "_CT`) A;";
-				}
-				else
-				{  // need to update using the very similar query
-					sub_tempTableString = "CREATE TABLE tempJoin AS SELECT * FROM " +  "(SELECT * FROM GroundingsVertical) G " +
-									  "JOIN (SELECT * FROM " + databaseName4 +   ".`" + rchain.replace( "`","" ) +  "_counts`) A;";
-				}
+				sub_tempTableString = tempJoinString( current_parents_select_string, rchain, rchainExists, args, keys );
 				System.out.println("zqian: "+ sub_tempTableString);
 				st3.execute( sub_tempTableString );
 				// functorId_current_final_CT
@@ -810,21 +832,192 @@ public class FunctorWrapper
 			}
 			// end while 1			
 /*********	// processing target's children**************END*****************/			
-			st3.execute( "DROP TABLE GroundingsVertical" );
-			st3.close();
-			st2.execute( "DROP TABLE Groundings;" );
-			st2.close();
 			st_temp.close();
 			st_temp1.close();
 			s_temp.close();
-			argValues.remove(index);
+	}
 			
-			groundingCount++;
+	/*
+	 * the CREATE TABLE tempJoin statement of one final CT: GroundingsVertical joined to the columns in selectString
+	 * ("mult, <functor> ,<parent> ,...") of the largest rchain CT.
+	 * keys == null: one grounding, the CT rows are copied as they are.
+	 * Otherwise every grounding is joined to the CT rows with its ids in the key columns and mult is summed per grounding.
+	 */
+	static String tempJoinString( String selectString, String rchain, boolean rchainExists, ArrayList<String> args, String[] keys )
+	{
+		String on = "";
+		if ( keys != null )
+		{
+			for ( int i = 0; i < args.size(); i++ )
+			{
+				if ( !rchainExists && !args.get(i).equals( rchain ) )
+				{
+					continue; // `<pvid>_counts` only has the key of its own pvid
+				}
+				on += ( on.isEmpty() ? " ON " : " AND " ) + "A." + keys[i] + " = G." + args.get(i);
+			}
+		}
+		
+		if ( !rchainExists )
+		{  // need to update using the very similar query
+			return "CREATE TABLE tempJoin AS SELECT * FROM " +  "(SELECT * FROM GroundingsVertical) G " +
+				   "JOIN (SELECT * FROM " + databaseName4 +   ".`" + rchain.replace( "`","" ) +  "_counts`) A" + on + ";";
+		}
+		
+		String columns = selectString.substring(0, selectString.lastIndexOf(",")-1);
+		if ( keys == null )
+		{
+			return "CREATE TABLE tempJoin AS SELECT * FROM " +  "(SELECT * FROM GroundingsVertical) G " +
+				   "JOIN (SELECT "+ columns +" FROM " + databaseName4 +  ".`" + rchain.replace( "`","" ) +  "_CT`) A;";
+		}
+		
+		String family = columns.substring( columns.indexOf(",") + 1 ); // without mult
+		return "CREATE TABLE tempJoin AS SELECT G.*, SUM(A.mult) AS mult," + family + " FROM GroundingsVertical G " +
+			   "JOIN " + databaseName4 +  ".`" + rchain.replace( "`","" ) +  "_CT` A" + on +
+			   " GROUP BY G.GroundingsNumber," + family + ";";
+	}
+	
+	/*
+	 * Batched version of GetGroundings, BatchedGroundings = 1 in config.cfg.
+	 * The target CT tables already hold the counts of every grounding, keyed by its ids (GetArgumentKeys). Instead of one
+	 * buildCTTarget per grounding, the CT tables are built once, all groundings go into GroundingsVertical in one batch
+	 * (numbered in the order of GetGroundings) and each final CT is written with one INSERT ... SELECT grouped by grounding.
+	 */
+	public static void GetGroundingsBatched( ArrayList<String> args, String functorId_orig ) throws SQLException, Exception
+	{
+		Statement st1 = con0.createStatement();
+		st1.execute( "DROP TABLE IF EXISTS Groundings;" ); // no single grounding for the target CT
+		st1.close();
+		
+		int max = BayesBaseCT_SortMerge.buildCTTarget();
+		
+		/* key column for every argument */
+		String[] keys = GetArgumentKeys( args );
+		if ( keys == null )
+		{
+			return;
+		}
+		Statement st3 = con1.createStatement();
+		
+		/* 1. Store all groundings in vertical alignment for join */
+		ArrayList<ArrayList<String>> values = new ArrayList<ArrayList<String>>();
+		for ( int i = 0; i < args.size(); i++ )
+		{
+			values.add( GetArgumentValues( args.get(i) ) );
+			if ( values.get(i).isEmpty() )
+			{
+				System.out.println( "No groundings for pvid " + args.get(i) + "." );
+				st3.close();
+				return;
+			}
+		}
+		
+		String tableString = "CREATE TABLE GroundingsVertical (GroundingsNumber INT PRIMARY KEY";
+		String parameters = "?";
+		for ( int i = 0; i < args.size(); i++ )
+		{
+			tableString += ", "+args.get(i) + " INT";
+			parameters += ", ?";
 		}
+		tableString += ");";
+		System.out.println( tableString );
+		st3.execute( tableString );
+		
+		PreparedStatement insert = con1.prepareStatement( "INSERT INTO GroundingsVertical Values (" + parameters + ");" );
+		int[] position = new int[args.size()];
+		for ( groundingCount = 1; ; groundingCount++ )
+		{
+			insert.setInt( 1, groundingCount );
+			for ( int i = 0; i < args.size(); i++ )
+			{
+				insert.setString( i + 2, values.get(i).get( position[i] ) );
+			}
+			insert.addBatch();
+			if ( groundingCount % 1000 == 0 )
+			{
+				insert.executeBatch();
+			}
+			
+			/* next assignment, the last argument changes fastest as in GetGroundings */
+			int i = args.size() - 1;
+			while ( i >= 0 && ++position[i] == values.get(i).size() )
+			{
+				position[i--] = 0;
+			}
+			if ( i < 0 )
+			{
+				break;
+			}
+		}
+		insert.executeBatch();
+		insert.close();
+		System.out.println( "Functor " + functorId_orig + " has " + groundingCount + " groundings." );
+		
+		StoreFinalCTs( args, functorId_orig, max, keys, st3 );
 		
+		st3.execute( "DROP TABLE GroundingsVertical" );
+		st3.close();
+	}
+		
+	/*
+	 * The key column of every argument in the target CT tables: transfer2.sql adds the primary keys of the functor's
+	 * pvars to the target 1Nodes (Test_1nid), so the CT tables hold the counts of every grounding, keyed by its ids.
+	 * null if an argument has no key 1Node.
+	 */
+	static String[] GetArgumentKeys( ArrayList<String> args ) throws SQLException
+	{
+		String[] keys = new String[args.size()];
+		Statement st3 = con1.createStatement();
+		for ( int i = 0; i < args.size(); i++ )
+		{
+			ResultSet rsKey = st3.executeQuery( "SELECT 1nid FROM " + databaseName1 + "_BN.Test_1nid WHERE pvid = '" + args.get(i) + "';" );
+			if ( !rsKey.first() )
+			{
+				System.out.println( "No primary key 1Node for pvid " + args.get(i) + "." );
+				rsKey.close();
+				st3.close();
+				return null;
+			}
+			keys[i] = rsKey.getString(1);
+			rsKey.close();
+		}
+		st3.close();
+		return keys;
+	}
+	
+	/*
+	 * the ids of pvar arg in the target database
+	 */
+	public static ArrayList<String> GetArgumentValues( String arg ) throws SQLException
+	{
+		ArrayList<String> argValues = new ArrayList<String>();
+		Statement st1 = con0.createStatement();
+		ResultSet rs = st1.executeQuery( "SELECT TABLE_NAME FROM PVariables WHERE pvid = '" + arg +  "';" );
+		rs.first();
+		String pvidTableName = rs.getString( 1 );
 		rs.close();
 		
+		rs = st1.executeQuery( "SELECT COLUMN_NAME FROM " +  databaseName + "_BN.EntityTables WHERE TABLE_NAME = '" + pvidTableName + "';" );
+		if ( !rs.first() )
+		{
+			System.out.println( "Failed to get pvid." );
+			rs.close();
+			st1.close();
+			return argValues;
+		}
+		String pvid = rs.getString( 1 );
+		rs.close();
+		
+		System.out.println( "SELECT " + pvid + " FROM " + databaseName1 + "." +   pvidTableName + ";" );
+		rs = st1.executeQuery( "SELECT " + pvid +  " FROM " + databaseName1 + "." +  pvidTableName + ";" );
+		while ( rs.next() )
+		{
+			argValues.add( rs.getString(1) );
+		}
+		rs.close();
 		st1.close();
+		
+		return argValues;
 	}
 	
 	/*updated on Sep. 29th, 2014, same as TestWrapper.java*/
@@ -1267,7 +1460,7 @@ public class FunctorWrapper
 				st3.execute("update  `"+current_ct.replace("`","")+"`, temp set `"+current_ct.replace("`","")+"`.sum_mult = temp.sum_mult "
 						+ "where `"+current_ct.replace("`","")+"`.`GroundingsNumber` = temp.`GroundingsNumber` ;");
 				st3.execute("ALTER TABLE `" +current_ct.replace("`","")+"` ADD COLUMN `freq` DOUBLE NULL DEFAULT '0'  AFTER `sum_mult` ;");
-				st3.execute("update `" +current_ct.replace("`","")+"` set freq = mult/sum_mult ;");
+				st3.execute("update `" +current_ct.replace("`","")+"` set freq = mult/sum_mult where sum_mult <> 0 ;"); // freq stays 0 for groundings without counts
 				st3.execute("update `" +current_ct.replace("`","")+"` set freq = '0' where freq is NULL ;"); // May 6th, reset the freq to 0
 	
 				System.out.println("DONE for table `"+functorId_temp.replace("`","") +"`");
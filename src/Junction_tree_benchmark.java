@@ -0,0 +1,263 @@
+/* Benchmark of JunctionTreeUpdater against RowSummingExactUpdater.
+ *
+ * Preconditions: the database named in config.cfg (e.g. Mutagenesis_std or unielwin, loaded from testsql/)
+ * has been learned by RunBB, so that @database@_BN holds Path_BayesNets and the _CP_smoothed tables of the
+ * largest rchain.
+ *
+ * The Bayes net of the largest rchain is read into a BayesIm. For a number of random evidence sets (2 to 4
+ * variables set to one of their values) the junction tree updater computes the marginals of all variables of the net.
+ * The row summing updater sums over the joint distribution, which is out of reach for the whole net, so it is run
+ * on the ancestors of the evidence variables (the part of the net the posteriors of these variables depend on) if
+ * their joint has at most MAX_CELLS cells. Its marginals are compared with those of the junction tree updater on the
+ * whole net, and the junction tree updater is timed on the same sub net.
+ *
+ * usage: Junction_tree_benchmark [number of evidence sets, default 20] [random seed, default 1]
+ * */
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+
+import database.ConnectionPool;
+import edu.cmu.tetrad.bayes.BayesIm;
+import edu.cmu.tetrad.bayes.BayesPm;
+import edu.cmu.tetrad.bayes.Evidence;
+import edu.cmu.tetrad.bayes.JunctionTreeUpdater;
+import edu.cmu.tetrad.bayes.MlBayesIm;
+import edu.cmu.tetrad.bayes.RowSummingExactUpdater;
+import edu.cmu.tetrad.graph.Dag;
+import edu.cmu.tetrad.graph.GraphNode;
+import edu.cmu.tetrad.graph.Node;
+
+public class Junction_tree_benchmark {
+
+	static final double MAX_CELLS = 1 << 18;
+
+	static Connection con2;
+	static String databaseName2;
+	static String dbUsername;
+	static String dbPassword;
+	static String dbaddress;
+
+	public static void main(String[] args) throws Exception {
+		int numEvidence = args.length > 0 ? Integer.parseInt(args[0]) : 20;
+		Random random = new Random(args.length > 1 ? Long.parseLong(args[1]) : 1);
+
+		setVarsFromConfig();
+		connectDB();
+		long t0 = System.currentTimeMillis();
+		BayesIm bayesIm = readBayesIm(con2);
+		long t1 = System.currentTimeMillis();
+		disconnectDB();
+
+		JunctionTreeUpdater updater = new JunctionTreeUpdater(bayesIm);
+		long t2 = System.currentTimeMillis();
+
+		int numNodes = bayesIm.getNumNodes();
+		int[] all = new int[numNodes];
+		for (int i = 0; i < numNodes; i++) {
+			all[i] = i;
+		}
+
+		long totalJT = 0, totalJTSub = 0, totalRS = 0;
+		int compared = 0;
+		double maxDiff = 0.0;
+		ArrayList<String> report = new ArrayList<String>();
+
+		for (int n = 0; n < numEvidence; n++) {
+			Evidence evidence = Evidence.tautology(bayesIm);
+			List<Node> evidenceNodes = new ArrayList<Node>();
+			int size = Math.min(numNodes, 2 + random.nextInt(3));
+			while (evidenceNodes.size() < size) {
+				int i = random.nextInt(numNodes);
+				Node node = bayesIm.getNode(i);
+				if (!evidenceNodes.contains(node)) {
+					evidenceNodes.add(node);
+					evidence.getProposition().setCategory(i, random.nextInt(bayesIm.getNumColumns(i)));
+				}
+			}
+
+			long s1 = System.nanoTime();
+			updater.setEvidence(evidence);
+			double[][] marginals = updater.getMarginals(all);
+			long s2 = System.nanoTime();
+			totalJT += s2 - s1;
+
+			// the ancestors of the evidence variables with the same conditional probability tables
+			Dag dag = bayesIm.getDag();
+			Dag subDag = new Dag(dag.subgraph(dag.getAncestors(evidenceNodes)));
+			double cells = 1.0;
+			for (Node node : subDag.getNodes()) {
+				cells *= bayesIm.getNumColumns(bayesIm.getNodeIndex(node));
+			}
+
+			String line = evidenceNodes.size() + "\t" + subDag.getNumNodes() + "\t" + (long) cells + "\t" + ms(s2 - s1);
+			if (cells > MAX_CELLS) {
+				report.add(line + "\t-\t-\t-");
+				continue;
+			}
+
+			BayesIm subIm = new MlBayesIm(new BayesPm(subDag, bayesIm.getBayesPm()), bayesIm, MlBayesIm.RANDOM);
+			Evidence subEvidence = Evidence.tautology(subIm);
+			int[] subToFull = new int[subIm.getNumNodes()];
+			for (int i = 0; i < subIm.getNumNodes(); i++) {
+				subToFull[i] = bayesIm.getNodeIndex(bayesIm.getNode(subIm.getNode(i).getName()));
+				for (int j = 0; j < subIm.getNumColumns(i); j++) {
+					if (!evidence.getProposition().isAllowed(subToFull[i], j)) {
+						subEvidence.getProposition().removeCategory(i, j);
+					}
+				}
+			}
+
+			long s3 = System.nanoTime();
+			JunctionTreeUpdater subUpdater = new JunctionTreeUpdater(subIm, subEvidence);
+			for (int i = 0; i < subIm.getNumNodes(); i++) {
+				subUpdater.calculateUpdatedMarginals(i);
+			}
+			long s4 = System.nanoTime();
+			RowSummingExactUpdater rowSumming = new RowSummingExactUpdater(subIm, subEvidence);
+			double diff = 0.0;
+			for (int i = 0; i < subIm.getNumNodes(); i++) {
+				double[] rs = rowSumming.calculateUpdatedMarginals(i);
+				for (int j = 0; j < rs.length; j++) {
+					diff = Math.max(diff, Math.abs(rs[j] - marginals[subToFull[i]][j]));
+				}
+			}
+			long s5 = System.nanoTime();
+
+			totalJTSub += s4 - s3;
+			totalRS += s5 - s4;
+			compared++;
+			maxDiff = Math.max(maxDiff, diff);
+			report.add(line + "\t" + ms(s4 - s3) + "\t" + ms(s5 - s4) + "\t" + diff);
+		}
+
+		System.out.println("\n*********************************************************");
+		System.out.println("Junction tree benchmark on " + databaseName2 + ": " + numNodes + " nodes, " + updater.getNumCliques() + " cliques, largest clique table " + updater.getMaxCliqueSize() + " entries");
+		System.out.println("reading the BayesIm: " + (t1 - t0) + " ms, compiling the junction tree: " + (t2 - t1) + " ms");
+		System.out.println("evidence\tancestors\tcells\tJunctionTree(ms)\tJunctionTree on ancestors(ms)\tRowSumming on ancestors(ms)\tmax difference");
+		for (String line : report) {
+			System.out.println(line);
+		}
+		System.out.println("total\t\t\t" + ms(totalJT) + "\t" + ms(totalJTSub) + "\t" + ms(totalRS) + "\t" + maxDiff + " (" + compared + " of " + numEvidence + " compared)");
+	}
+
+	/*
+	 * The Bayes net of the largest rchain, structure from Path_BayesNets and parameters from the _CP_smoothed tables
+	 * (as in BIF_Generator); rows are normalized, a row that is missing is uniform
+	 */
+	public static BayesIm readBayesIm(Connection conn) throws SQLException {
+		Statement st = conn.createStatement();
+		ResultSet rs = st.executeQuery("SELECT distinct lattice_set.name FROM lattice_membership,lattice_set where length=( SELECT max(length) FROM lattice_set);");
+		rs.next();
+		String rchain = rs.getString(1);
+		rs.close();
+
+		ArrayList<String> variables = new ArrayList<String>();
+		rs = st.executeQuery("SELECT distinct child FROM Path_BayesNets where Rchain='" + rchain + "' ;");
+		while (rs.next()) {
+			variables.add(unquote(rs.getString(1)));
+		}
+		rs.close();
+
+		Dag dag = new Dag();
+		HashMap<String, Node> nodes = new HashMap<String, Node>();
+		for (String variable : variables) {
+			Node node = new GraphNode(variable);
+			dag.addNode(node);
+			nodes.put(variable, node);
+		}
+
+		for (String variable : variables) {
+			ArrayList<String> given = new ArrayList<String>();
+			rs = st.executeQuery("select distinct parent from Path_BayesNets where child= '`" + variable + "`' and parent !='' and Rchain='" + rchain + "' ;");
+			while (rs.next()) {
+				given.add(unquote(rs.getString(1)));
+			}
+			rs.close();
+			for (String parent : given) {
+				dag.addDirectedEdge(nodes.get(parent), nodes.get(variable));
+			}
+		}
+
+		BayesPm bayesPm = new BayesPm(dag);
+		HashMap<String, HashMap<String, Integer>> categoryIndices = new HashMap<String, HashMap<String, Integer>>();
+		for (String variable : variables) {
+			ArrayList<String> categories = new ArrayList<String>();
+			HashMap<String, Integer> indices = new HashMap<String, Integer>();
+			rs = st.executeQuery("select distinct `" + variable + "` from `" + variable + "_CP_smoothed` order by `" + variable + "` ;");
+			while (rs.next()) {
+				indices.put(rs.getString(1), categories.size());
+				categories.add(String.valueOf(rs.getString(1)));
+			}
+			rs.close();
+			bayesPm.setCategories(nodes.get(variable), categories);
+			categoryIndices.put(variable, indices);
+		}
+
+		MlBayesIm bayesIm = new MlBayesIm(bayesPm);
+		for (String variable : variables) {
+			int nodeIndex = bayesIm.getNodeIndex(bayesIm.getNode(variable));
+			int[] parentIndices = bayesIm.getParents(nodeIndex);
+			String columns = "";
+			for (int parent : parentIndices) {
+				columns += "`" + bayesIm.getNode(parent).getName() + "`, ";
+			}
+			rs = st.executeQuery("select " + columns + "`" + variable + "`, CP from `" + variable + "_CP_smoothed` ;");
+			int[] values = new int[parentIndices.length];
+			while (rs.next()) {
+				for (int k = 0; k < parentIndices.length; k++) {
+					values[k] = categoryIndices.get(bayesIm.getNode(parentIndices[k]).getName()).get(rs.getString(k + 1));
+				}
+				int col = categoryIndices.get(variable).get(rs.getString(parentIndices.length + 1));
+				bayesIm.setProbability(nodeIndex, bayesIm.getRowIndex(nodeIndex, values), col, rs.getDouble(parentIndices.length + 2));
+			}
+			rs.close();
+
+			int numCols = bayesIm.getNumColumns(nodeIndex);
+			for (int row = 0; row < bayesIm.getNumRows(nodeIndex); row++) {
+				double total = 0.0;
+				for (int col = 0; col < numCols; col++) {
+					double p = bayesIm.getProbability(nodeIndex, row, col);
+					total += Double.isNaN(p) ? 0.0 : p;
+				}
+				for (int col = 0; col < numCols; col++) {
+					double p = bayesIm.getProbability(nodeIndex, row, col);
+					bayesIm.setProbability(nodeIndex, row, col, total == 0.0 ? 1.0 / numCols : (Double.isNaN(p) ? 0.0 : p / total));
+				}
+			}
+		}
+		st.close();
+		return bayesIm;
+	}
+
+	static String unquote(String name) {
+		return name.startsWith("`") ? name.substring(1, name.length() - 1) : name;
+	}
+
+	static String ms(long nanos) {
+		return String.valueOf(nanos / 1000000.0);
+	}
+
+	public static void setVarsFromConfig() {
+		Config conf = new Config();
+		databaseName2 = conf.getProperty("dbname") + "_BN";
+		dbUsername = conf.getProperty("dbusername");
+		dbPassword = conf.getProperty("dbpassword");
+		dbaddress = conf.getProperty("dbaddress");
+	}
+
+	public static void connectDB() throws SQLException {
+		String CONN_STR2 = "jdbc:" + dbaddress + "/" + databaseName2;
+		con2 = ConnectionPool.getConnection("Junction_tree_benchmark", CONN_STR2, dbUsername, dbPassword);
+	}
+
+	public static void disconnectDB() throws SQLException {
+		con2.close();
+		ConnectionPool.closeAll();
+	}
+}
@@ -26,14 +26,22 @@ import java.io.File;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Set;
 
+import database.ConnectionPool;
+
+import ct.CTTable;
+import ct.CTWriter;
+import ct.CTCache;
+import ct.SmoothedCP;
+
 
 public class KLD_generator {
 	static String databaseName, databaseName2,databaseName3;
@@ -48,6 +56,10 @@ public class KLD_generator {
 	static ArrayList<String> column_names=new ArrayList<String>();
 	//list of conditional probability columns for each node in the rchian, used in KLD table
 	static ArrayList<String> column_names_CP=new ArrayList<String>();
+	//smoothed CP of each node with parents by ChildValue, kept from smoothed_CP for the KLD table
+	static HashMap<String, SmoothedCP> smoothed_tables=new HashMap<String, SmoothedCP>();
+	//non value columns of the CP tables
+	static final Set<String> score_columns=new HashSet<String>(Arrays.asList("mult", "parentsum", "cp", "likelihood", "local_mult", "prior"));
 	
 	
 	public static void main(String[] args) throws Exception   {
@@ -71,6 +83,7 @@ public class KLD_generator {
 		dbUsername = conf.getProperty("dbusername");
 		dbPassword = conf.getProperty("dbpassword");
 		dbaddress = conf.getProperty("dbaddress");
+		BayesBaseCT_SortMerge.setScanMemory(conf);
 	}
 
 	
@@ -188,7 +201,9 @@ public class KLD_generator {
 	    st.close();
 	}
 	
-	//generate full pairs table and smooth CP table for one node
+	//generate smooth CP table for one node
+	//the pairs table is no longer built: ct.SmoothedCP enumerates the parent states of the _CP table in memory
+	//and writes the smoothed rows directly (same MULT, ParentSum and CP as pairs + query1/query2 + update_ps)
 	public static void new_table_smoothed(String table_name,Connection con2) throws Exception{
 		
 		java.sql.Statement st = con2.createStatement();
@@ -199,23 +214,15 @@ public class KLD_generator {
 		//System.out.println("create table " + name + " like " + table_name + " ;");
 		st.execute("create table " + name + " like " + table_name + " ;");
 		
+		//value columns of the CP table: ChildValue, parents... (by name, the score columns are not always the last 4)
+		list = value_columns(table_name,con2);
 		
 		//add index to 1.(MULT, ChildValue, parents....) and 2.(parent nodes...)
-		ResultSet rst = st.executeQuery("show columns from " + name);
-		ArrayList<String> indexlist1 = new ArrayList<String>();
+		ArrayList<String> indexlist1 = new ArrayList<String>(list);
+		indexlist1.add(0, "MULT");
 		
-		//rst.absolute(0);
-		while(rst.next()) indexlist1.add(rst.getString(1));
-		
-		//delete parentsum, CP and likelihood, local_mult
-		indexlist1.remove(indexlist1.size()-1);
-		indexlist1.remove(indexlist1.size()-1);
-		indexlist1.remove(indexlist1.size()-1);
-		indexlist1.remove(indexlist1.size()-1);
-		
-		ArrayList<String> indexlist2 = new ArrayList<String>(indexlist1);
-		//delete MULT, FID
-		indexlist2.remove(0);
+		ArrayList<String> indexlist2 = new ArrayList<String>(list);
+		//delete FID
 		indexlist2.remove(0);
 		
 		//create clauses to add those indexes
@@ -237,52 +244,28 @@ public class KLD_generator {
 		index2 = index2 + ");";
 		st.execute(index2);
 		
+		//Laplace: MULT+1 for every (child value, parent state), then parent sum and conditional probability,
+		//the largest CP of each parent state makes the sum 1 (Feb 6, 2014 fix)
+		SmoothedCP smoothed = SmoothedCP.read(con2, table_name, list.get(0), indexlist2.toArray(new String[indexlist2.size()]));
+		smoothed.write(con2, name);
+		smoothed_tables.put(list.get(0), smoothed);
+		System.out.println(name + " : " + smoothed.getStateCount() + " parent states");
+		st.close();
 		
-		//generate full pairs table
-//		pair_table(table_name,con2);
-		pairs(table_name,con2); // updated on Jun 19, much faster than sql joins
+	}
 	
-		
-		//get all the columns, generate them as a clause
-		String columns="";
-		for(int i=0;i<list.size();i++){
-			columns=columns+" , `"+list.get(i)+"` ";
-		}
-		
-		//query1: insert the exist rows into smoothed CP table
-		String query1="insert "+name+ " ( MULT ";
-		for(int i=0;i<list.size();i++){
-			query1=query1+", `"+list.get(i)+"` ";
-			
-		}
-		query1=query1+") select MULT ";
-		for(int i=0;i<list.size();i++){
-			query1=query1+", `"+list.get(i)+"` ";
-			
+	//columns of a CP table without MULT and the score columns
+	static ArrayList<String> value_columns(String table_name,Connection con2) throws SQLException{
+		Statement st = con2.createStatement();
+		ResultSet rst = st.executeQuery("show columns from " + table_name);
+		ArrayList<String> columns = new ArrayList<String>();
+		while(rst.next()){
+			String column = rst.getString(1);
+			if (!score_columns.contains(column.toLowerCase())) columns.add(column);
 		}
-		query1=query1+" from "+table_name+";";
-	//	System.out.println("query1:"+query1);
-		st.execute(query1);
-		
-		// zqian@ Oct 21, 2013, Bottleneck??
-
-		//query2: insert not exists pairs into smoothed CP table
-		String query2="insert "+name +"( MULT "+columns+" ) (select MULT "+columns +"from "+table_name.subSequence(0, table_name.length()-1)+"_pairs`"
-		         +" where ("+columns.substring(2)+" ) not in ( select "+columns.substring(2)+ "from "+table_name+" )) ;";
-		System.out.println("bottleneck? query2:"+query2);
-		st.execute(query2);
-		
-		//st.execute("drop table if exists " + table_name.subSequence(0, table_name.length()-1) + "_pairs` ;");
-		
-		//add all MULT by 1, Laplace
-		st.execute("update "+name+"set MULT=MULT+1;");
-		
-		//update parent sum, and conditional probability 
-		 // updated on Feb 6, 2014, fix the bug sum not equals to 1
-		update_ps(name,con2);
-		//update_ps_compress(name,con2);
+		rst.close();
 		st.close();
-		
+		return columns;
 	}
 	
 	/*  generate full pairs table for one node 
@@ -643,28 +626,135 @@ public class KLD_generator {
         //System.out.println(query1);
         st.execute(query1);
                 
-        // copy the values from the mult table. CP values are null at this point.
-        String query2 = "insert into " + newTable_name + " ( MULT";
-        for(int i=1; i<column_names.size(); i++){
-        	query2 = query2 + ", " + column_names.get(i);
-        }
-        query2 = query2 + " ) select * from "+table_name+"; "; // Nov 28 @ zqian, do not use "*" in terms of query optimization
-        														// Nov 28 @ zqian, adding covering index to CT table for query string 
-        System.out.println(query2);
-        st.execute(query2);
-          
-        System.out.println("\n insert into KLD table conditional probability for each node"); // zqian
-        //insert CP value to attributes
-        insert_CP_Values(rchain, newTable_name,con2);
-        System.out.println("\n compute Bayes net joint probabilities "); //zqian
-        //compute Bayes net joint probabilities          
-        cal_KLD(newTable_name,con2);
+        // one pass over the CT table: the CP of each node is looked up in memory (smoothed_tables, _CP_smoothed of the
+        // nodes without parents) and JP, JP_DB and KLD are computed before the row is inserted, instead of
+        // insert + insert_CP_Values + cal_KLD as updates on the KLD table
+        System.out.println("\n insert into KLD table conditional probability for each node, compute Bayes net joint probabilities"); // zqian
+        stream_KLD(databaseCT, rchain, newTable_name, con2);
         
         
         st.close();
 	}
 	
 	
+	//fill the KLD table from the CT table of rchain, computing the CP columns, JP, JP_DB and KLD per row
+	//(same values as insert_CP_Values and cal_KLD; a CP that is not found stays NULL, and so do JP and KLD)
+	public static void stream_KLD(String databaseCT, String rchain, String newTable_name, Connection con2) throws SQLException{
+		CTTable ct = CTCache.load(con2, databaseCT + "_CT", rchain.substring(0,rchain.length()-1) + "_CT`").getTable();
+		String[] columns = ct.getColumns();
+		int n = columns.length;
+		
+		Statement st = con2.createStatement();
+		//nodes without parents: CP by value from the _CP_smoothed table
+		HashMap<String, float[]> no_parents = new HashMap<String, float[]>();
+		ResultSet rst1 = st.executeQuery("SELECT child FROM Path_BayesNets WHERE rchain='" + rchain + "' AND child not in (SELECT distinct child FROM Path_BayesNets WHERE parent<>'' AND rchain='" + rchain + "');");
+		ArrayList<String> nodes = new ArrayList<String>();
+		while(rst1.next()) nodes.add(rst1.getString(1));
+		rst1.close();
+		for (String node : nodes) {
+			int c = ct.indexOfColumn(node.replace("`", ""));
+			if (c < 0) continue;
+			float[] cp = new float[ct.getDictionaries()[c].size()];
+			Arrays.fill(cp, Float.NaN);
+			ResultSet rst = st.executeQuery("select " + node + ", CP from " + node.substring(0,node.length()-1) + "_CP_smoothed` ;");
+			while(rst.next()){
+				int code = ct.getDictionaries()[c].lookup(rst.getString(1));
+				if (code >= 0 && rst.getObject(2) != null) cp[code] = rst.getFloat(2);
+			}
+			rst.close();
+			no_parents.put(columns[c], cp);
+		}
+		
+		//nodes with parents: smoothed CP from smoothed_CP, or smoothed again from the _CP table
+		ResultSet rst2 = st.executeQuery("SELECT distinct child FROM Path_BayesNets WHERE parent<>'' AND Rchain='" + rchain + "';");
+		nodes = new ArrayList<String>();
+		while(rst2.next()) nodes.add(rst2.getString(1));
+		rst2.close();
+		st.close();
+		SmoothedCP[] smoothed = new SmoothedCP[n];
+		int[][] family = new int[n][];
+		int[][][] translate = new int[n][][];
+		int[][] states = new int[n][];
+		for (String node : nodes) {
+			int c = ct.indexOfColumn(node.replace("`", ""));
+			if (c < 0) continue;
+			SmoothedCP s = smoothed_tables.get(columns[c]);
+			if (s == null) {
+				String cp_table = node.substring(0,node.length()-1) + "_CP`";
+				ArrayList<String> parents = value_columns(cp_table, con2);
+				parents.remove(0);
+				s = SmoothedCP.read(con2, cp_table, columns[c], parents.toArray(new String[parents.size()]));
+				smoothed_tables.put(columns[c], s);
+			}
+			smoothed[c] = s;
+			//codes of the CT table -> codes of the smoothed CP, -1 if the value is not in the CP table
+			family[c] = new int[s.getColumns().length];
+			states[c] = new int[family[c].length - 1];
+			translate[c] = new int[family[c].length][];
+			for (int f = 0; f < family[c].length; f++) {
+				family[c][f] = ct.indexOfColumn(s.getColumns()[f]);
+				if (family[c][f] < 0) {
+					smoothed[c] = null;
+					break;
+				}
+				translate[c][f] = new int[ct.getDictionaries()[family[c][f]].size()];
+				for (int code = 0; code < translate[c][f].length; code++) {
+					translate[c][f][code] = s.getDictionaries()[f].lookup(ct.getDictionaries()[family[c][f]].decode(code));
+				}
+			}
+		}
+		
+		long mult_sum = 0;
+		for (int r = 0; r < ct.getRowCount(); r++) mult_sum += ct.getMult(r);
+		
+		String[] target = new String[2 * n + 4];
+		target[0] = "MULT";
+		for (int c = 0; c < n; c++) {
+			target[2 * c + 1] = columns[c];
+			target[2 * c + 2] = columns[c] + "_CP";
+		}
+		target[2 * n + 1] = "JP";
+		target[2 * n + 2] = "JP_DB";
+		target[2 * n + 3] = "KLD";
+		CTWriter.RowWriter writer = new CTWriter.RowWriter(con2, newTable_name, target);
+		Object[] row = new Object[target.length];
+		for (int r = 0; r < ct.getRowCount(); r++) {
+			long mult = ct.getMult(r);
+			double jp = 1;
+			row[0] = mult;
+			for (int c = 0; c < n; c++) {
+				float cp = Float.NaN;
+				if (no_parents.containsKey(columns[c])) {
+					cp = no_parents.get(columns[c])[ct.getCode(r, c)];
+				} else if (smoothed[c] != null) {
+					int[] state = states[c];
+					int child = translate[c][0][ct.getCode(r, family[c][0])];
+					for (int f = 1; f < family[c].length && child >= 0; f++) {
+						state[f - 1] = translate[c][f][ct.getCode(r, family[c][f])];
+						if (state[f - 1] < 0) child = -1;
+					}
+					if (child >= 0) cp = smoothed[c].cp(child, state);
+				}
+				row[2 * c + 1] = ct.getValue(r, c);
+				row[2 * c + 2] = cp;
+				jp *= cp;
+			}
+			float JP = (float) jp;
+			float JP_DB = (float) ((double) mult / mult_sum);
+			float KLD = 0;
+			if (mult != 0) {
+				//log of 0 or NULL is NULL in MySQL
+				KLD = JP > 0 && JP_DB > 0 ? (float) (JP_DB * (Math.log(JP_DB) - Math.log(JP))) : Float.NaN;
+			}
+			row[2 * n + 1] = JP;
+			row[2 * n + 2] = JP_DB;
+			row[2 * n + 3] = KLD;
+			writer.add(row);
+		}
+		writer.close();
+	}
+	
+	
 	//insert into KLD table conditional probability for each node
 	//add index to speed up the update statement
 	public static void insert_CP_Values(String rchain, String newTable_name,Connection con2) throws SQLException{
@@ -965,19 +1055,22 @@ public class KLD_generator {
 		}
 		
 
+		//the CLL tables are read with forward-only scans, they have a row per Markov blanket state
+		Statement scan = ConnectionPool.scanStatement(con2, "KLD_generator", 1);
 		for (int i=0; i<node_list.size(); ++i) {
 			String table_name = node_list.get(i).substring(0, node_list.get(i).length()-1) + "_CLL`"; 
-			ResultSet rst_cll = st.executeQuery("SELECT (CLL_DB) from " + table_name);
+			ResultSet rst_cll = scan.executeQuery("SELECT (CLL_DB) from " + table_name);
 			//ResultSet rst_cll = st.executeQuery("SELECT avg(CLL_DB) from " + table_name);
 			while(rst_cll.next()) {
 				cll_db.add(rst_cll.getDouble(1));
 			}
-			rst_cll = st.executeQuery("SELECT (CLL_JP) from " + table_name);
+			rst_cll = scan.executeQuery("SELECT (CLL_JP) from " + table_name);
 			//rst_cll = st.executeQuery("SELECT avg(CLL_JP) from " + table_name);
 			while(rst_cll.next()) {
 				cll_jp.add(rst_cll.getDouble(1));
 			}
 		}
+		scan.close();
 		
 		double [] x = new double[cll_db.size()];
 		double [] y = new double[cll_jp.size()];
@@ -1129,7 +1222,7 @@ public class KLD_generator {
 		} catch (Exception ex) {
 			System.err.println("Unable to load MySQL JDBC driver");
 		}
-		con2 = DriverManager.getConnection(CONN_STR2, dbUsername, dbPassword);
+		con2 = ConnectionPool.getConnection("KLD_generator", CONN_STR2, dbUsername, dbPassword);
 	}
 
 
@@ -2,10 +2,11 @@
   If setup = 0, we skip this step and use the existing setup database
   Yan Sept 10th*/
 
-import java.sql.DriverManager;
 import java.sql.SQLException;
 import com.mysql.jdbc.Connection;
 
+import database.ConnectionPool;
+
 
 public class MakeSetup {
 
@@ -24,6 +25,11 @@ public class MakeSetup {
 	
 	public static void runMS() throws Exception {
 		setVarsFromConfig();
+		makeSetup();
+	}
+
+	/* runMS with the settings already in the static fields */
+	static void makeSetup() throws Exception {
 		connectDB();
 		//analyze schema data to create setup database. This can be edited by the user before learning.
 		//If setup = 0, we skip this step and use the existing setup database
@@ -50,12 +56,7 @@ public class MakeSetup {
 		//open database connections to the original database, the setup database, the bayes net database, and the contingency table database
 
 		String CONN_STR1 = "jdbc:" + dbaddress + "/" + databaseName;
-		try {
-			java.lang.Class.forName("com.mysql.jdbc.Driver");
-		} catch (Exception ex) {
-			System.err.println("Unable to load MySQL JDBC driver");
-		}
-		con1 = (Connection) DriverManager.getConnection(CONN_STR1, dbUsername, dbPassword);
+		con1 = (Connection) ConnectionPool.getConnection("MakeSetup", CONN_STR1, dbUsername, dbPassword);
 		
 		
 	}
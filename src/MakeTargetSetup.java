@@ -11,11 +11,12 @@
  *  		- 
  */
 
-import java.sql.DriverManager;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 
+import database.ConnectionPool;
+
 import com.mysql.jdbc.Connection;
 
 public class MakeTargetSetup {
@@ -161,12 +162,7 @@ public class MakeTargetSetup {
 		//table database
 
 		String CONN_STR1 = "jdbc:" + dbaddress + "/" + databaseName;
-		try {
-			java.lang.Class.forName("com.mysql.jdbc.Driver");
-		} catch (Exception ex) {
-			System.err.println("Unable to load MySQL JDBC driver");
-		}
-		con1 = (Connection) DriverManager.getConnection( CONN_STR1, 
+		con1 = (Connection) ConnectionPool.getConnection( "MakeTargetSetup", CONN_STR1, 
 														 dbUsername, 
 														 dbPassword);
 
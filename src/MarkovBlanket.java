@@ -7,11 +7,12 @@
  *  	  TargetMB to @database@_BN
  */
 
-import java.sql.DriverManager;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 
+import database.ConnectionPool;
+
 import com.mysql.jdbc.Connection;;
 
 public class MarkovBlanket {
@@ -104,13 +105,7 @@ public class MarkovBlanket {
 
 		String CONN_STR1 = "jdbc:" + dbaddress + "/" + databaseName;
 		//System.out.println("dbaddress :"+ CONN_STR1 + "\ndbUsernam: " + dbUsername);
-		try {
-			java.lang.Class.forName("com.mysql.jdbc.Driver");
-		} catch (Exception ex) {
-			System.err.println("Unable to load MySQL JDBC driver");
-		}		
-
-		con1 = (Connection) DriverManager.getConnection( CONN_STR1, dbUsername,	 dbPassword );
+		con1 = (Connection) ConnectionPool.getConnection( "MarkovBlanket", CONN_STR1, dbUsername,	 dbPassword );
 		
 		
 		//System.out.println("dbaddress :"+ CONN_STR1 + "\ndbUsernam: " + dbUsername);
@@ -7,6 +7,8 @@
  * 			@database@_setup (preconditions for learning)
  * 
  * */
+import database.ConnectionPool;
+
 public class RunBB {
 	static String opt1;
 	
@@ -21,6 +23,8 @@ public class RunBB {
 			System.out.println("Setup database exists.");
 		}
 		runBBLearner();
+		ConnectionPool.printMetrics();
+		ConnectionPool.closeAll();
 		
 		long t2 = System.currentTimeMillis(); 
 		System.out.println("Total Running time is " + (t2-t1) + "ms.");
@@ -40,9 +44,12 @@ public class RunBB {
 		BayesBaseCT_SortMerge.buildCT();
 		System.out.println("The CT database is ready for use.");
 		System.out.println("*********************************************************");
-		CSVPrecomputor.runCSV();
-		System.out.println("CSV files are generated.");
-		System.out.println("*********************************************************");
+		//InProcessLearning = 1: BayesBaseH takes the CT tables from memory or the _CT database, no csv files
+		if (!BayesBaseCT_SortMerge.getOptionalProperty(new Config(), "InProcessLearning", "0").equals("1")) {
+			CSVPrecomputor.runCSV();
+			System.out.println("CSV files are generated.");
+			System.out.println("*********************************************************");
+		}
 		BayesBaseH.runBBH();
 		//System.out.println("\nFinish running BayesBaseH.");
 
@@ -9,12 +9,14 @@ import java.io.BufferedReader;
 import java.io.FileNotFoundException;
 import java.io.FileReader;
 import java.io.IOException;
-import java.sql.DriverManager;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.ArrayList;
 import java.util.Properties;
+
+import database.ConnectionPool;
+
 import com.mysql.jdbc.Connection;
 
 public class ScoreComputation
@@ -334,7 +336,7 @@ public class ScoreComputation
 		
 		try
 		{
-			con = (Connection) DriverManager.getConnection( CONN_STR, 
+			con = (Connection) ConnectionPool.getConnection( "ScoreComputation", CONN_STR, 
 															dbusername, 
 															dbpassword );
 		}
@@ -14,14 +14,15 @@ import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
-import java.sql.DriverManager;
 import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.ArrayList;
 
+import database.ConnectionPool;
+
 import com.mysql.jdbc.Connection;
-import com.mysql.jdbc.ResultSetMetaData;
 /*
 //sort merge version3
 //here the compare function is also good
@@ -112,59 +113,42 @@ public class Sort_merge3 {
 				// and then load these files into memory?
 				long time1=System.currentTimeMillis();
 				System.out.println("\n rst1 : " + "select distinct mult, "+order+" from "+table1+" order by "+order+" ;");
-			    ResultSet rst1=st1.executeQuery("select distinct mult, "+order+" from "+table1+" order by "+order+" ;"); 
-			    ResultSet rst2=st2.executeQuery("select distinct mult, "+order+" from "+table2+" order by "+order+" ;");
+			    //forward-only scans with a bounded row buffer (server side cursors), the tables are no longer counted
+			    //and revisited with absolute(i)
+			    Statement scan1=ConnectionPool.scanStatement(conn, "Sort_merge3", orderList.size()+1);
+			    Statement scan2=ConnectionPool.scanStatement(conn, "Sort_merge3", orderList.size()+1);
+			    ResultSet rst1=scan1.executeQuery("select distinct mult, "+order+" from "+table1+" order by "+order+" ;"); 
+			    ResultSet rst2=scan2.executeQuery("select distinct mult, "+order+" from "+table2+" order by "+order+" ;");
 			    long time2=System.currentTimeMillis();
 			    //System.out.print("order by time:"+(time2-time1));
-			    
-			    //finding the no. of rows in each table
-		        int size1=0,size2=0;
-				
-				while(rst1.next())size1++;
-				while(rst2.next())size2++;
-				
-				
 				
 				//finding the no of columns in a table
-				ResultSetMetaData rsmd=(ResultSetMetaData) rst1.getMetaData(); // do NOT need to run another query, it should be orderList.size()+1, zqian
+				ResultSetMetaData rsmd=rst1.getMetaData(); // do NOT need to run another query, it should be orderList.size()+1, zqian
 				int no_of_colmns=rsmd.getColumnCount();
 				
-				
-				int i=1;int j=1;//index variables for both tables
-				rst1.absolute(1);rst2.absolute(1);
+				boolean more1=rst1.next(), more2=rst2.next();
 				long time3=System.currentTimeMillis();
 				//merging starting here 
-				while(i<=size1&&j<=size2){
+				while(more1&&more2){
 				
-				long val1=0,val2=0;
-				    for(int k=2;k<=no_of_colmns;k++)
+					//the first column that differs decides, compared as strings
+					int cmp=0;
+				    for(int k=2;k<=no_of_colmns&&cmp==0;k++)
 					{  
-						try{
-//				    	 val1=Integer.parseInt(rst1.getString(k));
-//						 val2=Integer.parseInt(rst2.getString(k));
-							 val1=Long.parseLong(rst1.getString(k));
-							 val2=Long.parseLong(rst2.getString(k));
-						}catch(java.lang.NumberFormatException e){
-							
-						}finally{
-							if(rst1.getString(k).compareTo(rst2.getString(k))>0) { val1=1; val2=0;}
-							else if(rst1.getString(k).compareTo(rst2.getString(k))<0){val1=0;val2=1;}
-						}
-						
-						
-						if(val1<val2){
-							String quer=rst1.getString(1);
-						       for(int c=2;c<=no_of_colmns;c++){
-							    quer=quer+"$"+ rst1.getString(c);
-						         }
-						       
-						         output.write((quer)+"\n");
-							i++;break;}
-						
-						else if(val1>val2){j++;break;}
+				    	cmp=rst1.getString(k).compareTo(rst2.getString(k));
 					}
-						if(val1==val2){
-					       //String query=""+(Integer.parseInt(rst1.getString(1))-Integer.parseInt(rst2.getString(1)));
+				    
+					if(cmp<0){
+						String quer=rst1.getString(1);
+					       for(int c=2;c<=no_of_colmns;c++){
+						    quer=quer+"$"+ rst1.getString(c);
+					         }
+					       
+					         output.write((quer)+"\n");
+						more1=rst1.next();
+					}
+					else if(cmp>0){more2=rst2.next();}
+					else{
 					       String query=""+(Long.parseLong(rst1.getString(1))-Long.parseLong(rst2.getString(1)));
 					       
 					       for(int c=2;c<=no_of_colmns;c++){
@@ -172,22 +156,23 @@ public class Sort_merge3 {
 					         }
 					         output.write(query+"\n");
 					         		         
-					            i++;j++;  	  
+					       more1=rst1.next();more2=rst2.next();
 				            }
-					
-				  rst1.absolute(i);rst2.absolute(j);
 				}
 				
-				if(i>1) rst1.absolute(i-1);
-				else rst1.beforeFirst();
-				while(rst1.next()){
+				//rest of table1
+				while(more1){
 					String query=rst1.getString(1);
 				       for(int c=2;c<=no_of_colmns;c++){
 					    query=query+"$"+rst1.getString(c);
 				         }
 				         output.write((query)+"\n");
-					
+					more1=rst1.next();
 				}
+				rst1.close();
+				rst2.close();
+				scan1.close();
+				scan2.close();
 				output.close();
 				long time4=System.currentTimeMillis();
 			   // System.out.print("\t insert time:"+(time4-time3));
@@ -197,8 +182,6 @@ public class Sort_merge3 {
 				st2.execute("create table " +table3+" like "+ table1+" ;");
 				st2.execute("LOAD DATA LOcal INFILE 'sort_merge.csv' INTO TABLE "+ table3 +" FIELDS TERMINATED BY '$' LINES TERMINATED BY '\\n'  ;");
 			 	
-			rst1.close();
-			rst2.close();
 			st1.close();
 			st2.close();
 			 
@@ -261,17 +244,14 @@ public class Sort_merge3 {
 			
 			 int size1=0;
 			 int size2=0;
-		     rst1=st1.executeQuery("select distinct * from "+table1+" order by "+order+" ;" );
-		     rst2=st2.executeQuery("select distinct * from "+table2+ " order by "+order+" ;");	
-		     while(rst1.next())size1++;
-		     while(rst2.next())size2++;
-		     if(size1!=size2)
-		    	 System.out.println("not equal no. of rows in both the tables");
-		     
-		     rst1.beforeFirst();
-		     rst2.beforeFirst();
+			 Statement scan1=ConnectionPool.scanStatement(conn, "Sort_merge3", list1.size());
+			 Statement scan2=ConnectionPool.scanStatement(conn, "Sort_merge3", list2.size());
+		     rst1=scan1.executeQuery("select distinct * from "+table1+" order by "+order+" ;" );
+		     rst2=scan2.executeQuery("select distinct * from "+table2+ " order by "+order+" ;");	
 		     
-		     while(rst1.next()&&rst2.next()){
+		     //one pass: rows are compared while counting
+		     boolean more1=rst1.next(), more2=rst2.next();
+		     while(more1&&more2){
 		     String temp1="",temp2="";
 		    	
 		    for(int i=1;i<=list1.size();i++)
@@ -281,9 +261,19 @@ public class Sort_merge3 {
 		    }
 			if(!temp1.equals(temp2)){
 				System.out.println("tables not equal");
+				scan1.close();
+				scan2.close();
 				return false;
 			  }
+			size1++;size2++;
+			more1=rst1.next();more2=rst2.next();
 		    }
+		     while(more1){size1++;more1=rst1.next();}
+		     while(more2){size2++;more2=rst2.next();}
+		     if(size1!=size2)
+		    	 System.out.println("not equal no. of rows in both the tables");
+		     scan1.close();
+		     scan2.close();
 		
 		     
 		     
@@ -299,6 +289,6 @@ public class Sort_merge3 {
         } catch (Exception ex) {
             System.err.println("Unable to load MySQL JDBC driver");
         }
-        con = (Connection) DriverManager.getConnection(CONN_STR, "abc", "def");
+        con = (Connection) ConnectionPool.getConnection("Sort_merge3", CONN_STR, "abc", "def");
     }
 }
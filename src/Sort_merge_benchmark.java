@@ -0,0 +1,105 @@
+/* Benchmark of Sort_merge3 against Sort_merge_stream.
+ *
+ * Preconditions: the database named in config.cfg (e.g. Mutagenesis_std or unielwin, loaded from testsql/)
+ * has been processed by BayesBaseCT_SortMerge.buildCT(), so that @database@_CT holds the _star and _flat tables.
+ *
+ * For every pair  xxx_star / xxx_flat  in @database@_CT both implementations compute the false table,
+ * the running times are printed and the two results are compared with Sort_merge3.compare_tables.
+ * */
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+
+import com.mysql.jdbc.Connection;
+
+public class Sort_merge_benchmark {
+
+	static Connection con3;
+	static String databaseName3;
+	static String dbUsername;
+	static String dbPassword;
+	static String dbaddress;
+
+	public static void main(String[] args) throws Exception {
+		setVarsFromConfig();
+		connectDB();
+
+		ArrayList<String> bases = new ArrayList<String>();
+		Statement st = con3.createStatement();
+		ResultSet rs = st.executeQuery("select table_name from information_schema.tables where table_schema = '" + databaseName3 + "' and table_name like '%\\_star';");
+		while (rs.next()) {
+			String star = rs.getString(1);
+			bases.add(star.substring(0, star.length() - "_star".length()));
+		}
+		rs.close();
+
+		String falseSM3 = "`benchmark_false_sm3`";
+		String falseStream = "`benchmark_false_stream`";
+		long totalSM3 = 0, totalStream = 0;
+		int mismatches = 0;
+		ArrayList<String> report = new ArrayList<String>();
+
+		for (String base : bases) {
+			String star = "`" + base + "_star`";
+			String flat = "`" + base + "_flat`";
+			ResultSet rsFlat = st.executeQuery("select count(*) from information_schema.tables where table_schema = '" + databaseName3 + "' and table_name = '" + base + "_flat';");
+			rsFlat.next();
+			boolean hasFlat = rsFlat.getInt(1) > 0;
+			rsFlat.close();
+			if (!hasFlat) {
+				continue;
+			}
+
+			long t1 = System.currentTimeMillis();
+			Sort_merge3.sort_merge(star, flat, falseSM3, con3);
+			long t2 = System.currentTimeMillis();
+			Sort_merge_stream.sort_merge(star, flat, falseStream, con3);
+			long t3 = System.currentTimeMillis();
+
+			boolean same = Sort_merge3.compare_tables(falseSM3, falseStream, con3);
+			if (!same) {
+				mismatches++;
+			}
+			totalSM3 += t2 - t1;
+			totalStream += t3 - t2;
+			report.add(base + "\t" + (t2 - t1) + "\t" + (t3 - t2) + "\t" + (same ? "equal" : "DIFFERENT"));
+		}
+
+		st.execute("drop table if exists " + falseSM3 + " ;");
+		st.execute("drop table if exists " + falseStream + " ;");
+		st.close();
+		disconnectDB();
+
+		System.out.println("\n*********************************************************");
+		System.out.println("Sort_merge benchmark on " + databaseName3);
+		System.out.println("table\tSort_merge3(ms)\tSort_merge_stream(ms)\tresult");
+		for (String line : report) {
+			System.out.println(line);
+		}
+		System.out.println("total\t" + totalSM3 + "\t" + totalStream + "\t" + mismatches + " mismatches");
+	}
+
+	public static void setVarsFromConfig() {
+		Config conf = new Config();
+		databaseName3 = conf.getProperty("dbname") + "_CT";
+		dbUsername = conf.getProperty("dbusername");
+		dbPassword = conf.getProperty("dbpassword");
+		dbaddress = conf.getProperty("dbaddress");
+	}
+
+	public static void connectDB() throws SQLException {
+		String CONN_STR3 = "jdbc:" + dbaddress + "/" + databaseName3;
+		try {
+			java.lang.Class.forName("com.mysql.jdbc.Driver");
+		} catch (Exception ex) {
+			System.err.println("Unable to load MySQL JDBC driver");
+		}
+		con3 = (Connection) DriverManager.getConnection(CONN_STR3, dbUsername, dbPassword);
+	}
+
+	public static void disconnectDB() throws SQLException {
+		con3.close();
+	}
+}
@@ -0,0 +1,90 @@
+/* Streaming version of Sort_merge3.
+ *
+ * computes  table3 = table1 - table2  (star - flat) the same way as Sort_merge3:
+ *   rows of star that also appear in flat get MULT = star.MULT - flat.MULT
+ *   rows of star that do not appear in flat keep star.MULT
+ *   rows that appear only in flat are dropped
+ *
+ * Differences to version 3:
+ * - both tables are read once with forward-only streaming cursors, no row counting pass and no absolute(i),
+ * - every value is read once and dictionary encoded, the rows are compared as int tuples,
+ * - the flat side is hashed instead of sorted, so the server does not have to run two "order by" over all columns,
+ * - the false table is written with multi-row inserts, no sort_merge.csv and no LOAD DATA LOCAL INFILE.
+ * */
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+
+import ct.CTCursor;
+import ct.CTTable;
+import ct.CTWriter;
+import ct.DictionarySet;
+
+public class Sort_merge_stream {
+
+	public static void sort_merge(String table1, String table2, String table3, Connection conn) throws SQLException {
+		System.out.println("\nGenerating false table by Subtration using Sort_merge_stream, cur_false_Table is : " + table3);
+		long time1 = System.currentTimeMillis();
+
+		Statement st = conn.createStatement();
+		ArrayList<String> orderList = new ArrayList<String>();
+		ResultSet rst = st.executeQuery("show columns from " + table1 + " ;");
+		while (rst.next()) {
+			String col = rst.getString(1);
+			if (!col.equalsIgnoreCase("MULT")) {
+				orderList.add(col);
+			}
+		}
+		rst.close();
+
+		st.execute("drop table if exists " + table3 + " ;");
+		st.execute("create table " + table3 + " like " + table1 + " ;");
+
+		if (orderList.size() == 0) { // handle the extreme case when there's only `mult` column, as in Sort_merge3
+			System.out.println("\n \t handle the extreme case when there's only `mult` columne \n");
+			st.execute("insert into " + table3 + " select (" + table1 + ".mult - " + table2 + ".mult ) as mult from " + table1 + ", " + table2 + " ;");
+			st.close();
+			return;
+		}
+		st.close();
+
+		String[] columns = orderList.toArray(new String[orderList.size()]);
+		String selectString = "";
+		for (String col : columns) {
+			selectString += " , `" + col + "`";
+		}
+
+		// flat side: hashed in memory, values from Attribute_Value have their global codes
+		CTTable flat = new CTTable(columns, new DictionarySet());
+		CTCursor.readInto(conn, "select distinct MULT" + selectString + " from " + table2 + " ;", flat);
+		flat.buildIndex();
+		long time2 = System.currentTimeMillis();
+
+		// star side: streamed, the subtraction is done row by row
+		CTTable result = flat.emptyCopy();
+		CTCursor star = new CTCursor(conn, "select distinct MULT" + selectString + " from " + table1 + " ;", flat.getDictionaries());
+		try {
+			while (star.next()) {
+				int[] tuple = star.getTuple();
+				int row = flat.find(tuple);
+				if (row >= 0) {
+					result.addRow(tuple, star.getMult() - flat.getMult(row));
+				} else {
+					result.addRow(tuple, star.getMult());
+				}
+			}
+		} finally {
+			star.close();
+		}
+		long time3 = System.currentTimeMillis();
+
+		CTWriter.write(conn, result, table3);
+		long time4 = System.currentTimeMillis();
+
+		System.out.println("flat rows: " + flat.getRowCount() + ", false rows: " + result.getRowCount()
+				+ ", read flat: " + (time2 - time1) + " ms, merge: " + (time3 - time2) + " ms, insert: " + (time4 - time3) + " ms");
+		System.out.println("\ntotal time: " + (time4 - time1) + "\n");
+	}
+}
@@ -13,7 +13,6 @@ import java.io.BufferedReader;
 import java.io.FileNotFoundException;
 import java.io.FileReader;
 import java.io.IOException;
-import java.sql.DriverManager;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
@@ -21,6 +20,8 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Properties;
 
+import database.ConnectionPool;
+
 import org.apache.commons.lang.StringUtils;
 
 import com.mysql.jdbc.Connection;
@@ -257,7 +258,7 @@ public class SubsetCTComputation
 		
 		try
 		{
-			con = (Connection) DriverManager.getConnection( CONN_STR, 
+			con = (Connection) ConnectionPool.getConnection( "SubsetCTComputation", CONN_STR, 
 															dbusername, 
 															dbpassword );
 		}
@@ -0,0 +1,272 @@
+/* Runs MakeSetup and BayesBaseCT_SortMerge.buildCT on the unielwin database of testsql, loaded into an embedded H2
+ * database (H2Backend), and checks the _CT tables against the input database: every rchain of the lattice has one,
+ * its counts add up to the product of the population sizes of its pvariables, and the counts where a relationship
+ * is true add up to the rows of the relationship table. With CTThreads > 1 the _CT tables are the same, with
+ * LatticePruning = 1 so are the _CT tables of the rchains with support and the learned Bayes net.
+ * The scripts are read from src/scripts, so the test runs from the project root like RunBB.
+ * */
+import java.io.File;
+import java.nio.file.Files;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import database.ConnectionPool;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+public final class TestBayesBaseCT_SortMerge extends TestCase {
+
+	static final String DATABASE = "unielwin";
+	static final String[] DUMPS = { "course", "prof", "student", "registration", "RA" };
+
+	public TestBayesBaseCT_SortMerge(String name) {
+		super(name);
+	}
+
+	public void testH2() throws Exception {
+		String address = buildCT("TestBayesBaseCT_SortMerge_H2", "1", "0");
+		Connection con = connect(address, DATABASE + "_BN");
+		Map<String, Long> populations = new HashMap<String, Long>();
+		for (List<String> pvariable : rows(con, "select pvid, TABLE_NAME from PVariables")) {
+			populations.put(pvariable.get(0), count(con, "select count(*) from " + DATABASE + "." + pvariable.get(1)));
+		}
+		assertEquals(3, populations.size());
+
+		List<List<String>> rchains = rows(con, "select name from lattice_set");
+		assertFalse(rchains.isEmpty());
+		for (List<String> rchain : rchains) {
+			String table = DATABASE + "_CT.`" + rchain.get(0).replace("`", "") + "_CT`";
+			long population = 1;
+			for (List<String> pvid : rows(con, "select distinct pvid from lattice_membership, RNodes_pvars where member = rnid and name = '" + rchain.get(0) + "'")) {
+				population *= populations.get(pvid.get(0));
+			}
+			assertEquals(rchain.get(0), population, count(con, "select sum(MULT) from " + table));
+		}
+
+		List<List<String>> rnodes = rows(con, "select rnid, TABLE_NAME from RNodes");
+		assertEquals(2, rnodes.size());
+		for (List<String> rnode : rnodes) {
+			String rnid = rnode.get(0).replace("`", "");
+			assertEquals(rnid, count(con, "select count(*) from " + DATABASE + "." + rnode.get(1)),
+					count(con, "select sum(MULT) from " + DATABASE + "_CT.`" + rnid + "_CT` where `" + rnid + "` = 'T'"));
+		}
+		con.close();
+	}
+
+	/*
+	 * CTThreads > 1 builds the rchains of a lattice level in parallel (LatticeLevelScheduler): the _CT tables of every
+	 * rchain are the ones of CTThreads = 1
+	 */
+	public void testCTThreads() throws Exception {
+		String serial = buildCT("TestBayesBaseCT_SortMerge_serial", "1", "0");
+		String parallel = buildCT("TestBayesBaseCT_SortMerge_parallel", "4", "0");
+		Connection serialCon = connect(serial, DATABASE + "_CT");
+		Connection parallelCon = connect(parallel, DATABASE + "_CT");
+		Map<String, List<String>> expected = ctTables(serialCon, DATABASE + "_CT");
+		for (List<String> rchain : rows(serialCon, "select name from " + DATABASE + "_BN.lattice_set")) {
+			assertFalse(rchain.get(0), expected.get(rchain.get(0).replace("`", "") + "_CT").isEmpty());
+		}
+		assertEquals(expected, ctTables(parallelCon, DATABASE + "_CT"));
+		serialCon.close();
+		parallelCon.close();
+	}
+
+	/*
+	 * every rchain of unielwin has support: LatticePruning = 1 prunes none, the _CT tables and the Bayes net learned
+	 * from them are the ones of LatticePruning = 0
+	 */
+	public void testLatticePruning() throws Exception {
+		String full = buildCT("TestBayesBaseCT_SortMerge_full", "1", "0");
+		String pruned = buildCT("TestBayesBaseCT_SortMerge_pruned", "1", "1");
+		Connection fullCon = connect(full, DATABASE + "_BN");
+		Connection prunedCon = connect(pruned, DATABASE + "_BN");
+		assertTrue(rows(prunedCon, "select name from lattice_pruned").isEmpty());
+		assertEquals(ctTables(fullCon, DATABASE + "_CT"), ctTables(prunedCon, DATABASE + "_CT"));
+
+		List<List<String>> expected = learn(full);
+		assertFalse(expected.isEmpty());
+		assertEquals(expected, learn(pruned));
+		fullCon.close();
+		prunedCon.close();
+	}
+
+	/*
+	 * without RA rows the rchain a,b of RA and registration has no support: LatticePruning = 1 lists it in
+	 * lattice_pruned, builds no _counts and _CT table for it and does not learn it: its Bayes net are its required
+	 * edges. The _CT tables of a and b are the ones of LatticePruning = 0
+	 */
+	public void testPrunedRChain() throws Exception {
+		String full = buildCT("TestBayesBaseCT_SortMerge_noRA_full", "1", "0", "delete from RA");
+		String pruned = buildCT("TestBayesBaseCT_SortMerge_noRA_pruned", "1", "1", "delete from RA");
+		Connection fullCon = connect(full, DATABASE + "_BN");
+		Connection prunedCon = connect(pruned, DATABASE + "_BN");
+		assertEquals(rows(fullCon, "select name from lattice_set where length = 2"), rows(prunedCon, "select name from lattice_pruned"));
+		Map<String, List<String>> expected = ctTables(fullCon, DATABASE + "_CT");
+		assertNotNull(expected.remove("a,b_CT"));
+		expected.keySet().removeAll(Arrays.asList("a,b_a_CT", "a,b_b_CT")); // the intermediate _CT tables of a,b
+		assertEquals(expected, ctTables(prunedCon, DATABASE + "_CT"));
+		assertEquals(0, count(prunedCon, "select count(*) from information_schema.tables where table_schema = '" + DATABASE + "_CT' and table_name like 'a,b%'"));
+
+		assertFalse(learn(pruned).isEmpty());
+		List<List<String>> required = rows(prunedCon, "select child, parent from Path_Required_Edges where Rchain = '`a,b`' order by child, parent");
+		assertFalse(required.isEmpty());
+		assertEquals(required, rows(prunedCon, "select child, parent from Path_BayesNets where Rchain = '`a,b`' and parent <> '' order by child, parent"));
+		fullCon.close();
+		prunedCon.close();
+	}
+
+	/*
+	 * Loads unielwin into the embedded H2 database name, runs the statements on it, runs MakeSetup and buildCT with
+	 * the given CTThreads and LatticePruning, returns the dbaddress
+	 */
+	static String buildCT(String name, String ctThreads, String latticePruning, String... statements) throws Exception {
+		String address = "h2:mem:" + name;
+		load(address);
+		Connection con = connect(address, DATABASE);
+		Statement st = con.createStatement();
+		for (String statement : statements) {
+			st.execute(statement);
+		}
+		st.close();
+		con.close();
+
+		MakeSetup.databaseName = DATABASE;
+		MakeSetup.databaseName0 = DATABASE + "_setup";
+		MakeSetup.dbUsername = "sa";
+		MakeSetup.dbPassword = "";
+		MakeSetup.dbaddress = address;
+		MakeSetup.makeSetup();
+
+		BayesBaseCT_SortMerge.databaseName = DATABASE;
+		BayesBaseCT_SortMerge.databaseName2 = DATABASE + "_BN";
+		BayesBaseCT_SortMerge.databaseName3 = DATABASE + "_CT";
+		BayesBaseCT_SortMerge.databaseName4 = DATABASE + "_setup";
+		BayesBaseCT_SortMerge.dbUsername = "sa";
+		BayesBaseCT_SortMerge.dbPassword = "";
+		BayesBaseCT_SortMerge.dbaddress = address;
+		BayesBaseCT_SortMerge.opt2 = "1";
+		BayesBaseCT_SortMerge.cont = "0";
+		BayesBaseCT_SortMerge.inMemoryCT = "0";
+		BayesBaseCT_SortMerge.writeCT = "1";
+		BayesBaseCT_SortMerge.ctThreads = ctThreads;
+		BayesBaseCT_SortMerge.latticePruning = latticePruning;
+		BayesBaseCT_SortMerge.buildCTFromFields();
+		return address;
+	}
+
+	/*
+	 * Runs the structure learning of BayesBaseH in process on the databases of buildCT, returns the edges of
+	 * Final_Path_BayesNets
+	 */
+	static List<List<String>> learn(String address) throws Exception {
+		BayesBaseH.databaseName = DATABASE;
+		BayesBaseH.databaseName2 = DATABASE + "_BN";
+		BayesBaseH.databaseName3 = DATABASE + "_CT";
+		BayesBaseH.dbUsername = "sa";
+		BayesBaseH.dbPassword = "";
+		BayesBaseH.dbaddress = address;
+		BayesBaseH.cont = "0";
+		BayesBaseH.linkAnalysis = true;
+		BayesBaseH.inProcess = true;
+		BayesBaseH.pvar_ids = new ArrayList<String>();
+		BayesBaseH.rnode_ids = new ArrayList<String>();
+		BayesBaseH.rnode_ids_1 = new ArrayList<String>();
+		BayesBaseH.connectDB();
+		BayesBaseH.learnStructure();
+		BayesBaseH.disconnectDB();
+		Connection con = connect(address, DATABASE + "_BN");
+		List<List<String>> edges = rows(con, "select * from Final_Path_BayesNets order by 1, 2, 3");
+		con.close();
+		return edges;
+	}
+
+	/*
+	 * The mysqldump files of unielwin from testsql, the entity tables first for the foreign keys. BZScriptRunner
+	 * writes its prepared copy next to the script, so it runs on copies in a temporary directory.
+	 */
+	static void load(String address) throws Exception {
+		File dir = Files.createTempDirectory("TestBayesBaseCT_SortMerge").toFile();
+		Connection con = connect(address, DATABASE);
+		for (String dump : DUMPS) {
+			File file = new File(dir, DATABASE + "_" + dump + ".sql");
+			Files.copy(new File("testsql", file.getName()).toPath(), file.toPath());
+			new BZScriptRunner(DATABASE, con).runScript(file.getPath());
+		}
+		con.close();
+		for (File file : dir.listFiles()) {
+			file.delete();
+		}
+		dir.delete();
+	}
+
+	static Connection connect(String address, String database) throws SQLException {
+		return ConnectionPool.getConnection("TestBayesBaseCT_SortMerge", "jdbc:" + address + "/" + database, "sa", "");
+	}
+
+	/*
+	 * Every _CT table of the database, as its sorted rows with the columns in name order
+	 */
+	static Map<String, List<String>> ctTables(Connection con, String database) throws SQLException {
+		return tables(con, database, "%\\_CT");
+	}
+
+	/*
+	 * The tables of the database whose name is like pattern, as in ctTables
+	 */
+	static Map<String, List<String>> tables(Connection con, String database, String pattern) throws SQLException {
+		Map<String, List<String>> tables = new TreeMap<String, List<String>>();
+		for (List<String> table : rows(con, "select table_name from information_schema.tables where table_schema = '" + database + "' and table_name like '" + pattern + "'")) {
+			Statement st = con.createStatement();
+			ResultSet rs = st.executeQuery("select * from " + database + ".`" + table.get(0) + "`");
+			ResultSetMetaData md = rs.getMetaData();
+			List<String> rows = new ArrayList<String>();
+			while (rs.next()) {
+				Map<String, String> row = new TreeMap<String, String>();
+				for (int c = 1; c <= md.getColumnCount(); c++) {
+					row.put(md.getColumnLabel(c), rs.getString(c));
+				}
+				rows.add(row.toString());
+			}
+			rs.close();
+			st.close();
+			Collections.sort(rows);
+			tables.put(table.get(0), rows);
+		}
+		return tables;
+	}
+
+	static List<List<String>> rows(Connection con, String query) throws SQLException {
+		Statement st = con.createStatement();
+		ResultSet rs = st.executeQuery(query);
+		List<List<String>> rows = new ArrayList<List<String>>();
+		while (rs.next()) {
+			List<String> row = new ArrayList<String>();
+			for (int c = 1; c <= rs.getMetaData().getColumnCount(); c++) {
+				row.add(rs.getString(c));
+			}
+			rows.add(row);
+		}
+		rs.close();
+		st.close();
+		return rows;
+	}
+
+	static long count(Connection con, String query) throws SQLException {
+		return Long.parseLong(rows(con, query).get(0).get(0));
+	}
+
+	public static Test suite() {
+		return new TestSuite(TestBayesBaseCT_SortMerge.class);
+	}
+}
@@ -0,0 +1,98 @@
+/* Tests CSVPrecomputor.writeCSV, one forward-only scan that takes the header from the result set meta data, against
+ * the .csv file of the code it replaces, which ran the query once for the header (getColumns) and once more for the
+ * rows, written one tab separated line at a time. The CT tables are in a MemoryDatabase.
+ * */
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Random;
+
+import org.apache.commons.lang.StringUtils;
+
+import testing.MemoryDatabase;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+public final class TestCSVPrecomputor extends TestCase {
+
+	File dir;
+
+	public TestCSVPrecomputor(String name) {
+		super(name);
+	}
+
+	@Override
+	public void setUp() throws Exception {
+		dir = File.createTempFile("TestCSVPrecomputor", "");
+		dir.delete();
+		dir.mkdirs();
+	}
+
+	@Override
+	public void tearDown() {
+		for (File file : dir.listFiles()) {
+			file.delete();
+		}
+		dir.delete();
+	}
+
+	public void testWriteCSV() throws Exception {
+		MemoryDatabase db = MemoryDatabase.get("TestCSVPrecomputor", true);
+		Random random = new Random(19);
+		String[] columns = { "MULT", "diff(course0)", "a", "grade(course0,student0)" };
+		MemoryDatabase.Table table = db.createTable("test_CT", "a_CT", columns);
+		for (int n = 0; n < 200; n++) {
+			boolean a = random.nextBoolean();
+			table.rows.add(new Object[] { (long) random.nextInt(5), String.valueOf(1 + random.nextInt(3)), a ? "T" : "F",
+					a ? (random.nextInt(10) == 0 ? null : String.valueOf((char) ('A' + random.nextInt(3)))) : "N/A" });
+		}
+
+		String[] queries = { "SELECT * FROM `a_CT` where mult>0;", "SELECT * FROM `a_CT` where  `a` = 'T' and mult>0;",
+				"SELECT * FROM `a_CT` where mult>100;" };
+		CSVPrecomputor.con3 = TestSort_merge3.mysqlConnection(db, "test_CT");
+		for (int q = 0; q < queries.length; q++) {
+			File actual = new File(dir, "actual" + q + ".csv");
+			File expected = new File(dir, "expected" + q + ".csv");
+			CSVPrecomputor.writeCSV(queries[q], actual.getPath());
+			writeTwoPass(queries[q], expected.getPath());
+			assertEquals(new String(Files.readAllBytes(expected.toPath()), "UTF-8"), new String(Files.readAllBytes(actual.toPath()), "UTF-8"));
+		}
+		CSVPrecomputor.con3.close();
+	}
+
+	/*
+	 * the .csv file as CSVPrecomputor wrote it before writeCSV
+	 */
+	static void writeTwoPass(String queryString, String fileName) throws Exception {
+		Statement st3 = CSVPrecomputor.con3.createStatement();
+		ResultSet rs4 = st3.executeQuery(queryString);
+
+		//  create header
+		ArrayList<String> columns = CSVPrecomputor.getColumns(rs4);
+		String csvHeader = StringUtils.join(columns, "\t");
+
+		//  create csv file
+		RandomAccessFile csv = new RandomAccessFile(fileName, "rw");
+		csv.writeBytes(csvHeader + "\n");
+
+		ResultSet rs5 = st3.executeQuery(queryString);
+		while(rs5.next()){
+			String csvString = "";
+			for(String col : columns){
+				csvString += rs5.getString(col) + "\t";
+			}
+			csvString = csvString.substring(0, csvString.length() - 1);
+			csv.writeBytes(csvString + "\n");
+		}
+		csv.close();
+		st3.close();
+	}
+
+	public static Test suite() {
+		return new TestSuite(TestCSVPrecomputor.class);
+	}
+}
@@ -0,0 +1,80 @@
+/* Runs FunctorWrapper on the unielwin database of testsql, loaded into an embedded H2 database (H2Backend) and learned
+ * as in TestBayesBaseCT_SortMerge, once per grounding (GetGroundings) and once for all groundings of a functor node
+ * (GetGroundingsBatched), and checks that both write the same *_final_CT tables.
+ * The scripts are read from src/scripts, so the test runs from the project root like RunBB.
+ * */
+import java.io.File;
+import java.io.PrintWriter;
+import java.sql.Connection;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+public final class TestFunctorWrapper extends TestCase {
+
+	File cfg;
+
+	public TestFunctorWrapper(String name) {
+		super(name);
+	}
+
+	@Override
+	public void tearDown() {
+		Config.file = "cfg/subsetctcomputation.cfg";
+		if (cfg != null) {
+			cfg.delete();
+		}
+	}
+
+	public void testBatchedGroundings() throws Exception {
+		String address = TestBayesBaseCT_SortMerge.buildCT("TestFunctorWrapper", "1", "0");
+		TestBayesBaseCT_SortMerge.learn(address);
+		cfg = File.createTempFile("TestFunctorWrapper", ".cfg");
+		Config.file = cfg.getPath();
+		writeConfig(address, "0");
+		BayesBaseH.connectDB();
+		CPGenerator.Generator(TestBayesBaseCT_SortMerge.DATABASE, BayesBaseH.con2);
+		new CP(TestBayesBaseCT_SortMerge.DATABASE + "_BN", TestBayesBaseCT_SortMerge.DATABASE + "_CT").cp();
+		BayesBaseH.disconnectDB();
+		FunctorWrapper.setVarsFromConfig();
+		FunctorWrapper.pre_process();
+
+		Map<String, List<String>> perGrounding = finalCTs(address);
+		writeConfig(address, "1");
+		Map<String, List<String>> batched = finalCTs(address);
+		assertTrue(perGrounding.keySet().toString(), perGrounding.containsKey("RA(prof0,student0)_parent_final_CT"));
+		assertEquals(perGrounding, batched);
+	}
+
+	void writeConfig(String address, String batchedGroundings) throws Exception {
+		PrintWriter writer = new PrintWriter(cfg);
+		writer.println("dbname = " + TestBayesBaseCT_SortMerge.DATABASE);
+		writer.println("dbaddress = " + address);
+		writer.println("dbusername = sa");
+		writer.println("dbpassword = ");
+		writer.println("LinkCorrelations = 1");
+		writer.println("Continuous = 0");
+		writer.println("CrossValidation = 0");
+		writer.println("BatchedGroundings = " + batchedGroundings);
+		writer.close();
+	}
+
+	/*
+	 * Runs FunctorWrapper and returns the tables of the target_final_CT database
+	 */
+	static Map<String, List<String>> finalCTs(String address) throws Exception {
+		FunctorWrapper.main(new String[0]);
+		String database = TestBayesBaseCT_SortMerge.DATABASE + "_target_final_CT";
+		Connection con = TestBayesBaseCT_SortMerge.connect(address, database);
+		Map<String, List<String>> tables = TestBayesBaseCT_SortMerge.tables(con, database, "%");
+		con.close();
+		return tables;
+	}
+
+	public static Test suite() {
+		return new TestSuite(TestFunctorWrapper.class);
+	}
+}
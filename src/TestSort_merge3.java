@@ -0,0 +1,171 @@
+/* Tests the one pass merge of Sort_merge3 against the merge it replaces, which counted the rows of the sorted _star
+ * and _flat scans first and moved through them with absolute(i): that merge is redone here row by row on the same
+ * sorted rows. The tables are in a MemoryDatabase, seen by Sort_merge3 as a Connector/J connection with cursor fetch,
+ * so the scans get a fetch size from ConnectionPool.scanMemory as they would on a pooled MySQL connection.
+ * */
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import com.mysql.jdbc.Connection;
+
+import database.ConnectionPool;
+import testing.MemoryDatabase;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+public final class TestSort_merge3 extends TestCase {
+
+	public TestSort_merge3(String name) {
+		super(name);
+	}
+
+	public void testMerge() throws Exception {
+		Random random = new Random(7);
+		for (int run = 0; run < 20; run++) {
+			MemoryDatabase db = MemoryDatabase.get("TestSort_merge3", true);
+			int numColumns = 1 + random.nextInt(4);
+			String[] columns = new String[numColumns + 1];
+			columns[0] = "MULT";
+			for (int c = 1; c <= numColumns; c++) {
+				columns[c] = "f" + c + "(x" + c + ")";
+			}
+			HashMap<String, Long> star = TestSort_merge_stream.randomTable(random, numColumns, 60);
+			HashMap<String, Long> flat = TestSort_merge_stream.randomTable(random, numColumns, 40);
+			TestSort_merge_stream.fill(db.createTable("db_CT", "r_star", columns), star);
+			TestSort_merge_stream.fill(db.createTable("db_CT", "r_flat", columns), flat);
+
+			long streaming = ConnectionPool.metrics("Sort_merge3").streaming;
+			Connection conn = mysqlConnection(db, "db_CT");
+			Sort_merge3.sort_merge("r_star", "r_flat", "r_false", conn);
+			conn.close();
+
+			assertEquals(streaming + 2, ConnectionPool.metrics("Sort_merge3").streaming);
+			assertEquals(absoluteMerge(sorted(star), sorted(flat)), TestSort_merge_stream.rows(db.getTable("db_CT", "r_false")));
+		}
+	}
+
+	public void testCompareTables() throws Exception {
+		MemoryDatabase db = MemoryDatabase.get("TestSort_merge3", true);
+		String[] columns = { "MULT", "a(x)", "b(x)" };
+		db.createTable("db_CT", "t1", columns,
+				new Object[] { 5L, "1", "T" },
+				new Object[] { 3L, "1", "F" });
+		db.createTable("db_CT", "t2", columns,
+				new Object[] { 3L, "1", "F" },
+				new Object[] { 5L, "1", "T" });
+		db.createTable("db_CT", "t3", columns,
+				new Object[] { 3L, "1", "F" },
+				new Object[] { 4L, "1", "T" });
+		Connection conn = mysqlConnection(db, "db_CT");
+		assertTrue(Sort_merge3.compare_tables("t1", "t2", conn));
+		assertFalse(Sort_merge3.compare_tables("t1", "t3", conn));
+		conn.close();
+	}
+
+	public void testFetchScanRows() {
+		long scanMemory = ConnectionPool.scanMemory;
+		try {
+			ConnectionPool.scanMemory = 64L << 20;
+			assertEquals((64 << 20) / (64 + 32 * 3), ConnectionPool.fetchScanRows(3));
+			assertTrue(ConnectionPool.fetchScanRows(3) > ConnectionPool.fetchScanRows(30));
+			ConnectionPool.scanMemory = 1L << 10;
+			assertEquals(100, ConnectionPool.fetchScanRows(3));
+			ConnectionPool.scanMemory = 1L << 40;
+			assertEquals(1000000, ConnectionPool.fetchScanRows(3));
+		} finally {
+			ConnectionPool.scanMemory = scanMemory;
+		}
+	}
+
+	/*
+	 * "select distinct mult, ... order by ...": the rows as {MULT, values...}, sorted on the values
+	 */
+	static ArrayList<String[]> sorted(HashMap<String, Long> table) {
+		ArrayList<String[]> rows = new ArrayList<String[]>();
+		for (Map.Entry<String, Long> entry : table.entrySet()) {
+			String[] values = entry.getKey().split("\\|");
+			String[] row = new String[values.length + 1];
+			row[0] = String.valueOf(entry.getValue());
+			System.arraycopy(values, 0, row, 1, values.length);
+			rows.add(row);
+		}
+		Collections.sort(rows, new Comparator<String[]>() {
+			public int compare(String[] a, String[] b) {
+				for (int k = 1; k < a.length; k++) {
+					int c = a[k].compareTo(b[k]);
+					if (c != 0) {
+						return c;
+					}
+				}
+				return 0;
+			}
+		});
+		return rows;
+	}
+
+	/*
+	 * the merge of Sort_merge3 before the one pass version, with the indexes i and j of absolute(i) and absolute(j)
+	 * (from 0 here), as rows "MULT|values..." sorted like TestSort_merge_stream.rows
+	 */
+	static ArrayList<String> absoluteMerge(ArrayList<String[]> rst1, ArrayList<String[]> rst2) {
+		ArrayList<String> output = new ArrayList<String>();
+		int size1 = rst1.size(), size2 = rst2.size();
+		int no_of_colmns = rst1.get(0).length;
+		int i = 0, j = 0;
+		while (i < size1 && j < size2) {
+			long val1 = 0, val2 = 0;
+			for (int k = 1; k < no_of_colmns; k++) {
+				try {
+					val1 = Long.parseLong(rst1.get(i)[k]);
+					val2 = Long.parseLong(rst2.get(j)[k]);
+				} catch (NumberFormatException e) {
+				} finally {
+					if (rst1.get(i)[k].compareTo(rst2.get(j)[k]) > 0) { val1 = 1; val2 = 0; }
+					else if (rst1.get(i)[k].compareTo(rst2.get(j)[k]) < 0) { val1 = 0; val2 = 1; }
+				}
+				if (val1 < val2) {
+					output.add(join(rst1.get(i)[0], rst1.get(i)));
+					i++;
+					break;
+				} else if (val1 > val2) {
+					j++;
+					break;
+				}
+			}
+			if (val1 == val2) {
+				output.add(join(String.valueOf(Long.parseLong(rst1.get(i)[0]) - Long.parseLong(rst2.get(j)[0])), rst1.get(i)));
+				i++;
+				j++;
+			}
+		}
+		for (; i < size1; i++) {
+			output.add(join(rst1.get(i)[0], rst1.get(i)));
+		}
+		Collections.sort(output);
+		return output;
+	}
+
+	static String join(String mult, String[] row) {
+		String s = mult;
+		for (int k = 1; k < row.length; k++) {
+			s += "|" + row[k];
+		}
+		return s;
+	}
+
+	/*
+	 * a connection to schema of db as a com.mysql.jdbc.Connection with cursor fetch on
+	 */
+	static Connection mysqlConnection(MemoryDatabase db, String schema) {
+		return db.connectMySql(db.url(schema), schema);
+	}
+
+	public static Test suite() {
+		return new TestSuite(TestSort_merge3.class);
+	}
+}
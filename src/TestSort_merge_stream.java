@@ -0,0 +1,175 @@
+/* Tests Sort_merge_stream against the result Sort_merge3 gives for the same _star and _flat tables:
+ *   rows of star that also appear in flat get MULT = star.MULT - flat.MULT
+ *   rows of star that do not appear in flat keep star.MULT
+ *   rows that appear only in flat are dropped
+ * The tables are in a MemoryDatabase, Sort_merge3 itself needs a MySQL server, so its result is computed row by row
+ * in the test.
+ * */
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Random;
+
+import ct.DictionarySet;
+import testing.MemoryDatabase;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+public final class TestSort_merge_stream extends TestCase {
+
+	public TestSort_merge_stream(String name) {
+		super(name);
+	}
+
+	/*
+	 * small tables worked by hand
+	 */
+	public void testSmall() throws Exception {
+		MemoryDatabase db = MemoryDatabase.get("TestSort_merge_stream", true);
+		String[] columns = { "MULT", "a(x)", "b(x)" };
+		db.createTable("db_CT", "t_star", columns,
+				new Object[] { 5L, "1", "T" },
+				new Object[] { 3L, "1", "F" },
+				new Object[] { 4L, "2", "T" });
+		db.createTable("db_CT", "t_flat", columns,
+				new Object[] { 2L, "1", "T" },
+				new Object[] { 4L, "2", "T" },
+				new Object[] { 7L, "3", "T" });
+		Connection conn = db.connect(db.url("db_CT"), "db_CT");
+		Sort_merge_stream.sort_merge("t_star", "t_flat", "t_false", conn);
+		conn.close();
+
+		ArrayList<String> rows = rows(db.getTable("db_CT", "t_false"));
+		assertEquals(3, rows.size());
+		assertEquals("0|2|T", rows.get(0));
+		assertEquals("3|1|F", rows.get(1));
+		assertEquals("3|1|T", rows.get(2));
+		assertEquals(columns.length, db.getTable("db_CT", "t_false").columns.size());
+	}
+
+	/*
+	 * random tables, compared with the subtraction of Sort_merge3
+	 */
+	public void testRandom() throws Exception {
+		Random random = new Random(42);
+		for (int run = 0; run < 20; run++) {
+			MemoryDatabase db = MemoryDatabase.get("TestSort_merge_stream", true);
+			int numColumns = 1 + random.nextInt(4);
+			String[] columns = new String[numColumns + 1];
+			columns[0] = "MULT";
+			for (int c = 1; c <= numColumns; c++) {
+				columns[c] = "f" + c + "(x" + c + ")";
+			}
+			HashMap<String, Long> star = randomTable(random, numColumns, 60);
+			HashMap<String, Long> flat = randomTable(random, numColumns, 40);
+			fill(db.createTable("db_CT", "r_star", columns), star);
+			fill(db.createTable("db_CT", "r_flat", columns), flat);
+
+			Connection conn = db.connect(db.url("db_CT"), "db_CT");
+			Sort_merge_stream.sort_merge("r_star", "r_flat", "r_false", conn);
+			conn.close();
+
+			ArrayList<String> expected = new ArrayList<String>();
+			for (String key : star.keySet()) {
+				Long f = flat.get(key);
+				expected.add((f == null ? star.get(key) : star.get(key) - f) + "|" + key);
+			}
+			Collections.sort(expected);
+			assertEquals(expected, rows(db.getTable("db_CT", "r_false")));
+		}
+	}
+
+	/*
+	 * random tables as in testRandom with the value dictionaries of Attribute_Value loaded: the values it lists
+	 * (in another order, with values that do not occur, without N/A) are encoded with their global codes
+	 */
+	public void testFunctorValues() throws Exception {
+		Random random = new Random(5);
+		try {
+			for (int run = 0; run < 20; run++) {
+				MemoryDatabase db = MemoryDatabase.get("TestSort_merge_stream", true);
+				int numColumns = 1 + random.nextInt(4);
+				String[] columns = new String[numColumns + 1];
+				columns[0] = "MULT";
+				Object[][] values = new Object[numColumns * 3][];
+				for (int c = 1; c <= numColumns; c++) {
+					columns[c] = "f" + c + "(x" + c + ")";
+					for (int v = 0; v < 3; v++) {
+						values[(c - 1) * 3 + v] = new Object[] { "f" + c, String.valueOf(3 - v - random.nextInt(2)) };
+					}
+				}
+				db.createTable("db_setup", "Attribute_Value", new String[] { "COLUMN_NAME", "VALUE" }, values);
+				HashMap<String, Long> star = randomTable(random, numColumns, 60);
+				HashMap<String, Long> flat = randomTable(random, numColumns, 40);
+				fill(db.createTable("db_CT", "r_star", columns), star);
+				fill(db.createTable("db_CT", "r_flat", columns), flat);
+
+				Connection conn = db.connect(db.url("db_CT"), "db_CT");
+				DictionarySet.loadFunctorValues(conn, "db_setup.Attribute_Value");
+				Sort_merge_stream.sort_merge("r_star", "r_flat", "r_false", conn);
+				conn.close();
+
+				ArrayList<String> expected = new ArrayList<String>();
+				for (String key : star.keySet()) {
+					Long f = flat.get(key);
+					expected.add((f == null ? star.get(key) : star.get(key) - f) + "|" + key);
+				}
+				Collections.sort(expected);
+				assertEquals(expected, rows(db.getTable("db_CT", "r_false")));
+			}
+		} finally {
+			MemoryDatabase db = MemoryDatabase.get("TestSort_merge_stream", true);
+			db.createTable("db_setup", "Attribute_Value", new String[] { "COLUMN_NAME", "VALUE" });
+			Connection conn = db.connect(db.url("db_setup"), "db_setup");
+			DictionarySet.loadFunctorValues(conn, "Attribute_Value");
+			conn.close();
+		}
+	}
+
+	static HashMap<String, Long> randomTable(Random random, int numColumns, int size) {
+		HashMap<String, Long> table = new HashMap<String, Long>();
+		for (int i = 0; i < size; i++) {
+			String key = "";
+			for (int c = 0; c < numColumns; c++) {
+				key += (c == 0 ? "" : "|") + (random.nextInt(5) == 0 ? "N/A" : String.valueOf(random.nextInt(3)));
+			}
+			table.put(key, 1L + random.nextInt(20));
+		}
+		return table;
+	}
+
+	static void fill(MemoryDatabase.Table table, HashMap<String, Long> rows) {
+		for (String key : rows.keySet()) {
+			String[] values = key.split("\\|");
+			Object[] row = new Object[values.length + 1];
+			row[0] = rows.get(key);
+			System.arraycopy(values, 0, row, 1, values.length);
+			table.rows.add(row);
+		}
+	}
+
+	/*
+	 * rows as "MULT|value|...", sorted
+	 */
+	static ArrayList<String> rows(MemoryDatabase.Table table) {
+		int mult = table.indexOf("MULT");
+		ArrayList<String> rows = new ArrayList<String>();
+		for (Object[] row : table.rows) {
+			String s = String.valueOf(row[mult]);
+			for (int c = 0; c < row.length; c++) {
+				if (c != mult) {
+					s += "|" + row[c];
+				}
+			}
+			rows.add(s);
+		}
+		Collections.sort(rows);
+		return rows;
+	}
+
+	public static Test suite() {
+		return new TestSuite(TestSort_merge_stream.class);
+	}
+}
@@ -2,8 +2,8 @@ package bif;
 
 import java.io.IOException;
 import java.sql.Connection;
+import java.sql.PreparedStatement;
 import java.sql.SQLException;
-import java.sql.Statement;
 import java.util.ArrayList;
 
 import bif.BIF_IO;
@@ -11,6 +11,8 @@ import nu.xom.ParsingException;
 
 public class BIFImport {
 
+	static final int BATCH_ROWS = 1000;
+
 	/*
 	 * Arguments:
 	 * 	1st: filename: The name of the file to import (include directory information if appropriate)
@@ -46,14 +48,32 @@ public class BIFImport {
 		ArrayList<String[]> pairs = BIF_IO.getLinksFromFile(filename);
 		
 		//System.out.print(id);
-		for (String[] pair : pairs) {
-            Statement st = con.createStatement();
-            
-            System.out.println("INSERT ignore INTO " + tableName + " VALUES (\'" + id + "\', \'" + pair[1] + "\', \'" + pair[0] + "\');");
-            st.execute("INSERT ignore INTO " + tableName + " VALUES (\'" + id + "\', \'" + pair[1] + "\', \'" + pair[0] + "\');");
-            
-		}			
+		Import(pairs, id, tableName, con);
 	}	
+
+	/*
+	 * Same as above for links that are already in memory ({parent, child}, e.g. BayesNet_Learning_main.getLinks).
+	 * All links go into one multi-row INSERT ignore (BATCH_ROWS rows per statement) instead of one statement per link.
+	 */
+	public static void Import(ArrayList<String[]> pairs, String id, String tableName, Connection con) throws SQLException {
+		for (int first = 0; first < pairs.size(); first += BATCH_ROWS) {
+			int n = Math.min(BATCH_ROWS, pairs.size() - first);
+			StringBuilder sb = new StringBuilder("INSERT ignore INTO " + tableName + " VALUES ");
+			for (int i = 0; i < n; i++) {
+				sb.append(i == 0 ? "(?, ?, ?)" : ", (?, ?, ?)");
+			}
+			PreparedStatement ps = con.prepareStatement(sb.toString());
+			int p = 1;
+			for (int i = first; i < first + n; i++) {
+				ps.setString(p++, id);
+				ps.setString(p++, pairs.get(i)[1]);
+				ps.setString(p++, pairs.get(i)[0]);
+			}
+			ps.executeUpdate();
+			ps.close();
+		}
+		System.out.println("INSERT ignore INTO " + tableName + " : " + pairs.size() + " links of " + id);
+	}
 }
 
 
@@ -1,5 +1,6 @@
 package ca.sfu.jbn;
 
+import ct.CTSnapshot;
 //import edu.cmu.tetrad.data.DataParser;    //noe exists in new tetrad; replace with DataReader. Aug 21 Yan
 import edu.cmu.tetrad.data.DataReader;
 import edu.cmu.tetrad.data.DataSet;
@@ -28,11 +29,19 @@ import weka.core.converters.ConverterUtils.DataSource;
 import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileWriter;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
 
 public class BayesNet_Learning_main {
 
+	/* number of threads of the GES search in tetradLearner, set from GesThreads in config.cfg */
+	public static int gesThreads = 1;
+
 	public static void wekaLearner(String arffFile) throws Exception
 	{
 		Instances ins = DataSource.read( arffFile );
@@ -52,6 +61,19 @@ public class BayesNet_Learning_main {
 		System.out.println(bn);
 	}
 
+	/* srcfile is either a tab separated .csv file or a binary CT snapshot (.ctb, see ct.CTSnapshot), which is memory mapped instead of parsed */
+	public static DataSet readDataSet(String srcfile) throws Exception
+	{
+		File src = new File(srcfile);
+		if (srcfile.endsWith(CTSnapshot.EXTENSION))
+		{
+			return CTSnapshot.read(src);
+		}
+		DataReader parser = new DataReader();
+		parser.setDelimiter(DelimiterType.TAB);
+		return parser.parseTabular(src);
+	}
+
 	public static void tetradLearner(String srcfile, String destfile) throws Exception
 	{
 		tetradLearner(srcfile, null, null, destfile);
@@ -65,15 +87,8 @@ public class BayesNet_Learning_main {
 		//RectangularDataSet is replaced by DataSet in new tetrad.  Aug 21 Yan
 	    DataSet dataset = null;
 		
-		File src = new File(srcfile);
-		
-		//DataParser parser = new DataParser();
 		//DataParser is replaced by DataReader in new tetrad.  Aug 21 Yan
-		DataReader parser = new DataReader();
-		parser.setDelimiter(DelimiterType.TAB);
-     	dataset = parser.parseTabular(src);     
-		System.out.print("isMulipliersCollapsed: " +dataset.isMulipliersCollapsed()+" \n");
-		Ges3 gesSearch = new Ges3(dataset);
+		dataset = readDataSet(srcfile);
 		Knowledge knowledge = new Knowledge();
 
 		/* load required knowledge */
@@ -126,12 +141,33 @@ public class BayesNet_Learning_main {
 			}
 		}
 		
+		Dag dag = tetradLearner(dataset, knowledge);
+		writeBIF(dataset, dag, destfile);
+	}
+
+	/* learns the dag in memory, used by tetradLearner and by the in-process pipeline of BayesBaseH (no csv and xml files) */
+	public static Dag tetradLearner(DataSet dataset, Knowledge knowledge) throws Exception
+	{
+		return tetradLearner(dataset, null, knowledge);
+	}
+
+	/* counts: the BDeu counts of dataset if they were compiled already (ct.CountIndex), or null */
+	public static Dag tetradLearner(DataSet dataset, FamilyCounts counts, Knowledge knowledge) throws Exception
+	{
+		System.out.print("isMulipliersCollapsed: " +dataset.isMulipliersCollapsed()+" \n");
+		Ges3 gesSearch = new Ges3(dataset);
+		if (counts != null)
+		{
+			gesSearch.setDiscreteScore(new BDeuScore(dataset, counts, 10, 1.0));
+		}
+
 		System.out.println(knowledge);
 		System.out.println("knowledge is DONE~~");
 		/* set GES search parameters */
 		gesSearch.setKnowledge(knowledge);
 		gesSearch.setStructurePrior(1.0000);
 		gesSearch.setSamplePrior(10.0000);
+		gesSearch.setNumThreads(gesThreads);
 	//	System.out.println("here you are ~~");
 		/* learn a dag from data */
 		Graph graph = gesSearch.search();
@@ -162,8 +198,11 @@ public class BayesNet_Learning_main {
         System.out.println("%%%% Dof = " + scorer.getPValueDf()); 
         */
         ////////////////////// computing these score is very time consuming
-        
-        
+		return dag;
+	}
+
+	public static void writeBIF(DataSet dataset, Dag dag, String destfile) throws Exception
+	{
         /* output dag into Bayes Interchange format */
 		FileWriter fstream = new FileWriter(destfile);
 		BufferedWriter out = new BufferedWriter(fstream);
@@ -218,6 +257,57 @@ public class BayesNet_Learning_main {
 		*/
 	}
 
+	/* the knowledge of tetradLearner(srcfile, required, forbidden, destfile), read from the edge tables (e.g. Path_Required_Edges)
+	 * instead of the _req.xml and _for.xml files that BIFExport writes from them. Backticks are removed as in BIFExport. */
+	public static Knowledge readKnowledge(Connection conn, String idName, String id, String requiredTable, String forbiddenTable) throws SQLException
+	{
+		Knowledge knowledge = new Knowledge();
+		for (String[] edge : readEdges(conn, idName, id, requiredTable))
+		{
+			knowledge.setEdgeRequired(edge[0], edge[1], true);
+		}
+		for (String[] edge : readEdges(conn, idName, id, forbiddenTable))
+		{
+			knowledge.setEdgeForbidden(edge[0], edge[1], true);
+		}
+		return knowledge;
+	}
+
+	/* {parent, child} for every row of tableName with a parent */
+	static ArrayList<String[]> readEdges(Connection conn, String idName, String id, String tableName) throws SQLException
+	{
+		ArrayList<String[]> edges = new ArrayList<String[]>();
+		if (tableName == null)
+			return edges;
+		Statement st = conn.createStatement();
+		ResultSet rs = st.executeQuery("SELECT * FROM " + tableName + " WHERE " + idName + " = \"" + id + "\"");
+		while (rs.next())
+		{
+			String child = rs.getString("child").replace("`","");
+			String parent = rs.getString("parent").replace("`","");
+			if (!parent.equals(""))
+				edges.add(new String[] {parent, child});
+		}
+		rs.close();
+		st.close();
+		return edges;
+	}
+
+	/* the links BIF_IO.getLinksFromFile would read back from the file written by writeBIF: {parent, child}, {"", child} for a node without parents */
+	public static ArrayList<String[]> getLinks(Dag dag)
+	{
+		ArrayList<String[]> links = new ArrayList<String[]>();
+		for (Node current : dag.getNodes())
+		{
+			List<Node> parents = dag.getParents(current);
+			if (parents.isEmpty())
+				links.add(new String[] {"", "`" + current + "`"});
+			for (Node parent : parents)
+				links.add(new String[] {"`" + parent + "`", "`" + current + "`"});
+		}
+		return links;
+	}
+
 	/*pruning phase, zqian @ Oct 23 2013*/
 	public static void tetradLearner_BES(String srcfile, String required, String destfile) throws Exception
 	{
@@ -225,12 +315,8 @@ public class BayesNet_Learning_main {
 		
 		//RectangularDataSet is replaced by DataSet in new tetrad.  Aug 21 Yan
 	    DataSet dataset = null;
-	    File src = new File(srcfile);
-			
 		//DataParser is replaced by DataReader in new tetrad.  Aug 21 Yan
-		DataReader parser = new DataReader();
-		parser.setDelimiter(DelimiterType.TAB);
-     	dataset = parser.parseTabular(src);     	     	
+		dataset = readDataSet(srcfile);
 		System.out.print("isMulipliersCollapsed: " +dataset.isMulipliersCollapsed()+" \n");	
 	
 		//GesSearch gesSearch = new GesSearch(dataset);
@@ -0,0 +1,139 @@
+package ca.sfu.jbn;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Random;
+
+import bif.BIFExport;
+import bif.BIFImport;
+import ct.CTCursor;
+import ct.CTSnapshot;
+import ct.DictionarySet;
+import testing.MemoryDatabase;
+import edu.cmu.tetrad.graph.Dag;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/*
+ * Tests the in-process learning of BayesBaseH (InProcessLearning = 1) against the file based one: the same CT table
+ * and the same required and forbidden edges give the same links in Path_BayesNets, whether they go through the
+ * .csv file, the _req.xml and _for.xml files of BIFExport and the .xml file of the learned net (tetradLearner(srcfile,
+ * ...), BIFImport.Import(filename, ...)), or through CTSnapshot.toDataSet, readKnowledge and getLinks. The tables are
+ * in a MemoryDatabase.
+ */
+public final class TestBayesNet_Learning_main extends TestCase {
+
+    static final String RCHAIN = "`a`";
+
+    File dir;
+
+    public TestBayesNet_Learning_main(String name) {
+        super(name);
+    }
+
+    @Override
+    public void setUp() throws Exception {
+        dir = File.createTempFile("TestBayesNet_Learning_main", "");
+        dir.delete();
+        dir.mkdirs();
+    }
+
+    @Override
+    public void tearDown() {
+        for (File file : dir.listFiles()) {
+            file.delete();
+        }
+        dir.delete();
+    }
+
+    public void testInProcess() throws Exception {
+        MemoryDatabase db = MemoryDatabase.get("TestBayesNet_Learning_main", true);
+        writeCT(db, new Random(11));
+        String[] edgeColumns = { "Rchain", "child", "parent" };
+        db.createTable("test_BN", "Path_Required_Edges", edgeColumns,
+                new Object[] { RCHAIN, "`grade(course0,student0)`", "`a`" });
+        db.createTable("test_BN", "Path_Forbidden_Edges", edgeColumns,
+                new Object[] { RCHAIN, "`intelligence(student0)`", "`diff(course0)`" },
+                new Object[] { RCHAIN, "`diff(course0)`", "`intelligence(student0)`" });
+        db.createTable("test_BN", "Path_BayesNets", edgeColumns);
+        db.createTable("test_BN", "Path_BayesNets_InProcess", edgeColumns);
+        Connection con2 = db.connect(db.url("test_BN"), "test_BN");
+        Connection con3 = db.connect(db.url("test_CT"), "test_CT");
+
+        // files, as CSVPrecomputor, BIFExport and handleRNodes_zqian make them
+        String csv = new File(dir, "a.csv").getPath();
+        writeCSV(db.getTable("test_CT", "a_CT"), csv);
+        String required = new File(dir, "a_req.xml").getPath();
+        String forbidden = new File(dir, "a_for.xml").getPath();
+        String xml = new File(dir, "a.xml").getPath();
+        BIFExport.Export(required, "Rchain", "Path_Required_Edges", RCHAIN, con2);
+        BIFExport.Export(forbidden, "Rchain", "Path_Forbidden_Edges", RCHAIN, con2);
+        BayesNet_Learning_main.tetradLearner(csv, required, forbidden, xml);
+        BIFImport.Import(xml, RCHAIN, "Path_BayesNets", con2);
+
+        // in process, as learnInProcess
+        Dag dag = BayesNet_Learning_main.tetradLearner(
+                CTSnapshot.toDataSet(CTCursor.readTable(con3, "`a_CT`", new DictionarySet())),
+                BayesNet_Learning_main.readKnowledge(con2, "Rchain", RCHAIN, "Path_Required_Edges", "Path_Forbidden_Edges"));
+        BIFImport.Import(BayesNet_Learning_main.getLinks(dag), RCHAIN, "Path_BayesNets_InProcess", con2);
+        con2.close();
+        con3.close();
+
+        ArrayList<String> expected = rows(db.getTable("test_BN", "Path_BayesNets"));
+        assertEquals(expected, rows(db.getTable("test_BN", "Path_BayesNets_InProcess")));
+        assertTrue(expected.contains(RCHAIN + "|`grade(course0,student0)`|`a`"));
+        assertFalse(expected.contains(RCHAIN + "|`intelligence(student0)`|`diff(course0)`"));
+        assertFalse(expected.contains(RCHAIN + "|`diff(course0)`|`intelligence(student0)`"));
+    }
+
+    /*
+     * a_CT with intelligence and diff correlated through grade
+     */
+    static void writeCT(MemoryDatabase db, Random random) {
+        String[] columns = { "MULT", "diff(course0)", "intelligence(student0)", "a", "grade(course0,student0)" };
+        MemoryDatabase.Table table = db.createTable("test_CT", "a_CT", columns);
+        for (String diff : new String[] { "1", "2" }) {
+            for (String intelligence : new String[] { "1", "2" }) {
+                table.rows.add(new Object[] { (long) (50 + random.nextInt(10)), diff, intelligence, "F", "N/A" });
+                for (String grade : new String[] { "A", "B", "C" }) {
+                    int match = (grade.equals("A") ? 2 : grade.equals("B") ? 1 : 0) - Integer.parseInt(diff) + Integer.parseInt(intelligence);
+                    table.rows.add(new Object[] { (long) (5 + 40 * Math.max(0, match) + random.nextInt(5)), diff, intelligence, "T", grade });
+                }
+            }
+        }
+    }
+
+    /*
+     * the .csv file of CSVPrecomputor.writeCSV, the backticks are not part of the column names
+     */
+    static void writeCSV(MemoryDatabase.Table table, String file) throws Exception {
+        BufferedWriter csv = new BufferedWriter(new FileWriter(file));
+        for (int c = 0; c < table.columns.size(); c++) {
+            csv.write(table.columns.get(c) + (c < table.columns.size() - 1 ? "\t" : "\n"));
+        }
+        for (Object[] row : table.rows) {
+            for (int c = 0; c < row.length; c++) {
+                csv.write(row[c] + (c < row.length - 1 ? "\t" : "\n"));
+            }
+        }
+        csv.close();
+    }
+
+    static ArrayList<String> rows(MemoryDatabase.Table table) {
+        ArrayList<String> rows = new ArrayList<String>();
+        for (Object[] row : table.rows) {
+            rows.add(row[0] + "|" + row[1] + "|" + row[2]);
+        }
+        Collections.sort(rows);
+        return rows;
+    }
+
+    public static Test suite() {
+        return new TestSuite(TestBayesNet_Learning_main.class);
+    }
+}
@@ -0,0 +1,269 @@
+package ct;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/*
+ * In-memory parameter learning, the replacement for the group by / alter / update statements that CP.haspar_update,
+ * CP.nopar_update and local_CP.new_local_haspar run per node.
+ *
+ * estimate takes the counts of every family from the count index of a CT table (CountIndex), which counts the families
+ * it does not have yet in one pass over the table, then for each family:
+ *   MULT       = sum of MULT of the CT table per (child, parents)
+ *   ParentSum  = sum of MULT per parent state (the total of the table for a node without parents)
+ *   CP         = MULT / ParentSum
+ *   local_mult = MULT / local, local is the product of the Tuples of the pvars not in the family (Pvars_Not_In_Family),
+ *                truncated for a node without parents (nopar_update divides in Java) and rounded otherwise (haspar_update
+ *                stores mult/local into a bigint column)
+ *   likelihood = log(CP) * local_mult
+ *   prior      = sum of local_mult per child value / sum of local_mult (= CP without parents)
+ * CP and prior are rounded to the float(7,6) and likelihood to the float(20,2) of the _CP tables, and like in SQL a
+ * CP of 0/0 and the likelihood of a CP of 0 are NULL.
+ * The result is written with multi-row inserts (CTWriter.RowWriter) per _CP table and one batch update of Scores.
+ */
+public class CPEstimator {
+
+    // columns of a _CP table, see write
+    public static final String MULT = "MULT", CHILD = "child", PARENTS = "parents", PARENT_SUM = "ParentSum",
+            LOCAL_MULT = "local_mult", CP = "CP", LIKELIHOOD = "likelihood", PRIOR = "prior";
+
+    public static class Family {
+        final String child;
+        final String[] parents;
+        long local = 1;
+
+        CTTable counts; // columns: child, parents...; shared with the CountIndex, not changed
+        long[] parentSum, localMult;
+        double[] cp, likelihood, prior; // NaN is NULL
+        double logLikelihood;
+        long sampleSize, bigSampleSize;
+
+        /*
+         * child and parents as in Path_BayesNets, with or without backticks
+         */
+        public Family(String child, String[] parents) {
+            this.child = child;
+            this.parents = parents;
+        }
+
+        /*
+         * one row of Pvars_Not_In_Family for the child
+         */
+        public void addTuples(long tuples) {
+            local *= tuples;
+        }
+
+        public String getChild() {
+            return child;
+        }
+
+        public CTTable getCounts() {
+            return counts;
+        }
+
+        public double getLogLikelihood() {
+            return logLikelihood;
+        }
+
+        public long getSampleSize() {
+            return sampleSize;
+        }
+
+        public long getBigSampleSize() {
+            return bigSampleSize;
+        }
+    }
+
+    /*
+     * counts all families in one pass over ct and computes their CP, local_mult, likelihood and prior
+     */
+    public static void estimate(CTTable ct, List<Family> families) {
+        estimate(new CountIndex(ct), families);
+    }
+
+    /*
+     * takes the counts of all families from the count index of a CT table (the ones it does not have yet are counted
+     * in one pass) and computes their CP, local_mult, likelihood and prior
+     */
+    public static void estimate(CountIndex index, List<Family> families) {
+        String[][] columns = new String[families.size()][];
+        for (int f = 0; f < columns.length; f++) {
+            Family family = families.get(f);
+            columns[f] = new String[family.parents.length + 1];
+            columns[f][0] = strip(family.child);
+            for (int p = 0; p < family.parents.length; p++) {
+                columns[f][p + 1] = strip(family.parents[p]);
+            }
+        }
+        CTTable[] counts = index.marginals(columns);
+        for (int f = 0; f < columns.length; f++) {
+            families.get(f).counts = counts[f];
+            compute(families.get(f));
+        }
+    }
+
+    static void compute(Family family) {
+        CTTable counts = family.counts;
+        int n = counts.getRowCount();
+        int parents = family.parents.length;
+
+        // ParentSum: group by of the family counts on the parent columns
+        family.parentSum = new long[n];
+        if (parents == 0) {
+            long total = 0;
+            for (int r = 0; r < n; r++) {
+                total += counts.getMult(r);
+            }
+            Arrays.fill(family.parentSum, total);
+        } else {
+            String[] parentColumns = new String[parents];
+            ValueDictionary[] dictionaries = new ValueDictionary[parents];
+            for (int p = 0; p < parents; p++) {
+                parentColumns[p] = counts.getColumns()[p + 1];
+                dictionaries[p] = counts.getDictionaries()[p + 1];
+            }
+            CTTable parentCounts = new CTTable(parentColumns, dictionaries);
+            int[] parentRow = new int[n];
+            int[] tuple = new int[parents];
+            for (int r = 0; r < n; r++) {
+                for (int p = 0; p < parents; p++) {
+                    tuple[p] = counts.getCode(r, p + 1);
+                }
+                parentRow[r] = parentCounts.addOrAccumulate(tuple, counts.getMult(r));
+            }
+            for (int r = 0; r < n; r++) {
+                family.parentSum[r] = parentCounts.getMult(parentRow[r]);
+            }
+        }
+
+        family.cp = new double[n];
+        family.localMult = new long[n];
+        family.likelihood = new double[n];
+        family.logLikelihood = 0;
+        family.sampleSize = 0;
+        family.bigSampleSize = 0;
+        long[] childSum = new long[counts.getDictionaries()[0].size()];
+        for (int r = 0; r < n; r++) {
+            long m = counts.getMult(r);
+            family.cp[r] = family.parentSum[r] == 0 ? Double.NaN : round((double) m / family.parentSum[r], 6);
+            family.localMult[r] = parents == 0 ? m / family.local : Math.round((double) m / family.local);
+            family.likelihood[r] = family.cp[r] > 0 ? round(Math.log(family.cp[r]) * family.localMult[r], 2) : Double.NaN;
+            if (!Double.isNaN(family.likelihood[r])) {
+                family.logLikelihood += family.likelihood[r];
+            }
+            family.sampleSize += family.localMult[r];
+            family.bigSampleSize += m;
+            childSum[counts.getCode(r, 0)] += family.localMult[r];
+        }
+
+        family.prior = new double[n];
+        for (int r = 0; r < n; r++) {
+            if (parents == 0) {
+                family.prior[r] = family.cp[r];
+            } else {
+                family.prior[r] = family.sampleSize == 0 ? Double.NaN : round((double) childSum[counts.getCode(r, 0)] / family.sampleSize, 6);
+            }
+        }
+    }
+
+    /*
+     * (re)creates table with the given columns of family and writes its rows, PARENTS stands for all parent columns.
+     * The child and parent columns are varchars, the other ones have the types of the old _CP tables.
+     */
+    public static void write(Connection conn, Family family, String table, String[] layout) throws SQLException {
+        CTTable counts = family.counts;
+        String createString = "create table " + table + " ( ";
+        ArrayList<String> columns = new ArrayList<String>();
+        String keyList = "";
+        for (String column : layout) {
+            if (column.equals(CHILD) || column.equals(PARENTS)) {
+                int first = column.equals(CHILD) ? 0 : 1;
+                int last = column.equals(CHILD) ? 1 : counts.getColumnCount();
+                for (int c = first; c < last; c++) {
+                    String name = "`" + counts.getColumns()[c] + "`";
+                    int length = Math.max(5, counts.getDictionaries()[c].maxLength());
+                    createString += (columns.isEmpty() ? "" : ", ") + name + " varchar(" + length + ")";
+                    columns.add(name);
+                    keyList += (keyList.isEmpty() ? "" : ", ") + name;
+                }
+            } else {
+                createString += (columns.isEmpty() ? "" : ", ") + "`" + column + "` " + type(column);
+                columns.add(column);
+            }
+        }
+        createString += ", KEY " + table + " ( " + keyList + " ) )";
+
+        Statement st = conn.createStatement();
+        st.execute("drop table if exists " + table + ";");
+        st.execute(createString + ";");
+        st.close();
+
+        CTWriter.RowWriter writer = new CTWriter.RowWriter(conn, table, columns.toArray(new String[columns.size()]));
+        Object[] values = new Object[columns.size()];
+        for (int r = 0; r < counts.getRowCount(); r++) {
+            int p = 0;
+            for (String column : layout) {
+                if (column.equals(CHILD)) {
+                    values[p++] = counts.getValue(r, 0);
+                } else if (column.equals(PARENTS)) {
+                    for (int c = 1; c < counts.getColumnCount(); c++) {
+                        values[p++] = counts.getValue(r, c);
+                    }
+                } else if (column.equals(MULT)) {
+                    values[p++] = counts.getMult(r);
+                } else if (column.equals(PARENT_SUM)) {
+                    values[p++] = family.parentSum[r];
+                } else if (column.equals(LOCAL_MULT)) {
+                    values[p++] = family.localMult[r];
+                } else if (column.equals(CP)) {
+                    values[p++] = family.cp[r];
+                } else if (column.equals(LIKELIHOOD)) {
+                    values[p++] = family.likelihood[r];
+                } else {
+                    values[p++] = family.prior[r];
+                }
+            }
+            writer.add(values);
+        }
+        writer.close();
+    }
+
+    /*
+     * LogLikelihood, SampleSize and Big_SampleSize of every family in Scores, as one batch
+     */
+    public static void updateScores(Connection conn, List<Family> families) throws SQLException {
+        PreparedStatement ps = conn.prepareStatement("update Scores set LogLikelihood = ?, SampleSize = ?, Big_SampleSize = ? where Scores.Fid = ?;");
+        for (Family family : families) {
+            ps.setDouble(1, family.logLikelihood);
+            ps.setLong(2, family.sampleSize);
+            ps.setLong(3, family.bigSampleSize);
+            ps.setString(4, family.child);
+            ps.addBatch();
+        }
+        ps.executeBatch();
+        ps.close();
+    }
+
+    static String type(String column) {
+        if (column.equals(CP) || column.equals(PRIOR)) {
+            return "float(7,6)";
+        } else if (column.equals(LIKELIHOOD)) {
+            return "float(20,2)";
+        }
+        return "bigint(20)";
+    }
+
+    static double round(double value, int digits) {
+        double scale = Math.pow(10, digits);
+        return Math.round(value * scale) / scale;
+    }
+
+    static String strip(String name) {
+        return name.replace("`", "");
+    }
+}
@@ -0,0 +1,149 @@
+package ct;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/*
+ * The CT tables that were read or built once in this run, with their count index (CountIndex), shared between
+ * structure learning (BayesBaseH), parameter learning (CP) and evaluation (KLD), so a CT table is not read again from
+ * _CT and its counts are not computed again for CP or KLD.
+ *
+ * Tables are kept by schema and table name, e.g. "unielwin_CT.a,b_CT". A table that is rebuilt or changed must be
+ * invalidated (or registered again), BayesBaseCT_SortMerge.CTGenerator drops the tables of its _CT schema and
+ * BayesBaseCT_Delta the ones it writes back.
+ *
+ * The cache holds at most maxBytes (estimated, see CountIndex.bytes). When a table is added and it holds more, the
+ * least recently used entries are evicted: a table that load read from the database is dropped and read again when
+ * it is asked for, a registered table (kept in memory by the CT engine, maybe not in the database) keeps its table
+ * and loses what its index computed from it.
+ */
+public class CTCache {
+
+    // least recently used first
+    static final LinkedHashMap<String, CountIndex> indexes = new LinkedHashMap<String, CountIndex>(16, 0.75f, true);
+    // the keys of the tables that load read, they can be read again
+    static final HashSet<String> loaded = new HashSet<String>();
+    static long maxBytes = Runtime.getRuntime().maxMemory() / 4;
+    static int evictions;
+
+    /*
+     * makes table the shared table for schema.name, replacing an older one, and returns its index
+     */
+    public static synchronized CountIndex register(String schema, String name, CTTable table) {
+        String key = key(schema, name);
+        CountIndex index = new CountIndex(table);
+        indexes.put(key, index);
+        loaded.remove(key);
+        evict(key);
+        return index;
+    }
+
+    /*
+     * the index of the shared table for schema.name, or null
+     */
+    public static synchronized CountIndex get(String schema, String name) {
+        return indexes.get(key(schema, name));
+    }
+
+    /*
+     * the index of the shared table for schema.name, reading the table with conn if there is none yet
+     */
+    public static synchronized CountIndex load(Connection conn, String schema, String name) throws SQLException {
+        String key = key(schema, name);
+        CountIndex index = indexes.get(key);
+        if (index == null) {
+            index = new CountIndex(CTCursor.readTable(conn, "`" + strip(schema) + "`.`" + strip(name) + "`", new DictionarySet()));
+            indexes.put(key, index);
+            loaded.add(key);
+            evict(key);
+        }
+        return index;
+    }
+
+    /*
+     * drops the shared table for schema.name, e.g. after it was rebuilt in the database
+     */
+    public static synchronized void invalidate(String schema, String name) {
+        String key = key(schema, name);
+        indexes.remove(key);
+        loaded.remove(key);
+    }
+
+    /*
+     * drops the shared tables of schema
+     */
+    public static synchronized void invalidate(String schema) {
+        String prefix = strip(schema) + ".";
+        for (Iterator<String> keys = indexes.keySet().iterator(); keys.hasNext();) {
+            String key = keys.next();
+            if (key.startsWith(prefix)) {
+                keys.remove();
+                loaded.remove(key);
+            }
+        }
+    }
+
+    public static synchronized void clear() {
+        indexes.clear();
+        loaded.clear();
+    }
+
+    /*
+     * the bound of the cache, evicting at once if it holds more
+     */
+    public static synchronized void setMaxBytes(long bytes) {
+        maxBytes = bytes;
+        evict(null);
+    }
+
+    /*
+     * estimated memory of the cached tables and their indexes
+     */
+    public static synchronized long bytes() {
+        long bytes = 0;
+        for (CountIndex index : indexes.values()) {
+            bytes += index.bytes();
+        }
+        return bytes;
+    }
+
+    public static synchronized int getEvictionCount() {
+        return evictions;
+    }
+
+    /*
+     * evicts least recently used entries other than keep until the cache holds at most maxBytes
+     */
+    static void evict(String keep) {
+        long bytes = bytes();
+        for (Iterator<Map.Entry<String, CountIndex>> entries = indexes.entrySet().iterator(); bytes > maxBytes && entries.hasNext();) {
+            Map.Entry<String, CountIndex> entry = entries.next();
+            if (entry.getKey().equals(keep)) {
+                continue;
+            }
+            if (loaded.remove(entry.getKey())) {
+                bytes -= entry.getValue().bytes();
+                entries.remove();
+            } else {
+                long freed = entry.getValue().trim();
+                if (freed == 0) {
+                    continue;
+                }
+                bytes -= freed;
+            }
+            evictions++;
+        }
+    }
+
+    static String key(String schema, String name) {
+        return strip(schema) + "." + strip(name);
+    }
+
+    static String strip(String name) {
+        return name.replace("`", "");
+    }
+}
@@ -0,0 +1,123 @@
+package ct;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+
+import database.ConnectionPool;
+
+/*
+ * Forward-only cursor over a query of the form "select MULT, col1, ..., colN from ...".
+ * Rows are fetched from a server side cursor in blocks bounded by ConnectionPool.scanMemory, so neither side of a
+ * merge is ever buffered client side as a whole, and every value is encoded through the dictionaries given to the
+ * constructor.
+ * Note: on a connection that does not come from ConnectionPool the rows are streamed one at a time (fetch size
+ * Integer.MIN_VALUE), and while such a cursor is open no other statement can be run on the same connection.
+ */
+public class CTCursor {
+
+    private final Statement st;
+    private final ResultSet rs;
+    private final ValueDictionary[] dictionaries;
+    private final int[] tuple;
+    private long mult;
+
+    public CTCursor(Connection conn, String query, ValueDictionary[] dictionaries) throws SQLException {
+        this.dictionaries = dictionaries;
+        this.tuple = new int[dictionaries.length];
+        st = ConnectionPool.scanStatement(conn, "CTCursor", dictionaries.length + 1);
+        rs = st.executeQuery(query);
+    }
+
+    public boolean next() throws SQLException {
+        if (!rs.next()) {
+            return false;
+        }
+        mult = rs.getLong(1);
+        for (int c = 0; c < tuple.length; c++) {
+            tuple[c] = dictionaries[c].encode(rs.getString(c + 2));
+        }
+        return true;
+    }
+
+    /*
+     * codes of the current row, the array is reused by next()
+     */
+    public int[] getTuple() {
+        return tuple;
+    }
+
+    public long getMult() {
+        return mult;
+    }
+
+    public void close() throws SQLException {
+        rs.close();
+        st.close();
+    }
+
+    /*
+     * reads a whole table, all columns except MULT become CT columns
+     * tables without a MULT column (e.g. the _join tables) are read with MULT = 1
+     */
+    public static CTTable readTable(Connection conn, String table, DictionarySet dictionarySet) throws SQLException {
+        ArrayList<String> columns = showColumns(conn, table);
+        boolean hasMult = columns.size() > ctColumns(columns).length;
+
+        CTTable result = new CTTable(ctColumns(columns), dictionarySet);
+        String selectString = hasMult ? "MULT" : "1";
+        for (String col : result.getColumns()) {
+            selectString += " , `" + col + "`";
+        }
+        readInto(conn, "select " + selectString + " from " + table + " ;", result);
+        return result;
+    }
+
+    /*
+     * a table with the CT columns of table and no rows, for changes to table that are computed without reading it
+     */
+    public static CTTable emptyTable(Connection conn, String table, DictionarySet dictionarySet) throws SQLException {
+        return new CTTable(ctColumns(showColumns(conn, table)), dictionarySet);
+    }
+
+    /*
+     * all columns except MULT
+     */
+    static String[] ctColumns(ArrayList<String> columns) {
+        ArrayList<String> result = new ArrayList<String>();
+        for (String col : columns) {
+            if (!col.equalsIgnoreCase("MULT")) {
+                result.add(col);
+            }
+        }
+        return result.toArray(new String[result.size()]);
+    }
+
+    static ArrayList<String> showColumns(Connection conn, String table) throws SQLException {
+        ArrayList<String> columns = new ArrayList<String>();
+        Statement st = conn.createStatement();
+        ResultSet rst = st.executeQuery("show columns from " + table + " ;");
+        while (rst.next()) {
+            columns.add(rst.getString(1));
+        }
+        rst.close();
+        st.close();
+        return columns;
+    }
+
+    /*
+     * reads the whole query into table (whose dictionaries are used for encoding)
+     */
+    public static void readInto(Connection conn, String query, CTTable table) throws SQLException {
+        CTCursor cursor = new CTCursor(conn, query, table.getDictionaries());
+        try {
+            while (cursor.next()) {
+                table.addRow(cursor.getTuple(), cursor.getMult());
+            }
+        } finally {
+            cursor.close();
+        }
+    }
+}
@@ -0,0 +1,260 @@
+package ct;
+
+/*
+ * In-memory versions of the relational steps of the Moebius transform in BayesBaseCT_SortMerge.
+ *   groupBy      : the _flat tables    (select sum(MULT), cols from cur_CT group by cols)
+ *   product      : the _star tables    (select t1.MULT * ... * tn.MULT, cols from t1, ..., tn where member = "T" ...)
+ *   subtract     : the _false tables   (Sort_merge3 / Sort_merge_stream)
+ *   unionWithJoin: the _CT tables      (select cols from cur_CT union select cols from _false, rnid_join)
+ * groupBy and unionWithJoin are linear in the MULTs and product is linear in each table, so with productDelta and
+ * difference the same steps also turn signed changes of the _counts tables into changes of the _CT tables.
+ * Columns are matched by name, so all tables must have been built from the same DictionarySet.
+ */
+public class CTOperations {
+
+    public static CTTable groupBy(CTTable src, String[] columns, DictionarySet dicts) {
+        int[] source = columnIndexes(src, columns);
+        CTTable result = new CTTable(columns, dicts);
+        int[] tuple = new int[columns.length];
+        int rows = src.getRowCount();
+        for (int r = 0; r < rows; r++) {
+            for (int c = 0; c < columns.length; c++) {
+                tuple[c] = src.getCode(r, source[c]);
+            }
+            result.addOrAccumulate(tuple, src.getMult(r));
+        }
+        return result;
+    }
+
+    /*
+     * cross product of tables, keeping only the rows where every column in trueColumns is "T",
+     * MULT is the product of the MULTs, each select column is taken from the first table that has it
+     */
+    public static CTTable product(CTTable[] tables, String[] trueColumns, String[] select, DictionarySet dicts) {
+        int k = tables.length;
+
+        // filter every table on the "T" columns it contains
+        int[][] rowLists = new int[k][];
+        for (int t = 0; t < k; t++) {
+            rowLists[t] = filterTrue(tables[t], trueColumns, dicts);
+        }
+        for (String col : trueColumns) {
+            if (findTable(tables, col) < 0) {
+                throw new IllegalArgumentException("Unknown column " + col + " in where clause of star table");
+            }
+        }
+
+        int[] sourceTable = new int[select.length];
+        int[] sourceColumn = new int[select.length];
+        for (int c = 0; c < select.length; c++) {
+            sourceTable[c] = findTable(tables, select[c]);
+            if (sourceTable[c] < 0) {
+                throw new IllegalArgumentException("Unknown column " + select[c] + " in select list of star table");
+            }
+            sourceColumn[c] = tables[sourceTable[c]].indexOfColumn(select[c]);
+        }
+
+        CTTable result = new CTTable(select, dicts);
+        for (int t = 0; t < k; t++) {
+            if (rowLists[t].length == 0) {
+                return result;
+            }
+        }
+
+        int[] position = new int[k];
+        int[] tuple = new int[select.length];
+        while (true) {
+            long m = 1;
+            for (int t = 0; t < k; t++) {
+                m *= tables[t].getMult(rowLists[t][position[t]]);
+            }
+            for (int c = 0; c < select.length; c++) {
+                int t = sourceTable[c];
+                tuple[c] = tables[t].getCode(rowLists[t][position[t]], sourceColumn[c]);
+            }
+            result.addRow(tuple, m);
+
+            // odometer over the row lists, last table changes fastest
+            int t = k - 1;
+            while (t >= 0 && ++position[t] == rowLists[t].length) {
+                position[t] = 0;
+                t--;
+            }
+            if (t < 0) {
+                break;
+            }
+        }
+        return result;
+    }
+
+    /*
+     * star - flat, with the semantics of Sort_merge3:
+     * matching rows get star.MULT - flat.MULT, rows only in star are kept, rows only in flat are dropped
+     */
+    public static CTTable subtract(CTTable star, CTTable flat) {
+        String[] columns = star.getColumns();
+        int[] flatIndex = columnIndexes(flat, columns);
+        if (flat.getColumnCount() != columns.length) {
+            throw new IllegalArgumentException("star and flat tables have different columns");
+        }
+        CTTable result = star.emptyCopy();
+        int[] tuple = new int[columns.length];
+        int[] probe = new int[columns.length];
+        int rows = star.getRowCount();
+        for (int r = 0; r < rows; r++) {
+            for (int c = 0; c < columns.length; c++) {
+                tuple[c] = star.getCode(r, c);
+                probe[flatIndex[c]] = tuple[c];
+            }
+            int match = flat.find(probe);
+            long m = star.getMult(r);
+            if (match >= 0) {
+                m -= flat.getMult(match);
+            }
+            result.addRow(tuple, m);
+        }
+        return result;
+    }
+
+    /*
+     * rows of ct, followed by the rows of falseTable x join projected onto the columns of ct
+     */
+    public static CTTable unionWithJoin(CTTable ct, CTTable falseTable, CTTable join) {
+        String[] columns = ct.getColumns();
+        int[] sourceTable = new int[columns.length];
+        int[] sourceColumn = new int[columns.length];
+        CTTable[] parts = new CTTable[] { falseTable, join };
+        for (int c = 0; c < columns.length; c++) {
+            sourceTable[c] = findTable(parts, columns[c]);
+            if (sourceTable[c] < 0) {
+                throw new IllegalArgumentException("Column " + columns[c] + " is neither in the false table nor in the join table");
+            }
+            sourceColumn[c] = parts[sourceTable[c]].indexOfColumn(columns[c]);
+        }
+
+        CTTable result = ct.emptyCopy();
+        int[] tuple = new int[columns.length];
+        int rows = ct.getRowCount();
+        for (int r = 0; r < rows; r++) {
+            for (int c = 0; c < columns.length; c++) {
+                tuple[c] = ct.getCode(r, c);
+            }
+            result.addRow(tuple, ct.getMult(r));
+        }
+        int[] row = new int[2];
+        for (row[0] = 0; row[0] < falseTable.getRowCount(); row[0]++) {
+            for (row[1] = 0; row[1] < join.getRowCount(); row[1]++) {
+                for (int c = 0; c < columns.length; c++) {
+                    tuple[c] = parts[sourceTable[c]].getCode(row[sourceTable[c]], sourceColumn[c]);
+                }
+                result.addRow(tuple, falseTable.getMult(row[0]) * join.getMult(row[1]));
+            }
+        }
+        return result;
+    }
+
+    /*
+     * change of product(tables, ...) when every table t changes by deltas[t] (null: no change):
+     * the sum over the nonempty sets S of changed tables of the product with deltas[t] for t in S and tables[t] otherwise
+     */
+    public static CTTable productDelta(CTTable[] tables, CTTable[] deltas, String[] trueColumns, String[] select, DictionarySet dicts) {
+        CTTable result = new CTTable(select, dicts);
+        int k = tables.length;
+        CTTable[] parts = new CTTable[k];
+        for (int mask = 1; mask < (1 << k); mask++) {
+            boolean changed = true;
+            for (int t = 0; t < k; t++) {
+                boolean inS = (mask & (1 << t)) != 0;
+                if (inS && (deltas[t] == null || deltas[t].getRowCount() == 0)) {
+                    changed = false;
+                    break;
+                }
+                parts[t] = inS ? deltas[t] : tables[t];
+            }
+            if (changed) {
+                accumulate(result, product(parts, trueColumns, select, dicts));
+            }
+        }
+        return result;
+    }
+
+    /*
+     * a - b as signed changes: rows only in b are kept with -MULT (subtract drops them, which is right for star - flat
+     * but not for the change of star minus the change of flat)
+     */
+    public static CTTable difference(CTTable a, CTTable b) {
+        CTTable result = a.emptyCopy();
+        accumulate(result, a);
+        int[] index = columnIndexes(b, a.getColumns());
+        int[] tuple = new int[index.length];
+        for (int r = 0; r < b.getRowCount(); r++) {
+            for (int c = 0; c < index.length; c++) {
+                tuple[c] = b.getCode(r, index[c]);
+            }
+            result.addOrAccumulate(tuple, -b.getMult(r));
+        }
+        return result;
+    }
+
+    /*
+     * adds the rows of delta to the rows of target with the same values, columns are matched by name
+     */
+    public static void accumulate(CTTable target, CTTable delta) {
+        int[] index = columnIndexes(delta, target.getColumns());
+        int[] tuple = new int[index.length];
+        for (int r = 0; r < delta.getRowCount(); r++) {
+            for (int c = 0; c < index.length; c++) {
+                tuple[c] = delta.getCode(r, index[c]);
+            }
+            target.addOrAccumulate(tuple, delta.getMult(r));
+        }
+    }
+
+    static int[] columnIndexes(CTTable table, String[] columns) {
+        int[] index = new int[columns.length];
+        for (int c = 0; c < columns.length; c++) {
+            index[c] = table.indexOfColumn(columns[c]);
+            if (index[c] < 0) {
+                throw new IllegalArgumentException("Unknown column " + columns[c]);
+            }
+        }
+        return index;
+    }
+
+    private static int findTable(CTTable[] tables, String column) {
+        for (int t = 0; t < tables.length; t++) {
+            if (tables[t].indexOfColumn(column) >= 0) {
+                return t;
+            }
+        }
+        return -1;
+    }
+
+    private static int[] filterTrue(CTTable table, String[] trueColumns, DictionarySet dicts) {
+        int n = 0;
+        int[] cols = new int[trueColumns.length];
+        int[] codes = new int[trueColumns.length];
+        for (String col : trueColumns) {
+            int index = table.indexOfColumn(col);
+            if (index >= 0) {
+                cols[n] = index;
+                codes[n] = dicts.get(col).lookup("T");
+                n++;
+            }
+        }
+        int[] rows = new int[table.getRowCount()];
+        int kept = 0;
+        for (int r = 0; r < table.getRowCount(); r++) {
+            boolean keep = true;
+            for (int i = 0; i < n && keep; i++) {
+                keep = table.getCode(r, cols[i]) == codes[i];
+            }
+            if (keep) {
+                rows[kept++] = r;
+            }
+        }
+        int[] result = new int[kept];
+        System.arraycopy(rows, 0, result, 0, kept);
+        return result;
+    }
+}
@@ -0,0 +1,306 @@
+package ct;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import edu.cmu.tetrad.data.ColtDataSet;
+import edu.cmu.tetrad.data.DataSet;
+import edu.cmu.tetrad.data.DiscreteVariable;
+import edu.cmu.tetrad.graph.Node;
+
+/*
+ * Binary columnar snapshot of a CT table (.ctb), the replacement for the tab separated .csv files of CSVPrecomputor.
+ *
+ * Layout (big endian):
+ *   "BBCT" version columns rows
+ *   per column: name, number of categories, categories, code width in bytes (1, 2 or 4)
+ *   per column: rows codes of that width, the index into the categories of the column
+ *   rows longs: MULT
+ * Strings are an int length followed by UTF-8 bytes.
+ *
+ * The file holds exactly what DataReader.parseTabular makes of the csv file: only rows with MULT > 0,
+ * SQL NULL written as the category "null", categories sorted with String.compareTo, "" and "*" are missing values.
+ * Every column is read back as a DiscreteVariable, which is what the CT tables of BayesBase contain.
+ */
+public class CTSnapshot {
+
+    static final int MAGIC = 0x42424354; // "BBCT"
+    static final int VERSION = 1;
+    public static final String EXTENSION = ".ctb";
+
+    static final Charset UTF8 = Charset.forName("UTF-8");
+    static final String MISSING_VALUE_MARKER = "*";
+
+    // largest region mapped at once, a multiple of 8 so that a MULT value is never split
+    static final long MAX_MAPPED = 1L << 30;
+
+    /*
+     * writes the rows of table with MULT > 0 to file
+     */
+    public static void write(CTTable table, File file) throws IOException {
+        int columns = table.getColumnCount();
+        int[] kept = keptRows(table);
+
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(columns);
+            out.writeInt(kept.length);
+
+            // dictionary codes are in order of first appearance, the snapshot codes are the sorted category order
+            int[][] remap = new int[columns][];
+            int[] widths = new int[columns];
+            for (int c = 0; c < columns; c++) {
+                List<String> categories = new ArrayList<String>();
+                remap[c] = categories(table, c, kept, categories);
+                widths[c] = width(categories.size());
+                writeString(out, table.getColumns()[c]);
+                out.writeInt(categories.size());
+                for (String category : categories) {
+                    writeString(out, category);
+                }
+                out.writeByte(widths[c]);
+            }
+
+            for (int c = 0; c < columns; c++) {
+                int[] codes = table.getColumnCodes(c);
+                for (int r : kept) {
+                    int code = remap[c][codes[r]];
+                    switch (widths[c]) {
+                        case 1: out.writeByte(code); break;
+                        case 2: out.writeShort(code); break;
+                        default: out.writeInt(code);
+                    }
+                }
+            }
+
+            for (int r : kept) {
+                out.writeLong(table.getMult(r));
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    /*
+     * snapshot of a table in the _CT database, e.g. `a,b_CT` or `student0_counts`
+     */
+    public static void writeTable(Connection conn, String table, File file) throws SQLException, IOException {
+        write(CTCursor.readTable(conn, table, new DictionarySet()), file);
+    }
+
+    /*
+     * maps file into memory and builds a DataSet with one DiscreteVariable per column and MULT as the multipliers
+     */
+    public static DataSet read(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        FileChannel channel = raf.getChannel();
+        try {
+            long position = 0;
+            MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(channel.size(), MAX_MAPPED));
+            if (header.getInt() != MAGIC) {
+                throw new IOException("Not a CT snapshot: " + file);
+            }
+            int version = header.getInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported CT snapshot version " + version + ": " + file);
+            }
+            int columns = header.getInt();
+            int rows = header.getInt();
+
+            List<Node> variables = new ArrayList<Node>();
+            int[] widths = new int[columns];
+            int[][] values = new int[columns][];
+            for (int c = 0; c < columns; c++) {
+                String name = readString(header).replaceAll(" ", "_");
+                String[] categories = new String[header.getInt()];
+                for (int i = 0; i < categories.length; i++) {
+                    categories[i] = readString(header);
+                }
+                widths[c] = header.get();
+                values[c] = missingToCode(categories);
+                variables.add(new DiscreteVariable(name, withoutMissing(categories)));
+            }
+            position = header.position();
+
+            DataSet dataSet = new ColtDataSet(rows, variables);
+            for (int c = 0; c < columns; c++) {
+                long length = (long) rows * widths[c];
+                for (long done = 0; done < length; ) {
+                    long n = Math.min(length - done, MAX_MAPPED);
+                    ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position + done, n);
+                    int first = (int) (done / widths[c]);
+                    int count = (int) (n / widths[c]);
+                    for (int r = first; r < first + count; r++) {
+                        int code;
+                        switch (widths[c]) {
+                            case 1: code = buffer.get() & 0xff; break;
+                            case 2: code = buffer.getShort() & 0xffff; break;
+                            default: code = buffer.getInt();
+                        }
+                        dataSet.setInt(r, c, values[c][code]);
+                    }
+                    done += n;
+                }
+                position += length;
+            }
+
+            long length = (long) rows * 8;
+            for (long done = 0; done < length; ) {
+                long n = Math.min(length - done, MAX_MAPPED);
+                ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position + done, n);
+                int first = (int) (done / 8);
+                int count = (int) (n / 8);
+                for (int r = first; r < first + count; r++) {
+                    dataSet.setMultiplier(r, buffer.getLong());
+                }
+                done += n;
+            }
+            return dataSet;
+        } finally {
+            channel.close();
+            raf.close();
+        }
+    }
+
+    /*
+     * the DataSet read(file) returns for a snapshot of table, built without the file
+     */
+    public static DataSet toDataSet(CTTable table) {
+        int columns = table.getColumnCount();
+        int[] kept = keptRows(table);
+
+        List<Node> variables = new ArrayList<Node>();
+        int[][] values = new int[columns][];
+        for (int c = 0; c < columns; c++) {
+            List<String> categories = new ArrayList<String>();
+            int[] remap = categories(table, c, kept, categories);
+            String[] sorted = categories.toArray(new String[categories.size()]);
+            int[] codeToValue = missingToCode(sorted);
+            values[c] = new int[remap.length];
+            for (int code = 0; code < remap.length; code++) {
+                values[c][code] = sorted.length == 0 ? 0 : codeToValue[remap[code]];
+            }
+            variables.add(new DiscreteVariable(table.getColumns()[c].replaceAll(" ", "_"), withoutMissing(sorted)));
+        }
+
+        DataSet dataSet = new ColtDataSet(kept.length, variables);
+        for (int c = 0; c < columns; c++) {
+            int[] codes = table.getColumnCodes(c);
+            for (int r = 0; r < kept.length; r++) {
+                dataSet.setInt(r, c, values[c][codes[kept[r]]]);
+            }
+        }
+        for (int r = 0; r < kept.length; r++) {
+            dataSet.setMultiplier(r, table.getMult(kept[r]));
+        }
+        return dataSet;
+    }
+
+    static int[] keptRows(CTTable table) {
+        int[] rows = new int[table.getRowCount()];
+        int kept = 0;
+        for (int r = 0; r < table.getRowCount(); r++) {
+            if (table.getMult(r) > 0) {
+                rows[kept++] = r;
+            }
+        }
+        return Arrays.copyOf(rows, kept);
+    }
+
+    /*
+     * fills categories with the sorted distinct values of column c among the kept rows and
+     * returns the mapping from dictionary code to position in categories
+     */
+    static int[] categories(CTTable table, int c, int[] kept, List<String> categories) {
+        ValueDictionary dictionary = table.getDictionaries()[c];
+        int[] codes = table.getColumnCodes(c);
+        boolean[] used = new boolean[dictionary.size()];
+        for (int r : kept) {
+            used[codes[r]] = true;
+        }
+        for (int code = 0; code < used.length; code++) {
+            if (used[code]) {
+                categories.add(text(dictionary.decode(code)));
+            }
+        }
+        Collections.sort(categories);
+
+        int[] remap = new int[used.length];
+        for (int code = 0; code < used.length; code++) {
+            if (used[code]) {
+                remap[code] = Collections.binarySearch(categories, text(dictionary.decode(code)));
+            }
+        }
+        return remap;
+    }
+
+    /*
+     * the csv files have rs.getString(col) + "\t", so SQL NULL turns into "null"
+     */
+    static String text(String value) {
+        return value == null ? "null" : value;
+    }
+
+    static int width(int categories) {
+        if (categories <= 0xff) {
+            return 1;
+        } else if (categories <= 0xffff) {
+            return 2;
+        }
+        return 4;
+    }
+
+    static boolean isMissing(String category) {
+        return category.equals("") || category.equals(MISSING_VALUE_MARKER);
+    }
+
+    static List<String> withoutMissing(String[] categories) {
+        List<String> result = new ArrayList<String>();
+        for (String category : categories) {
+            if (!isMissing(category)) {
+                result.add(category);
+            }
+        }
+        return result;
+    }
+
+    /*
+     * snapshot code -> value in the DataSet, -99 for missing values as in DataReader
+     */
+    static int[] missingToCode(String[] categories) {
+        int[] result = new int[categories.length];
+        int next = 0;
+        for (int i = 0; i < categories.length; i++) {
+            result[i] = isMissing(categories[i]) ? -99 : next++;
+        }
+        return result;
+    }
+
+    static void writeString(DataOutputStream out, String s) throws IOException {
+        byte[] bytes = s.getBytes(UTF8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    static String readString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return new String(bytes, UTF8);
+    }
+}
@@ -0,0 +1,245 @@
+package ct;
+
+import java.util.Arrays;
+
+/*
+ * In-memory contingency table.
+ * Rows are dictionary encoded int tuples stored column by column (data[col][row]) next to a long MULT column,
+ * so a CT with millions of rows costs a few int arrays instead of millions of Strings.
+ * An open addressing hash index over the tuples is built on demand, it is used for subtraction and
+ * for group by (see addOrAccumulate).
+ */
+public class CTTable {
+
+    final String[] columns;
+    final ValueDictionary[] dictionaries;
+    int[][] data;
+    long[] mult;
+    int rows;
+
+    // open addressing index, slots hold row + 1, 0 means empty
+    private int[] slots;
+
+    public CTTable(String[] columns) {
+        this(columns, newDictionaries(columns.length));
+    }
+
+    public CTTable(String[] columns, DictionarySet dictionarySet) {
+        this(columns, dictionarySet.get(columns));
+    }
+
+    /*
+     * dictionaries are shared, not copied: tables that are compared with each other must use the same ones
+     */
+    public CTTable(String[] columns, ValueDictionary[] dictionaries) {
+        this.columns = columns;
+        this.dictionaries = dictionaries;
+        this.data = new int[columns.length][16];
+        this.mult = new long[16];
+        this.rows = 0;
+    }
+
+    /*
+     * empty table with the same columns and dictionaries as this one
+     */
+    public CTTable emptyCopy() {
+        return new CTTable(columns, dictionaries);
+    }
+
+    static ValueDictionary[] newDictionaries(int n) {
+        ValueDictionary[] dicts = new ValueDictionary[n];
+        for (int i = 0; i < n; i++) {
+            dicts[i] = new ValueDictionary();
+        }
+        return dicts;
+    }
+
+    public String[] getColumns() {
+        return columns;
+    }
+
+    public ValueDictionary[] getDictionaries() {
+        return dictionaries;
+    }
+
+    public int getColumnCount() {
+        return columns.length;
+    }
+
+    public int getRowCount() {
+        return rows;
+    }
+
+    public int getCode(int row, int col) {
+        return data[col][row];
+    }
+
+    public String getValue(int row, int col) {
+        return dictionaries[col].decode(data[col][row]);
+    }
+
+    public long getMult(int row) {
+        return mult[row];
+    }
+
+    public void setMult(int row, long value) {
+        mult[row] = value;
+    }
+
+    /*
+     * the codes of column col, only the first getRowCount() entries are valid
+     */
+    public int[] getColumnCodes(int col) {
+        return data[col];
+    }
+
+    public long[] getMults() {
+        return mult;
+    }
+
+    public int indexOfColumn(String name) {
+        for (int i = 0; i < columns.length; i++) {
+            if (columns[i].equals(name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /*
+     * appends a row, no duplicate check
+     */
+    public int addRow(int[] tuple, long m) {
+        if (rows == mult.length) {
+            grow();
+        }
+        for (int c = 0; c < columns.length; c++) {
+            data[c][rows] = tuple[c];
+        }
+        mult[rows] = m;
+        rows++;
+        if (slots != null) {
+            if (rows * 2 > slots.length) {
+                buildIndex();
+            } else {
+                insertSlot(rows - 1);
+            }
+        }
+        return rows - 1;
+    }
+
+    /*
+     * group by: adds m to the row equal to tuple, or appends a new row
+     */
+    public int addOrAccumulate(int[] tuple, long m) {
+        int row = find(tuple);
+        if (row >= 0) {
+            mult[row] += m;
+            return row;
+        }
+        return addRow(tuple, m);
+    }
+
+    /*
+     * returns the row equal to tuple, or -1
+     */
+    public int find(int[] tuple) {
+        if (slots == null) {
+            buildIndex();
+        }
+        int mask = slots.length - 1;
+        int pos = hash(tuple) & mask;
+        while (slots[pos] != 0) {
+            int row = slots[pos] - 1;
+            if (rowEquals(row, tuple)) {
+                return row;
+            }
+            pos = (pos + 1) & mask;
+        }
+        return -1;
+    }
+
+    /*
+     * removes the rows with MULT = 0, returns the number of removed rows
+     */
+    public int removeZeroRows() {
+        int kept = 0;
+        for (int r = 0; r < rows; r++) {
+            if (mult[r] != 0) {
+                if (kept != r) {
+                    for (int c = 0; c < columns.length; c++) {
+                        data[c][kept] = data[c][r];
+                    }
+                    mult[kept] = mult[r];
+                }
+                kept++;
+            }
+        }
+        int removed = rows - kept;
+        rows = kept;
+        if (removed > 0 && slots != null) {
+            buildIndex();
+        }
+        return removed;
+    }
+
+    public void buildIndex() {
+        int capacity = 16;
+        while (capacity < rows * 2) {
+            capacity <<= 1;
+        }
+        slots = new int[capacity * 2];
+        for (int r = 0; r < rows; r++) {
+            insertSlot(r);
+        }
+    }
+
+    private void insertSlot(int row) {
+        int mask = slots.length - 1;
+        int pos = hashRow(row) & mask;
+        while (slots[pos] != 0) {
+            pos = (pos + 1) & mask;
+        }
+        slots[pos] = row + 1;
+    }
+
+    private boolean rowEquals(int row, int[] tuple) {
+        for (int c = 0; c < columns.length; c++) {
+            if (data[c][row] != tuple[c]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int hashRow(int row) {
+        int h = 1;
+        for (int c = 0; c < columns.length; c++) {
+            h = 31 * h + data[c][row];
+        }
+        return mix(h);
+    }
+
+    private int hash(int[] tuple) {
+        int h = 1;
+        for (int c = 0; c < columns.length; c++) {
+            h = 31 * h + tuple[c];
+        }
+        return mix(h);
+    }
+
+    private static int mix(int h) {
+        h ^= (h >>> 16);
+        h *= 0x85ebca6b;
+        h ^= (h >>> 13);
+        return h;
+    }
+
+    private void grow() {
+        int capacity = mult.length * 2;
+        for (int c = 0; c < columns.length; c++) {
+            data[c] = Arrays.copyOf(data[c], capacity);
+        }
+        mult = Arrays.copyOf(mult, capacity);
+    }
+}
@@ -0,0 +1,219 @@
+package ct;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+
+/*
+ * Bulk writer for CTTable.
+ * Rows are decoded only here and sent as multi-row "insert into ... values (...),(...)" prepared statements,
+ * so a _false table of n rows costs about n / BATCH_ROWS round trips and no temp file.
+ */
+public class CTWriter {
+
+    // upper bound on rows per insert statement, also kept below the 65535 placeholders limit of MySQL
+    static final int BATCH_ROWS = 1000;
+
+    /*
+     * inserts all rows of table into target, which must already exist and have the columns MULT and table.getColumns()
+     */
+    public static void write(Connection conn, CTTable table, String target) throws SQLException {
+        int width = table.getColumnCount() + 1;
+        int batch = Math.max(1, Math.min(BATCH_ROWS, 65000 / width));
+
+        String columnList = "`MULT`";
+        for (String col : table.getColumns()) {
+            columnList += ", `" + col.replace("`", "") + "`";
+        }
+        String rowString = "(?";
+        for (int c = 1; c < width; c++) {
+            rowString += ",?";
+        }
+        rowString += ")";
+
+        int total = table.getRowCount();
+        PreparedStatement full = null;
+        try {
+            int row = 0;
+            while (row < total) {
+                int n = Math.min(batch, total - row);
+                PreparedStatement ps;
+                if (n == batch) {
+                    if (full == null) {
+                        full = conn.prepareStatement(insertString(target, columnList, rowString, batch));
+                    }
+                    ps = full;
+                } else {
+                    ps = conn.prepareStatement(insertString(target, columnList, rowString, n));
+                }
+                int p = 1;
+                for (int r = row; r < row + n; r++) {
+                    ps.setLong(p++, table.getMult(r));
+                    for (int c = 0; c < width - 1; c++) {
+                        String value = table.getValue(r, c);
+                        if (value == null) {
+                            ps.setNull(p++, Types.VARCHAR);
+                        } else {
+                            ps.setString(p++, value);
+                        }
+                    }
+                }
+                ps.executeUpdate();
+                if (ps != full) {
+                    ps.close();
+                }
+                row += n;
+            }
+        } finally {
+            if (full != null) {
+                full.close();
+            }
+        }
+    }
+
+    /*
+     * (re)creates target with a bigint MULT column followed by one varchar column per CT column, then writes the rows
+     */
+    public static void createAndWrite(Connection conn, CTTable table, String target) throws SQLException {
+        String columnString = "`MULT` bigint";
+        for (int c = 0; c < table.getColumnCount(); c++) {
+            int length = Math.max(5, table.getDictionaries()[c].maxLength());
+            columnString += " , `" + table.getColumns()[c].replace("`", "") + "` varchar(" + length + ")";
+        }
+        Statement st = conn.createStatement();
+        st.execute("drop table if exists " + target + " ;");
+        st.execute("create table " + target + " ( " + columnString + " ) ;");
+        st.close();
+        write(conn, table, target);
+    }
+
+    /*
+     * adds the signed MULT of every row of delta to the row of target with the same values (<=>, so NULL matches
+     * NULL), inserting the rows that target does not have. Rows of target that drop to MULT = 0 are kept.
+     */
+    public static void writeDelta(Connection conn, CTTable delta, String target) throws SQLException {
+        String updateString = "update " + target + " set `MULT` = `MULT` + ? where ";
+        for (int c = 0; c < delta.getColumnCount(); c++) {
+            updateString += (c > 0 ? " and `" : "`") + delta.getColumns()[c].replace("`", "") + "` <=> ?";
+        }
+        if (delta.getColumnCount() == 0) {
+            updateString += "1";
+        }
+
+        CTTable inserted = delta.emptyCopy();
+        PreparedStatement update = conn.prepareStatement(updateString);
+        try {
+            for (int r = 0; r < delta.getRowCount(); r++) {
+                if (delta.getMult(r) == 0) {
+                    continue;
+                }
+                update.setLong(1, delta.getMult(r));
+                for (int c = 0; c < delta.getColumnCount(); c++) {
+                    String value = delta.getValue(r, c);
+                    if (value == null) {
+                        update.setNull(c + 2, Types.VARCHAR);
+                    } else {
+                        update.setString(c + 2, value);
+                    }
+                }
+                if (update.executeUpdate() == 0) {
+                    int[] tuple = new int[delta.getColumnCount()];
+                    for (int c = 0; c < tuple.length; c++) {
+                        tuple[c] = delta.getCode(r, c);
+                    }
+                    inserted.addRow(tuple, delta.getMult(r));
+                }
+            }
+        } finally {
+            update.close();
+        }
+        write(conn, inserted, target);
+    }
+
+    /*
+     * multi-row insert for rows that are produced one at a time, e.g. enumerated instead of held in a CTTable.
+     * Values are sent with setObject, null and NaN become NULL. close() writes the last partial batch.
+     */
+    public static class RowWriter {
+        final Connection conn;
+        final String target, columnList, rowString;
+        final int width, batch;
+        final Object[] buffer;
+        int buffered;
+        PreparedStatement full;
+
+        public RowWriter(Connection conn, String target, String[] columns) {
+            this.conn = conn;
+            this.target = target;
+            this.width = columns.length;
+            this.batch = Math.max(1, Math.min(BATCH_ROWS, 65000 / width));
+            this.buffer = new Object[batch * width];
+            String list = "";
+            String row = "(";
+            for (int c = 0; c < width; c++) {
+                list += (c > 0 ? ", " : "") + "`" + columns[c].replace("`", "") + "`";
+                row += (c > 0 ? ",?" : "?");
+            }
+            this.columnList = list;
+            this.rowString = row + ")";
+        }
+
+        public void add(Object... values) throws SQLException {
+            System.arraycopy(values, 0, buffer, buffered * width, width);
+            if (++buffered == batch) {
+                flush();
+            }
+        }
+
+        void flush() throws SQLException {
+            if (buffered == 0) {
+                return;
+            }
+            PreparedStatement ps;
+            if (buffered == batch) {
+                if (full == null) {
+                    full = conn.prepareStatement(insertString(target, columnList, rowString, batch));
+                }
+                ps = full;
+            } else {
+                ps = conn.prepareStatement(insertString(target, columnList, rowString, buffered));
+            }
+            for (int p = 0; p < buffered * width; p++) {
+                Object value = buffer[p];
+                if (value == null || (value instanceof Number && Double.isNaN(((Number) value).doubleValue()))) {
+                    ps.setNull(p + 1, Types.VARCHAR);
+                } else {
+                    ps.setObject(p + 1, value);
+                }
+            }
+            ps.executeUpdate();
+            if (ps != full) {
+                ps.close();
+            }
+            buffered = 0;
+        }
+
+        public void close() throws SQLException {
+            try {
+                flush();
+            } finally {
+                if (full != null) {
+                    full.close();
+                }
+            }
+        }
+    }
+
+    private static String insertString(String target, String columnList, String rowString, int n) {
+        StringBuilder sb = new StringBuilder("insert into " + target + " (" + columnList + ") values ");
+        for (int i = 0; i < n; i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append(rowString);
+        }
+        return sb.toString();
+    }
+}
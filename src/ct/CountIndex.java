@@ -0,0 +1,246 @@
+package ct;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+
+import edu.cmu.tetrad.data.DataSet;
+import edu.cmu.tetrad.search.FamilyCounts;
+
+/*
+ * The count queries of one CT table, kept by CTCache: structure learning (the FamilyCounts of BDeuScore), parameter
+ * learning (the family contingency tables of CPEstimator) and evaluation (KLD reads the rows of the table) ask the
+ * index of the same table instead of counting it again.
+ *
+ * The marginal of a column list is the group by of the CT table on those columns (sum of MULT). Marginals are kept
+ * by column list, a new one is computed from the smallest kept marginal that contains all of its columns, falling
+ * back to the CT table itself. After a family query, the queries for its subsets (the parents, a single variable)
+ * scan one row per occurring configuration instead of the CT table. The kept marginals together are at most as big
+ * as the table, the least recently used ones are dropped first.
+ */
+public class CountIndex {
+
+    final CTTable table;
+    // marginals by column list, e.g. "[a, b]", least recently used first; the columns are in the order of the key
+    final LinkedHashMap<String, CTTable> marginals = new LinkedHashMap<String, CTTable>(16, 0.75f, true);
+    long marginalBytes;
+    DataSet dataSet;
+    FamilyCounts familyCounts;
+
+    public CountIndex(CTTable table) {
+        this.table = table;
+    }
+
+    public CTTable getTable() {
+        return table;
+    }
+
+    /*
+     * sum of MULT over the rows with columns[i] = values[i] for all i; null values match SQL NULL
+     */
+    public long count(String[] columns, String[] values) {
+        CTTable marginal = marginal(columns);
+        int[] tuple = new int[columns.length];
+        for (int c = 0; c < columns.length; c++) {
+            tuple[c] = marginal.getDictionaries()[c].lookup(values[c]);
+            if (tuple[c] < 0) {
+                return 0;
+            }
+        }
+        // the hash index of a marginal is built before it is kept, so find only reads
+        int row = marginal.find(tuple);
+        return row < 0 ? 0 : marginal.getMult(row);
+    }
+
+    /*
+     * total MULT of the table
+     */
+    public long count() {
+        return count(new String[0], new String[0]);
+    }
+
+    /*
+     * the contingency table of child and parents: one row per occurring configuration, child first, then the parents
+     * in the given order. The result is shared, callers must not change it.
+     */
+    public CTTable family(String child, String... parents) {
+        String[] columns = new String[parents.length + 1];
+        columns[0] = child;
+        System.arraycopy(parents, 0, columns, 1, parents.length);
+        return marginal(columns);
+    }
+
+    /*
+     * group by of the table on columns, with the columns in the given order and one row per occurring combination.
+     * The result is shared, callers must not change it.
+     */
+    public CTTable marginal(String... columns) {
+        return marginals(new String[][] { columns })[0];
+    }
+
+    /*
+     * the marginals of several column lists; the ones that are not kept are counted together in one pass over the
+     * smallest kept marginal that contains all of their columns
+     */
+    public synchronized CTTable[] marginals(String[][] columnLists) {
+        int k = columnLists.length;
+        CTTable[] result = new CTTable[k];
+        String[] keys = new String[k];
+        String[][] columns = new String[k][];
+        LinkedHashSet<String> missing = new LinkedHashSet<String>();
+        boolean counting = false;
+        for (int m = 0; m < k; m++) {
+            columns[m] = stripAll(columnLists[m]);
+            keys[m] = Arrays.toString(columns[m]);
+            result[m] = marginals.get(keys[m]);
+            if (result[m] == null) {
+                missing.addAll(Arrays.asList(columns[m]));
+                counting = true;
+            }
+        }
+        if (!counting) {
+            return result;
+        }
+
+        CTTable src = smallestContaining(missing.toArray(new String[missing.size()]));
+        int[][] source = new int[k][];
+        int[][] tuples = new int[k][];
+        HashMap<String, CTTable> counted = new HashMap<String, CTTable>();
+        for (int m = 0; m < k; m++) {
+            if (result[m] == null && !counted.containsKey(keys[m])) {
+                source[m] = CTOperations.columnIndexes(src, columns[m]);
+                ValueDictionary[] dictionaries = new ValueDictionary[columns[m].length];
+                for (int c = 0; c < columns[m].length; c++) {
+                    dictionaries[c] = src.getDictionaries()[source[m][c]];
+                }
+                // the dictionaries of src, so codes stay comparable
+                result[m] = new CTTable(columns[m], dictionaries);
+                tuples[m] = new int[columns[m].length];
+                counted.put(keys[m], result[m]);
+            }
+        }
+        int rows = src.getRowCount();
+        for (int r = 0; r < rows; r++) {
+            long mult = src.getMult(r);
+            for (int m = 0; m < k; m++) {
+                if (tuples[m] == null) {
+                    continue;
+                }
+                for (int c = 0; c < tuples[m].length; c++) {
+                    tuples[m][c] = src.getCode(r, source[m][c]);
+                }
+                result[m].addOrAccumulate(tuples[m], mult);
+            }
+        }
+        for (int m = 0; m < k; m++) {
+            if (result[m] == null) {
+                result[m] = counted.get(keys[m]);
+            } else if (tuples[m] != null) {
+                result[m].buildIndex();
+                keep(keys[m], result[m]);
+            }
+        }
+        return result;
+    }
+
+    /*
+     * keeps marginal, dropping the least recently used ones while the kept marginals are bigger than the table
+     */
+    void keep(String key, CTTable marginal) {
+        marginals.put(key, marginal);
+        marginalBytes += bytes(marginal);
+        long limit = Math.max(bytes(table), bytes(marginal));
+        for (Iterator<CTTable> kept = marginals.values().iterator(); marginalBytes > limit && kept.hasNext();) {
+            CTTable eldest = kept.next();
+            if (eldest != marginal) {
+                marginalBytes -= bytes(eldest);
+                kept.remove();
+            }
+        }
+    }
+
+    /*
+     * the table as the DataSet of the learner (see CTSnapshot.toDataSet), built once
+     */
+    public synchronized DataSet getDataSet() {
+        if (dataSet == null) {
+            dataSet = CTSnapshot.toDataSet(table);
+        }
+        return dataSet;
+    }
+
+    /*
+     * the counts of BDeuScore over getDataSet(), compiled once
+     */
+    public synchronized FamilyCounts getFamilyCounts() {
+        if (familyCounts == null) {
+            familyCounts = new FamilyCounts(getDataSet());
+        }
+        return familyCounts;
+    }
+
+    public synchronized int getMarginalCount() {
+        return marginals.size();
+    }
+
+    /*
+     * estimated memory of the table and of what the index keeps for it
+     */
+    public synchronized long bytes() {
+        long bytes = bytes(table) + marginalBytes;
+        if (dataSet != null) {
+            bytes += (long) dataSet.getNumRows() * (8L * dataSet.getNumColumns() + 8);
+        }
+        if (familyCounts != null) {
+            bytes += bytes(table);
+        }
+        return bytes;
+    }
+
+    /*
+     * drops the marginals, the DataSet and the FamilyCounts, the table stays; returns the bytes that were freed
+     */
+    public synchronized long trim() {
+        long freed = bytes() - bytes(table);
+        marginals.clear();
+        marginalBytes = 0;
+        dataSet = null;
+        familyCounts = null;
+        return freed;
+    }
+
+    static long bytes(CTTable table) {
+        return (long) table.getRowCount() * (4L * table.getColumnCount() + 8);
+    }
+
+    CTTable smallestContaining(String[] columns) {
+        CTTable best = table;
+        for (Map.Entry<String, CTTable> entry : marginals.entrySet()) {
+            CTTable candidate = entry.getValue();
+            if (candidate.getRowCount() < best.getRowCount() && containsAll(candidate, columns)) {
+                best = candidate;
+            }
+        }
+        return best;
+    }
+
+    static boolean containsAll(CTTable table, String[] columns) {
+        for (String column : columns) {
+            if (table.indexOfColumn(column) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    static String[] stripAll(String[] columns) {
+        String[] result = new String[columns.length];
+        for (int c = 0; c < columns.length; c++) {
+            result[c] = CTCache.strip(columns[c]);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,95 @@
+package ct;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/*
+ * One ValueDictionary per column name.
+ * CT tables that are read through the same DictionarySet share the dictionary of every column they have in common,
+ * so rows of different tables (e.g. _star and _flat, or a parent _CT and a _counts table) can be compared code by code.
+ *
+ * Once loadFunctorValues has run, the dictionary of a new column starts with the values of its functor from
+ * Attribute_Value (e.g. grade(course0,student0) and grade(course1,student0) both start with the grades), so the
+ * known values have the same code in every DictionarySet, i.e. in every CT table. Values that are not in
+ * Attribute_Value (NULL, N/A, T/F of the relationships) get the codes after them, per DictionarySet.
+ */
+public class DictionarySet {
+
+    // functor name -> dictionary with its values from Attribute_Value, never changed after loading; the dictionary
+    // of every column of the functor starts with it by reference, so a new column does not copy it
+    private static volatile Map<String, ValueDictionary> functorValues = new HashMap<String, ValueDictionary>();
+
+    private final HashMap<String, ValueDictionary> dictionaries = new HashMap<String, ValueDictionary>();
+
+    /*
+     * reads the global value dictionaries, one per functor, codes in the order of the values
+     * -attributeValues: the Attribute_Value table, e.g. unielwin_setup.Attribute_Value
+     */
+    public static void loadFunctorValues(Connection conn, String attributeValues) throws SQLException {
+        HashMap<String, ArrayList<String>> values = new HashMap<String, ArrayList<String>>();
+        Statement st = conn.createStatement();
+        ResultSet rs = st.executeQuery("SELECT distinct COLUMN_NAME, VALUE FROM " + attributeValues + ";");
+        while (rs.next()) {
+            String functor = rs.getString(1);
+            ArrayList<String> functorList = values.get(functor);
+            if (functorList == null) {
+                functorList = new ArrayList<String>();
+                values.put(functor, functorList);
+            }
+            if (rs.getString(2) != null) {
+                functorList.add(rs.getString(2));
+            }
+        }
+        rs.close();
+        st.close();
+
+        HashMap<String, ValueDictionary> loaded = new HashMap<String, ValueDictionary>();
+        for (Map.Entry<String, ArrayList<String>> functor : values.entrySet()) {
+            Collections.sort(functor.getValue());
+            ValueDictionary dict = new ValueDictionary();
+            for (String value : functor.getValue()) {
+                dict.encode(value);
+            }
+            loaded.put(functor.getKey(), dict);
+        }
+        functorValues = loaded;
+        System.out.println("value dictionaries for " + loaded.size() + " functors loaded from " + attributeValues);
+    }
+
+    /*
+     * the functor of a CT column: `grade(course0,student0)` -> grade, a column without arguments is its own functor
+     */
+    static String functorName(String column) {
+        String name = column.replace("`", "");
+        int paren = name.indexOf('(');
+        return paren < 0 ? name : name.substring(0, paren);
+    }
+
+    public ValueDictionary get(String column) {
+        ValueDictionary dict = dictionaries.get(column);
+        if (dict == null) {
+            ValueDictionary known = functorValues.get(functorName(column));
+            dict = new ValueDictionary(known);
+            dictionaries.put(column, dict);
+        }
+        return dict;
+    }
+
+    public ValueDictionary[] get(String[] columns) {
+        ValueDictionary[] dicts = new ValueDictionary[columns.length];
+        for (int i = 0; i < columns.length; i++) {
+            dicts[i] = get(columns[i]);
+        }
+        return dicts;
+    }
+
+    public boolean contains(String column) {
+        return dictionaries.containsKey(column);
+    }
+}
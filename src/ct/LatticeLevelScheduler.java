@@ -0,0 +1,102 @@
+package ct;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import database.ConnectionPool;
+
+/*
+ * Level-synchronous scheduler for the RChain lattice.
+ * The rchains of one lattice level are independent of each other, so runLevel hands them to a fixed pool of
+ * worker threads. Every worker opens its own pair of connections (_BN and _CT) the first time it is used and keeps
+ * them until shutdown(). runLevel only returns when every rchain of the level is done, which is the barrier
+ * before the next level (length + 1) is started.
+ */
+public class LatticeLevelScheduler {
+
+    public interface RChainTask {
+        void run(String rchain, Connection con2, Connection con3) throws Exception;
+    }
+
+    final String url2, url3, user, password;
+    final ExecutorService pool;
+    final List<Connection> opened = Collections.synchronizedList(new ArrayList<Connection>());
+    final ThreadLocal<Connection[]> workerConnections = new ThreadLocal<Connection[]>();
+
+    /*
+     * url2, url3: jdbc urls of the _BN and the _CT database
+     */
+    public LatticeLevelScheduler(int threads, String url2, String url3, String user, String password) {
+        this.url2 = url2;
+        this.url3 = url3;
+        this.user = user;
+        this.password = password;
+        this.pool = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "ct-worker");
+                t.setDaemon(true); // a failed level must not keep the JVM alive
+                return t;
+            }
+        });
+    }
+
+    /*
+     * runs task for every rchain and waits for all of them, the first failure is rethrown after the level is finished
+     */
+    public void runLevel(List<String> rchains, final RChainTask task) throws Exception {
+        ArrayList<Future<Void>> futures = new ArrayList<Future<Void>>();
+        for (final String rchain : rchains) {
+            futures.add(pool.submit(new Callable<Void>() {
+                public Void call() throws Exception {
+                    Connection[] cons = getWorkerConnections();
+                    task.run(rchain, cons[0], cons[1]);
+                    return null;
+                }
+            }));
+        }
+
+        Exception failure = null;
+        for (Future<Void> future : futures) {
+            try {
+                future.get();
+            } catch (ExecutionException e) {
+                if (failure == null) {
+                    failure = e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    Connection[] getWorkerConnections() throws SQLException {
+        Connection[] cons = workerConnections.get();
+        if (cons == null) {
+            cons = new Connection[] { ConnectionPool.getConnection("LatticeLevelScheduler", url2, user, password), ConnectionPool.getConnection("LatticeLevelScheduler", url3, user, password) };
+            opened.add(cons[0]);
+            opened.add(cons[1]);
+            workerConnections.set(cons);
+        }
+        return cons;
+    }
+
+    public void shutdown() throws SQLException {
+        pool.shutdown();
+        synchronized (opened) {
+            for (Connection con : opened) {
+                con.close();
+            }
+            opened.clear();
+        }
+    }
+}
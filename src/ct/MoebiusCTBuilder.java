@@ -0,0 +1,422 @@
+package ct;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeSet;
+
+/*
+ * In-memory Moebius transform for the RChain lattice.
+ *
+ * Does the same work as BuildCT_Rnodes_flat / BuildCT_Rnodes_star / BuildCT_Rnodes_CT (length 1) and
+ * BuildCT_RChain_flat (length >= 2) in BayesBaseCT_SortMerge, driven by the same ADT_* metadata tables in _BN,
+ * but the _flat, _star, _false and intermediate _CT tables only exist as CTTables in memory.
+ *
+ * Preconditions: the pvid_counts, RChain _counts and rnid_join tables exist in _CT.
+ * Each of them is read exactly once (loadCounts), after build() the _CT table of every lattice point is available
+ * from getCT(rchain) and can be written back with writeCTTables().
+ * In delta mode (applyDelta, writeDelta) the tables are read from _CT as they are needed instead.
+ * RChains pruned by LatticePruning (setPruned) have no _counts table and get no _CT table.
+ */
+public class MoebiusCTBuilder {
+
+    final Connection con2, con3;
+    final String databaseName3;
+    final DictionarySet dicts = new DictionarySet();
+
+    // tables by name without backticks, e.g. "student0_counts", "a,b_counts", "a_join", "a,b_CT"
+    final HashMap<String, CTTable> tables = new HashMap<String, CTTable>();
+    // rchains in the order they are built
+    final ArrayList<String> rchains = new ArrayList<String>();
+    // rchains without support that are skipped, see setPruned
+    final HashSet<String> pruned = new HashSet<String>();
+
+    /*
+     * con2: connection to _BN (lattice and metadata), con3: connection to _CT
+     */
+    public MoebiusCTBuilder(Connection con2, Connection con3, String databaseName3) {
+        this.con2 = con2;
+        this.con3 = con3;
+        this.databaseName3 = databaseName3;
+    }
+
+    /*
+     * the rchains that BayesBaseCT_SortMerge pruned (LatticePruning = 1): their _counts tables are not read and they
+     * are left out of build() and applyDelta()
+     */
+    public void setPruned(Collection<String> rchains) {
+        pruned.clear();
+        pruned.addAll(rchains);
+    }
+
+    public void loadCounts() throws SQLException {
+        long l = System.currentTimeMillis();
+        for (String pvid : readEntries("select pvid as Entries from PVariables;")) {
+            load(pvid + "_counts");
+        }
+        for (String rnid : readEntries("select rnid as Entries from RNodes;")) {
+            load(rnid + "_join");
+        }
+        for (String rchain : readEntries("select name as Entries from lattice_set order by length;")) {
+            if (!pruned.contains(rchain)) {
+                load(rchain + "_counts");
+            }
+        }
+        long l2 = System.currentTimeMillis();
+        System.out.print("Loading Time(ms) for counts tables: " + (l2 - l) + " ms.\n");
+    }
+
+    public void build(int maxNumberOfMembers) throws SQLException {
+        long l = System.currentTimeMillis();
+        buildLength1();
+        for (int len = 2; len <= maxNumberOfMembers; len++) {
+            buildRChains(len);
+        }
+        long l2 = System.currentTimeMillis();
+        System.out.print("Building Time(ms) for in-memory CT tables: " + (l2 - l) + " ms.\n");
+    }
+
+    /*
+     * _flat, _star, _false and _CT for the single relationship chains
+     */
+    void buildLength1() throws SQLException {
+        for (String rchain : readEntries("select name as Entries from lattice_set where lattice_set.length = 1;")) {
+            buildLength1(rchain);
+        }
+    }
+
+    void buildLength1(String rchain) throws SQLException {
+        CTTable counts = getTable(rchain + "_counts");
+        CTTable flat = CTOperations.groupBy(counts, flatColumns(rchain), dicts);
+        CTTable star = CTOperations.product(getTables(starFrom(rchain)), new String[0], starColumns(rchain), dicts);
+        CTTable falseTable = CTOperations.subtract(star, flat);
+        CTTable ct = CTOperations.unionWithJoin(counts, falseTable, getTable(rchain + "_join"));
+        putCT(rchain, ct);
+    }
+
+    String[] flatColumns(String rchain) throws SQLException {
+        return columnNames(readEntries("SELECT DISTINCT Entries FROM lattice_membership, ADT_RNodes_1Nodes_GroupBY_List WHERE NAME = '" + rchain + "' AND lattice_membership.member = ADT_RNodes_1Nodes_GroupBY_List.rnid;"));
+    }
+
+    String[] starColumns(String rchain) throws SQLException {
+        return columnNames(readEntries("SELECT DISTINCT Entries FROM lattice_membership, ADT_RNodes_Star_Select_List WHERE NAME = '" + rchain + "' AND lattice_membership.member = ADT_RNodes_Star_Select_List.rnid;"));
+    }
+
+    ArrayList<String> starFrom(String rchain) throws SQLException {
+        return readEntries("SELECT DISTINCT Entries FROM lattice_membership, ADT_RNodes_Star_From_List WHERE NAME = '" + rchain + "' AND lattice_membership.member = ADT_RNodes_Star_From_List.rnid;");
+    }
+
+    /*
+     * goes up the lattice: for every rchain of length len, remove its members one by one (lattice_rel, ordered by rnid)
+     */
+    void buildRChains(int len) throws SQLException {
+        for (String rchain : readEntries("select name as Entries from lattice_set where lattice_set.length = " + len + ";")) {
+            if (pruned.contains(rchain)) {
+                continue;
+            }
+            CTTable cur = getTable(rchain + "_counts");
+
+            for (String rnid : removedRnids(rchain)) {
+                String[] select = starColumns(rchain, rnid);
+                CTTable star = CTOperations.product(getTables(starFrom(rchain, rnid)), trueColumns(starWhere(rchain, rnid)), select, dicts);
+                CTTable flat = CTOperations.groupBy(cur, select, dicts);
+                CTTable falseTable = CTOperations.subtract(star, flat);
+                cur = CTOperations.unionWithJoin(cur, falseTable, getTable(rnid + "_join"));
+            }
+            putCT(rchain, cur);
+        }
+    }
+
+    ArrayList<String> removedRnids(String rchain) throws SQLException {
+        Statement st = con2.createStatement();
+        ResultSet rs = st.executeQuery("SELECT distinct parent, removed as rnid FROM lattice_rel  where child = '" + rchain + "' order by rnid ASC;");
+        ArrayList<String> rnids = new ArrayList<String>();
+        while (rs.next()) {
+            rnids.add(rs.getString("rnid"));
+        }
+        rs.close();
+        st.close();
+        return rnids;
+    }
+
+    String[] starColumns(String rchain, String rnid) throws SQLException {
+        return columnNames(readEntries("SELECT DISTINCT Entries FROM ADT_RChain_Star_Select_List WHERE rchain = '" + rchain + "' and '" + rnid + "' = rnid;"));
+    }
+
+    ArrayList<String> starFrom(String rchain, String rnid) throws SQLException {
+        return readEntries("SELECT DISTINCT Entries FROM  ADT_RChain_Star_From_List WHERE rchain = '" + rchain + "' and '" + rnid + "' = rnid;");
+    }
+
+    ArrayList<String> starWhere(String rchain, String rnid) throws SQLException {
+        return readEntries("SELECT DISTINCT Entries FROM  ADT_RChain_Star_Where_List WHERE rchain = '" + rchain + "' and '" + rnid + "' = rnid;");
+    }
+
+    /*
+     * Delta mode (BayesBaseCT_Delta).
+     * countDeltas are the signed changes of pvid_counts and rchain _counts tables after rows were added to or deleted
+     * from the database, by table name (e.g. "student0_counts", "a,b_counts"); tables that did not change are left out.
+     * The change of every _CT table is computed going up the lattice with the same steps as build(), applied to the
+     * changes (the _star product is expanded over its changed factors), using the tables as they were. Lattice points
+     * whose _counts table and _star factors did not change are skipped, and a table is read from _CT only when it is
+     * a factor next to a changed one or the _join table of a changed lattice point, so the cost depends on the size
+     * of the changes and of the factors they meet, not on the size of the database.
+     * The changes are added to the tables this builder holds; the ones in _CT are left to writeDelta.
+     * Returns the changes by table name, e.g. "a,b_CT", the changed _counts tables first.
+     */
+    public LinkedHashMap<String, CTTable> applyDelta(Map<String, CTTable> countDeltas) throws SQLException {
+        long l = System.currentTimeMillis();
+        LinkedHashMap<String, CTTable> deltas = new LinkedHashMap<String, CTTable>();
+        for (String name : new TreeSet<String>(countDeltas.keySet())) {
+            putDelta(deltas, name, countDeltas.get(name));
+        }
+
+        for (String rchain : readEntries("select name as Entries from lattice_set where lattice_set.length = 1;")) {
+            ArrayList<String> from = starFrom(rchain);
+            if (!isChanged(deltas, rchain + "_counts") && !isChanged(deltas, from)) {
+                continue;
+            }
+            CTTable dCounts = getDelta(deltas, rchain + "_counts");
+            CTTable dFlat = CTOperations.groupBy(dCounts, flatColumns(rchain), dicts);
+            CTTable dStar = CTOperations.productDelta(getFactors(deltas, from), getDeltas(deltas, from), new String[0], starColumns(rchain), dicts);
+            CTTable dCT = CTOperations.unionWithJoin(dCounts, CTOperations.difference(dStar, dFlat), getTable(rchain + "_join"));
+            putDelta(deltas, rchain + "_CT", dCT);
+        }
+        for (String rchain : readEntries("select name as Entries from lattice_set where lattice_set.length > 1 order by length;")) {
+            if (pruned.contains(rchain)) {
+                continue;
+            }
+            ArrayList<String> rnids = removedRnids(rchain);
+            boolean changed = isChanged(deltas, rchain + "_counts");
+            for (String rnid : rnids) {
+                changed = changed || isChanged(deltas, starFrom(rchain, rnid));
+            }
+            if (!changed) {
+                continue;
+            }
+            CTTable dCur = getDelta(deltas, rchain + "_counts");
+            for (String rnid : rnids) {
+                String[] select = starColumns(rchain, rnid);
+                ArrayList<String> from = starFrom(rchain, rnid);
+                CTTable dStar = CTOperations.productDelta(getFactors(deltas, from), getDeltas(deltas, from), trueColumns(starWhere(rchain, rnid)), select, dicts);
+                CTTable dFlat = CTOperations.groupBy(dCur, select, dicts);
+                dCur = CTOperations.unionWithJoin(dCur, CTOperations.difference(dStar, dFlat), getTable(rnid + "_join"));
+            }
+            putDelta(deltas, rchain + "_CT", dCur);
+        }
+
+        for (Map.Entry<String, CTTable> entry : deltas.entrySet()) {
+            CTTable table = tables.get(entry.getKey());
+            if (table != null) {
+                CTOperations.accumulate(table, entry.getValue());
+            }
+        }
+        long l2 = System.currentTimeMillis();
+        System.out.print("Delta Time(ms) for in-memory CT tables: " + (l2 - l) + " ms, changed tables: " + deltas.keySet() + "\n");
+        return deltas;
+    }
+
+    /*
+     * the change of table name, an empty table if it did not change
+     */
+    CTTable getDelta(HashMap<String, CTTable> deltas, String name) throws SQLException {
+        CTTable delta = deltas.get(strip(name));
+        return delta != null ? delta : emptyTable(name);
+    }
+
+    CTTable[] getDeltas(HashMap<String, CTTable> deltas, ArrayList<String> names) {
+        CTTable[] result = new CTTable[names.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = deltas.get(strip(names.get(i)));
+        }
+        return result;
+    }
+
+    /*
+     * the factors of a _star product for CTOperations.productDelta: a factor is only multiplied with the changes of
+     * the other factors, so it is null (and not read) unless another factor changed
+     */
+    CTTable[] getFactors(HashMap<String, CTTable> deltas, ArrayList<String> names) throws SQLException {
+        CTTable[] result = new CTTable[names.size()];
+        for (int i = 0; i < result.length; i++) {
+            for (int j = 0; j < result.length; j++) {
+                if (j != i && isChanged(deltas, names.get(j))) {
+                    result[i] = getTable(names.get(i));
+                    break;
+                }
+            }
+        }
+        return result;
+    }
+
+    static boolean isChanged(HashMap<String, CTTable> deltas, String name) {
+        return deltas.containsKey(strip(name));
+    }
+
+    static boolean isChanged(HashMap<String, CTTable> deltas, ArrayList<String> names) {
+        for (String name : names) {
+            if (isChanged(deltas, name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /*
+     * keeps delta as the change of name if it has a row with MULT != 0
+     */
+    static void putDelta(HashMap<String, CTTable> deltas, String name, CTTable delta) {
+        for (int r = 0; r < delta.getRowCount(); r++) {
+            if (delta.getMult(r) != 0) {
+                deltas.put(strip(name), delta);
+                return;
+            }
+        }
+    }
+
+    public CTTable getCT(String rchain) {
+        return tables.get(strip(rchain) + "_CT");
+    }
+
+    /*
+     * the pvid_counts table as loaded by loadCounts()
+     */
+    public CTTable getCounts(String pvid) {
+        return tables.get(strip(pvid) + "_counts");
+    }
+
+    public ArrayList<String> getRChains() {
+        return rchains;
+    }
+
+    public DictionarySet getDictionaries() {
+        return dicts;
+    }
+
+    /*
+     * writes `rchain_CT` for every lattice point, with the same covering index as the SQL version
+     */
+    public void writeCTTables() throws SQLException {
+        long l = System.currentTimeMillis();
+        for (String rchain : rchains) {
+            writeCTTable(rchain);
+        }
+        long l2 = System.currentTimeMillis();
+        System.out.print("Writing Time(ms) for CT tables: " + (l2 - l) + " ms.\n");
+    }
+
+    public void writeCTTable(String rchain) throws SQLException {
+        String name = "`" + strip(rchain) + "_CT`";
+        CTTable ct = getCT(rchain);
+        CTWriter.createAndWrite(con3, ct, name);
+        String indexString = "`MULT` ASC";
+        for (int c = 0; c < ct.getColumnCount() && c < 15; c++) {
+            indexString += " , `" + ct.getColumns()[c] + "` ASC";
+        }
+        Statement st = con3.createStatement();
+        st.execute("alter table " + name + " add index " + name + "   ( " + indexString + " );");
+        st.close();
+    }
+
+    /*
+     * Delta mode: adds the change of a _counts or _CT table (from applyDelta) to the table in _CT with UPDATE, and
+     * INSERTs its rows that the table does not have, e.g. writeDelta("a,b_CT", delta)
+     */
+    public void writeDelta(String name, CTTable delta) throws SQLException {
+        CTWriter.writeDelta(con3, delta, "`" + strip(name) + "`");
+    }
+
+    /*
+     * deletes the rows with MULT = 0 of a table in _CT, and of the table in memory if this builder holds it
+     */
+    public void removeZeroRows(String name) throws SQLException {
+        Statement st = con3.createStatement();
+        st.execute("delete from `" + strip(name) + "` where MULT = 0;");
+        st.close();
+        CTTable table = tables.get(strip(name));
+        if (table != null) {
+            table.removeZeroRows();
+        }
+    }
+
+    void putCT(String rchain, CTTable ct) {
+        tables.put(strip(rchain) + "_CT", ct);
+        rchains.add(rchain);
+        System.out.println("in-memory CT for " + rchain + " : " + ct.getRowCount() + " rows");
+    }
+
+    void load(String name) throws SQLException {
+        tables.put(strip(name), CTCursor.readTable(con3, "`" + strip(name) + "`", dicts));
+    }
+
+    /*
+     * a loaded or built table by name, e.g. "student0_counts", "a_join", "a,b_CT"; a table that was neither is read
+     * from _CT (delta mode, where only the tables that a change meets are needed)
+     */
+    public CTTable getTable(String name) throws SQLException {
+        CTTable table = tables.get(strip(name));
+        if (table == null) {
+            load(name);
+            table = tables.get(strip(name));
+        }
+        return table;
+    }
+
+    /*
+     * a table with the columns of table name and no rows, read from _CT if this builder does not hold it
+     */
+    public CTTable emptyTable(String name) throws SQLException {
+        CTTable table = tables.get(strip(name));
+        return table != null ? table.emptyCopy() : CTCursor.emptyTable(con3, "`" + strip(name) + "`", dicts);
+    }
+
+    CTTable[] getTables(ArrayList<String> names) throws SQLException {
+        CTTable[] result = new CTTable[names.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = getTable(names.get(i));
+        }
+        return result;
+    }
+
+    /*
+     * where entries look like  `a` = "T"
+     */
+    static String[] trueColumns(ArrayList<String> where) {
+        String[] result = new String[where.size()];
+        for (int i = 0; i < result.length; i++) {
+            String entry = where.get(i);
+            result[i] = strip(entry.substring(0, entry.indexOf('=')).trim());
+        }
+        return result;
+    }
+
+    static String[] columnNames(ArrayList<String> entries) {
+        String[] result = new String[entries.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = strip(entries.get(i).trim());
+        }
+        return result;
+    }
+
+    static String strip(String name) {
+        return name.replace("`", "");
+    }
+
+    ArrayList<String> readEntries(String query) throws SQLException {
+        ArrayList<String> entries = new ArrayList<String>();
+        Statement st = con2.createStatement();
+        ResultSet rs = st.executeQuery(query);
+        while (rs.next()) {
+            entries.add(rs.getString("Entries"));
+        }
+        rs.close();
+        st.close();
+        return entries;
+    }
+}
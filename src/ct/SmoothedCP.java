@@ -0,0 +1,197 @@
+package ct;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+
+/*
+ * Laplace smoothed CP table of one family (child with parents), without the pairs table of KLD_generator.
+ *
+ * The domain of every column is the set of its values in the _CP table, as in KLD_generator.pairs, kept as
+ * dictionary codes. Only the observed parent states are stored, each with the counts of the child values.
+ * All (child value, parent state) pairs are enumerated with a mixed-radix counter over the parent domains, so a
+ * family with many parents costs memory for its observed rows only; the pairs exist only as the rows of the
+ * _CP_smoothed table while it is written, and not at all for cp(), which KLD_generator uses for the KLD table.
+ *
+ * For a parent state with counts n(c) and K child values (as update_ps):
+ *   MULT = n(c) + 1, ParentSum = sum of n + K, CP = MULT / ParentSum
+ * CP is rounded like the float(7,6) column, then the child value with the largest CP gets 1 - the sum of the others,
+ * so that every row of the smoothed table sums to 1.
+ */
+public class SmoothedCP {
+
+    final String[] columns; // child, parents
+    final ValueDictionary[] dictionaries;
+    final CTTable states; // observed parent states
+    final ArrayList<long[]> childCounts = new ArrayList<long[]>(); // by row of states
+    final ArrayList<float[]> cps = new ArrayList<float[]>(); // by row of states, computed on first use
+    float[] unobserved;
+
+    SmoothedCP(CTTable observed) {
+        this.columns = observed.getColumns();
+        this.dictionaries = observed.getDictionaries();
+        int parents = columns.length - 1;
+        String[] parentColumns = new String[parents];
+        ValueDictionary[] parentDictionaries = new ValueDictionary[parents];
+        for (int p = 0; p < parents; p++) {
+            parentColumns[p] = columns[p + 1];
+            parentDictionaries[p] = dictionaries[p + 1];
+        }
+        states = new CTTable(parentColumns, parentDictionaries);
+
+        int values = dictionaries[0].size();
+        int[] state = new int[parents];
+        for (int r = 0; r < observed.getRowCount(); r++) {
+            for (int p = 0; p < parents; p++) {
+                state[p] = observed.getCode(r, p + 1);
+            }
+            int row = states.addOrAccumulate(state, observed.getMult(r));
+            if (row == childCounts.size()) {
+                childCounts.add(new long[values]);
+                cps.add(null);
+            }
+            childCounts.get(row)[observed.getCode(r, 0)] += observed.getMult(r);
+        }
+    }
+
+    /*
+     * reads MULT, child and parents from cpTable (the _CP table of child)
+     */
+    public static SmoothedCP read(Connection conn, String cpTable, String child, String[] parents) throws SQLException {
+        String[] columns = new String[parents.length + 1];
+        columns[0] = strip(child);
+        String selectString = "MULT, `" + columns[0] + "`";
+        for (int p = 0; p < parents.length; p++) {
+            columns[p + 1] = strip(parents[p]);
+            selectString += ", `" + columns[p + 1] + "`";
+        }
+        CTTable observed = new CTTable(columns);
+        CTCursor.readInto(conn, "select " + selectString + " from " + cpTable + " ;", observed);
+        return new SmoothedCP(observed);
+    }
+
+    public String[] getColumns() {
+        return columns;
+    }
+
+    public ValueDictionary[] getDictionaries() {
+        return dictionaries;
+    }
+
+    /*
+     * number of parent states, the smoothed table has getStateCount() * child values rows
+     */
+    public long getStateCount() {
+        long count = 1;
+        for (int p = 1; p < columns.length; p++) {
+            count *= dictionaries[p].size();
+        }
+        return count;
+    }
+
+    /*
+     * smoothed CP of child value code child given the parent state (codes in the order of the parents)
+     */
+    public float cp(int child, int[] state) {
+        return cps(states.find(state))[child];
+    }
+
+    float[] cps(int row) {
+        if (row < 0) {
+            if (unobserved == null) {
+                unobserved = smooth(new long[dictionaries[0].size()]);
+            }
+            return unobserved;
+        }
+        float[] result = cps.get(row);
+        if (result == null) {
+            result = smooth(childCounts.get(row));
+            cps.set(row, result);
+        }
+        return result;
+    }
+
+    static float[] smooth(long[] counts) {
+        long parentSum = counts.length;
+        for (long n : counts) {
+            parentSum += n;
+        }
+        float[] cp = new float[counts.length];
+        int largest = 0;
+        for (int c = 0; c < counts.length; c++) {
+            cp[c] = round6((double) (counts[c] + 1) / parentSum);
+            if (cp[c] > cp[largest]) {
+                largest = c;
+            }
+        }
+        double others = 0;
+        for (int c = 0; c < counts.length; c++) {
+            if (c != largest) {
+                others += cp[c];
+            }
+        }
+        cp[largest] = round6(1 - (float) others);
+        return cp;
+    }
+
+    /*
+     * writes every (child value, parent state) pair to table, which has the columns of the _CP table:
+     * MULT, child, parents, ParentSum and CP are set, the other columns are left NULL
+     */
+    public void write(Connection conn, String table) throws SQLException {
+        int parents = columns.length - 1;
+        int values = dictionaries[0].size();
+        String[] target = new String[columns.length + 3];
+        target[0] = "MULT";
+        System.arraycopy(columns, 0, target, 1, columns.length);
+        target[columns.length + 1] = "ParentSum";
+        target[columns.length + 2] = "CP";
+
+        for (int p = 0; p <= parents; p++) {
+            if (dictionaries[p].size() == 0) {
+                return; // empty _CP table
+            }
+        }
+
+        CTWriter.RowWriter writer = new CTWriter.RowWriter(conn, table, target);
+        Object[] row = new Object[target.length];
+        int[] state = new int[parents];
+        while (true) {
+            int observed = states.find(state);
+            long[] counts = observed < 0 ? new long[values] : childCounts.get(observed);
+            float[] cp = cps(observed);
+            long parentSum = values;
+            for (long n : counts) {
+                parentSum += n;
+            }
+            for (int p = 0; p < parents; p++) {
+                row[p + 2] = dictionaries[p + 1].decode(state[p]);
+            }
+            for (int c = 0; c < values; c++) {
+                row[0] = counts[c] + 1;
+                row[1] = dictionaries[0].decode(c);
+                row[parents + 2] = parentSum;
+                row[parents + 3] = cp[c];
+                writer.add(row);
+            }
+
+            // next parent state, the last parent changes fastest
+            int p = parents - 1;
+            while (p >= 0 && ++state[p] == dictionaries[p + 1].size()) {
+                state[p--] = 0;
+            }
+            if (p < 0) {
+                break;
+            }
+        }
+        writer.close();
+    }
+
+    static float round6(double value) {
+        return (float) (Math.round(value * 1e6) / 1e6);
+    }
+
+    static String strip(String name) {
+        return name.replace("`", "");
+    }
+}
@@ -0,0 +1,156 @@
+package ct;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeMap;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/*
+ * Tests CPEstimator against the values that the SQL of CP.nopar_update and CP.haspar_update gives for a random CT
+ * table: MULT as the sum of MULT grouped by the family, ParentSum grouped by the parents (the total for a node without
+ * parents), CP = MULT / ParentSum as float(7,6), local_mult as mynume / local per Tuples in Java for nopar and as
+ * mult / local into a bigint(20) column (rounded) for haspar, and likelihood = log(CP) * local_mult as float(20,2).
+ */
+public final class TestCPEstimator extends TestCase {
+
+    static final String[] COLUMNS = { "a", "b", "c", "d" };
+
+    public TestCPEstimator(String name) {
+        super(name);
+    }
+
+    public void testCounts() {
+        Random random = new Random(3);
+        CTTable ct = randomCT(random, 400);
+
+        for (int run = 0; run < 30; run++) {
+            CPEstimator.Family family = randomFamily(random);
+            CPEstimator.estimate(ct, Arrays.asList(family));
+
+            TreeMap<String, Long> mult = groupBy(ct, family, true);
+            TreeMap<String, Long> parentSum = groupBy(ct, family, false);
+            CTTable counts = family.getCounts();
+            assertEquals(mult.size(), counts.getRowCount());
+            for (int r = 0; r < counts.getRowCount(); r++) {
+                String key = key(counts, r, 0);
+                long parents = parentSum.get(key(counts, r, 1));
+                assertEquals(mult.get(key).longValue(), counts.getMult(r));
+                assertEquals(parents, family.parentSum[r]);
+                assertEquals(CPEstimator.round((double) counts.getMult(r) / parents, 6), family.cp[r], 0.0);
+            }
+        }
+    }
+
+    public void testLocalMult() {
+        Random random = new Random(8);
+        CTTable ct = randomCT(random, 400);
+
+        for (int run = 0; run < 30; run++) {
+            CPEstimator.Family family = randomFamily(random);
+            long[] tuples = new long[random.nextInt(3)];
+            for (int t = 0; t < tuples.length; t++) {
+                tuples[t] = 2 + random.nextInt(20);
+                family.addTuples(tuples[t]);
+            }
+            CPEstimator.estimate(ct, Arrays.asList(family));
+
+            CTTable counts = family.getCounts();
+            long sampleSize = 0;
+            double logLikelihood = 0;
+            for (int r = 0; r < counts.getRowCount(); r++) {
+                long expected = family.parents.length == 0 ? noparLocalMult(counts.getMult(r), tuples)
+                        : hasparLocalMult(counts.getMult(r), tuples);
+                assertEquals(expected, family.localMult[r]);
+                assertEquals(CPEstimator.round(Math.log(family.cp[r]) * expected, 2), family.likelihood[r], 0.0);
+                sampleSize += expected;
+                logLikelihood += family.likelihood[r];
+            }
+            assertEquals(sampleSize, family.getSampleSize());
+            assertEquals(logLikelihood, family.getLogLikelihood(), 1e-9);
+        }
+    }
+
+    /*
+     * nopar_update: mynume = mynume / local for every Tuples, long division
+     */
+    static long noparLocalMult(long mult, long[] tuples) {
+        for (long local : tuples) {
+            mult = mult / local;
+        }
+        return mult;
+    }
+
+    /*
+     * haspar_update: "update .. set local_mult = mult/ local" with local the product of all Tuples, the decimal
+     * quotient is rounded to the bigint column
+     */
+    static long hasparLocalMult(long mult, long[] tuples) {
+        long local = 1;
+        for (long t : tuples) {
+            local *= t;
+        }
+        return Math.round((double) mult / local);
+    }
+
+    static CTTable randomCT(Random random, int rows) {
+        CTTable ct = new CTTable(COLUMNS);
+        for (int n = 0; n < rows; n++) {
+            int[] tuple = new int[COLUMNS.length];
+            for (int c = 0; c < COLUMNS.length; c++) {
+                tuple[c] = ct.getDictionaries()[c].encode(String.valueOf(random.nextInt(2 + c)));
+            }
+            ct.addOrAccumulate(tuple, 1 + random.nextInt(random.nextBoolean() ? 10 : 1000));
+        }
+        return ct;
+    }
+
+    static CPEstimator.Family randomFamily(Random random) {
+        List<String> columns = new ArrayList<String>(Arrays.asList(COLUMNS));
+        String child = columns.remove(random.nextInt(columns.size()));
+        String[] parents = new String[random.nextInt(3)];
+        for (int p = 0; p < parents.length; p++) {
+            parents[p] = "`" + columns.remove(random.nextInt(columns.size())) + "`";
+        }
+        return new CPEstimator.Family("`" + child + "`", parents);
+    }
+
+    /*
+     * select sum(MULT) from ct group by child, parents (family) or group by parents
+     */
+    static TreeMap<String, Long> groupBy(CTTable ct, CPEstimator.Family family, boolean withChild) {
+        List<String> columns = new ArrayList<String>();
+        if (withChild) {
+            columns.add(CPEstimator.strip(family.child));
+        }
+        for (String parent : family.parents) {
+            columns.add(CPEstimator.strip(parent));
+        }
+        TreeMap<String, Long> sums = new TreeMap<String, Long>();
+        for (int r = 0; r < ct.getRowCount(); r++) {
+            String key = "";
+            for (String column : columns) {
+                key += ct.getValue(r, ct.indexOfColumn(column)) + "|";
+            }
+            Long sum = sums.get(key);
+            sums.put(key, (sum == null ? 0 : sum) + ct.getMult(r));
+        }
+        return sums;
+    }
+
+    static String key(CTTable counts, int r, int first) {
+        String key = "";
+        for (int c = first; c < counts.getColumnCount(); c++) {
+            key += counts.getValue(r, c) + "|";
+        }
+        return key;
+    }
+
+    public static Test suite() {
+        return new TestSuite(TestCPEstimator.class);
+    }
+}
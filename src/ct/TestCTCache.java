@@ -0,0 +1,213 @@
+package ct;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import database.ConnectionPool;
+import edu.cmu.tetrad.search.BDeuScore;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/*
+ * Tests the count index of CTCache against SQL: for a CT table in an embedded H2 database, the marginals, family
+ * contingency tables and count(vars = values) of the index are the GROUP BY counts of the same table, also when they
+ * are derived from kept marginals and when the families of CPEstimator are counted in one pass. The cache is bounded:
+ * a table that was read is evicted and read again, a registered one only loses its index. BDeuScore gives the same
+ * scores with the FamilyCounts of the index.
+ */
+public final class TestCTCache extends TestCase {
+
+    static final String[] COLUMNS = { "a", "b(s0)", "c(s0,p0)", "d" };
+    static final String[][] VALUES = { { "1", "2", "3" }, { "T", "F" }, { "N/A", "low", "high", null }, { "x", "y" } };
+
+    Connection con;
+
+    public TestCTCache(String name) {
+        super(name);
+    }
+
+    @Override
+    public void setUp() throws SQLException {
+        CTCache.clear();
+        con = ConnectionPool.getConnection("TestCTCache", "jdbc:h2:mem:TestCTCache/test_CT", "sa", "");
+        execute("drop database if exists test_CT", "create database test_CT");
+        createTable("a,b_CT", 300, new Random(9));
+        createTable("c_CT", 50, new Random(10));
+    }
+
+    @Override
+    public void tearDown() throws SQLException {
+        CTCache.setMaxBytes(Runtime.getRuntime().maxMemory() / 4);
+        CTCache.clear();
+        con.close();
+        ConnectionPool.closeAll();
+    }
+
+    public void testGroupBy() throws SQLException {
+        CountIndex index = CTCache.load(con, "test_CT", "`a,b_CT`");
+        assertSame(index, CTCache.get("`test_CT`", "a,b_CT"));
+        assertEquals(sql("select sum(MULT) from test_CT.`a,b_CT`").get(0), "[" + index.count() + "]");
+
+        // the family of a, b, c first, so the smaller queries are derived from its marginal
+        String[][] queries = { { "a", "b(s0)", "c(s0,p0)" }, { "c(s0,p0)", "a" }, { "b(s0)" }, { "d", "a" }, { "a", "b(s0)", "c(s0,p0)", "d" } };
+        for (String[] columns : queries) {
+            assertEquals(Arrays.toString(columns), groupBy(columns), rows(index.marginal(columns)));
+        }
+        assertSame(index.marginal("c(s0,p0)", "a"), index.family("`c(s0,p0)`", "`a`"));
+
+        for (String a : VALUES[0]) {
+            for (String c : VALUES[2]) {
+                String where = "a = '" + a + "' and " + (c == null ? "`c(s0,p0)` is null" : "`c(s0,p0)` = '" + c + "'");
+                String expected = sql("select coalesce(sum(MULT), 0) from test_CT.`a,b_CT` where " + where).get(0);
+                assertEquals(where, expected, "[" + index.count(new String[] { "a", "c(s0,p0)" }, new String[] { a, c }) + "]");
+            }
+        }
+        assertEquals(0, index.count(new String[] { "d" }, new String[] { "z" }));
+    }
+
+    public void testFamilies() throws SQLException {
+        CountIndex index = CTCache.load(con, "test_CT", "a,b_CT");
+        List<CPEstimator.Family> families = new ArrayList<CPEstimator.Family>();
+        families.add(new CPEstimator.Family("`a`", new String[] { "`b(s0)`", "`d`" }));
+        families.add(new CPEstimator.Family("`c(s0,p0)`", new String[0]));
+        families.add(new CPEstimator.Family("d", new String[] { "c(s0,p0)" }));
+        CPEstimator.estimate(index, families);
+        assertEquals(3, index.getMarginalCount());
+        assertEquals(groupBy("a", "b(s0)", "d"), rows(families.get(0).getCounts()));
+        assertEquals(groupBy("c(s0,p0)"), rows(families.get(1).getCounts()));
+        assertEquals(groupBy("d", "c(s0,p0)"), rows(families.get(2).getCounts()));
+        assertSame(families.get(2).getCounts(), index.family("d", "c(s0,p0)"));
+
+        // the same families of CTCache as of the table itself
+        List<CPEstimator.Family> again = new ArrayList<CPEstimator.Family>();
+        again.add(new CPEstimator.Family("`a`", new String[] { "`b(s0)`", "`d`" }));
+        CPEstimator.estimate(CTCursor.readTable(con, "test_CT.`a,b_CT`", new DictionarySet()), again);
+        assertEquals(rows(families.get(0).getCounts()), rows(again.get(0).getCounts()));
+        assertEquals(families.get(0).getLogLikelihood(), again.get(0).getLogLikelihood(), 1e-9);
+    }
+
+    public void testEviction() throws SQLException {
+        CountIndex read = CTCache.load(con, "test_CT", "a,b_CT");
+        read.marginal("a");
+        CountIndex registered = CTCache.register("test_CT", "b_CT", CTCursor.readTable(con, "test_CT.`c_CT`", new DictionarySet()));
+        registered.marginal("d");
+        registered.getFamilyCounts();
+        assertTrue(CTCache.bytes() > registered.bytes());
+        assertEquals(0, CTCache.getEvictionCount());
+
+        // only the table that is added stays whole
+        CTCache.setMaxBytes(1);
+        CountIndex other = CTCache.load(con, "test_CT", "c_CT");
+        assertNull(CTCache.get("test_CT", "a,b_CT"));
+        assertSame(registered, CTCache.get("test_CT", "b_CT"));
+        assertEquals(0, registered.getMarginalCount());
+        assertEquals(CountIndex.bytes(registered.getTable()), registered.bytes());
+        assertEquals(2, CTCache.getEvictionCount());
+        assertSame(other, CTCache.get("test_CT", "c_CT"));
+
+        // read again, with the same counts
+        CTCache.setMaxBytes(Long.MAX_VALUE);
+        CountIndex reread = CTCache.load(con, "test_CT", "a,b_CT");
+        assertNotSame(read, reread);
+        assertEquals(rows(read.marginal("a")), rows(reread.marginal("a")));
+
+        CTCache.invalidate("test_CT");
+        assertNull(CTCache.get("test_CT", "c_CT"));
+        assertEquals(0, CTCache.bytes());
+    }
+
+    public void testBDeuScore() throws SQLException {
+        CountIndex index = CTCache.load(con, "test_CT", "a,b_CT");
+        BDeuScore shared = new BDeuScore(index.getDataSet(), index.getFamilyCounts(), 10, 1.0);
+        BDeuScore own = new BDeuScore(CTSnapshot.toDataSet(index.getTable()), 10, 1.0);
+        int[][] parents = { {}, { 1 }, { 0, 2 }, { 1, 2, 3 } };
+        for (int i = 0; i < COLUMNS.length; i++) {
+            for (int[] p : parents) {
+                if (Arrays.binarySearch(p, i) < 0) {
+                    assertEquals(own.localScore(i, p), shared.localScore(i, p), 1e-9);
+                }
+            }
+        }
+        assertSame(index.getFamilyCounts(), CTCache.get("test_CT", "a,b_CT").getFamilyCounts());
+    }
+
+    void createTable(String name, int rows, Random random) throws SQLException {
+        execute("create table test_CT.`" + name + "` (MULT bigint, a varchar(5), `b(s0)` varchar(5), `c(s0,p0)` varchar(5), d varchar(5))");
+        Statement st = con.createStatement();
+        for (int r = 0; r < rows; r++) {
+            String values = "" + random.nextInt(6);
+            for (String[] column : VALUES) {
+                String value = column[random.nextInt(column.length)];
+                values += ", " + (value == null ? "null" : "'" + value + "'");
+            }
+            st.execute("insert into test_CT.`" + name + "` values (" + values + ")");
+        }
+        st.close();
+    }
+
+    /*
+     * the rows of select columns, sum(MULT) ... group by columns, sorted
+     */
+    List<String> groupBy(String... columns) throws SQLException {
+        String list = "";
+        for (String column : columns) {
+            list += (list.isEmpty() ? "" : ", ") + "`" + column + "`";
+        }
+        List<String> rows = sql("select " + list + ", sum(MULT) from test_CT.`a,b_CT` group by " + list);
+        Collections.sort(rows);
+        return rows;
+    }
+
+    /*
+     * the rows of table as in groupBy
+     */
+    static List<String> rows(CTTable table) {
+        List<String> rows = new ArrayList<String>();
+        for (int r = 0; r < table.getRowCount(); r++) {
+            List<Object> row = new ArrayList<Object>();
+            for (int c = 0; c < table.getColumnCount(); c++) {
+                row.add(table.getValue(r, c));
+            }
+            row.add(table.getMult(r));
+            rows.add(row.toString());
+        }
+        Collections.sort(rows);
+        return rows;
+    }
+
+    List<String> sql(String query) throws SQLException {
+        Statement st = con.createStatement();
+        ResultSet rs = st.executeQuery(query);
+        List<String> rows = new ArrayList<String>();
+        while (rs.next()) {
+            List<Object> row = new ArrayList<Object>();
+            for (int c = 1; c <= rs.getMetaData().getColumnCount(); c++) {
+                row.add(rs.getString(c));
+            }
+            rows.add(row.toString());
+        }
+        rs.close();
+        st.close();
+        return rows;
+    }
+
+    void execute(String... statements) throws SQLException {
+        Statement st = con.createStatement();
+        for (String sql : statements) {
+            st.execute(sql);
+        }
+        st.close();
+    }
+
+    public static Test suite() {
+        return new TestSuite(TestCTCache.class);
+    }
+}
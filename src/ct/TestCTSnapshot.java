@@ -0,0 +1,125 @@
+package ct;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.Random;
+
+import testing.MemoryDatabase;
+import edu.cmu.tetrad.data.DataReader;
+import edu.cmu.tetrad.data.DataSet;
+import edu.cmu.tetrad.data.DelimiterType;
+import edu.cmu.tetrad.data.DiscreteVariable;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/*
+ * Tests the binary CT snapshots (.ctb) against the .csv files they replace: for the same _CT table, the DataSet read
+ * from the .ctb file (written from the database and from an in-memory CTTable) has the same variables, categories,
+ * rows and multipliers as the one DataReader parses from the .csv file of CSVPrecomputor.writeCSV
+ * (SELECT * ... where mult>0, rs.getString of every column, tab separated). The table is in a MemoryDatabase.
+ */
+public final class TestCTSnapshot extends TestCase {
+
+    File dir;
+
+    public TestCTSnapshot(String name) {
+        super(name);
+    }
+
+    @Override
+    public void setUp() throws Exception {
+        dir = File.createTempFile("TestCTSnapshot", "");
+        dir.delete();
+        dir.mkdirs();
+    }
+
+    @Override
+    public void tearDown() {
+        for (File file : dir.listFiles()) {
+            file.delete();
+        }
+        dir.delete();
+    }
+
+    public void testRoundTrip() throws Exception {
+        Random random = new Random(3);
+        String[][] values = { { "1", "2", "3" }, { "T", "F" }, { "N/A", "A", "B", null }, { "low", "high" } };
+        String[] columns = { "MULT", "diff(course0)", "a", "grade(course0,student0)", "popularity(prof0)" };
+
+        MemoryDatabase db = MemoryDatabase.get("TestCTSnapshot", true);
+        MemoryDatabase.Table table = db.createTable("test_CT", "a_CT", columns);
+        for (int r = 0; r < 200; r++) {
+            Object[] row = new Object[columns.length];
+            row[0] = (long) random.nextInt(4);
+            for (int c = 1; c < columns.length; c++) {
+                row[c] = values[c - 1][random.nextInt(values[c - 1].length)];
+            }
+            table.rows.add(row);
+        }
+
+        Connection conn = db.connect(db.url("test_CT"), "test_CT");
+        File csv = new File(dir, "a.csv");
+        writeCSV(conn, "SELECT * FROM `a_CT` where mult>0;", csv);
+        File fromDatabase = new File(dir, "a" + CTSnapshot.EXTENSION);
+        CTSnapshot.writeTable(conn, "`a_CT`", fromDatabase);
+        CTTable inMemory = CTCursor.readTable(conn, "`a_CT`", new DictionarySet());
+        File fromMemory = new File(dir, "a_memory" + CTSnapshot.EXTENSION);
+        CTSnapshot.write(inMemory, fromMemory);
+        conn.close();
+
+        DataReader parser = new DataReader();
+        parser.setDelimiter(DelimiterType.TAB);
+        DataSet expected = parser.parseTabular(csv);
+        assertEquals(columns.length - 1, expected.getNumColumns());
+        assertEqual(expected, CTSnapshot.read(fromDatabase));
+        assertEqual(expected, CTSnapshot.read(fromMemory));
+        assertEqual(expected, CTSnapshot.toDataSet(inMemory));
+    }
+
+    /*
+     * the .csv file of CSVPrecomputor.writeCSV
+     */
+    static void writeCSV(Connection conn, String query, File file) throws Exception {
+        Statement st = conn.createStatement();
+        ResultSet rs = st.executeQuery(query);
+        int columnCount = rs.getMetaData().getColumnCount();
+        BufferedWriter csv = new BufferedWriter(new FileWriter(file));
+        for (int i = 1; i <= columnCount; i++) {
+            csv.write(rs.getMetaData().getColumnLabel(i) + (i < columnCount ? "\t" : "\n"));
+        }
+        while (rs.next()) {
+            for (int i = 1; i <= columnCount; i++) {
+                csv.write(rs.getString(i) + (i < columnCount ? "\t" : "\n"));
+            }
+        }
+        csv.close();
+        rs.close();
+        st.close();
+    }
+
+    static void assertEqual(DataSet expected, DataSet actual) {
+        assertEquals(expected.getNumColumns(), actual.getNumColumns());
+        assertEquals(expected.getNumRows(), actual.getNumRows());
+        for (int c = 0; c < expected.getNumColumns(); c++) {
+            DiscreteVariable e = (DiscreteVariable) expected.getVariable(c);
+            DiscreteVariable a = (DiscreteVariable) actual.getVariable(c);
+            assertEquals(e.getName(), a.getName());
+            assertEquals(e.getCategories(), a.getCategories());
+            for (int r = 0; r < expected.getNumRows(); r++) {
+                assertEquals(expected.getInt(r, c), actual.getInt(r, c));
+            }
+        }
+        for (int r = 0; r < expected.getNumRows(); r++) {
+            assertEquals(expected.getMultiplier(r), actual.getMultiplier(r));
+        }
+    }
+
+    public static Test suite() {
+        return new TestSuite(TestCTSnapshot.class);
+    }
+}
@@ -0,0 +1,115 @@
+package ct;
+
+import java.sql.Connection;
+import java.util.Random;
+
+import testing.MemoryDatabase;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/*
+ * Tests the value dictionaries of DictionarySet.loadFunctorValues: the values of a functor in Attribute_Value have
+ * the same codes in every DictionarySet and every column of the functor, which share them by reference, other values
+ * get codes after them, and the CT tables built over these codes are the ones of the string columns they replace.
+ * MoebiusCTBuilder is checked against the CT tables of the SQL Moebius transform as in TestMoebiusCTBuilder, with an
+ * Attribute_Value table that lists the values in another order, values that do not occur and misses some (N/A, T/F).
+ */
+public final class TestDictionarySet extends TestCase {
+
+    static final String DB_SETUP = "test_setup";
+
+    public TestDictionarySet(String name) {
+        super(name);
+    }
+
+    @Override
+    public void tearDown() throws Exception {
+        load(MemoryDatabase.get("TestDictionarySet", true));
+    }
+
+    public void testFunctorValues() throws Exception {
+        MemoryDatabase db = MemoryDatabase.get("TestDictionarySet", true);
+        load(db, new Object[] { "grade", "C" }, new Object[] { "grade", "A" }, new Object[] { "grade", "B" },
+                new Object[] { "grade", "A" }, new Object[] { "grade", null }, new Object[] { "intelligence", "2" },
+                new Object[] { "intelligence", "1" });
+
+        DictionarySet set1 = new DictionarySet();
+        DictionarySet set2 = new DictionarySet();
+        ValueDictionary grade1 = set1.get("`grade(course0,student0)`");
+        ValueDictionary grade2 = set2.get("grade(course1,student0)");
+        assertEquals(3, grade1.size());
+        for (String value : new String[] { "A", "B", "C" }) {
+            assertEquals(value, grade1.decode(grade2.lookup(value)));
+            assertEquals(grade1.lookup(value), grade2.encode(value));
+        }
+        assertEquals(0, grade1.lookup("A"));
+        assertEquals(2, grade1.lookup("C"));
+
+        // N/A and NULL are not in Attribute_Value: codes after the known values, per DictionarySet
+        assertEquals(3, grade1.encode("N/A"));
+        assertEquals(4, grade1.encode(null));
+        assertEquals(3, grade2.encode(null));
+        assertEquals(null, grade2.decode(3));
+        assertEquals(3, new DictionarySet().get("grade(course0,student0)").size());
+
+        // the values of the functor are shared by reference, not copied per column
+        assertNotNull(grade1.getBase());
+        assertSame(grade1.getBase(), grade2.getBase());
+        assertSame(grade1.getBase(), set1.get("grade(course1,student1)").getBase());
+        assertEquals(3, grade1.getBase().size());
+        assertEquals(3, grade1.maxLength());
+        assertEquals("N/A", grade1.decode(grade1.lookup("N/A")));
+        assertEquals(-1, grade2.lookup("N/A"));
+
+        assertEquals(0, set1.get("intelligence(student0)").lookup("1"));
+        assertEquals(0, set1.get("`a`").size());
+    }
+
+    public void testMoebius() throws Exception {
+        Random random = new Random(23);
+        int built = 0;
+        for (int run = 0; run < 10; run++) {
+            TestMoebiusCTBuilder.World world = new TestMoebiusCTBuilder.World(random,
+                    new int[] { 1 + random.nextInt(3), 1 + random.nextInt(3), 1 + random.nextInt(4) }, 0.2 + 0.6 * random.nextDouble());
+            if (!world.isComplete()) {
+                continue;
+            }
+            MemoryDatabase db = TestMoebiusCTBuilder.database("TestDictionarySet", world);
+            load(db, new Object[] { "grade", "B" }, new Object[] { "grade", "C" }, new Object[] { "grade", "A" },
+                    new Object[] { "capa", "y" }, new Object[] { "diff", "2" }, new Object[] { "diff", "1" },
+                    new Object[] { "intelligence", "3" }, new Object[] { "intelligence", "2" },
+                    new Object[] { "popularity", "2" });
+
+            MoebiusCTBuilder builder = TestMoebiusCTBuilder.build(db);
+            for (String[] rchain : TestMoebiusCTBuilder.RCHAINS) {
+                String name = TestMoebiusCTBuilder.chainName(rchain);
+                assertEquals(name, world.count(rchain, false), TestMoebiusCTBuilder.rows(builder.getCT(name)));
+            }
+            assertEquals(0, builder.getDictionaries().get("`grade(course0,student0)`").lookup("A"));
+
+            builder.writeCTTables();
+            for (String[] rchain : TestMoebiusCTBuilder.RCHAINS) {
+                String name = TestMoebiusCTBuilder.chainName(rchain);
+                assertEquals(name, world.count(rchain, false),
+                        TestMoebiusCTBuilder.rows(db.getTable(TestMoebiusCTBuilder.DB_CT, name.replace("`", "") + "_CT")));
+            }
+            built++;
+        }
+        assertTrue(built > 3);
+    }
+
+    /*
+     * writes test_setup.Attribute_Value with the rows (COLUMN_NAME, VALUE) and loads the dictionaries from it
+     */
+    static void load(MemoryDatabase db, Object[]... rows) throws Exception {
+        db.createTable(DB_SETUP, "Attribute_Value", new String[] { "COLUMN_NAME", "VALUE" }, rows);
+        Connection con = db.connect(db.url(DB_SETUP), DB_SETUP);
+        DictionarySet.loadFunctorValues(con, DB_SETUP + ".Attribute_Value");
+        con.close();
+    }
+
+    public static Test suite() {
+        return new TestSuite(TestDictionarySet.class);
+    }
+}
@@ -0,0 +1,530 @@
+package ct;
+
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import testing.MemoryDatabase;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/*
+ * Tests MoebiusCTBuilder against the contingency tables counted directly from a small random database.
+ *
+ * The database has three entity sets, course0 (diff), student0 (intelligence) and prof0 (popularity), and two
+ * relationships, a = registered(course0,student0) with grade and b = RA(prof0,student0) with capa. The lattice is
+ * `a`, `b` and `a`,`b`. The _counts and _join tables and the ADT_* metadata are what BayesBaseCT_SortMerge and
+ * metadata_3.sql would make for it, in a MemoryDatabase. The CT table of a lattice point, counted over every
+ * grounding of its population variables (a relationship that does not hold is F and its attributes are N/A), is
+ * what the SQL Moebius transform computes.
+ */
+public final class TestMoebiusCTBuilder extends TestCase {
+
+    static final String DB_BN = "test_BN", DB_CT = "test_CT";
+
+    static final String[] PVARS = { "course0", "prof0", "student0" };
+    static final String[] ATTRIBUTES = { "diff(course0)", "popularity(prof0)", "intelligence(student0)" };
+    static final String[] RNIDS = { "a", "b" };
+    static final String[] RELATIONSHIP_ATTRIBUTES = { "grade(course0,student0)", "capa(prof0,student0)" };
+    // the population variables of a and b, as indexes into PVARS
+    static final int[][] RNODE_PVARS = { { 0, 2 }, { 1, 2 } };
+    static final String[][] RCHAINS = { { "a" }, { "b" }, { "a", "b" } };
+
+    public TestMoebiusCTBuilder(String name) {
+        super(name);
+    }
+
+    /*
+     * A random database: attribute values of the entities, the links of a and b with their attribute values
+     */
+    static class World {
+        final int[] sizes;
+        final String[][] attributes;
+        final ArrayList<HashMap<String, String>> links = new ArrayList<HashMap<String, String>>();
+
+        World(Random random, int[] sizes, double density) {
+            this.sizes = sizes;
+            attributes = new String[PVARS.length][];
+            for (int p = 0; p < PVARS.length; p++) {
+                attributes[p] = new String[sizes[p]];
+                for (int i = 0; i < sizes[p]; i++) {
+                    attributes[p][i] = String.valueOf(1 + random.nextInt(2));
+                }
+            }
+            for (int r = 0; r < RNIDS.length; r++) {
+                HashMap<String, String> rel = new HashMap<String, String>();
+                int p1 = RNODE_PVARS[r][0], p2 = RNODE_PVARS[r][1];
+                for (int i = 0; i < sizes[p1]; i++) {
+                    for (int j = 0; j < sizes[p2]; j++) {
+                        if (random.nextDouble() < density) {
+                            rel.put(i + "," + j, r == 0 ? (random.nextBoolean() ? "A" : "B") : (random.nextBoolean() ? "x" : "y"));
+                        }
+                    }
+                }
+                links.add(rel);
+            }
+        }
+
+        /*
+         * the CT table of an rchain counted over all groundings of its population variables, rows without
+         * MULT as keys "column=value|..." in column order, only rows where all of its relationships hold if trueOnly
+         */
+        TreeMap<String, Long> count(String[] rchain, boolean trueOnly) {
+            ArrayList<Integer> pvars = new ArrayList<Integer>();
+            for (String rnid : rchain) {
+                for (int p : RNODE_PVARS[rnid(rnid)]) {
+                    if (!pvars.contains(p)) {
+                        pvars.add(p);
+                    }
+                }
+            }
+            Collections.sort(pvars);
+            TreeMap<String, Long> result = new TreeMap<String, Long>();
+            int[] grounding = new int[PVARS.length];
+            count(rchain, pvars, 0, grounding, trueOnly, result);
+            return result;
+        }
+
+        void count(String[] rchain, ArrayList<Integer> pvars, int k, int[] grounding, boolean trueOnly, TreeMap<String, Long> result) {
+            if (k < pvars.size()) {
+                for (int i = 0; i < sizes[pvars.get(k)]; i++) {
+                    grounding[pvars.get(k)] = i;
+                    count(rchain, pvars, k + 1, grounding, trueOnly, result);
+                }
+                return;
+            }
+            TreeMap<String, String> row = new TreeMap<String, String>();
+            for (int p : pvars) {
+                row.put(ATTRIBUTES[p], attributes[p][grounding[p]]);
+            }
+            for (String rnid : rchain) {
+                int r = rnid(rnid);
+                String value = links.get(r).get(grounding[RNODE_PVARS[r][0]] + "," + grounding[RNODE_PVARS[r][1]]);
+                if (value == null && trueOnly) {
+                    return;
+                }
+                row.put(rnid, value == null ? "F" : "T");
+                row.put(RELATIONSHIP_ATTRIBUTES[r], value == null ? "N/A" : value);
+            }
+            String key = key(row);
+            Long m = result.get(key);
+            result.put(key, m == null ? 1L : m + 1);
+        }
+
+        TreeMap<String, Long> countPvar(int p) {
+            TreeMap<String, Long> result = new TreeMap<String, Long>();
+            for (int i = 0; i < sizes[p]; i++) {
+                String key = ATTRIBUTES[p] + "=" + attributes[p][i];
+                Long m = result.get(key);
+                result.put(key, m == null ? 1L : m + 1);
+            }
+            return result;
+        }
+
+        /*
+         * the database after rows were inserted and deleted: new entities and links, and some of the links removed
+         */
+        World change(Random random, int[] added, double density, double removed) {
+            World world = new World(random, new int[] { 0, 0, 0 }, 0);
+            int[] newSizes = new int[PVARS.length];
+            for (int p = 0; p < PVARS.length; p++) {
+                newSizes[p] = sizes[p] + added[p];
+                world.attributes[p] = new String[newSizes[p]];
+                for (int i = 0; i < newSizes[p]; i++) {
+                    world.attributes[p][i] = i < sizes[p] ? attributes[p][i] : String.valueOf(1 + random.nextInt(2));
+                }
+            }
+            System.arraycopy(newSizes, 0, world.sizes, 0, newSizes.length);
+            for (int r = 0; r < RNIDS.length; r++) {
+                HashMap<String, String> rel = world.links.get(r);
+                for (Map.Entry<String, String> link : links.get(r).entrySet()) {
+                    if (random.nextDouble() >= removed) {
+                        rel.put(link.getKey(), link.getValue());
+                    }
+                }
+                int p1 = RNODE_PVARS[r][0], p2 = RNODE_PVARS[r][1];
+                for (int i = 0; i < newSizes[p1]; i++) {
+                    for (int j = 0; j < newSizes[p2]; j++) {
+                        if ((i >= sizes[p1] || j >= sizes[p2]) && random.nextDouble() < density) {
+                            rel.put(i + "," + j, r == 0 ? (random.nextBoolean() ? "A" : "B") : (random.nextBoolean() ? "x" : "y"));
+                        }
+                    }
+                }
+            }
+            return world;
+        }
+
+        /*
+         * every _counts table has rows
+         */
+        boolean isComplete() {
+            return !links.get(0).isEmpty() && !links.get(1).isEmpty() && !count(RCHAINS[2], true).isEmpty();
+        }
+    }
+
+    static int rnid(String rnid) {
+        return rnid.equals("a") ? 0 : 1;
+    }
+
+    static String key(Map<String, String> row) {
+        String key = "";
+        for (Map.Entry<String, String> entry : row.entrySet()) {
+            key += (key.length() == 0 ? "" : "|") + entry.getKey() + "=" + entry.getValue();
+        }
+        return key;
+    }
+
+    static String chainName(String[] rchain) {
+        String name = "";
+        for (String rnid : rchain) {
+            name += (name.length() == 0 ? "" : ",") + "`" + rnid + "`";
+        }
+        return name;
+    }
+
+    /*
+     * the _counts and _join tables of BuildCT_Pvars, BuildCT_Rnodes_counts and BuildCT_Rnodes_join
+     */
+    static void writeCounts(MemoryDatabase db, World world) {
+        for (int p = 0; p < PVARS.length; p++) {
+            writeTable(db, PVARS[p] + "_counts", world.countPvar(p));
+        }
+        for (String[] rchain : RCHAINS) {
+            writeTable(db, chainName(rchain).replace("`", "") + "_counts", world.count(rchain, true));
+        }
+        for (int r = 0; r < RNIDS.length; r++) {
+            db.createTable(DB_CT, RNIDS[r] + "_join", new String[] { RNIDS[r], RELATIONSHIP_ATTRIBUTES[r] }, new Object[] { "F", "N/A" });
+        }
+    }
+
+    static void writeTable(MemoryDatabase db, String table, TreeMap<String, Long> rows) {
+        ArrayList<String> columns = new ArrayList<String>();
+        columns.add("MULT");
+        ArrayList<Object[]> values = new ArrayList<Object[]>();
+        for (Map.Entry<String, Long> row : rows.entrySet()) {
+            String[] cells = row.getKey().split("\\|");
+            if (columns.size() == 1) {
+                for (String cell : cells) {
+                    columns.add(cell.substring(0, cell.indexOf('=')));
+                }
+            }
+            Object[] value = new Object[cells.length + 1];
+            value[0] = row.getValue();
+            for (int c = 0; c < cells.length; c++) {
+                value[c + 1] = cells[c].substring(cells[c].indexOf('=') + 1);
+            }
+            values.add(value);
+        }
+        if (columns.size() == 1) {
+            throw new IllegalArgumentException("no rows for " + table);
+        }
+        db.createTable(DB_CT, table, columns.toArray(new String[columns.size()]), values.toArray(new Object[values.size()][]));
+    }
+
+    /*
+     * the answers of _BN (lattice and ADT_* lists) to the queries of MoebiusCTBuilder
+     */
+    static void writeMetadata(MemoryDatabase db) {
+        db.cannedEntries("select pvid as Entries from PVariables;", PVARS);
+        db.cannedEntries("select rnid as Entries from RNodes;", "`a`", "`b`");
+        db.cannedEntries("select name as Entries from lattice_set order by length;", "`a`", "`b`", "`a`,`b`");
+        db.cannedEntries("select name as Entries from lattice_set where lattice_set.length = 1;", "`a`", "`b`");
+        db.cannedEntries("select name as Entries from lattice_set where lattice_set.length = 2;", "`a`,`b`");
+        db.cannedEntries("select name as Entries from lattice_set where lattice_set.length > 1 order by length;", "`a`,`b`");
+        for (int r = 0; r < RNIDS.length; r++) {
+            String rchain = "`" + RNIDS[r] + "`";
+            String[] oneNodes = { "`" + ATTRIBUTES[RNODE_PVARS[r][0]] + "`", "`" + ATTRIBUTES[RNODE_PVARS[r][1]] + "`" };
+            db.cannedEntries("SELECT DISTINCT Entries FROM lattice_membership, ADT_RNodes_1Nodes_GroupBY_List WHERE NAME = '" + rchain + "' AND lattice_membership.member = ADT_RNodes_1Nodes_GroupBY_List.rnid;", oneNodes);
+            db.cannedEntries("SELECT DISTINCT Entries FROM lattice_membership, ADT_RNodes_Star_Select_List WHERE NAME = '" + rchain + "' AND lattice_membership.member = ADT_RNodes_Star_Select_List.rnid;", oneNodes);
+            db.cannedEntries("SELECT DISTINCT Entries FROM lattice_membership, ADT_RNodes_Star_From_List WHERE NAME = '" + rchain + "' AND lattice_membership.member = ADT_RNodes_Star_From_List.rnid;",
+                    "`" + PVARS[RNODE_PVARS[r][0]] + "_counts`", "`" + PVARS[RNODE_PVARS[r][1]] + "_counts`");
+        }
+        String ab = "`a`,`b`";
+        db.canned("SELECT distinct parent, removed as rnid FROM lattice_rel  where child = '" + ab + "' order by rnid ASC;",
+                new String[] { "parent", "rnid" }, new Object[] { "`b`", "`a`" }, new Object[] { "`a`", "`b`" });
+        // removing a: the parent is b, course0 is the population variable of a that b does not have
+        db.cannedEntries("SELECT DISTINCT Entries FROM ADT_RChain_Star_Select_List WHERE rchain = '" + ab + "' and '`a`' = rnid;",
+                "`intelligence(student0)`", "`popularity(prof0)`", "`capa(prof0,student0)`", "`b`", "`diff(course0)`");
+        db.cannedEntries("SELECT DISTINCT Entries FROM  ADT_RChain_Star_From_List WHERE rchain = '" + ab + "' and '`a`' = rnid;", "`b_CT`", "`course0_counts`");
+        db.cannedEntries("SELECT DISTINCT Entries FROM  ADT_RChain_Star_Where_List WHERE rchain = '" + ab + "' and '`a`' = rnid;", "`b` = \"T\"");
+        // removing b: the parent is a, prof0 is new
+        db.cannedEntries("SELECT DISTINCT Entries FROM ADT_RChain_Star_Select_List WHERE rchain = '" + ab + "' and '`b`' = rnid;",
+                "`diff(course0)`", "`intelligence(student0)`", "`grade(course0,student0)`", "`a`", "`popularity(prof0)`");
+        db.cannedEntries("SELECT DISTINCT Entries FROM  ADT_RChain_Star_From_List WHERE rchain = '" + ab + "' and '`b`' = rnid;", "`a_CT`", "`prof0_counts`");
+        db.cannedEntries("SELECT DISTINCT Entries FROM  ADT_RChain_Star_Where_List WHERE rchain = '" + ab + "' and '`b`' = rnid;");
+    }
+
+    /*
+     * rows with MULT != 0 as keys "column=value|..." in column order
+     */
+    static TreeMap<String, Long> rows(CTTable table) {
+        TreeMap<String, Long> result = new TreeMap<String, Long>();
+        for (int r = 0; r < table.getRowCount(); r++) {
+            if (table.getMult(r) == 0) {
+                continue;
+            }
+            TreeMap<String, String> row = new TreeMap<String, String>();
+            for (int c = 0; c < table.getColumnCount(); c++) {
+                row.put(table.getColumns()[c], table.getValue(r, c));
+            }
+            String key = key(row);
+            Long m = result.get(key);
+            result.put(key, m == null ? table.getMult(r) : m + table.getMult(r));
+        }
+        return result;
+    }
+
+    static TreeMap<String, Long> rows(MemoryDatabase.Table table) {
+        TreeMap<String, Long> result = new TreeMap<String, Long>();
+        int mult = table.indexOf("MULT");
+        for (Object[] values : table.rows) {
+            long m = ((Number) values[mult]).longValue();
+            if (m == 0) {
+                continue;
+            }
+            TreeMap<String, String> row = new TreeMap<String, String>();
+            for (int c = 0; c < values.length; c++) {
+                if (c != mult) {
+                    row.put(table.columns.get(c), String.valueOf(values[c]));
+                }
+            }
+            String key = key(row);
+            Long old = result.get(key);
+            result.put(key, old == null ? m : old + m);
+        }
+        return result;
+    }
+
+    static MemoryDatabase database(World world) {
+        return database("TestMoebiusCTBuilder", world);
+    }
+
+    static MemoryDatabase database(String name, World world) {
+        MemoryDatabase db = MemoryDatabase.get(name, true);
+        writeCounts(db, world);
+        writeMetadata(db);
+        return db;
+    }
+
+    static MoebiusCTBuilder build(MemoryDatabase db) throws Exception {
+        Connection con2 = db.connect(db.url(DB_BN), DB_BN);
+        Connection con3 = db.connect(db.url(DB_CT), DB_CT);
+        MoebiusCTBuilder builder = new MoebiusCTBuilder(con2, con3, DB_CT);
+        builder.loadCounts();
+        builder.build(2);
+        return builder;
+    }
+
+    /*
+     * every lattice point, in memory and as written to _CT
+     */
+    public void testBuild() throws Exception {
+        Random random = new Random(17);
+        int built = 0;
+        for (int run = 0; run < 10; run++) {
+            World world = new World(random, new int[] { 1 + random.nextInt(3), 1 + random.nextInt(3), 1 + random.nextInt(4) }, 0.2 + 0.6 * random.nextDouble());
+            if (!world.isComplete()) {
+                continue;
+            }
+            MemoryDatabase db = database(world);
+            MoebiusCTBuilder builder = build(db);
+            for (String[] rchain : RCHAINS) {
+                assertEquals(chainName(rchain), world.count(rchain, false), rows(builder.getCT(chainName(rchain))));
+            }
+
+            builder.writeCTTables();
+            for (String[] rchain : RCHAINS) {
+                assertEquals(chainName(rchain), world.count(rchain, false), rows(db.getTable(DB_CT, chainName(rchain).replace("`", "") + "_CT")));
+            }
+            built++;
+        }
+        assertTrue(built > 3);
+    }
+
+    /*
+     * the two students of the example each registered in the one course, one of them is an RA of the one prof
+     */
+    public void testSmall() throws Exception {
+        World world = new World(new Random(1), new int[] { 1, 1, 2 }, 0);
+        world.attributes[0][0] = "1";
+        world.attributes[1][0] = "2";
+        world.attributes[2][0] = "1";
+        world.attributes[2][1] = "2";
+        world.links.get(0).put("0,0", "A");
+        world.links.get(0).put("0,1", "B");
+        world.links.get(1).put("0,1", "x");
+        MoebiusCTBuilder builder = build(database(world));
+
+        TreeMap<String, Long> ct = rows(builder.getCT("`a`,`b`"));
+        assertEquals(2, ct.size());
+        assertEquals(Long.valueOf(1), ct.get("a=T|b=F|capa(prof0,student0)=N/A|diff(course0)=1|grade(course0,student0)=A|intelligence(student0)=1|popularity(prof0)=2"));
+        assertEquals(Long.valueOf(1), ct.get("a=T|b=T|capa(prof0,student0)=x|diff(course0)=1|grade(course0,student0)=B|intelligence(student0)=2|popularity(prof0)=2"));
+    }
+
+    /*
+     * the _CT tables as CTGenerator writes them, without the rows with MULT = 0 in the biggest one
+     */
+    static void buildCT(MemoryDatabase db) throws Exception {
+        MoebiusCTBuilder builder = build(db);
+        builder.getCT("`a`,`b`").removeZeroRows();
+        builder.writeCTTables();
+    }
+
+    /*
+     * the changes of the _counts tables between two databases, as BayesBaseCT_Delta counts them, with the columns of
+     * the tables in _CT
+     */
+    static HashMap<String, CTTable> countDeltas(MoebiusCTBuilder builder, World world, World next) throws Exception {
+        HashMap<String, CTTable> deltas = new HashMap<String, CTTable>();
+        for (int p = 0; p < PVARS.length; p++) {
+            String name = PVARS[p] + "_counts";
+            deltas.put(name, delta(builder.emptyTable(name), world.countPvar(p), next.countPvar(p)));
+        }
+        for (String[] rchain : RCHAINS) {
+            String name = chainName(rchain).replace("`", "") + "_counts";
+            deltas.put(name, delta(builder.emptyTable(name), world.count(rchain, true), next.count(rchain, true)));
+        }
+        return deltas;
+    }
+
+    static CTTable delta(CTTable table, TreeMap<String, Long> before, TreeMap<String, Long> after) {
+        TreeMap<String, Long> delta = new TreeMap<String, Long>(after);
+        for (Map.Entry<String, Long> row : before.entrySet()) {
+            Long m = delta.get(row.getKey());
+            delta.put(row.getKey(), (m == null ? 0 : m) - row.getValue());
+        }
+        for (Map.Entry<String, Long> row : delta.entrySet()) {
+            if (row.getValue() == 0) {
+                continue;
+            }
+            int[] tuple = new int[table.getColumnCount()];
+            for (String cell : row.getKey().split("\\|")) {
+                int c = table.indexOfColumn(cell.substring(0, cell.indexOf('=')));
+                tuple[c] = table.getDictionaries()[c].encode(cell.substring(cell.indexOf('=') + 1));
+            }
+            table.addRow(tuple, row.getValue());
+        }
+        return table;
+    }
+
+    /*
+     * applies the changes as BayesBaseCT_Delta.updateCT does
+     */
+    static MoebiusCTBuilder update(MemoryDatabase db, World world, World next) throws Exception {
+        Connection con2 = db.connect(db.url(DB_BN), DB_BN);
+        Connection con3 = db.connect(db.url(DB_CT), DB_CT);
+        MoebiusCTBuilder builder = new MoebiusCTBuilder(con2, con3, DB_CT);
+        for (Map.Entry<String, CTTable> entry : builder.applyDelta(countDeltas(builder, world, next)).entrySet()) {
+            builder.writeDelta(entry.getKey(), entry.getValue());
+            if (entry.getKey().endsWith("_counts") || entry.getKey().equals("a,b_CT")) {
+                builder.removeZeroRows(entry.getKey());
+            }
+        }
+        return builder;
+    }
+
+    /*
+     * the _counts and _CT tables after a delta update are the ones a full rebuild writes
+     */
+    public void testDelta() throws Exception {
+        Random random = new Random(23);
+        int updated = 0;
+        for (int run = 0; run < 20; run++) {
+            World world = new World(random, new int[] { 1 + random.nextInt(3), 1 + random.nextInt(3), 1 + random.nextInt(4) }, 0.2 + 0.6 * random.nextDouble());
+            World next = world.change(random, new int[] { random.nextInt(2), random.nextInt(2), random.nextInt(3) }, 0.2 + 0.6 * random.nextDouble(), 0.3 * random.nextDouble());
+            if (!world.isComplete() || !next.isComplete()) {
+                continue;
+            }
+            MemoryDatabase db = database("TestMoebiusCTBuilder", world);
+            buildCT(db);
+            update(db, world, next);
+
+            MemoryDatabase rebuilt = database("TestMoebiusCTBuilder_rebuilt", next);
+            buildCT(rebuilt);
+
+            for (String pvar : PVARS) {
+                assertEquals(pvar, rows(rebuilt.getTable(DB_CT, pvar + "_counts")), rows(db.getTable(DB_CT, pvar + "_counts")));
+                assertFalse(pvar, hasZeroRows(db.getTable(DB_CT, pvar + "_counts")));
+            }
+            for (String[] rchain : RCHAINS) {
+                String name = chainName(rchain).replace("`", "");
+                assertEquals(name, rows(rebuilt.getTable(DB_CT, name + "_counts")), rows(db.getTable(DB_CT, name + "_counts")));
+                assertFalse(name, hasZeroRows(db.getTable(DB_CT, name + "_counts")));
+                assertEquals(name, rows(rebuilt.getTable(DB_CT, name + "_CT")), rows(db.getTable(DB_CT, name + "_CT")));
+                assertEquals(name, next.count(rchain, false), rows(db.getTable(DB_CT, name + "_CT")));
+            }
+            assertFalse(hasZeroRows(db.getTable(DB_CT, "a,b_CT")));
+            updated++;
+        }
+        assertTrue(updated > 5);
+    }
+
+    /*
+     * when only links of b are removed, the tables of a and the factors next to unchanged ones are not read
+     */
+    public void testDeltaReadsOnlyWhatChanged() throws Exception {
+        Random random = new Random(31);
+        World world;
+        World next;
+        do {
+            world = new World(random, new int[] { 2, 2, 3 }, 0.6);
+            next = world.change(random, new int[] { 0, 0, 0 }, 0, 0.5);
+            next.links.get(0).putAll(world.links.get(0));
+        } while (!world.isComplete() || !next.isComplete() || next.links.get(1).size() == world.links.get(1).size());
+
+        MemoryDatabase db = database(world);
+        buildCT(db);
+        MoebiusCTBuilder builder = update(db, world, next);
+
+        assertEquals(new TreeSet<String>(Arrays.asList("course0_counts", "b_join", "a_join")), new TreeSet<String>(builder.tables.keySet()));
+        for (String[] rchain : RCHAINS) {
+            String name = chainName(rchain).replace("`", "");
+            assertEquals(name, next.count(rchain, false), rows(db.getTable(DB_CT, name + "_CT")));
+        }
+    }
+
+    /*
+     * a pruned rchain (LatticePruning) is neither read nor built, the other lattice points are the same
+     */
+    public void testPruned() throws Exception {
+        Random random = new Random(5);
+        World world;
+        do {
+            world = new World(random, new int[] { 2, 2, 3 }, 0.5);
+        } while (!world.isComplete());
+        MemoryDatabase db = database(world);
+        Connection con2 = db.connect(db.url(DB_BN), DB_BN);
+        Connection con3 = db.connect(db.url(DB_CT), DB_CT);
+        MoebiusCTBuilder builder = new MoebiusCTBuilder(con2, con3, DB_CT);
+        builder.setPruned(Arrays.asList("`a`,`b`"));
+        builder.loadCounts();
+        builder.build(2);
+
+        assertFalse(builder.tables.containsKey("a,b_counts"));
+        assertNull(builder.getCT("`a`,`b`"));
+        assertEquals(Arrays.asList("`a`", "`b`"), builder.getRChains());
+        for (String rchain : builder.getRChains()) {
+            assertEquals(rchain, world.count(new String[] { rchain.replace("`", "") }, false), rows(builder.getCT(rchain)));
+        }
+    }
+
+    static boolean hasZeroRows(MemoryDatabase.Table table) {
+        for (Object[] row : table.rows) {
+            if (((Number) row[table.indexOf("MULT")]).longValue() == 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public static Test suite() {
+        return new TestSuite(TestMoebiusCTBuilder.class);
+    }
+}
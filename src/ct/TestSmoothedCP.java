@@ -0,0 +1,218 @@
+package ct;
+
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import testing.MemoryDatabase;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/*
+ * Tests SmoothedCP against the _CP_smoothed table that KLD_generator made with SQL, redone here row by row: the
+ * pairs table is the cross product of the distinct values of the child and parent columns of the _CP table (pairs),
+ * query1 copies the rows of the _CP table, query2 adds the missing pairs with MULT 0, then MULT = MULT + 1,
+ * ParentSum = sum(MULT) per parent state, CP = MULT / ParentSum as float(7,6), and per parent state the child value
+ * with the largest CP gets 1 - sum(CP) of the others (update_ps). The _CP tables are in a MemoryDatabase.
+ */
+public final class TestSmoothedCP extends TestCase {
+
+    static final String DB = "test_BN";
+
+    public TestSmoothedCP(String name) {
+        super(name);
+    }
+
+    public void testWrite() throws Exception {
+        Random random = new Random(13);
+        for (int run = 0; run < 20; run++) {
+            int parents = random.nextInt(4);
+            MemoryDatabase db = MemoryDatabase.get("TestSmoothedCP", true);
+            MemoryDatabase.Table cp = randomCP(db, random, parents);
+            String[] parentColumns = new String[parents];
+            for (int p = 0; p < parents; p++) {
+                parentColumns[p] = "`" + cp.columns.get(p + 2) + "`";
+            }
+            db.createTable(DB, "c_CP_smoothed", cp.columns.toArray(new String[cp.columns.size()]));
+            Connection con = db.connect(db.url(DB), DB);
+            SmoothedCP smoothed = SmoothedCP.read(con, "`c_CP`", "`c`", parentColumns);
+            smoothed.write(con, "`c_CP_smoothed`");
+            con.close();
+
+            Map<String, float[]> expected = smooth(cp);
+            MemoryDatabase.Table actual = db.getTable(DB, "c_CP_smoothed");
+            long states = expected.size() / Math.max(1, domain(cp, 1).size());
+            assertEquals(expected.size(), actual.rows.size());
+            assertEquals(states, smoothed.getStateCount());
+            for (Object[] row : actual.rows) {
+                float[] values = expected.get(key(cp, row));
+                assertNotNull(values);
+                assertEquals((long) values[0], ((Number) row[0]).longValue());
+                assertEquals((long) values[1], ((Number) row[cp.indexOf("ParentSum")]).longValue());
+                assertEquals(values[2], ((Number) row[cp.indexOf("CP")]).floatValue(), 0f);
+            }
+        }
+    }
+
+    /*
+     * cp(), which the KLD table reads, gives the CP column of the smoothed table, observed parent state or not
+     */
+    public void testCP() throws Exception {
+        Random random = new Random(21);
+        for (int run = 0; run < 20; run++) {
+            int parents = 1 + random.nextInt(3);
+            MemoryDatabase db = MemoryDatabase.get("TestSmoothedCP", true);
+            MemoryDatabase.Table cp = randomCP(db, random, parents);
+            String[] parentColumns = new String[parents];
+            for (int p = 0; p < parents; p++) {
+                parentColumns[p] = "`" + cp.columns.get(p + 2) + "`";
+            }
+            Connection con = db.connect(db.url(DB), DB);
+            SmoothedCP smoothed = SmoothedCP.read(con, "`c_CP`", "`c`", parentColumns);
+            con.close();
+
+            for (Map.Entry<String, float[]> entry : smooth(cp).entrySet()) {
+                String[] values = entry.getKey().split("\\|");
+                int child = smoothed.getDictionaries()[0].lookup(values[0]);
+                int[] state = new int[parents];
+                for (int p = 0; p < parents; p++) {
+                    state[p] = smoothed.getDictionaries()[p + 1].lookup(values[p + 1]);
+                }
+                assertEquals(entry.getValue()[2], smoothed.cp(child, state), 0f);
+            }
+        }
+    }
+
+    /*
+     * c_CP with columns MULT, c, parents..., ParentSum, CP, likelihood, local_mult: the rows with MULT > 0 of a
+     * random family, some values of the parents only occur with a few of the others
+     */
+    static MemoryDatabase.Table randomCP(MemoryDatabase db, Random random, int parents) {
+        List<String> columns = new ArrayList<String>();
+        columns.add("MULT");
+        columns.add("c");
+        for (int p = 0; p < parents; p++) {
+            columns.add("p" + p);
+        }
+        columns.add("ParentSum");
+        columns.add("CP");
+        columns.add("likelihood");
+        columns.add("local_mult");
+
+        TreeMap<String, Long> counts = new TreeMap<String, Long>();
+        int rows = 1 + random.nextInt(30);
+        for (int n = 0; n < rows; n++) {
+            String key = String.valueOf((char) ('a' + random.nextInt(3)));
+            for (int p = 0; p < parents; p++) {
+                key += "|" + (1 + random.nextInt(2 + p));
+            }
+            Long m = counts.get(key);
+            counts.put(key, (m == null ? 0 : m) + 1 + random.nextInt(random.nextBoolean() ? 5 : 500));
+        }
+        ArrayList<Object[]> values = new ArrayList<Object[]>();
+        for (Map.Entry<String, Long> entry : counts.entrySet()) {
+            Object[] row = new Object[columns.size()];
+            row[0] = entry.getValue();
+            String[] family = entry.getKey().split("\\|");
+            System.arraycopy(family, 0, row, 1, family.length);
+            values.add(row);
+        }
+        return db.createTable(DB, "c_CP", columns.toArray(new String[columns.size()]),
+                values.toArray(new Object[values.size()][]));
+    }
+
+    /*
+     * the smoothed table of pairs + query1/query2 + update_ps, by "child|parents...": MULT, ParentSum, CP
+     */
+    static Map<String, float[]> smooth(MemoryDatabase.Table cp) {
+        int width = cp.columns.size() - 5; // child and parents
+
+        // pairs: the cross product of the distinct values, MULT 0, then query1 and query2
+        LinkedHashMap<String, Long> mult = new LinkedHashMap<String, Long>();
+        mult.put("", 0L);
+        for (int c = 1; c <= width; c++) {
+            LinkedHashMap<String, Long> next = new LinkedHashMap<String, Long>();
+            for (String prefix : mult.keySet()) {
+                for (String value : domain(cp, c)) {
+                    next.put(prefix + (c > 1 ? "|" : "") + value, 0L);
+                }
+            }
+            mult = next;
+        }
+        for (Object[] row : cp.rows) {
+            mult.put(key(cp, row), ((Number) row[0]).longValue());
+        }
+
+        // MULT + 1, ParentSum, CP
+        TreeMap<String, Long> parentSum = new TreeMap<String, Long>();
+        for (Map.Entry<String, Long> entry : mult.entrySet()) {
+            entry.setValue(entry.getValue() + 1);
+            String state = parentState(entry.getKey());
+            Long sum = parentSum.get(state);
+            parentSum.put(state, (sum == null ? 0 : sum) + entry.getValue());
+        }
+        LinkedHashMap<String, float[]> smoothed = new LinkedHashMap<String, float[]>();
+        for (Map.Entry<String, Long> entry : mult.entrySet()) {
+            long sum = parentSum.get(parentState(entry.getKey()));
+            smoothed.put(entry.getKey(), new float[] { entry.getValue(), sum, float6((double) entry.getValue() / sum) });
+        }
+
+        // update_ps: the child value with the largest CP (the first one of the ties) gets 1 - SubTot
+        for (String state : parentSum.keySet()) {
+            String largest = null;
+            for (String key : smoothed.keySet()) {
+                if (parentState(key).equals(state) && (largest == null || smoothed.get(key)[2] > smoothed.get(largest)[2])) {
+                    largest = key;
+                }
+            }
+            double subTot = 0;
+            for (String key : smoothed.keySet()) {
+                if (parentState(key).equals(state) && !key.equals(largest)) {
+                    subTot += smoothed.get(key)[2];
+                }
+            }
+            smoothed.get(largest)[2] = float6(1 - Double.parseDouble(Float.toString((float) subTot)));
+        }
+        return smoothed;
+    }
+
+    /*
+     * SELECT DISTINCT column FROM c_CP, in the order of the rows
+     */
+    static List<String> domain(MemoryDatabase.Table cp, int column) {
+        List<String> values = new ArrayList<String>();
+        for (Object[] row : cp.rows) {
+            if (!values.contains(row[column])) {
+                values.add((String) row[column]);
+            }
+        }
+        return values;
+    }
+
+    static String key(MemoryDatabase.Table cp, Object[] row) {
+        String key = (String) row[1];
+        for (int c = 2; c < cp.columns.size() - 4; c++) {
+            key += "|" + row[c];
+        }
+        return key;
+    }
+
+    static String parentState(String key) {
+        int bar = key.indexOf('|');
+        return bar < 0 ? "" : key.substring(bar);
+    }
+
+    // the float(7,6) column
+    static float float6(double value) {
+        return (float) (Math.round(value * 1e6) / 1e6);
+    }
+
+    public static Test suite() {
+        return new TestSuite(TestSmoothedCP.class);
+    }
+}
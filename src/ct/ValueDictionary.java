@@ -0,0 +1,88 @@
+package ct;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/*
+ * Dictionary encoding for the values of one CT column.
+ * Every distinct string (including SQL NULL) is mapped to a small int code, codes are dense and
+ * assigned in order of first appearance, so they can be used directly as array indexes.
+ */
+public class ValueDictionary {
+
+    // the values this dictionary starts with (codes 0 .. baseSize - 1), shared by reference, e.g. the values of a
+    // functor in DictionarySet; new values are added to this dictionary only
+    private final ValueDictionary base;
+    private final int baseSize;
+    private final HashMap<String, Integer> codes = new HashMap<String, Integer>();
+    private final ArrayList<String> values = new ArrayList<String>();
+
+    public ValueDictionary() {
+        this(null);
+    }
+
+    /*
+     * a dictionary that starts with the codes of base without copying them; base must not change any more
+     */
+    public ValueDictionary(ValueDictionary base) {
+        this.base = base;
+        this.baseSize = base == null ? 0 : base.size();
+    }
+
+    /*
+     * returns the code of value, adding it to the dictionary if it is new
+     */
+    public int encode(String value) {
+        int known = base == null ? -1 : base.lookup(value);
+        if (known >= 0 && known < baseSize) {
+            return known;
+        }
+        Integer code = codes.get(value);
+        if (code == null) {
+            code = baseSize + values.size();
+            codes.put(value, code);
+            values.add(value);
+        }
+        return code;
+    }
+
+    /*
+     * returns the code of value, or -1 if the value has never been seen
+     */
+    public int lookup(String value) {
+        int known = base == null ? -1 : base.lookup(value);
+        if (known >= 0 && known < baseSize) {
+            return known;
+        }
+        Integer code = codes.get(value);
+        return code == null ? -1 : code;
+    }
+
+    /*
+     * the dictionary this one starts with, or null
+     */
+    ValueDictionary getBase() {
+        return base;
+    }
+
+    public String decode(int code) {
+        return code < baseSize ? base.decode(code) : values.get(code - baseSize);
+    }
+
+    public int size() {
+        return baseSize + values.size();
+    }
+
+    /*
+     * length of the longest non null value, used to size varchar columns
+     */
+    public int maxLength() {
+        int max = base == null ? 0 : base.maxLength();
+        for (String value : values) {
+            if (value != null && value.length() > max) {
+                max = value.length();
+            }
+        }
+        return max;
+    }
+}
@@ -0,0 +1,321 @@
+/*
+ * ConnectionPool.java
+ *
+ * Shared JDBC connections for all stages of the pipeline
+ * -getConnection replaces DriverManager.getConnection: close() on the returned connection gives the physical
+ *  connection back to the pool instead of closing it, so the next connectDB() (the next stage, the next grounding
+ *  of FunctorWrapper, ...) does not open a new one
+ * -the physical connections are opened through the SqlBackend of the url (MySQL server or embedded H2), which also
+ *  rewrites the MySQL statements of the stages where needed; on MySQL they cache prepared statements
+ *  (Connector/J cachePrepStmts) and rewrite batches into multi-row inserts (rewriteBatchedStatements)
+ * -scanStatement / streamingStatement give forward only statements for big table scans (CT, _star, _flat, ...):
+ *  the rows are fetched from a server side cursor (useCursorFetch) in blocks that fit in scanMemory, so a scan
+ *  never buffers the whole table and several scans can be open on one connection at the same time
+ * -connections, statements and the time spent opening / holding connections and executing statements are counted
+ *  per stage and backend, see printMetrics, to compare the throughput of the stages between backends
+ */
+
+package database;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+
+public class ConnectionPool {
+
+	//idle physical connections kept per url and user, more are closed when they are given back
+	public static int maxIdle = 8;
+
+	//memory for the rows buffered by one scan (ScanMemoryMB in config.cfg)
+	public static long scanMemory = 64L << 20;
+	//estimated size of a buffered row: per row and per column
+	static final int ROW_BYTES = 64, COLUMN_BYTES = 32;
+	//block size for scans whose number of columns is not known
+	static final int DEFAULT_COLUMNS = 16;
+
+	static final HashMap<String, LinkedList<Connection>> idle = new HashMap<String, LinkedList<Connection>>();
+	static final LinkedHashMap<String, StageMetrics> metrics = new LinkedHashMap<String, StageMetrics>();
+
+	/*
+	 * Counters of one stage
+	 */
+	public static class StageMetrics {
+		public String backend = "";
+		public long borrowed, opened, statements, prepared, streaming, executed;
+		public long openMillis, heldMillis, executeMillis;
+
+		public String toString() {
+			return "[" + backend + "] connections: " + borrowed + " (" + opened + " opened, " + openMillis + " ms), held: " + heldMillis
+					+ " ms, statements: " + statements + ", prepared: " + prepared + ", streaming: " + streaming
+					+ ", executed: " + executed + " (" + executeMillis + " ms" + (executeMillis > 0 ? ", " + (executed * 1000 / executeMillis) + "/s" : "") + ")";
+		}
+	}
+
+	/*
+	 * Returns a connection to url (as for DriverManager.getConnection) for the given stage, e.g. "BayesBaseH"
+	 * -an idle connection is reused if it is still valid, otherwise a new one is opened
+	 */
+	public static Connection getConnection(String stage, String url, String username, String password) throws SQLException {
+		String key = url + " " + username;
+		SqlBackend backend = SqlBackend.forUrl(url);
+		StageMetrics m = metrics(stage);
+		Connection physical = null;
+		synchronized (ConnectionPool.class) {
+			m.borrowed++;
+			m.backend = backend.getName();
+			LinkedList<Connection> list = idle.get(key);
+			while (physical == null && list != null && !list.isEmpty()) {
+				physical = list.removeFirst();
+			}
+		}
+		if (physical != null && !physical.isValid(2)) {
+			closeQuietly(physical);
+			physical = null;
+		}
+		if (physical == null) {
+			try {
+				java.lang.Class.forName(backend.getDriverClass());
+			} catch (Exception ex) {
+				System.err.println("Unable to load JDBC driver " + backend.getDriverClass());
+			}
+			long start = System.currentTimeMillis();
+			physical = DriverManager.getConnection(backend.connectionUrl(url), username, password);
+			synchronized (ConnectionPool.class) {
+				m.opened++;
+				m.openMillis += System.currentTimeMillis() - start;
+			}
+		}
+		return wrap(physical, key, backend, m);
+	}
+
+	/*
+	 * Statement for a forward only, read only scan of rows with the given number of columns
+	 * -the rows come from a server side cursor, fetchScanRows at a time
+	 * -on a MySQL connection without cursor fetch (not from the pool) they are streamed one at a time instead, then
+	 *  no other statement can be run on the connection until the result set is closed
+	 */
+	public static Statement scanStatement(Connection conn, String stage, int columns) throws SQLException {
+		Statement st = conn.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+		st.setFetchSize(SqlBackend.forConnection(conn).scanFetchSize(conn, fetchScanRows(columns)));
+		synchronized (ConnectionPool.class) {
+			metrics(stage).streaming++;
+		}
+		return st;
+	}
+
+	/*
+	 * scanStatement for rows whose width is not known
+	 */
+	public static Statement streamingStatement(Connection conn, String stage) throws SQLException {
+		return scanStatement(conn, stage, DEFAULT_COLUMNS);
+	}
+
+	/*
+	 * number of rows of the given width that fit in scanMemory
+	 */
+	public static int fetchScanRows(int columns) {
+		long rows = scanMemory / (ROW_BYTES + COLUMN_BYTES * (long) Math.max(columns, 1));
+		return (int) Math.max(100, Math.min(rows, 1000000));
+	}
+
+	public static synchronized StageMetrics metrics(String stage) {
+		StageMetrics m = metrics.get(stage);
+		if (m == null) {
+			m = new StageMetrics();
+			metrics.put(stage, m);
+		}
+		return m;
+	}
+
+	public static synchronized void printMetrics() {
+		System.out.println("Connection pool:");
+		for (String stage : metrics.keySet()) {
+			System.out.println("  " + stage + " - " + metrics.get(stage));
+		}
+	}
+
+	/*
+	 * Closes all idle connections, e.g. at the end of a run
+	 */
+	public static void closeAll() {
+		ArrayList<Connection> connections = new ArrayList<Connection>();
+		synchronized (ConnectionPool.class) {
+			for (LinkedList<Connection> list : idle.values()) {
+				connections.addAll(list);
+			}
+			idle.clear();
+		}
+		for (Connection conn : connections) {
+			closeQuietly(conn);
+		}
+	}
+
+	/*
+	 * Takes back a physical connection: open transactions are rolled back and the database of the url is selected
+	 * again (some stages run "USE ..."), then it is kept if there are less than maxIdle idle connections for key
+	 */
+	static void release(Connection physical, String key) {
+		try {
+			if (physical.isClosed()) {
+				return;
+			}
+			if (!physical.getAutoCommit()) {
+				physical.rollback();
+				physical.setAutoCommit(true);
+			}
+			String url = key.substring(0, key.lastIndexOf(' '));
+			SqlBackend backend = SqlBackend.forUrl(url);
+			backend.selectDatabase(physical, backend.database(url));
+		} catch (SQLException e) {
+			closeQuietly(physical);
+			return;
+		}
+		synchronized (ConnectionPool.class) {
+			LinkedList<Connection> list = idle.get(key);
+			if (list == null) {
+				list = new LinkedList<Connection>();
+				idle.put(key, list);
+			}
+			if (list.size() < maxIdle) {
+				list.addFirst(physical);
+				return;
+			}
+		}
+		closeQuietly(physical);
+	}
+
+	/*
+	 * The connection handed out: a proxy with all interfaces of the physical connection (so casts to
+	 * com.mysql.jdbc.Connection still work, for other backends the interface is added), close() releases it,
+	 * statements are wrapped by wrapStatement, everything else goes to the physical connection
+	 */
+	static Connection wrap(final Connection physical, final String key, final SqlBackend backend, final StageMetrics m) {
+		final long borrowed = System.currentTimeMillis();
+		InvocationHandler handler = new InvocationHandler() {
+			boolean closed = false;
+
+			public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+				String name = method.getName();
+				if (name.equals("close")) {
+					if (!closed) {
+						closed = true;
+						synchronized (ConnectionPool.class) {
+							m.heldMillis += System.currentTimeMillis() - borrowed;
+						}
+						release(physical, key);
+					}
+					return null;
+				}
+				if (name.equals("isClosed")) {
+					return closed || physical.isClosed();
+				}
+				if (closed) {
+					throw new SQLException("Connection is closed.");
+				}
+				boolean statement = name.equals("createStatement");
+				boolean prepared = name.equals("prepareStatement") || name.equals("prepareCall");
+				if (statement || prepared) {
+					synchronized (ConnectionPool.class) {
+						if (statement) {
+							m.statements++;
+						} else {
+							m.prepared++;
+						}
+					}
+				}
+				if (prepared) {
+					args[0] = backend.translate((String) args[0], physical);
+				}
+				Object result = statement && (args == null || args.length == 0)
+						? backend.createStatement(physical)
+						: forward(physical, backend, method, args);
+				return statement || prepared ? wrapStatement((Statement) result, physical, backend, m) : result;
+			}
+		};
+		return (Connection) proxy(physical, "com.mysql.jdbc.Connection", handler);
+	}
+
+	/*
+	 * Statements and prepared statements: the SQL of execute... and addBatch is translated by the backend, the
+	 * executions are counted and timed
+	 */
+	static Statement wrapStatement(final Statement physical, final Connection connection, final SqlBackend backend, final StageMetrics m) {
+		InvocationHandler handler = new InvocationHandler() {
+			public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+				String name = method.getName();
+				boolean execute = name.startsWith("execute");
+				if ((execute || name.equals("addBatch")) && args != null && args.length > 0 && args[0] instanceof String) {
+					args[0] = backend.translate((String) args[0], connection);
+				}
+				if (!execute) {
+					return forward(physical, backend, method, args);
+				}
+				long start = System.currentTimeMillis();
+				try {
+					return forward(physical, backend, method, args);
+				} finally {
+					synchronized (ConnectionPool.class) {
+						m.executed++;
+						m.executeMillis += System.currentTimeMillis() - start;
+					}
+				}
+			}
+		};
+		return (Statement) proxy(physical, "com.mysql.jdbc.Statement", handler);
+	}
+
+	static Object forward(Object physical, SqlBackend backend, Method method, Object[] args) throws Throwable {
+		if (!method.getDeclaringClass().isInstance(physical)) {
+			throw new UnsupportedOperationException(method.getName() + " is not supported by the " + backend.getName() + " backend");
+		}
+		try {
+			return method.invoke(physical, args);
+		} catch (InvocationTargetException e) {
+			if (e.getCause() instanceof SQLException) {
+				throw backend.translate((SQLException) e.getCause());
+			}
+			throw e.getCause();
+		}
+	}
+
+	/*
+	 * proxy with all interfaces of physical and the MySQL interface mysqlInterface (if the driver is there)
+	 */
+	static Object proxy(Object physical, String mysqlInterface, InvocationHandler handler) {
+		ArrayList<Class<?>> interfaces = new ArrayList<Class<?>>();
+		for (Class<?> c = physical.getClass(); c != null; c = c.getSuperclass()) {
+			for (Class<?> i : c.getInterfaces()) {
+				if (!interfaces.contains(i)) {
+					interfaces.add(i);
+				}
+			}
+		}
+		try {
+			Class<?> i = Class.forName(mysqlInterface);
+			if (!interfaces.contains(i) && !i.isInstance(physical)) {
+				interfaces.add(i);
+			}
+		} catch (ClassNotFoundException e) {
+			//no MySQL driver, no casts to its types
+		}
+		return Proxy.newProxyInstance(ConnectionPool.class.getClassLoader(), interfaces.toArray(new Class<?>[interfaces.size()]), handler);
+	}
+
+	static void closeQuietly(Connection conn) {
+		try {
+			conn.close();
+		} catch (SQLException e) {
+			//already gone
+		}
+	}
+}
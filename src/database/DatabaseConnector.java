@@ -26,6 +26,12 @@ public abstract class DatabaseConnector {
 	 */
 	public abstract ResultSet query(String query) throws SQLException;
 	
+	/*
+	 * Method for querying the database without buffering the result
+	 * -Use this method for scans of big tables (ie: CT tables), the rows are read one at a time
+	 */
+	public abstract ResultSet streamingQuery(String query) throws SQLException;
+	
 	/*
 	 * Method for closing the connection to the database
 	 */
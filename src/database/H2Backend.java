@@ -0,0 +1,780 @@
+/*
+ * H2Backend.java
+ *
+ * An embedded H2 database in MySQL mode, for running the pipeline without a MySQL server
+ * -dbaddress = h2:<path> (e.g. h2:./h2/bayesbase, or h2:mem:bayesbase for a database that lives as long as the JVM),
+ *  the url jdbc:h2:<path>/<database> opens the H2 database <path> with the schema <database> selected, so the
+ *  database names of the scripts (db.table, USE db) work as schema names; the H2 jar is in lib
+ * -names keep their case and are compared case insensitively, so are strings (IGNORECASE), as with MySQL on Windows
+ * -translate rewrites the MySQL of the stages, scripts and dumps for H2:
+ *  -per token: comments are dropped, "..." and '...' after AS are names, other "..." are strings, backslash escapes
+ *   of strings are resolved, names starting with a digit (1Nodes, 2nid) are quoted, LOG() gives NULL for x <= 0
+ *  -per statement: CREATE / DROP DATABASE, USE, CREATE TABLE ... LIKE (columns, primary key and unique indexes),
+ *   ALTER [IGNORE] TABLE with several changes, ADD INDEX or ADD PRIMARY KEY (the columns are made NOT NULL first, as MySQL
+ *   does), LOAD DATA LOCAL INFILE, TRUNCATE without TABLE, CREATE TABLE ... SELECT without AS; SET, LOCK and UNLOCK
+ *   TABLES do nothing; ENGINE=, CHARSET=, ROW_FORMAT=, USING HASH and the names of the KEYs of CREATE TABLE are
+ *   dropped (H2 index names are per schema, not per table), FLOAT(M,D) is DECIMAL(M,D), FROM (t1, t2) is FROM t1,
+ *   t2, DROP TABLE also drops the views of the table (CASCADE), INSERT without INTO gets one, RENAME TABLE is ALTER
+ *   TABLE ... RENAME TO, an UPDATE of several tables updates one with subqueries of the others, SHOW TABLES IN db /
+ *   LIKE and SHOW COLUMNS ... LIKE / WHERE are queries of INFORMATION_SCHEMA (Field, Type, Null, Default)
+ *  -the columns that the tables of a NATURAL JOIN have in common are qualified with the left table where the query
+ *   uses them without a table, H2 finds them ambiguous; NATURAL LEFT / RIGHT JOIN, which H2 does not have, is a
+ *   LEFT / RIGHT JOIN USING the common columns, qualified with the table whose rows are all kept
+ *  -INFORMATION_SCHEMA.KEY_COLUMN_USAGE and TABLES (setup.sql) are given as MySQL has them: the primary keys are
+ *   called PRIMARY, foreign keys have REFERENCED_TABLE_NAME / COLUMN_NAME, tables are BASE TABLEs
+ * -createStatement() gives scrollable result sets, the stages call beforeFirst() as on MySQL result sets
+ * -syntax errors (SQL state 42...) are thrown as MySQLSyntaxErrorException, which the stages catch for
+ *  missing tables
+ * -stored procedures written in SQL are not supported, see BZScriptRunner.callSP
+ */
+
+package database;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.mysql.jdbc.exceptions.jdbc4.MySQLSyntaxErrorException;
+
+public class H2Backend extends SqlBackend {
+
+	static final H2Backend INSTANCE = new H2Backend();
+
+	static final String PREFIX = "jdbc:h2:";
+
+	static final String OPTIONS = ";MODE=MySQL;DATABASE_TO_UPPER=FALSE;CASE_INSENSITIVE_IDENTIFIERS=TRUE;IGNORECASE=TRUE";
+
+	//LOG() as in MySQL, NULL for arguments <= 0 (H2 throws), see log
+	static final String LOG = "PUBLIC.MYSQL_LOG";
+
+	//a statement that does nothing, for the MySQL statements without an H2 counterpart
+	static final String NOTHING = "SET @h2_nothing = 0";
+
+	static final int FLAGS = Pattern.CASE_INSENSITIVE | Pattern.DOTALL;
+	static final Pattern CREATE_DATABASE = Pattern.compile("create\\s+(?:database|schema)\\s+(?:if\\s+not\\s+exists\\s+)?(\\S+)", FLAGS);
+	static final Pattern DROP_DATABASE = Pattern.compile("drop\\s+(?:database|schema)\\s+(?:if\\s+exists\\s+)?(\\S+)", FLAGS);
+	static final Pattern USE = Pattern.compile("use\\s+(\\S+)", FLAGS);
+	static final Pattern NO_OP = Pattern.compile("(?:set|lock\\s+tables?|unlock\\s+tables?)\\b.*", FLAGS);
+	static final Pattern CREATE_LIKE = Pattern.compile("create\\s+table\\s+(if\\s+not\\s+exists\\s+)?(\\S+)\\s+like\\s+(\\S+)", FLAGS);
+	static final Pattern CREATE_TABLE = Pattern.compile("create\\s+(?:temporary\\s+)?table\\b.*", FLAGS);
+	static final Pattern CREATE_SELECT = Pattern.compile("^(create\\s+(?:temporary\\s+)?table\\s+(?:if\\s+not\\s+exists\\s+)?\\S+)\\s+(\\(?\\s*select\\b)", FLAGS);
+	static final Pattern ALTER_TABLE = Pattern.compile("alter\\s+(?:ignore\\s+)?table\\s+(\\S+)\\s+(.*)", FLAGS);
+	static final Pattern ADD_INDEX = Pattern.compile("add\\s+(unique\\s+)?(?:index|key)\\s+(?:`[^`]*`|\\w+)?\\s*(\\(.*\\))", FLAGS);
+	static final Pattern ADD_PRIMARY_KEY = Pattern.compile("add\\s+primary\\s+key\\s*\\((.*)\\)", FLAGS);
+	static final Pattern TRUNCATE = Pattern.compile("truncate\\s+(?!table\\b)(.*)", FLAGS);
+	static final Pattern ADD_UNIQUE = Pattern.compile("add\\s+unique\\s*(\\(.*\\))", FLAGS);
+	static final Pattern LOAD_DATA = Pattern.compile("load\\s+data\\s+(?:local\\s+)?infile\\s+'([^']*)'\\s+into\\s+table\\s+(\\S+)(.*)", FLAGS);
+	static final Pattern FIELDS_TERMINATED = Pattern.compile("fields\\s+terminated\\s+by\\s+'([^']*)'", FLAGS);
+	static final Pattern TABLE_OPTION = Pattern.compile("\\b(?:engine|(?:default\\s+)?(?:charset|character\\s+set)|collate|row_format|auto_increment)\\s*=?\\s*\\w+", FLAGS);
+	static final Pattern USING_INDEX_TYPE = Pattern.compile("\\busing\\s+(?:hash|btree)\\b", FLAGS);
+	static final Pattern KEY_NAME = Pattern.compile("(,\\s*(?:unique\\s+)?(?:key|index))\\s+(?:`[^`]*`|\\w+)\\s*\\(", FLAGS);
+	static final Pattern FLOAT = Pattern.compile("\\bfloat\\s*\\(\\s*(\\d+)\\s*,\\s*(\\d+)\\s*\\)", FLAGS);
+	static final Pattern KEY_COLUMN_USAGE = Pattern.compile("\\binformation_schema\\s*\\.\\s*key_column_usage\\b", FLAGS);
+	static final Pattern INFORMATION_SCHEMA = Pattern.compile("\\binformation_schema\\s*\\.", FLAGS);
+	static final Pattern FROM_LIST = Pattern.compile("\\bfrom(\\s*)\\((?!\\s*select\\b)([^()]*,[^()]*)\\)", FLAGS);
+	static final Pattern DROP_TABLE = Pattern.compile("drop\\s+(?:temporary\\s+)?table\\b.*", FLAGS);
+	static final Pattern RENAME_TABLE = Pattern.compile("rename\\s+table\\s+(\\S+)\\s+to\\s+(\\S+)", FLAGS);
+	static final Pattern UPDATE_TABLES = Pattern.compile("update\\s+((?:`[^`]*`|[\\w.$\\s])*,(?:`[^`]*`|[\\w.$\\s,])*?)\\s+set\\s+(.*)", FLAGS);
+	static final Pattern INSERT = Pattern.compile("^(insert(?:\\s+ignore)?)\\s++(?!into\\b|ignore\\b)", FLAGS);
+	static final Pattern SHOW_TABLES = Pattern.compile("show\\s+tables(?:\\s+(?:in|from)\\s+(\\S+))?(?:\\s+like\\s+('.*'))?", FLAGS);
+	static final Pattern SHOW_COLUMNS = Pattern.compile("show\\s+columns\\s+(?:in|from)\\s+(\\S+)(?:\\s+(?:in|from)\\s+(\\S+))?\\s+(like|where)\\s+(.*)", FLAGS);
+	static final Pattern TABLES = Pattern.compile("\\binformation_schema\\s*\\.\\s*tables\\b", FLAGS);
+	static final Pattern NATURAL_JOIN = Pattern.compile("\\bnatural\\s+(?:(?:left|right)\\s+(?:outer\\s+)?)?join\\b", FLAGS);
+	//the words that can follow a table in FROM, so they are no alias
+	static final Pattern KEYWORDS = Pattern.compile("natural|join|inner|left|right|outer|cross|on|using|where|group|order|having|limit|union|as|from|select|and|or|not|in|into|values|set", Pattern.CASE_INSENSITIVE);
+
+	//INFORMATION_SCHEMA.KEY_COLUMN_USAGE of MySQL, from the indexes and cross references of H2
+	static final String MYSQL_KEY_COLUMN_USAGE = "(SELECT TABLE_SCHEMA, TABLE_NAME, COLUMN_NAME, ORDINAL_POSITION, 'PRIMARY' AS CONSTRAINT_NAME, "
+			+ "CAST(NULL AS VARCHAR) AS REFERENCED_TABLE_NAME, CAST(NULL AS VARCHAR) AS REFERENCED_COLUMN_NAME FROM INFORMATION_SCHEMA.INDEXES WHERE PRIMARY_KEY "
+			+ "UNION ALL SELECT FKTABLE_SCHEMA, FKTABLE_NAME, FKCOLUMN_NAME, ORDINAL_POSITION, FK_NAME, PKTABLE_NAME, PKCOLUMN_NAME FROM INFORMATION_SCHEMA.CROSS_REFERENCES) AS KEY_COLUMN_USAGE";
+	static final String MYSQL_TABLES = "(SELECT TABLE_SCHEMA, TABLE_NAME, CASE TABLE_TYPE WHEN 'TABLE' THEN 'BASE TABLE' ELSE TABLE_TYPE END AS TABLE_TYPE FROM INFORMATION_SCHEMA.TABLES) AS TABLES";
+
+	@Override
+	public String getName() {
+		return "h2";
+	}
+
+	@Override
+	public String getDriverClass() {
+		return "org.h2.Driver";
+	}
+
+	/*
+	 * jdbc:h2:./h2/bayesbase/unielwin_BN -> jdbc:h2:./h2/bayesbase;MODE=MySQL;...;INIT=CREATE ALIAS ...\;CREATE SCHEMA IF NOT EXISTS `unielwin_BN`\;SET SCHEMA `unielwin_BN`
+	 */
+	@Override
+	public String connectionUrl(String url) {
+		String database = database(url);
+		String path = database.length() == 0 ? url : url.substring(0, url.lastIndexOf('/'));
+		String result = path + OPTIONS;
+		if (path.startsWith(PREFIX + "mem:")) {
+			result += ";DB_CLOSE_DELAY=-1";
+		}
+		result += ";INIT=CREATE ALIAS IF NOT EXISTS " + LOG + " FOR \"" + H2Backend.class.getName() + ".log\"";
+		if (database.length() > 0) {
+			result += "\\;CREATE SCHEMA IF NOT EXISTS " + quote(database) + "\\;SET SCHEMA " + quote(database);
+		}
+		return result;
+	}
+
+	@Override
+	public void selectDatabase(Connection physical, String database) throws SQLException {
+		if (database.length() > 0 && !database.equalsIgnoreCase(physical.getSchema())) {
+			Statement st = physical.createStatement();
+			st.execute("SET SCHEMA " + quote(database));
+			st.close();
+		}
+	}
+
+	@Override
+	public int scanFetchSize(Connection conn, int rows) {
+		return rows;
+	}
+
+	@Override
+	public Statement createStatement(Connection physical) throws SQLException {
+		return physical.createStatement(ResultSet.TYPE_SCROLL_INSENSITIVE, ResultSet.CONCUR_READ_ONLY);
+	}
+
+	@Override
+	public String translate(String sql, Connection physical) throws SQLException {
+		sql = translateTokens(sql).trim();
+		while (sql.endsWith(";")) {
+			sql = sql.substring(0, sql.length() - 1).trim();
+		}
+		Matcher m;
+		if (sql.length() == 0 || NO_OP.matcher(sql).matches()) {
+			return NOTHING;
+		}
+		if ((m = CREATE_DATABASE.matcher(sql)).matches()) {
+			return "CREATE SCHEMA IF NOT EXISTS " + m.group(1);
+		}
+		if ((m = DROP_DATABASE.matcher(sql)).matches()) {
+			return "DROP SCHEMA IF EXISTS " + m.group(1) + " CASCADE";
+		}
+		if ((m = USE.matcher(sql)).matches()) {
+			return "SET SCHEMA " + m.group(1);
+		}
+		if ((m = CREATE_LIKE.matcher(sql)).matches()) {
+			return createLike(m.group(2), m.group(3), m.group(1) != null, physical);
+		}
+		if ((m = ALTER_TABLE.matcher(sql)).matches()) {
+			return alterTable(m.group(1), FLOAT.matcher(m.group(2)).replaceAll("DECIMAL($1,$2)"));
+		}
+		if ((m = TRUNCATE.matcher(sql)).matches()) {
+			return "TRUNCATE TABLE " + m.group(1);
+		}
+		if ((m = LOAD_DATA.matcher(sql)).matches()) {
+			return loadData(m.group(1), m.group(2), m.group(3), physical);
+		}
+		if ((m = RENAME_TABLE.matcher(sql)).matches()) {
+			// H2 renames a table within its schema
+			return "ALTER TABLE " + m.group(1) + " RENAME TO " + quote(schemaTable(m.group(2), physical)[1]);
+		}
+		if ((m = UPDATE_TABLES.matcher(sql)).matches()) {
+			return updateTables(m.group(1), m.group(2));
+		}
+		if ((m = SHOW_TABLES.matcher(sql)).matches()) {
+			String schema = m.group(1) == null ? physical.getSchema() : schemaTable(m.group(1), physical)[1];
+			return "SELECT TABLE_NAME FROM INFORMATION_SCHEMA.TABLES WHERE TABLE_SCHEMA = '" + schema.replace("'", "''") + "'"
+					+ (m.group(2) == null ? "" : " AND TABLE_NAME LIKE " + m.group(2)) + " ORDER BY TABLE_NAME";
+		}
+		if ((m = SHOW_COLUMNS.matcher(sql)).matches()) {
+			String[] schemaTable = schemaTable(m.group(2) == null ? m.group(1) : m.group(2) + "." + m.group(1), physical);
+			return "SELECT `Field`, `Type`, `Null`, `Default` FROM (SELECT COLUMN_NAME AS `Field`, COLUMN_TYPE AS `Type`, IS_NULLABLE AS `Null`, "
+					+ "COLUMN_DEFAULT AS `Default`, ORDINAL_POSITION FROM INFORMATION_SCHEMA.COLUMNS WHERE TABLE_SCHEMA = '" + schemaTable[0].replace("'", "''")
+					+ "' AND TABLE_NAME = '" + schemaTable[1].replace("'", "''") + "') AS COLUMNS WHERE "
+					+ (m.group(3).equalsIgnoreCase("like") ? "`Field` LIKE " : "") + m.group(4) + " ORDER BY ORDINAL_POSITION";
+		}
+		if (CREATE_TABLE.matcher(sql).matches()) {
+			sql = CREATE_SELECT.matcher(sql).replaceFirst("$1 AS $2");
+			sql = TABLE_OPTION.matcher(sql).replaceAll("");
+			sql = USING_INDEX_TYPE.matcher(sql).replaceAll("");
+			sql = KEY_NAME.matcher(sql).replaceAll("$1 (");
+		}
+		sql = KEY_COLUMN_USAGE.matcher(sql).replaceAll(MYSQL_KEY_COLUMN_USAGE);
+		sql = INFORMATION_SCHEMA.matcher(sql).replaceAll("INFORMATION_SCHEMA.");
+		sql = TABLES.matcher(sql).replaceAll(MYSQL_TABLES);
+		sql = FLOAT.matcher(sql).replaceAll("DECIMAL($1,$2)");
+		sql = FROM_LIST.matcher(sql).replaceAll("FROM$1$2");
+		sql = INSERT.matcher(sql).replaceFirst("$1 INTO ");
+		if (DROP_TABLE.matcher(sql).matches()) {
+			// MySQL keeps the views of a dropped table (they fail until it is created again), H2 has to drop them
+			sql = sql + " CASCADE";
+		}
+		if (NATURAL_JOIN.matcher(sql).find()) {
+			sql = qualifyNaturalJoins(sql, physical);
+		}
+		return sql;
+	}
+
+	/*
+	 * H2 finds the columns that the tables of a NATURAL JOIN have in common ambiguous when they are not qualified, so
+	 * in the query of the join they are qualified with the table on the left (on the right for a NATURAL RIGHT JOIN).
+	 * H2 has no NATURAL LEFT / RIGHT JOIN, they join USING the common columns.
+	 */
+	static String qualifyNaturalJoins(String sql, Connection physical) throws SQLException {
+		ArrayList<String> tokens = tokens(sql);
+		int[] scopes = scopes(tokens);
+		String[] qualified = new String[tokens.size()];
+		for (int i = 0; i < tokens.size(); i++) {
+			if (!tokens.get(i).equalsIgnoreCase("natural")) {
+				continue;
+			}
+			int join = next(tokens, i);
+			String side = join < 0 ? "" : tokens.get(join);
+			if (side.equalsIgnoreCase("left") || side.equalsIgnoreCase("right")) {
+				join = next(tokens, join);
+				if (join >= 0 && tokens.get(join).equalsIgnoreCase("outer")) {
+					join = next(tokens, join);
+				}
+			}
+			if (join < 0 || !tokens.get(join).equalsIgnoreCase("join")) {
+				continue;
+			}
+			int[] left = tableBefore(tokens, i);
+			int[] right = tableAfter(tokens, join);
+			if (left == null || right == null) {
+				continue;
+			}
+			ArrayList<String> common = columns(name(tokens, left), physical);
+			ArrayList<String> rightColumns = columns(name(tokens, right), physical);
+			for (int c = common.size() - 1; c >= 0; c--) {
+				if (!containsIgnoreCase(rightColumns, common.get(c))) {
+					common.remove(c);
+				}
+			}
+			String qualifier = tokens.get(side.equalsIgnoreCase("right") ? right[2] : left[2]);
+			if (side.equalsIgnoreCase("left") || side.equalsIgnoreCase("right")) {
+				StringBuilder using = new StringBuilder();
+				for (String column : common) {
+					using.append(using.length() == 0 ? " USING (`" : ", `").append(column).append('`');
+				}
+				qualified[i] = "";
+				qualified[right[2]] = tokens.get(right[2]) + (common.isEmpty() ? " ON TRUE" : using + ")");
+			}
+			int scope = scopes[i];
+			boolean inSelect = false;
+			for (int t = 0; t < tokens.size(); t++) {
+				if (scopes[t] != scope) {
+					continue;
+				}
+				String token = tokens.get(t);
+				if (token.equalsIgnoreCase("select")) {
+					inSelect = true;
+				}
+				if (!inSelect || (t >= left[0] && t <= left[2]) || (t >= right[0] && t <= right[2]) || qualified[t] != null) {
+					continue;
+				}
+				String column = token.startsWith("`") ? token.substring(1, token.length() - 1) : token;
+				if (!containsIgnoreCase(common, column)) {
+					continue;
+				}
+				int before = previous(tokens, t), after = next(tokens, t);
+				if ((before >= 0 && (tokens.get(before).equals(".") || tokens.get(before).equalsIgnoreCase("as")))
+						|| (after >= 0 && (tokens.get(after).equals(".") || tokens.get(after).equals("(")))) {
+					continue;
+				}
+				qualified[t] = qualifier + "." + token;
+			}
+		}
+		StringBuilder result = new StringBuilder(sql.length() + 64);
+		for (int t = 0; t < tokens.size(); t++) {
+			result.append(qualified[t] != null ? qualified[t] : tokens.get(t));
+		}
+		return result.toString();
+	}
+
+	/*
+	 * The tokens of sql after translateTokens: white space, words, `names`, 'strings' and single symbols
+	 */
+	static ArrayList<String> tokens(String sql) {
+		ArrayList<String> tokens = new ArrayList<String>();
+		int n = sql.length();
+		int i = 0;
+		while (i < n) {
+			char c = sql.charAt(i);
+			int end = i + 1;
+			if (c == '\'' || c == '`') {
+				end = sql.indexOf(c, i + 1);
+				while (end >= 0 && end + 1 < n && sql.charAt(end + 1) == c) {
+					end = sql.indexOf(c, end + 2);
+				}
+				end = end < 0 ? n : end + 1;
+			} else if (Character.isWhitespace(c)) {
+				while (end < n && Character.isWhitespace(sql.charAt(end))) {
+					end++;
+				}
+			} else if (Character.isLetterOrDigit(c) || c == '_' || c == '$') {
+				while (end < n && (Character.isLetterOrDigit(sql.charAt(end)) || sql.charAt(end) == '_' || sql.charAt(end) == '$')) {
+					end++;
+				}
+			}
+			tokens.add(sql.substring(i, end));
+			i = end;
+		}
+		return tokens;
+	}
+
+	/*
+	 * For every token the query it belongs to: a parenthesis that starts with SELECT and a UNION start a new one
+	 */
+	static int[] scopes(ArrayList<String> tokens) {
+		int[] scopes = new int[tokens.size()];
+		ArrayList<Integer> stack = new ArrayList<Integer>();
+		int current = 0, count = 0;
+		for (int t = 0; t < tokens.size(); t++) {
+			String token = tokens.get(t);
+			if (token.equals("(")) {
+				stack.add(current);
+				int after = next(tokens, t);
+				if (after >= 0 && tokens.get(after).equalsIgnoreCase("select")) {
+					current = ++count;
+				}
+			} else if (token.equalsIgnoreCase("union")) {
+				current = ++count;
+			} else if (token.equals(")") && !stack.isEmpty()) {
+				scopes[t] = current;
+				current = stack.remove(stack.size() - 1);
+				continue;
+			}
+			scopes[t] = current;
+		}
+		return scopes;
+	}
+
+	/*
+	 * The table before the token at i as the indexes of its first token, its last name token and its qualifier
+	 * (alias or name): name, db.name, name alias, name AS alias
+	 */
+	static int[] tableBefore(ArrayList<String> tokens, int i) {
+		int last = previous(tokens, i);
+		if (last < 0 || !isName(tokens.get(last))) {
+			return null;
+		}
+		int first = last;
+		int before = previous(tokens, last);
+		int qualifier = last;
+		if (before >= 0 && tokens.get(before).equalsIgnoreCase("as")) {
+			first = previous(tokens, before);
+			last = first;
+		} else if (before >= 0 && isName(tokens.get(before)) && !isKeyword(tokens.get(before))) {
+			first = before;
+			last = before;
+		}
+		while (first >= 2 && tokens.get(first - 1).equals(".") && isName(tokens.get(first - 2))) {
+			first -= 2;
+		}
+		return first < 0 ? null : new int[] { first, last, qualifier };
+	}
+
+	/*
+	 * The table after the token at i, as in tableBefore
+	 */
+	static int[] tableAfter(ArrayList<String> tokens, int i) {
+		int first = next(tokens, i);
+		if (first < 0 || !isName(tokens.get(first))) {
+			return null;
+		}
+		int last = first;
+		while (last + 2 < tokens.size() && tokens.get(last + 1).equals(".") && isName(tokens.get(last + 2))) {
+			last += 2;
+		}
+		int qualifier = last;
+		int after = next(tokens, last);
+		if (after >= 0 && tokens.get(after).equalsIgnoreCase("as")) {
+			qualifier = next(tokens, after);
+		} else if (after >= 0 && isName(tokens.get(after)) && !isKeyword(tokens.get(after))) {
+			qualifier = after;
+		}
+		return new int[] { first, last, Math.max(qualifier, last) };
+	}
+
+	static String name(ArrayList<String> tokens, int[] table) {
+		StringBuilder name = new StringBuilder();
+		for (int t = table[0]; t <= table[1]; t++) {
+			name.append(tokens.get(t));
+		}
+		return name.toString();
+	}
+
+	/*
+	 * The columns of the table, none if there is no such table
+	 */
+	static ArrayList<String> columns(String table, Connection physical) throws SQLException {
+		String[] schemaTable = schemaTable(table, physical);
+		ArrayList<String> columns = new ArrayList<String>();
+		Statement st = physical.createStatement();
+		ResultSet rs = st.executeQuery("SELECT COLUMN_NAME FROM INFORMATION_SCHEMA.COLUMNS WHERE TABLE_SCHEMA = '" + schemaTable[0].replace("'", "''")
+				+ "' AND TABLE_NAME = '" + schemaTable[1].replace("'", "''") + "'");
+		while (rs.next()) {
+			columns.add(rs.getString(1));
+		}
+		rs.close();
+		st.close();
+		return columns;
+	}
+
+	static boolean containsIgnoreCase(ArrayList<String> list, String s) {
+		for (String element : list) {
+			if (element.equalsIgnoreCase(s)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	static int next(ArrayList<String> tokens, int i) {
+		for (int t = i + 1; t < tokens.size(); t++) {
+			if (!tokens.get(t).trim().isEmpty()) {
+				return t;
+			}
+		}
+		return -1;
+	}
+
+	static int previous(ArrayList<String> tokens, int i) {
+		for (int t = i - 1; t >= 0; t--) {
+			if (!tokens.get(t).trim().isEmpty()) {
+				return t;
+			}
+		}
+		return -1;
+	}
+
+	static boolean isName(String token) {
+		char c = token.charAt(0);
+		return c == '`' || Character.isLetter(c) || c == '_';
+	}
+
+	static boolean isKeyword(String token) {
+		return KEYWORDS.matcher(token).matches();
+	}
+
+	/*
+	 * The tokens of sql for H2, see the header
+	 */
+	static String translateTokens(String sql) {
+		StringBuilder out = new StringBuilder(sql.length() + 16);
+		String previous = ""; //the last word or symbol, lower case
+		int n = sql.length();
+		int i = 0;
+		while (i < n) {
+			char c = sql.charAt(i);
+			if (c == '\'' || c == '"') {
+				StringBuilder value = new StringBuilder();
+				i = readString(sql, i, value);
+				if (previous.equals("as")) {
+					out.append('`').append(value.toString().replace("`", "``")).append('`');
+				} else {
+					out.append('\'').append(value.toString().replace("'", "''")).append('\'');
+				}
+				previous = "'";
+			} else if (c == '`') {
+				int end = sql.indexOf('`', i + 1);
+				while (end >= 0 && end + 1 < n && sql.charAt(end + 1) == '`') {
+					end = sql.indexOf('`', end + 2);
+				}
+				end = end < 0 ? n : end + 1;
+				out.append(sql, i, end);
+				i = end;
+				previous = "`";
+			} else if (c == '#' || (c == '-' && sql.startsWith("--", i) && (i + 2 == n || Character.isWhitespace(sql.charAt(i + 2))))) {
+				int end = sql.indexOf('\n', i);
+				i = end < 0 ? n : end;
+			} else if (c == '/' && sql.startsWith("/*", i)) {
+				int end = sql.indexOf("*/", i + 2);
+				i = end < 0 ? n : end + 2;
+				out.append(' ');
+			} else if (Character.isLetterOrDigit(c) || c == '_' || c == '$') {
+				int end = i;
+				boolean letter = false;
+				while (end < n && (Character.isLetterOrDigit(sql.charAt(end)) || sql.charAt(end) == '_' || sql.charAt(end) == '$')) {
+					letter |= !Character.isDigit(sql.charAt(end));
+					end++;
+				}
+				String word = sql.substring(i, end);
+				if (Character.isDigit(c) && letter && !word.matches("\\d+[eE]\\d+")) {
+					out.append('`').append(word).append('`');
+				} else if (word.equalsIgnoreCase("log") && sql.substring(end).trim().startsWith("(")) {
+					out.append(LOG);
+				} else {
+					out.append(word);
+				}
+				i = end;
+				previous = word.toLowerCase();
+			} else {
+				out.append(c);
+				if (!Character.isWhitespace(c)) {
+					previous = String.valueOf(c);
+				}
+				i++;
+			}
+		}
+		return out.toString();
+	}
+
+	/*
+	 * Reads the MySQL string starting with the quote at start into value (escapes resolved), returns the index after it
+	 */
+	static int readString(String sql, int start, StringBuilder value) {
+		char quote = sql.charAt(start);
+		int i = start + 1;
+		while (i < sql.length()) {
+			char c = sql.charAt(i);
+			if (c == '\\' && i + 1 < sql.length()) {
+				char e = sql.charAt(i + 1);
+				switch (e) {
+				case 'n':
+					value.append('\n');
+					break;
+				case 't':
+					value.append('\t');
+					break;
+				case 'r':
+					value.append('\r');
+					break;
+				case '0':
+					value.append('\0');
+					break;
+				case '%':
+				case '_':
+					value.append('\\').append(e); //kept for LIKE
+					break;
+				default:
+					value.append(e);
+				}
+				i += 2;
+			} else if (c == quote && i + 1 < sql.length() && sql.charAt(i + 1) == quote) {
+				value.append(quote);
+				i += 2;
+			} else if (c == quote) {
+				return i + 1;
+			} else {
+				value.append(c);
+				i++;
+			}
+		}
+		return i;
+	}
+
+	/*
+	 * CREATE TABLE name LIKE source: the columns with their types and defaults, the primary key and the unique indexes
+	 */
+	static String createLike(String name, String source, boolean ifNotExists, Connection physical) throws SQLException {
+		String[] schemaTable = schemaTable(source, physical);
+		String where = " WHERE TABLE_SCHEMA = '" + schemaTable[0].replace("'", "''") + "' AND TABLE_NAME = '" + schemaTable[1].replace("'", "''") + "'";
+		Statement st = physical.createStatement();
+		StringBuilder create = new StringBuilder("CREATE TABLE " + (ifNotExists ? "IF NOT EXISTS " : "") + name + " (");
+		ResultSet rs = st.executeQuery("SELECT COLUMN_NAME, COLUMN_TYPE, COLUMN_DEFAULT FROM INFORMATION_SCHEMA.COLUMNS" + where + " ORDER BY ORDINAL_POSITION");
+		boolean first = true;
+		while (rs.next()) {
+			create.append(first ? "" : ", ").append(quote(rs.getString(1))).append(' ').append(rs.getString(2));
+			// COLUMN_TYPE has the DEFAULT clause if the column was created with one
+			if (rs.getString(3) != null && !rs.getString(2).toUpperCase().contains(" DEFAULT ")) {
+				create.append(" DEFAULT ").append(rs.getString(3));
+			}
+			first = false;
+		}
+		rs.close();
+		if (first) {
+			st.close();
+			throw new MySQLSyntaxErrorException("Table '" + source + "' doesn't exist", "42S02", 1146);
+		}
+		ArrayList<String> indexes = new ArrayList<String>();
+		rs = st.executeQuery("SELECT INDEX_NAME, PRIMARY_KEY, COLUMN_NAME FROM INFORMATION_SCHEMA.INDEXES" + where + " AND (PRIMARY_KEY OR NOT NON_UNIQUE) ORDER BY INDEX_NAME, ORDINAL_POSITION");
+		String index = null;
+		StringBuilder columns = null;
+		while (rs.next()) {
+			if (!rs.getString(1).equals(index)) {
+				if (columns != null) {
+					indexes.add(columns.append(")").toString());
+				}
+				index = rs.getString(1);
+				columns = new StringBuilder(rs.getBoolean(2) ? "PRIMARY KEY (" : "UNIQUE (");
+			} else {
+				columns.append(", ");
+			}
+			columns.append(quote(rs.getString(3)));
+		}
+		if (columns != null) {
+			indexes.add(columns.append(")").toString());
+		}
+		rs.close();
+		st.close();
+		for (String constraint : indexes) {
+			create.append(", ").append(constraint);
+		}
+		return create.append(")").toString();
+	}
+
+	/*
+	 * ALTER TABLE with several changes: one statement per change, ADD INDEX as CREATE INDEX
+	 */
+	static String alterTable(String table, String changes) {
+		StringBuilder result = new StringBuilder();
+		for (String change : splitTopLevel(changes)) {
+			Matcher m;
+			if (result.length() > 0) {
+				result.append("; ");
+			}
+			if ((m = ADD_INDEX.matcher(change.trim())).matches()) {
+				result.append("CREATE ").append(m.group(1) == null ? "" : "UNIQUE ").append("INDEX ON ").append(table).append(' ').append(m.group(2));
+			} else if ((m = ADD_UNIQUE.matcher(change.trim())).matches()) {
+				result.append("CREATE UNIQUE INDEX ON ").append(table).append(' ').append(m.group(1));
+			} else if ((m = ADD_PRIMARY_KEY.matcher(change.trim())).matches()) {
+				// MySQL makes the columns of a primary key NOT NULL, H2 wants them to be so already
+				for (String column : splitTopLevel(m.group(1))) {
+					result.append("ALTER TABLE ").append(table).append(" ALTER COLUMN ").append(column.trim()).append(" SET NOT NULL; ");
+				}
+				result.append("ALTER TABLE ").append(table).append(' ').append(change.trim());
+			} else {
+				result.append("ALTER TABLE ").append(table).append(' ').append(change.trim());
+			}
+		}
+		return result.toString();
+	}
+
+	/*
+	 * UPDATE t1, t2, ... SET ... WHERE ...: t1 (or the table the SET columns are qualified with) is updated, every
+	 * value is a subquery of the other tables with the WHERE condition, and only rows for which it has a row are
+	 * updated
+	 */
+	static String updateTables(String tableList, String rest) {
+		ArrayList<String> tables = splitTopLevel(tableList);
+		ArrayList<String> tokens = tokens(rest);
+		String assignments = rest, where = null;
+		int depth = 0;
+		for (int t = 0, position = 0; t < tokens.size(); position += tokens.get(t).length(), t++) {
+			String token = tokens.get(t);
+			depth += token.equals("(") ? 1 : token.equals(")") ? -1 : 0;
+			if (depth == 0 && token.equalsIgnoreCase("where")) {
+				assignments = rest.substring(0, position);
+				where = rest.substring(position + token.length()).trim();
+				break;
+			}
+		}
+		int target = 0;
+		ArrayList<String[]> columns = new ArrayList<String[]>();
+		for (String assignment : splitTopLevel(assignments)) {
+			int equals = assignment.indexOf('=');
+			String column = assignment.substring(0, equals).trim();
+			int dot = column.lastIndexOf('.', column.endsWith("`") ? column.lastIndexOf('`', column.length() - 2) : column.length());
+			if (dot > 0) {
+				for (int i = 0; i < tables.size(); i++) {
+					if (tables.get(i).trim().equalsIgnoreCase(column.substring(0, dot).trim())) {
+						target = i;
+					}
+				}
+				column = column.substring(dot + 1);
+			}
+			columns.add(new String[] { column, assignment.substring(equals + 1).trim() });
+		}
+		StringBuilder from = new StringBuilder();
+		for (int i = 0; i < tables.size(); i++) {
+			if (i != target) {
+				from.append(from.length() > 0 ? ", " : "").append(tables.get(i).trim());
+			}
+		}
+		String subquery = " FROM " + from + (where == null ? "" : " WHERE " + where);
+		StringBuilder result = new StringBuilder("UPDATE " + tables.get(target).trim() + " SET ");
+		for (int i = 0; i < columns.size(); i++) {
+			result.append(i > 0 ? ", " : "").append(columns.get(i)[0]).append(" = (SELECT ").append(columns.get(i)[1]).append(subquery).append(" LIMIT 1)");
+		}
+		return result.append(" WHERE EXISTS (SELECT 1").append(subquery).append(")").toString();
+	}
+
+	/*
+	 * s split at the commas outside of parentheses and quotes
+	 */
+	static ArrayList<String> splitTopLevel(String s) {
+		ArrayList<String> parts = new ArrayList<String>();
+		int depth = 0, start = 0;
+		char quote = 0;
+		for (int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+			if (quote != 0) {
+				if (c == quote) {
+					quote = 0;
+				}
+			} else if (c == '\'' || c == '`') {
+				quote = c;
+			} else if (c == '(') {
+				depth++;
+			} else if (c == ')') {
+				depth--;
+			} else if (c == ',' && depth == 0) {
+				parts.add(s.substring(start, i));
+				start = i + 1;
+			}
+		}
+		parts.add(s.substring(start));
+		return parts;
+	}
+
+	/*
+	 * LOAD DATA LOCAL INFILE as INSERT ... SELECT from CSVREAD, with generated column names so the first line is data
+	 */
+	static String loadData(String file, String table, String options, Connection physical) throws SQLException {
+		String separator = "\t";
+		Matcher fields = FIELDS_TERMINATED.matcher(options);
+		if (fields.find()) {
+			separator = fields.group(1).replace("\\t", "\t");
+		}
+		Statement st = physical.createStatement();
+		ResultSet rs = st.executeQuery("SELECT * FROM " + table + " WHERE 1 = 0");
+		int columns = rs.getMetaData().getColumnCount();
+		rs.close();
+		st.close();
+		String columnList = "";
+		for (int c = 1; c <= columns; c++) {
+			columnList += (c > 1 ? "," : "") + "C" + c;
+		}
+		return "INSERT INTO " + table + " SELECT * FROM CSVREAD('" + file.replace("'", "''") + "', '" + columnList + "', 'fieldSeparator=" + separator + " fieldDelimiter=')";
+	}
+
+	/*
+	 * schema and name of a table written as in the statements, `db`.`table`, db.table or table
+	 */
+	static String[] schemaTable(String name, Connection physical) throws SQLException {
+		ArrayList<String> parts = new ArrayList<String>();
+		for (String part : name.split("\\.(?=(?:[^`]*`[^`]*`)*[^`]*$)")) {
+			parts.add(part.startsWith("`") ? part.substring(1, part.length() - 1).replace("``", "`") : part);
+		}
+		return new String[] { parts.size() > 1 ? parts.get(0) : physical.getSchema(), parts.get(parts.size() - 1) };
+	}
+
+	static String quote(String name) {
+		return "`" + name.replace("`", "``") + "`";
+	}
+
+	/*
+	 * MySQL LOG(x) and LOG(base, x)
+	 */
+	public static Double log(Double x) {
+		return x == null || x <= 0 ? null : Math.log(x);
+	}
+
+	public static Double log(Double base, Double x) {
+		return base == null || x == null || base <= 0 || base == 1 || x <= 0 ? null : Math.log(x) / Math.log(base);
+	}
+
+	@Override
+	public SQLException translate(SQLException e) {
+		if (e.getSQLState() != null && e.getSQLState().startsWith("42") && !(e instanceof MySQLSyntaxErrorException)) {
+			SQLException result = new MySQLSyntaxErrorException(e.getMessage(), e.getSQLState(), e.getErrorCode());
+			result.initCause(e);
+			return result;
+		}
+		return e;
+	}
+
+	@Override
+	public boolean supportsProcedures() {
+		return false;
+	}
+}
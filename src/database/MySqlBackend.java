@@ -0,0 +1,59 @@
+/*
+ * MySqlBackend.java
+ *
+ * A MySQL server reached through Connector/J
+ * -prepared statements are cached and batches rewritten into multi-row inserts
+ * -scans use server side cursors (useCursorFetch)
+ */
+
+package database;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+public class MySqlBackend extends SqlBackend {
+
+	static final MySqlBackend INSTANCE = new MySqlBackend();
+
+	//driver properties added to every url that does not set them already
+	static final String[] PROPERTIES = { "cachePrepStmts=true", "prepStmtCacheSize=250", "prepStmtCacheSqlLimit=8192", "rewriteBatchedStatements=true", "useCursorFetch=true" };
+
+	@Override
+	public String getName() {
+		return "mysql";
+	}
+
+	@Override
+	public String getDriverClass() {
+		return "com.mysql.jdbc.Driver";
+	}
+
+	@Override
+	public String connectionUrl(String url) {
+		for (String property : PROPERTIES) {
+			if (!url.contains(property.substring(0, property.indexOf('=') + 1))) {
+				url += (url.contains("?") ? "&" : "?") + property;
+			}
+		}
+		return url;
+	}
+
+	@Override
+	public void selectDatabase(Connection physical, String database) throws SQLException {
+		if (database.length() > 0 && !database.equals(physical.getCatalog())) {
+			physical.setCatalog(database);
+		}
+	}
+
+	/*
+	 * a connection without cursor fetch (not opened through the pool) would buffer the whole result for a positive
+	 * fetch size, so its rows are streamed one at a time instead
+	 */
+	@Override
+	public int scanFetchSize(Connection conn, int rows) throws SQLException {
+		if (conn instanceof com.mysql.jdbc.Connection && !((com.mysql.jdbc.Connection) conn).getUseCursorFetch()) {
+			return Integer.MIN_VALUE;
+		}
+		return rows;
+	}
+}
@@ -7,7 +7,6 @@
 package database;
 
 import java.sql.*;
-import java.util.Properties;
 
 public class MySqlDatabaseConnector extends DatabaseConnector{
 
@@ -15,13 +14,18 @@ public class MySqlDatabaseConnector extends DatabaseConnector{
 	
 	/*
 	 * Connects the connector to the database
+	 * -the connection comes from ConnectionPool, close() gives it back
 	 */
 	@Override
 	public void connect(String username, String password, String serverUrl, String databaseName, String port) throws SQLException {
-	    Properties connectionProps = new Properties();
-	    connectionProps.put("user", username);
-	    connectionProps.put("password", password);
-        _conn = DriverManager.getConnection("jdbc:mysql://" + serverUrl + ":" + port + "/" + databaseName ,connectionProps);
+        _conn = ConnectionPool.getConnection("MySqlDatabaseConnector", "jdbc:mysql://" + serverUrl + ":" + port + "/" + databaseName, username, password);
+	}
+	
+	/*
+	 * The underlying connection, e.g. for prepared statements
+	 */
+	public Connection getConnection() {
+		return _conn;
 	}
 	
 	/*
@@ -34,6 +38,17 @@ public class MySqlDatabaseConnector extends DatabaseConnector{
 		return rs;
 	}
 	
+	/*
+	 * queries the database, the rows are streamed from the server
+	 * -use this for big tables, no other query can be run until the result set is closed
+	 */
+	@Override
+	public ResultSet streamingQuery(String query) throws SQLException {
+		Statement stmt = ConnectionPool.streamingStatement(_conn, "MySqlDatabaseConnector");
+		ResultSet rs = stmt.executeQuery(query);
+		return rs;
+	}
+	
 	/*
 	 * Updates the database
 	 */
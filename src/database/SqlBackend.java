@@ -0,0 +1,97 @@
+/*
+ * SqlBackend.java
+ *
+ * The SQL engine behind a jdbc url, used by ConnectionPool
+ * -MySqlBackend: a MySQL server (dbaddress = mysql://host), the SQL of the pipeline is sent as it is
+ * -H2Backend: an embedded H2 database in MySQL mode (dbaddress = h2:<directory>), the MySQL databases
+ *  (db, db_setup, db_BN, db_CT) become schemas of one H2 database and the MySQL only statements are rewritten
+ */
+
+package database;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+public abstract class SqlBackend {
+
+	/*
+	 * The backend for a jdbc url as built by the stages, "jdbc:" + dbaddress + "/" + database
+	 */
+	public static SqlBackend forUrl(String url) {
+		if (url.startsWith(H2Backend.PREFIX)) {
+			return H2Backend.INSTANCE;
+		}
+		return MySqlBackend.INSTANCE;
+	}
+
+	/*
+	 * The backend of an open connection
+	 */
+	public static SqlBackend forConnection(Connection conn) throws SQLException {
+		return forUrl(conn.getMetaData().getURL());
+	}
+
+	/*
+	 * Name used in the metrics, e.g. "mysql"
+	 */
+	public abstract String getName();
+
+	public abstract String getDriverClass();
+
+	/*
+	 * The url that is actually opened for url (driver options, database mapping)
+	 */
+	public abstract String connectionUrl(String url);
+
+	/*
+	 * The database (MySQL) or schema (H2) that url selects, "" if none
+	 */
+	public String database(String url) {
+		if (url.contains("?")) {
+			url = url.substring(0, url.indexOf('?'));
+		}
+		int slash = url.lastIndexOf('/');
+		return slash < 0 || url.substring(0, slash).endsWith("/") ? "" : url.substring(slash + 1);
+	}
+
+	/*
+	 * Selects database on a connection that is given back to the pool (some stages run "USE ...")
+	 */
+	public abstract void selectDatabase(Connection physical, String database) throws SQLException;
+
+	/*
+	 * Fetch size for a scan of rows whose block would have the given number of rows
+	 */
+	public abstract int scanFetchSize(Connection conn, int rows) throws SQLException;
+
+	/*
+	 * The statement to run for sql, written for MySQL
+	 * -physical: the connection it will run on, for rewrites that need the table definitions
+	 */
+	public String translate(String sql, Connection physical) throws SQLException {
+		return sql;
+	}
+
+	/*
+	 * A statement as the stages expect it from createStatement(): MySQL result sets can be read again after
+	 * beforeFirst()
+	 */
+	public Statement createStatement(Connection physical) throws SQLException {
+		return physical.createStatement();
+	}
+
+	/*
+	 * The exception to throw for one thrown by the driver, e.g. so the stages can catch MySQL exception types
+	 */
+	public SQLException translate(SQLException e) {
+		return e;
+	}
+
+	/*
+	 * Whether the backend runs stored procedures written in SQL (storedprocs.sql)
+	 */
+	public boolean supportsProcedures() {
+		return true;
+	}
+}
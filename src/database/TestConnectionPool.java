@@ -0,0 +1,136 @@
+package database;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+
+import testing.MemoryDatabase;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/*
+ * Tests that a connection of ConnectionPool.getConnection behaves as a new one of DriverManager.getConnection, which
+ * the stages used before, also when its physical connection was used and given back by an earlier stage: the same
+ * database is selected and autocommit is on. The databases are MemoryDatabases.
+ */
+public final class TestConnectionPool extends TestCase {
+
+    MemoryDatabase db;
+
+    public TestConnectionPool(String name) {
+        super(name);
+    }
+
+    @Override
+    public void setUp() {
+        db = MemoryDatabase.get("TestConnectionPool", true);
+        db.createTable("test_BN", "Path_BayesNets", new String[] { "Rchain", "child", "parent" },
+                new Object[] { "`a`", "`b`", "" });
+        db.createTable("test_CT", "a_CT", new String[] { "MULT", "b" }, new Object[] { 3L, "T" });
+        ConnectionPool.closeAll();
+    }
+
+    @Override
+    public void tearDown() {
+        ConnectionPool.closeAll();
+    }
+
+    public void testReuse() throws Exception {
+        Connection con1 = ConnectionPool.getConnection("testReuse", db.url("test_BN"), "root", "");
+        con1.close();
+        Connection con2 = ConnectionPool.getConnection("testReuse", db.url("test_BN"), "root", "");
+        con2.close();
+
+        ConnectionPool.StageMetrics m = ConnectionPool.metrics("testReuse");
+        assertEquals(2, m.borrowed);
+        assertEquals(1, m.opened);
+    }
+
+    /*
+     * a stage that ran "USE ..." and turned autocommit off gives back a connection that the next stage sees as new
+     */
+    public void testReset() throws Exception {
+        Connection con1 = ConnectionPool.getConnection("testReset", db.url("test_BN"), "root", "");
+        Statement st = con1.createStatement();
+        st.execute("use test_CT");
+        st.close();
+        con1.setAutoCommit(false);
+        assertEquals(tables(DriverManager.getConnection(db.url("test_CT"), "root", "")), tables(con1));
+        con1.close();
+
+        Connection expected = DriverManager.getConnection(db.url("test_BN"), "root", "");
+        Connection con2 = ConnectionPool.getConnection("testReset", db.url("test_BN"), "root", "");
+        assertEquals(1, ConnectionPool.metrics("testReset").opened);
+        assertEquals(expected.getCatalog(), con2.getCatalog());
+        assertEquals(expected.getAutoCommit(), con2.getAutoCommit());
+        assertEquals(tables(expected), tables(con2));
+        con2.close();
+        expected.close();
+    }
+
+    /*
+     * a closed connection cannot be used, closing it again does not give it back twice
+     */
+    public void testClose() throws Exception {
+        Connection con1 = ConnectionPool.getConnection("testClose", db.url("test_BN"), "root", "");
+        con1.close();
+        con1.close();
+        assertTrue(con1.isClosed());
+        try {
+            con1.createStatement();
+            fail("statement on a closed connection");
+        } catch (SQLException e) {
+            // expected
+        }
+
+        Connection con2 = ConnectionPool.getConnection("testClose", db.url("test_BN"), "root", "");
+        Connection con3 = ConnectionPool.getConnection("testClose", db.url("test_BN"), "root", "");
+        assertFalse(con2.isClosed());
+        assertFalse(con3.isClosed());
+        assertEquals(2, ConnectionPool.metrics("testClose").opened);
+        con2.close();
+        con3.close();
+    }
+
+    public void testMaxIdle() throws Exception {
+        int maxIdle = ConnectionPool.maxIdle;
+        ConnectionPool.maxIdle = 2;
+        try {
+            for (int round = 0; round < 2; round++) {
+                ArrayList<Connection> connections = new ArrayList<Connection>();
+                for (int i = 0; i < 4; i++) {
+                    connections.add(ConnectionPool.getConnection("testMaxIdle", db.url("test_BN"), "root", ""));
+                }
+                for (Connection conn : connections) {
+                    conn.close();
+                }
+            }
+        } finally {
+            ConnectionPool.maxIdle = maxIdle;
+        }
+
+        ConnectionPool.StageMetrics m = ConnectionPool.metrics("testMaxIdle");
+        assertEquals(8, m.borrowed);
+        assertEquals(4 + 2, m.opened);
+    }
+
+    static ArrayList<String> tables(Connection conn) throws SQLException {
+        ArrayList<String> tables = new ArrayList<String>();
+        Statement st = conn.createStatement();
+        ResultSet rs = st.executeQuery("show tables");
+        while (rs.next()) {
+            tables.add(rs.getString(1));
+        }
+        rs.close();
+        st.close();
+        return tables;
+    }
+
+    public static Test suite() {
+        return new TestSuite(TestConnectionPool.class);
+    }
+}
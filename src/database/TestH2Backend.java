@@ -0,0 +1,171 @@
+package database;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/*
+ * Tests that the MySQL statements of the stages run on an embedded H2 database through ConnectionPool and H2Backend:
+ * databases as schemas, table options, ALTER TABLE with several changes, CREATE TABLE ... SELECT / LIKE, unqualified
+ * columns of a NATURAL JOIN, the MySQL information_schema tables, result sets that can be read again and MySQL
+ * exception types. The whole pipeline on H2 is run by TestBayesBaseCT_SortMerge.
+ */
+public final class TestH2Backend extends TestCase {
+
+    Connection con;
+
+    public TestH2Backend(String name) {
+        super(name);
+    }
+
+    @Override
+    public void setUp() throws SQLException {
+        con = ConnectionPool.getConnection("TestH2Backend", "jdbc:h2:mem:TestH2Backend/test", "sa", "");
+        execute("drop database if exists test_BN", "create database test_BN",
+                "create table test_BN.`1Nodes` (`1nid` varchar(20) not null, pvid varchar(20), primary key (`1nid`) using btree) ENGINE=InnoDB DEFAULT CHARSET=latin1",
+                "create table test_BN.PVariables (pvid varchar(20), TABLE_NAME varchar(20), index_number int(11))",
+                "insert into test_BN.`1Nodes` values ('`a(s0)`', 's0'), ('`b(s0)`', 's0'), ('`c(p0)`', 'p0')",
+                "insert into test_BN.PVariables values ('s0', \"student\", 0), ('p0', 'prof', 0)");
+    }
+
+    @Override
+    public void tearDown() throws SQLException {
+        con.close();
+        ConnectionPool.closeAll();
+    }
+
+    public void testBackend() {
+        assertSame(H2Backend.INSTANCE, SqlBackend.forUrl("jdbc:h2:mem:TestH2Backend/test"));
+        assertFalse(H2Backend.INSTANCE.supportsProcedures());
+    }
+
+    public void testNaturalJoin() throws SQLException {
+        execute("use test_BN");
+        assertEquals(rows("[`a(s0)`, student]", "[`b(s0)`, student]", "[`c(p0)`, prof]"),
+                query("select `1nid`, TABLE_NAME from `1Nodes` natural join PVariables where pvid in ('s0', 'p0') order by `1nid`"));
+        assertEquals(rows("[s0, 2]", "[p0, 1]"),
+                query("select pvid, count(*) from test_BN.`1Nodes` N natural join test_BN.PVariables group by pvid order by pvid desc"));
+        // a UNION and a subquery are queries of their own
+        assertEquals(rows("[p0]", "[p0]", "[s0]", "[s0]"),
+                query("select pvid from PVariables union all select pvid from (select pvid, `1nid` from `1Nodes` natural join PVariables where index_number = 0) T where `1nid` <> '`b(s0)`' order by pvid"));
+        // MySQL keeps the rows of the right table, H2 has no NATURAL RIGHT JOIN
+        execute("insert into `1Nodes` values ('`d(c0)`', 'c0')");
+        assertEquals(rows("[c0, null]", "[p0, prof]", "[s0, student]", "[s0, student]"),
+                query("select pvid, TABLE_NAME from PVariables natural right outer join `1Nodes` N order by pvid"));
+        assertEquals(rows("[c0, 1]", "[p0, 1]", "[s0, 2]"),
+                query("select pvid, count(*) from PVariables P natural right join `1Nodes` group by pvid order by pvid"));
+        execute("delete from `1Nodes` where pvid = 'c0'");
+        execute("create table Joined select pvid, `1nid` as Entries from `1Nodes` natural join PVariables");
+        assertEquals(rows("[3]"), query("select count(*) from Joined"));
+    }
+
+    public void testAlterTable() throws SQLException {
+        execute("use test_BN", "create table Copy as select * from PVariables",
+                "alter table Copy add primary key (pvid, TABLE_NAME), add index Copy_Index (index_number), add unique (TABLE_NAME)",
+                "create table Copy2 like Copy", "truncate Copy");
+        assertEquals(rows("[PRIMARY, pvid]", "[PRIMARY, TABLE_NAME]"),
+                query("select constraint_name, column_name from information_schema.key_column_usage where table_schema = 'test_BN' and table_name = 'Copy2' order by ordinal_position"));
+        assertEquals(rows("[BASE TABLE]"), query("select table_type from information_schema.tables where table_schema = 'test_BN' and table_name = 'Copy2'"));
+        assertEquals(rows("[0]"), query("select count(*) from Copy"));
+        try {
+            execute("insert into Copy2 select * from PVariables", "insert into Copy2 values ('s1', 'student', 1)");
+            fail("inserted a second row into a unique column");
+        } catch (SQLException e) {
+            // expected
+        }
+    }
+
+    public void testFromListAndDropTable() throws SQLException {
+        execute("use test_BN");
+        assertEquals(rows("[3]"), query("select count(*) from (`1Nodes` N, PVariables P) where N.pvid = P.pvid"));
+        // MySQL keeps a view of a dropped table
+        execute("create table Copy as select * from PVariables", "create view CopyView as select pvid from Copy",
+                "drop table if exists Copy;", "create table Copy as select * from PVariables");
+        assertEquals(rows("[2]"), query("select count(*) from Copy"));
+    }
+
+    public void testShowInsertUpdate() throws SQLException {
+        assertEquals(rows("[1Nodes]", "[PVariables]"), query("show tables in test_BN"));
+        assertEquals(rows("[PVariables]"), query("show tables from test_BN like 'PV%'"));
+        execute("use test_BN");
+        assertEquals(rows("[index_number, INT, YES, null]"), query("show columns from PVariables where Field like 'index%'"));
+        assertEquals(rows("[pvid, VARCHAR_IGNORECASE(20), YES, null]"), query("show columns from PVariables like 'pv%'"));
+        execute("create table Counts (pvid varchar(20), Entries int, Ratio float(7,6))", "insert Counts values ('s0', 0, 0)",
+                "insert ignore Counts select pvid, 0, 0 from PVariables where pvid = 'p0'",
+                // MySQL updates the table whose columns are set, with the rows of the others
+                "update Counts, `1Nodes` set Counts.Entries = 2 where Counts.pvid = `1Nodes`.pvid and `1Nodes`.`1nid` = '`b(s0)`'",
+                "alter ignore table Counts add column Total float(7,6)");
+        execute("rename table test_BN.Counts to test_BN.`Counts(s0)`");
+        assertEquals(rows("[p0, 0]", "[s0, 2]"), query("select pvid, Entries from `Counts(s0)` order by pvid"));
+        // MySQL gives NULL for the log of 0
+        assertEquals(rows("[null, 0.0]"), query("select log(Entries), log(Entries + 1) from `Counts(s0)` where pvid = 'p0'"));
+    }
+
+    public void testScroll() throws SQLException {
+        Statement st = con.createStatement();
+        ResultSet rs = st.executeQuery("select pvid from test_BN.PVariables");
+        int rows = 0;
+        while (rs.next()) {
+            rows++;
+        }
+        rs.beforeFirst();
+        while (rs.next()) {
+            rows++;
+        }
+        assertEquals(4, rows);
+        rs.close();
+        st.close();
+    }
+
+    public void testSyntaxError() throws SQLException {
+        try {
+            execute("select no_such_column from test_BN.PVariables");
+            fail("no exception");
+        } catch (com.mysql.jdbc.exceptions.jdbc4.MySQLSyntaxErrorException e) {
+            // expected, the stages catch it e.g. for tables that do not exist
+        }
+    }
+
+    void execute(String... statements) throws SQLException {
+        Statement st = con.createStatement();
+        for (String sql : statements) {
+            st.execute(sql);
+        }
+        st.close();
+    }
+
+    List<String> query(String sql) throws SQLException {
+        Statement st = con.createStatement();
+        ResultSet rs = st.executeQuery(sql);
+        List<String> rows = new ArrayList<String>();
+        while (rs.next()) {
+            List<String> row = new ArrayList<String>();
+            for (int c = 1; c <= rs.getMetaData().getColumnCount(); c++) {
+                row.add(rs.getString(c));
+            }
+            rows.add(row.toString());
+        }
+        rs.close();
+        st.close();
+        return rows;
+    }
+
+    static List<String> rows(String... rows) {
+        List<String> list = new ArrayList<String>();
+        for (String row : rows) {
+            list.add(row);
+        }
+        return list;
+    }
+
+    public static Test suite() {
+        return new TestSuite(TestH2Backend.class);
+    }
+}
@@ -0,0 +1,1073 @@
+package edu.cmu.tetrad.bayes;
+
+import edu.cmu.tetrad.graph.Dag;
+import edu.cmu.tetrad.graph.Graph;
+import edu.cmu.tetrad.graph.Node;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Performs updating operations on a BayesIm by message passing in a junction
+ * tree (clique tree) of the Bayes net. The tree is compiled once, when the
+ * updater is constructed: the moral graph of the DAG is triangulated by
+ * greedy minimum fill elimination, the maximal cliques are joined by a maximum
+ * spanning tree on separator size, and every clique and separator gets a flat
+ * table of doubles, the last variable of a clique varying fastest. The maps
+ * from clique entries to separator and conditional probability table entries
+ * are computed from the strides of the tables when the tree is compiled or
+ * the parameters are loaded, so propagation is a sequence of array loops.
+ * <p>
+ * Setting new evidence only marks the tree as not propagated; the tables are
+ * loaded from the manipulated Bayes IM again only if the set of manipulated
+ * variables changes. (Removing the edges into a manipulated variable keeps the
+ * triangulation valid, so the tree itself is never rebuilt.) Propagation is
+ * done lazily, once for all marginals asked for under the same evidence; see
+ * getMarginals for a batch of variables. Unlike RowSummingExactUpdater, the
+ * cost does not depend on the number of variables out of evidence but on the
+ * size of the largest clique.
+ *
+ * @see RowSummingExactUpdater
+ */
+public final class JunctionTreeUpdater implements ManipulatingBayesUpdater {
+    static final long serialVersionUID = 23L;
+
+    /**
+     * The BayesIm which this updater modifies.
+     *
+     * @serial Cannot be null.
+     */
+    private BayesIm bayesIm;
+
+    /**
+     * Stores evidence for all variables.
+     *
+     * @serial Cannot be null.
+     */
+    private Evidence evidence;
+
+    /**
+     * The last manipulated BayesIm.
+     *
+     * @serial Cannot be null.
+     */
+    private BayesIm manipulatedBayesIm;
+
+    /**
+     * The BayesIm after update, if this was calculated.
+     *
+     * @serial Can be null.
+     */
+    private BayesIm updatedBayesIm;
+
+    /**
+     * The number of categories of each variable, by index in bayesIm.
+     *
+     * @serial Cannot be null.
+     */
+    private int[] dims;
+
+    /**
+     * The variables of each clique, in ascending order.
+     *
+     * @serial Cannot be null.
+     */
+    private int[][] cliques;
+
+    /**
+     * The strides of the variables of each clique in its table.
+     *
+     * @serial Cannot be null.
+     */
+    private int[][] strides;
+
+    /**
+     * The parent of each clique in the tree, -1 for the root.
+     *
+     * @serial Cannot be null.
+     */
+    private int[] parentClique;
+
+    /**
+     * The cliques in an order in which every clique comes after its parent;
+     * the root is first.
+     *
+     * @serial Cannot be null.
+     */
+    private int[] order;
+
+    /**
+     * The size of the separator between each clique and its parent.
+     *
+     * @serial Cannot be null.
+     */
+    private int[] separatorSizes;
+
+    /**
+     * For each clique but the root, the separator entry of each entry of the
+     * clique.
+     *
+     * @serial Cannot be null.
+     */
+    private int[][] childMaps;
+
+    /**
+     * For each clique but the root, the separator entry of each entry of its
+     * parent.
+     *
+     * @serial Cannot be null.
+     */
+    private int[][] parentMaps;
+
+    /**
+     * The smallest clique containing each variable; evidence is entered and
+     * marginals are read there.
+     *
+     * @serial Cannot be null.
+     */
+    private int[] homeCliques;
+
+    /**
+     * The smallest clique containing each variable and its parents in the
+     * DAG of bayesIm.
+     *
+     * @serial Cannot be null.
+     */
+    private int[] familyCliques;
+
+    /**
+     * The variables manipulated in manipulatedBayesIm.
+     *
+     * @serial Cannot be null.
+     */
+    private boolean[] manipulated;
+
+    /**
+     * The index in manipulatedBayesIm of each variable.
+     *
+     * @serial Cannot be null.
+     */
+    private int[] manipulatedIndices;
+
+    /**
+     * For each variable, the entry of its conditional probability table in
+     * manipulatedBayesIm (row * numColumns + column) of each entry of its
+     * family clique.
+     *
+     * @serial Cannot be null.
+     */
+    private int[][] familyMaps;
+
+    /**
+     * The product of the conditional probability tables assigned to each
+     * clique, without evidence.
+     *
+     * @serial Cannot be null.
+     */
+    private double[][] potentials;
+
+    /**
+     * The clique tables after propagation of the evidence, P(clique, e).
+     */
+    private transient double[][] propagated;
+
+    /**
+     * The separator tables after propagation.
+     */
+    private transient double[][] separators;
+
+    /**
+     * True if the tables in propagated are those for the current evidence.
+     */
+    private transient boolean upToDate;
+
+    /**
+     * P(e) for the current evidence, if upToDate.
+     */
+    private transient double probEvidence;
+
+    /**
+     * The marginals calculated for the current evidence, by variable.
+     */
+    private transient double[][] marginals;
+
+    //==============================CONSTRUCTORS===========================//
+
+    /**
+     * Constructs a new updater for the given Bayes net.
+     */
+    public JunctionTreeUpdater(BayesIm bayesIm) {
+        this(bayesIm, Evidence.tautology(bayesIm));
+    }
+
+    /**
+     * Constructs a new updater for the given Bayes net.
+     *
+     * @throws IllegalArgumentException if a clique table of the junction tree
+     *                                  would have more than Integer.MAX_VALUE
+     *                                  entries.
+     */
+    public JunctionTreeUpdater(BayesIm bayesIm, Evidence evidence) {
+        if (bayesIm == null) {
+            throw new NullPointerException();
+        }
+
+        this.bayesIm = bayesIm;
+        compile();
+        setEvidence(evidence);
+    }
+
+    /**
+     * Generates a simple exemplar of this class to test serialization.
+     *
+     * @see edu.cmu.TestSerialization
+     * @see edu.cmu.tetradapp.util.TetradSerializableUtils
+     */
+    public static JunctionTreeUpdater serializableInstance() {
+        return new JunctionTreeUpdater(MlBayesIm.serializableInstance());
+    }
+
+    //============================PUBLIC METHODS==========================//
+
+    /**
+     * The BayesIm that this updater bases its update on. This BayesIm is not
+     * modified; rather, a new BayesIm is created and updated.
+     */
+    @Override
+	public BayesIm getBayesIm() {
+        return bayesIm;
+    }
+
+    /**
+     * Returns the manipulated BayesIm.
+     */
+    @Override
+	public BayesIm getManipulatedBayesIm() {
+        return this.manipulatedBayesIm;
+    }
+
+    @Override
+	public Graph getManipulatedGraph() {
+        return getManipulatedBayesIm().getDag();
+    }
+
+    /**
+     * The updated BayesIm. This is a different object from the source BayesIm.
+     *
+     * @see #getBayesIm
+     */
+    @Override
+	public BayesIm getUpdatedBayesIm() {
+        if (updatedBayesIm == null) {
+            updateAll();
+        }
+
+        return updatedBayesIm;
+    }
+
+    /**
+     * Returns a defensive copy of the evidence.
+     */
+    @Override
+	public Evidence getEvidence() {
+        return new Evidence(this.evidence);
+    }
+
+    /**
+     * Sets new evidence. The conditional probability tables are loaded again
+     * only if the manipulated variables differ from those of the last
+     * evidence.
+     */
+    @Override
+	public final void setEvidence(Evidence evidence) {
+        if (evidence == null) {
+            throw new NullPointerException();
+        }
+
+        if (!evidence.isCompatibleWith(bayesIm)) {
+            throw new IllegalArgumentException("The variable list for the " +
+                    "given bayesIm must be compatible with the variable list " +
+                    "for this evidence.");
+        }
+
+        this.evidence = new Evidence(evidence);
+
+        boolean[] manipulated = new boolean[dims.length];
+
+        for (int i = 0; i < dims.length; i++) {
+            manipulated[i] = evidence.isManipulated(i);
+        }
+
+        if (!Arrays.equals(manipulated, this.manipulated)) {
+            this.manipulated = manipulated;
+            Dag manipulatedGraph = createManipulatedGraph(bayesIm.getDag());
+            BayesPm manipulatedPm = new BayesPm(manipulatedGraph, bayesIm.getBayesPm());
+            this.manipulatedBayesIm = new MlBayesIm(manipulatedPm, bayesIm, MlBayesIm.RANDOM);
+            loadPotentials();
+        }
+
+        this.upToDate = false;
+        this.marginals = null;
+        this.updatedBayesIm = null;
+    }
+
+    @Override
+	public boolean isJointMarginalSupported() {
+        return true;
+    }
+
+    /**
+     * Returns P(variables==values | evidence). If all of the variables are in
+     * one clique the probability is read from its table, otherwise the values
+     * are entered as additional evidence and collected to the root.
+     */
+    @Override
+	public double getJointMarginal(int[] variables, int[] values) {
+        if (variables.length != values.length) {
+            throw new IllegalArgumentException("Values must match variables.");
+        }
+
+        propagate();
+
+        if (probEvidence == 0.0) {
+            return Double.NaN;
+        }
+
+        int clique = findClique(variables);
+
+        if (clique != -1) {
+            double[] table = propagated[clique];
+            int[] positions = new int[variables.length];
+
+            for (int i = 0; i < variables.length; i++) {
+                positions[i] = Arrays.binarySearch(cliques[clique], variables[i]);
+            }
+
+            double sum = 0.0;
+            double total = 0.0;
+
+            ENTRIES:
+            for (int e = 0; e < table.length; e++) {
+                total += table[e];
+
+                for (int i = 0; i < variables.length; i++) {
+                    int k = positions[i];
+
+                    if ((e / strides[clique][k]) % dims[variables[i]] != values[i]) {
+                        continue ENTRIES;
+                    }
+                }
+
+                sum += table[e];
+            }
+
+            return sum / total;
+        }
+
+        double probJoint = collect(variables, values);
+        upToDate = false;
+        return probJoint / probEvidence;
+    }
+
+    /**
+     * Returns P(variable==value | evidence) where evience is getEvidence().
+     */
+    @Override
+	public double getMarginal(int variable, int value) {
+        return marginal(variable)[value];
+    }
+
+    /**
+     * Returns the marginals P(variable | evidence) of the given variables,
+     * indexed as variables, computed from one propagation of the evidence.
+     */
+    public double[][] getMarginals(int[] variables) {
+        double[][] result = new double[variables.length][];
+
+        for (int i = 0; i < variables.length; i++) {
+            result[i] = marginal(variables[i]).clone();
+        }
+
+        return result;
+    }
+
+    @Override
+	public double[] calculatePriorMarginals(int nodeIndex) {
+        Evidence evidence = getEvidence();
+        setEvidence(Evidence.tautology(evidence.getVariableSource()));
+
+        double[] marginals = marginal(nodeIndex).clone();
+
+        setEvidence(evidence);
+        return marginals;
+    }
+
+    @Override
+	public double[] calculateUpdatedMarginals(int nodeIndex) {
+        return marginal(nodeIndex).clone();
+    }
+
+    /**
+     * Returns the number of cliques in the junction tree.
+     */
+    public int getNumCliques() {
+        return cliques.length;
+    }
+
+    /**
+     * Returns the number of entries of the largest clique table.
+     */
+    public int getMaxCliqueSize() {
+        int max = 0;
+
+        for (double[] potential : potentials) {
+            max = Math.max(max, potential.length);
+        }
+
+        return max;
+    }
+
+    /**
+     * Prints out the most recent marginal.
+     */
+    @Override
+	public String toString() {
+        return "Junction tree updater, evidence = " + evidence;
+    }
+
+    //==============================PRIVATE METHODS=======================//
+
+    /**
+     * Builds the junction tree for the DAG of bayesIm.
+     */
+    private void compile() {
+        int numNodes = bayesIm.getNumNodes();
+        dims = new int[numNodes];
+
+        for (int i = 0; i < numNodes; i++) {
+            dims[i] = bayesIm.getNumColumns(i);
+        }
+
+        // Moral graph.
+        boolean[][] adjacent = new boolean[numNodes][numNodes];
+
+        for (int i = 0; i < numNodes; i++) {
+            int[] parents = bayesIm.getParents(i);
+
+            for (int j = 0; j < parents.length; j++) {
+                adjacent[i][parents[j]] = adjacent[parents[j]][i] = true;
+
+                for (int k = j + 1; k < parents.length; k++) {
+                    adjacent[parents[j]][parents[k]] = adjacent[parents[k]][parents[j]] = true;
+                }
+            }
+        }
+
+        // Elimination by minimum fill, ties broken by minimum clique weight.
+        // A clique can only be contained in one found before it.
+        List<boolean[]> members = new ArrayList<boolean[]>();
+        boolean[] eliminated = new boolean[numNodes];
+
+        for (int step = 0; step < numNodes; step++) {
+            int best = -1;
+            int bestFill = Integer.MAX_VALUE;
+            double bestWeight = Double.POSITIVE_INFINITY;
+
+            for (int v = 0; v < numNodes; v++) {
+                if (eliminated[v]) {
+                    continue;
+                }
+
+                int fill = 0;
+                double weight = Math.log(dims[v]);
+
+                for (int a = 0; a < numNodes; a++) {
+                    if (eliminated[a] || !adjacent[v][a]) {
+                        continue;
+                    }
+
+                    weight += Math.log(dims[a]);
+
+                    for (int b = a + 1; b < numNodes; b++) {
+                        if (!eliminated[b] && adjacent[v][b] && !adjacent[a][b]) {
+                            fill++;
+                        }
+                    }
+                }
+
+                if (fill < bestFill || (fill == bestFill && weight < bestWeight)) {
+                    best = v;
+                    bestFill = fill;
+                    bestWeight = weight;
+                }
+            }
+
+            boolean[] member = new boolean[numNodes];
+            member[best] = true;
+
+            for (int a = 0; a < numNodes; a++) {
+                if (eliminated[a] || !adjacent[best][a]) {
+                    continue;
+                }
+
+                member[a] = true;
+
+                for (int b = a + 1; b < numNodes; b++) {
+                    if (!eliminated[b] && adjacent[best][b]) {
+                        adjacent[a][b] = adjacent[b][a] = true;
+                    }
+                }
+            }
+
+            eliminated[best] = true;
+
+            if (!isContained(member, members)) {
+                members.add(member);
+            }
+        }
+
+        int numCliques = members.size();
+        cliques = new int[numCliques][];
+        strides = new int[numCliques][];
+        int[] sizes = new int[numCliques];
+
+        for (int c = 0; c < numCliques; c++) {
+            cliques[c] = indices(members.get(c));
+            strides[c] = new int[cliques[c].length];
+            sizes[c] = size(cliques[c]);
+
+            int stride = 1;
+
+            for (int k = cliques[c].length - 1; k >= 0; k--) {
+                strides[c][k] = stride;
+                stride *= dims[cliques[c][k]];
+            }
+        }
+
+        // Maximum spanning tree on separator size (Prim), rooted at clique 0.
+        // Cliques in different components are joined by empty separators.
+        parentClique = new int[numCliques];
+        order = new int[numCliques];
+        int[] weights = new int[numCliques];
+        boolean[] inTree = new boolean[numCliques];
+
+        Arrays.fill(parentClique, -1);
+        inTree[0] = true;
+
+        for (int c = 1; c < numCliques; c++) {
+            parentClique[c] = 0;
+            weights[c] = intersection(members.get(0), members.get(c)).length;
+        }
+
+        for (int t = 1; t < numCliques; t++) {
+            int next = -1;
+
+            for (int c = 0; c < numCliques; c++) {
+                if (!inTree[c] && (next == -1 || weights[c] > weights[next])) {
+                    next = c;
+                }
+            }
+
+            inTree[next] = true;
+            order[t] = next;
+
+            for (int c = 0; c < numCliques; c++) {
+                if (inTree[c]) {
+                    continue;
+                }
+
+                int weight = intersection(members.get(next), members.get(c)).length;
+
+                if (weight > weights[c]) {
+                    weights[c] = weight;
+                    parentClique[c] = next;
+                }
+            }
+        }
+
+        separatorSizes = new int[numCliques];
+        childMaps = new int[numCliques][];
+        parentMaps = new int[numCliques][];
+
+        for (int c = 0; c < numCliques; c++) {
+            int parent = parentClique[c];
+
+            if (parent == -1) {
+                continue;
+            }
+
+            int[] separator = intersection(members.get(c), members.get(parent));
+            int[] separatorStrides = new int[numNodes];
+            int stride = 1;
+
+            for (int k = separator.length - 1; k >= 0; k--) {
+                separatorStrides[separator[k]] = stride;
+                stride *= dims[separator[k]];
+            }
+
+            separatorSizes[c] = stride;
+            childMaps[c] = indexMap(c, sizes[c], separatorStrides);
+            parentMaps[c] = indexMap(parent, sizes[parent], separatorStrides);
+        }
+
+        homeCliques = new int[numNodes];
+        familyCliques = new int[numNodes];
+
+        for (int i = 0; i < numNodes; i++) {
+            int[] parents = bayesIm.getParents(i);
+            homeCliques[i] = -1;
+            familyCliques[i] = -1;
+
+            for (int c = 0; c < numCliques; c++) {
+                boolean[] member = members.get(c);
+
+                if (!member[i]) {
+                    continue;
+                }
+
+                if (homeCliques[i] == -1 || sizes[c] < sizes[homeCliques[i]]) {
+                    homeCliques[i] = c;
+                }
+
+                boolean family = true;
+
+                for (int parent : parents) {
+                    family = family && member[parent];
+                }
+
+                if (family && (familyCliques[i] == -1 || sizes[c] < sizes[familyCliques[i]])) {
+                    familyCliques[i] = c;
+                }
+            }
+        }
+    }
+
+    /**
+     * Loads the conditional probability tables of manipulatedBayesIm into
+     * the clique tables.
+     */
+    private void loadPotentials() {
+        int numNodes = dims.length;
+        potentials = new double[cliques.length][];
+        manipulatedIndices = new int[numNodes];
+        familyMaps = new int[numNodes][];
+
+        for (int c = 0; c < cliques.length; c++) {
+            potentials[c] = new double[size(cliques[c])];
+            Arrays.fill(potentials[c], 1.0);
+        }
+
+        for (int i = 0; i < numNodes; i++) {
+            String name = bayesIm.getNode(i).getName();
+            manipulatedIndices[i] = manipulatedBayesIm.getNodeIndex(manipulatedBayesIm.getNode(name));
+        }
+
+        for (int i = 0; i < numNodes; i++) {
+            int node = manipulatedIndices[i];
+            int[] parents = manipulatedBayesIm.getParents(node);
+            int numRows = manipulatedBayesIm.getNumRows(node);
+            int numCols = manipulatedBayesIm.getNumColumns(node);
+
+            // The first parent varies slowest in the rows of the table.
+            int[] tableStrides = new int[numNodes];
+            int stride = numCols;
+            tableStrides[i] = 1;
+
+            for (int k = parents.length - 1; k >= 0; k--) {
+                String name = manipulatedBayesIm.getNode(parents[k]).getName();
+                int parent = bayesIm.getNodeIndex(bayesIm.getNode(name));
+                tableStrides[parent] = stride;
+                stride *= dims[parent];
+            }
+
+            double[] table = new double[numRows * numCols];
+
+            for (int row = 0; row < numRows; row++) {
+                for (int col = 0; col < numCols; col++) {
+                    table[row * numCols + col] = manipulatedBayesIm.getProbability(node, row, col);
+                }
+            }
+
+            int clique = familyCliques[i];
+            double[] potential = potentials[clique];
+            int[] map = indexMap(clique, potential.length, tableStrides);
+
+            for (int e = 0; e < potential.length; e++) {
+                potential[e] *= table[map[e]];
+            }
+
+            familyMaps[i] = map;
+        }
+    }
+
+    /**
+     * Computes P(clique, e) for every clique, if it has not been done for the
+     * current evidence.
+     */
+    private void propagate() {
+        if (upToDate) {
+            return;
+        }
+
+        probEvidence = collect(null, null);
+
+        // Distribute.
+        double[] message = new double[max(separatorSizes)];
+
+        for (int t = 1; t < order.length; t++) {
+            int c = order[t];
+            double[] parentTable = propagated[parentClique[c]];
+            double[] table = propagated[c];
+            double[] separator = separators[c];
+            int[] parentMap = parentMaps[c];
+            int[] childMap = childMaps[c];
+            int size = separatorSizes[c];
+
+            Arrays.fill(message, 0, size, 0.0);
+
+            for (int e = 0; e < parentTable.length; e++) {
+                message[parentMap[e]] += parentTable[e];
+            }
+
+            for (int s = 0; s < size; s++) {
+                double old = separator[s];
+                separator[s] = message[s];
+                message[s] = old == 0.0 ? 0.0 : message[s] / old;
+            }
+
+            for (int e = 0; e < table.length; e++) {
+                table[e] *= message[childMap[e]];
+            }
+        }
+
+        upToDate = true;
+    }
+
+    /**
+     * Enters the evidence, and variables==values if variables is not null,
+     * into fresh copies of the clique tables and collects them to the root.
+     *
+     * @return the probability of what was entered.
+     */
+    private double collect(int[] variables, int[] values) {
+        if (propagated == null) {
+            propagated = new double[potentials.length][];
+            separators = new double[potentials.length][];
+
+            for (int c = 0; c < potentials.length; c++) {
+                propagated[c] = new double[potentials[c].length];
+                separators[c] = new double[separatorSizes[c]];
+            }
+        }
+
+        for (int c = 0; c < potentials.length; c++) {
+            System.arraycopy(potentials[c], 0, propagated[c], 0, potentials[c].length);
+        }
+
+        Proposition proposition = evidence.getProposition();
+
+        for (int i = 0; i < dims.length; i++) {
+            for (int j = 0; j < dims[i]; j++) {
+                if (!proposition.isAllowed(i, j)) {
+                    removeCategory(i, j);
+                }
+            }
+        }
+
+        if (variables != null) {
+            for (int i = 0; i < variables.length; i++) {
+                for (int j = 0; j < dims[variables[i]]; j++) {
+                    if (j != values[i]) {
+                        removeCategory(variables[i], j);
+                    }
+                }
+            }
+        }
+
+        for (int t = order.length - 1; t > 0; t--) {
+            int c = order[t];
+            double[] table = propagated[c];
+            double[] parentTable = propagated[parentClique[c]];
+            double[] separator = separators[c];
+            int[] childMap = childMaps[c];
+            int[] parentMap = parentMaps[c];
+
+            Arrays.fill(separator, 0.0);
+
+            for (int e = 0; e < table.length; e++) {
+                separator[childMap[e]] += table[e];
+            }
+
+            for (int e = 0; e < parentTable.length; e++) {
+                parentTable[e] *= separator[parentMap[e]];
+            }
+        }
+
+        double sum = 0.0;
+
+        for (double p : propagated[order[0]]) {
+            sum += p;
+        }
+
+        return sum;
+    }
+
+    /**
+     * Sets the entries of the home clique of variable in which it has the
+     * given category to zero.
+     */
+    private void removeCategory(int variable, int category) {
+        int clique = homeCliques[variable];
+        double[] table = propagated[clique];
+        int stride = strides[clique][Arrays.binarySearch(cliques[clique], variable)];
+        int block = stride * dims[variable];
+
+        for (int start = category * stride; start < table.length; start += block) {
+            Arrays.fill(table, start, start + stride, 0.0);
+        }
+    }
+
+    /**
+     * Returns the cached marginal of variable for the current evidence, all
+     * NaN if the evidence has probability zero.
+     */
+    private double[] marginal(int variable) {
+        if (marginals == null) {
+            marginals = new double[dims.length][];
+        }
+
+        if (marginals[variable] == null) {
+            propagate();
+
+            int clique = homeCliques[variable];
+            double[] table = propagated[clique];
+            int stride = strides[clique][Arrays.binarySearch(cliques[clique], variable)];
+            int dim = dims[variable];
+            double[] marginal = new double[dim];
+            double total = 0.0;
+
+            for (int e = 0; e < table.length; e++) {
+                marginal[(e / stride) % dim] += table[e];
+                total += table[e];
+            }
+
+            for (int j = 0; j < dim; j++) {
+                marginal[j] = total == 0.0 ? Double.NaN : marginal[j] / total;
+            }
+
+            marginals[variable] = marginal;
+        }
+
+        return marginals[variable];
+    }
+
+    /**
+     * Sets P(node | parents, e) in a copy of manipulatedBayesIm, from the
+     * family clique of each node.
+     */
+    private void updateAll() {
+        propagate();
+
+        BayesIm updatedBayesIm = new MlBayesIm(manipulatedBayesIm);
+
+        for (int i = 0; i < dims.length; i++) {
+            int node = manipulatedIndices[i];
+            int numRows = manipulatedBayesIm.getNumRows(node);
+            int numCols = manipulatedBayesIm.getNumColumns(node);
+            double[] table = propagated[familyCliques[i]];
+            int[] map = familyMaps[i];
+            double[] joint = new double[numRows * numCols];
+
+            for (int e = 0; e < table.length; e++) {
+                joint[map[e]] += table[e];
+            }
+
+            for (int row = 0; row < numRows; row++) {
+                double total = 0.0;
+
+                for (int col = 0; col < numCols; col++) {
+                    total += joint[row * numCols + col];
+                }
+
+                for (int col = 0; col < numCols; col++) {
+                    double p = total == 0.0 ? Double.NaN : joint[row * numCols + col] / total;
+                    updatedBayesIm.setProbability(node, row, col, p);
+                }
+            }
+        }
+
+        this.updatedBayesIm = updatedBayesIm;
+    }
+
+    /**
+     * Returns a clique containing all of the variables, the smallest one, or
+     * -1 if there is none.
+     */
+    private int findClique(int[] variables) {
+        int best = -1;
+
+        CLIQUES:
+        for (int c = 0; c < cliques.length; c++) {
+            for (int variable : variables) {
+                if (Arrays.binarySearch(cliques[c], variable) < 0) {
+                    continue CLIQUES;
+                }
+            }
+
+            if (best == -1 || potentials[c].length < potentials[best].length) {
+                best = c;
+            }
+        }
+
+        return best;
+    }
+
+    /**
+     * Returns for each entry of the clique table sum_k value_k * coefficients[v_k]
+     * over the variables v_k of the clique, the last one varying fastest.
+     */
+    private int[] indexMap(int clique, int size, int[] coefficients) {
+        int[] variables = cliques[clique];
+        int[] values = new int[variables.length];
+        int[] map = new int[size];
+        int index = 0;
+
+        for (int e = 0; e < size; e++) {
+            map[e] = index;
+
+            for (int k = variables.length - 1; k >= 0; k--) {
+                int v = variables[k];
+
+                if (++values[k] < dims[v]) {
+                    index += coefficients[v];
+                    break;
+                }
+
+                index -= (dims[v] - 1) * coefficients[v];
+                values[k] = 0;
+            }
+        }
+
+        return map;
+    }
+
+    private int size(int[] variables) {
+        long size = 1;
+
+        for (int v : variables) {
+            size *= dims[v];
+
+            if (size > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("The junction tree has a " +
+                        "clique with more than " + Integer.MAX_VALUE +
+                        " entries: " + Arrays.toString(variables));
+            }
+        }
+
+        return (int) size;
+    }
+
+    private static boolean isContained(boolean[] member, List<boolean[]> members) {
+        OTHERS:
+        for (boolean[] other : members) {
+            for (int i = 0; i < member.length; i++) {
+                if (member[i] && !other[i]) {
+                    continue OTHERS;
+                }
+            }
+
+            return true;
+        }
+
+        return false;
+    }
+
+    private static int[] indices(boolean[] member) {
+        int count = 0;
+
+        for (boolean b : member) {
+            if (b) count++;
+        }
+
+        int[] indices = new int[count];
+        count = 0;
+
+        for (int i = 0; i < member.length; i++) {
+            if (member[i]) indices[count++] = i;
+        }
+
+        return indices;
+    }
+
+    private static int[] intersection(boolean[] member1, boolean[] member2) {
+        boolean[] both = new boolean[member1.length];
+
+        for (int i = 0; i < member1.length; i++) {
+            both[i] = member1[i] && member2[i];
+        }
+
+        return indices(both);
+    }
+
+    private static int max(int[] values) {
+        int max = 0;
+
+        for (int value : values) {
+            max = Math.max(max, value);
+        }
+
+        return max;
+    }
+
+    private Dag createManipulatedGraph(Graph graph) {
+        Dag updatedGraph = new Dag(graph);
+
+        // alters graph for manipulated evidenceItems
+        for (int i = 0; i < evidence.getNumNodes(); ++i) {
+            if (evidence.isManipulated(i)) {
+                Node node = updatedGraph.getNode(evidence.getNode(i).getName());
+                List<Node> parents = updatedGraph.getParents(node);
+
+                for (Object parent1 : parents) {
+                    Node parent = (Node) parent1;
+                    updatedGraph.removeEdge(node, parent);
+                }
+            }
+        }
+
+        return updatedGraph;
+    }
+
+    /**
+     * Adds semantic checks to the default deserialization method. This method
+     * must have the standard signature for a readObject method, and the body of
+     * the method must begin with "s.defaultReadObject();". Other than that, any
+     * semantic checks can be specified and do not need to stay the same from
+     * version to version. A readObject method of this form may be added to any
+     * class, even if Tetrad sessions were previously saved out using a version
+     * of the class that didn't include it. (That's what the
+     * "s.defaultReadObject();" is for. See J. Bloch, Effective Java, for help.
+     *
+     * @throws java.io.IOException
+     * @throws ClassNotFoundException
+     */
+    private void readObject(ObjectInputStream s)
+            throws IOException, ClassNotFoundException {
+        s.defaultReadObject();
+
+        if (bayesIm == null) {
+            throw new NullPointerException();
+        }
+
+        if (evidence == null) {
+            throw new NullPointerException();
+        }
+
+        if (cliques == null || potentials == null) {
+            throw new NullPointerException();
+        }
+    }
+}
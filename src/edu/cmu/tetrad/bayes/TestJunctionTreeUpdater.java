@@ -0,0 +1,141 @@
+package edu.cmu.tetrad.bayes;
+
+import edu.cmu.tetrad.graph.Dag;
+import edu.cmu.tetrad.graph.GraphUtils;
+import edu.cmu.tetrad.util.RandomUtil;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import java.util.Random;
+
+/**
+ * Tests JunctionTreeUpdater against RowSummingExactUpdater on small random Bayes nets: the marginals, the joint
+ * marginals and the updated Bayes IM agree under no evidence, under single and disjunctive evidence and with
+ * manipulated variables, also when the evidence of one updater is changed several times.
+ */
+public final class TestJunctionTreeUpdater extends TestCase {
+
+    public TestJunctionTreeUpdater(String name) {
+        super(name);
+    }
+
+    public void testAgainstRowSumming() {
+        RandomUtil.getInstance().setSeed(6151L);
+        Random random = new Random(6151L);
+
+        for (int run = 0; run < 15; run++) {
+            int numNodes = 3 + random.nextInt(6);
+            Dag dag = GraphUtils.randomDag(numNodes, 0, numNodes + random.nextInt(numNodes), 4, 3, 3, false);
+            BayesIm bayesIm = new MlBayesIm(new BayesPm(dag, 2, 3), MlBayesIm.RANDOM);
+            JunctionTreeUpdater junctionTree = new JunctionTreeUpdater(bayesIm);
+
+            assertSameUpdates(new RowSummingExactUpdater(bayesIm), junctionTree, random);
+
+            for (int step = 0; step < 5; step++) {
+                Evidence evidence = Evidence.tautology(bayesIm);
+                Proposition proposition = evidence.getProposition();
+
+                for (int i = 0; i < numNodes; i++) {
+                    switch (random.nextInt(6)) {
+                        case 0:
+                            proposition.setCategory(i, random.nextInt(evidence.getNumCategories(i)));
+                            break;
+                        case 1:
+                            proposition.removeCategory(i, random.nextInt(evidence.getNumCategories(i)));
+                            break;
+                        case 2:
+                            evidence.setManipulated(i, true);
+                            proposition.setCategory(i, random.nextInt(evidence.getNumCategories(i)));
+                            break;
+                        default:
+                    }
+                }
+
+                if (!proposition.existsCombination()) {
+                    continue;
+                }
+
+                junctionTree.setEvidence(evidence);
+                assertSameUpdates(new RowSummingExactUpdater(bayesIm, evidence), junctionTree, random);
+            }
+        }
+    }
+
+    /**
+     * Bill's 3-variable example of TestRowSummingUpdater, with c = 1.
+     */
+    public void testSample() {
+        BayesIm bayesIm = TestRowSummingUpdater.sampleBayesIm2();
+        Evidence evidence = Evidence.tautology(bayesIm);
+        evidence.getProposition().setCategory(evidence.getNodeIndex("c"), evidence.getCategoryIndex("c", "1"));
+
+        JunctionTreeUpdater updater = new JunctionTreeUpdater(bayesIm, evidence);
+        BayesIm updatedIm = updater.getUpdatedBayesIm();
+        assertEquals(0.2750, updatedIm.getProbability(0, 0, 0), 0.001);
+        assertEquals(0.7250, updatedIm.getProbability(0, 0, 1), 0.001);
+        assertEquals(0.0556, updatedIm.getProbability(1, 0, 0), 0.001);
+        assertEquals(0.7869, updatedIm.getProbability(1, 1, 0), 0.001);
+        assertEquals(1.0000, updatedIm.getProbability(2, 3, 1), 0.001);
+        assertEquals(1, updater.getNumCliques());
+    }
+
+    private static void assertSameUpdates(RowSummingExactUpdater expected, JunctionTreeUpdater updater,
+                                          Random random) {
+        BayesIm bayesIm = expected.getBayesIm();
+        int numNodes = bayesIm.getNumNodes();
+
+        for (int i = 0; i < numNodes; i++) {
+            assertEquals(expected.calculatePriorMarginals(i), updater.calculatePriorMarginals(i));
+            assertEquals(expected.calculateUpdatedMarginals(i), updater.calculateUpdatedMarginals(i));
+
+            for (int j = 0; j < bayesIm.getNumColumns(i); j++) {
+                assertEquals(expected.getMarginal(i, j), updater.getMarginal(i, j), 1e-9);
+            }
+        }
+
+        for (int k = 0; k < 5 && numNodes > 1; k++) {
+            int[] variables = {random.nextInt(numNodes), random.nextInt(numNodes)};
+            if (variables[0] == variables[1]) {
+                continue;
+            }
+            int[] values = {random.nextInt(bayesIm.getNumColumns(variables[0])),
+                    random.nextInt(bayesIm.getNumColumns(variables[1]))};
+            assertEquals(expected.getJointMarginal(variables, values), updater.getJointMarginal(variables, values),
+                    1e-9);
+        }
+
+        BayesIm expectedIm = expected.getUpdatedBayesIm();
+        BayesIm updatedIm = updater.getUpdatedBayesIm();
+
+        for (int i = 0; i < numNodes; i++) {
+            for (int row = 0; row < expectedIm.getNumRows(i); row++) {
+                for (int col = 0; col < expectedIm.getNumColumns(i); col++) {
+                    assertEquals(expectedIm.getProbability(i, row, col), updatedIm.getProbability(i, row, col));
+                }
+            }
+        }
+    }
+
+    private static void assertEquals(double[] expected, double[] actual) {
+        assertEquals(expected.length, actual.length);
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals(expected[i], actual[i]);
+        }
+    }
+
+    /**
+     * Equal to 1e-9, or both NaN.
+     */
+    private static void assertEquals(double expected, double actual) {
+        if (Double.isNaN(expected)) {
+            assertTrue("expected NaN but was " + actual, Double.isNaN(actual));
+        } else {
+            assertEquals(expected, actual, 1e-9);
+        }
+    }
+
+    public static Test suite() {
+        return new TestSuite(TestJunctionTreeUpdater.class);
+    }
+}
@@ -325,7 +325,7 @@ public final class TestRowSummingUpdater extends TestCase {
         return bayesIm1;
     }
 
-    private static BayesIm sampleBayesIm2() {
+    static BayesIm sampleBayesIm2() {
         Node a = new GraphNode("a");
         Node b = new GraphNode("b");
         Node c = new GraphNode("c");
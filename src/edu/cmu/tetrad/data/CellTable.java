@@ -21,15 +21,28 @@
 
 package edu.cmu.tetrad.data;
 
-import edu.cmu.tetrad.util.MultiDimIntTable;
+import java.util.Arrays;
 
 
 /**
  * Stores a cell count table of arbitrary dimension. Provides methods for
- * incrementing particular cells and for calculating marginals.
+ * counting the cases of a data set and for calculating marginals.
+ * <p>
+ * Counts are weighted by the case multipliers of the data set, so a CT table
+ * (one row per cell with its count in MULT) gives the same table as the cases
+ * it stands for. The discrete columns of the data set are copied into int
+ * arrays the first time they are counted and its multipliers into a long
+ * array, until a different data set is counted or the data set changes (see
+ * ColtDataSet.getModificationCount; other data sets are read again on every
+ * count). The counts and margins are kept in buffers that only grow, so a
+ * test on a data set that was seen before allocates nothing.
+ * <p>
+ * The cells are stored in a flat array. For a table over x, y, z1, ..., zn
+ * the conditional tables (one for each combination of z1, ..., zn, with zn
+ * varying fastest) are consecutive blocks of x rows by y columns; see
+ * calcMargins.
  *
  * @author Joseph Ramsey
- * @see edu.cmu.tetrad.util.MultiDimIntTable
  */
 public final class CellTable {
 
@@ -57,7 +70,38 @@ public final class CellTable {
      */
     private int missingValue = -99;
 
-    private MultiDimIntTable table;
+    /**
+     * The number of values of each variable of the table, and the offset of
+     * one step in each variable in the cell array.
+     */
+    private int[] dims = new int[0];
+    private int[] strides = new int[0];
+    private int numCells;
+
+    /**
+     * The cell counts; only the first numCells entries belong to the table.
+     */
+    private long[] counts = new long[0];
+
+    /**
+     * Margins of the conditional tables, see calcMargins.
+     */
+    private int numTables;
+    private long[] rowMargins = new long[0];
+    private long[] colMargins = new long[0];
+    private long[] totals = new long[0];
+
+    /**
+     * The data set last counted, its modification count (-1 if it has none),
+     * its columns (copied when first counted) and its case multipliers.
+     */
+    private DataSet dataSet;
+    private int modificationCount;
+    private int numRows;
+    private int[][] columns = new int[0][];
+    private boolean[] copied = new boolean[0];
+    private long[] multipliers = new long[0];
+    private int[][] selected = new int[0][];
 
     /**
      * Constructs a new cell table using the given array for dimensions,
@@ -66,44 +110,202 @@ public final class CellTable {
      * @param dims an <code>int[]</code> value
      */
     public CellTable(int[] dims) {
-//        this.table = new MultiDimIntTable(dims);
-        this.table = new MultiDimIntTable(dims);
+        if (dims != null) {
+            reset(dims);
+        }
     }
 
-    @SuppressWarnings({"ConstantConditions"})
+    /**
+     * Resets the table to the given dimensions, with all cells zero.
+     */
+    public final void reset(int[] dims) {
+        if (this.dims.length != dims.length) {
+            this.dims = new int[dims.length];
+            this.strides = new int[dims.length];
+        }
+
+        System.arraycopy(dims, 0, this.dims, 0, dims.length);
+
+        // x and y vary fastest, then the conditioning variables with the
+        // last one fastest, as CombinationIterator enumerates them.
+        long cells = 1;
+
+        if (dims.length == 1) {
+            strides[0] = 1;
+            cells = dims[0];
+        } else if (dims.length >= 2) {
+            strides[1] = 1;
+            strides[0] = dims[1];
+            cells = (long) dims[0] * dims[1];
+        }
+
+        for (int i = dims.length - 1; i >= 2; i--) {
+            strides[i] = (int) cells;
+            cells *= dims[i];
+        }
+
+        if (cells > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Table has too many cells: " +
+                    Arrays.toString(dims));
+        }
+
+        this.numCells = (int) cells;
+        this.numTables = 0;
+
+        if (counts.length < numCells) {
+            counts = new long[Math.max(numCells, 2 * counts.length)];
+        } else {
+            Arrays.fill(counts, 0, numCells, 0L);
+        }
+    }
+
+    /**
+     * Resets the table to the columns of dataSet at the given indices and
+     * counts the cases, each with its multiplier. Cases with a missing value
+     * in one of the columns are skipped.
+     */
     public final void addToTable(DataSet dataSet, int[] indices) {
-        int[] dims = new int[indices.length];
+        int[] newDims = coords(indices.length);
 
         for (int i = 0; i < indices.length; i++) {
             DiscreteVariable variable =
                     (DiscreteVariable) dataSet.getVariable(indices[i]);
-            dims[i] = variable.getNumCategories();
+            newDims[i] = variable.getNumCategories();
+        }
+
+        reset(newDims);
+        useData(dataSet);
+
+        if (selected.length != indices.length) {
+            selected = new int[indices.length][];
         }
 
-        table.reset(dims);
+        for (int i = 0; i < indices.length; i++) {
+            selected[i] = column(indices[i]);
+        }
 
-        int[] coords = new int[indices.length];
+        int[][] selected = this.selected;
+        int[] strides = this.strides;
+        long[] counts = this.counts;
+        long[] multipliers = this.multipliers;
+        int missingValue = getMissingValue();
 
         points:
-        for (int i = 0; i < dataSet.getNumRows(); i++) {
-            for (int j = 0; j < indices.length; j++) {
-                try {
-                    coords[j] = dataSet.getInt(i, indices[j]);
-                }
-                catch (Exception e) {
-                    e.printStackTrace();  //To change body of catch statement use File | Settings | File Templates.
-                    coords[j] = dataSet.getInt(i, j);
-                }
+        for (int n = 0; n < numRows; n++) {
+            int cell = 0;
+
+            for (int j = 0; j < selected.length; j++) {
+                int value = selected[j][n];
 
-                if (coords[j] == getMissingValue()) {
+                if (value == missingValue) {
                     continue points;
                 }
+
+                cell += value * strides[j];
+            }
+
+            counts[cell] += multipliers[n];
+        }
+    }
+
+    /**
+     * Drops the copies of the data set last counted, so the next count reads
+     * it again; for changes that its modification count does not see.
+     */
+    public final void clearData() {
+        this.dataSet = null;
+    }
+
+    /**
+     * Calculates, in one pass over the cells, the margins of every conditional
+     * table of a table over x, y, z1, ..., zn: the row sums (over y), the
+     * column sums (over x) and the total of each combination of values of
+     * z1, ..., zn. The combinations are numbered as CombinationIterator
+     * enumerates them.
+     */
+    public final void calcMargins() {
+        if (dims.length < 2) {
+            throw new IllegalStateException("Margins need a table over at " +
+                    "least two variables.");
+        }
+
+        int rows = dims[0];
+        int cols = dims[1];
+        int blockSize = rows * cols;
+        numTables = blockSize == 0 ? 0 : numCells / blockSize;
+
+        if (rowMargins.length < numTables * rows) {
+            rowMargins = new long[Math.max(numTables * rows, 2 * rowMargins.length)];
+        }
+
+        if (colMargins.length < numTables * cols) {
+            colMargins = new long[Math.max(numTables * cols, 2 * colMargins.length)];
+        }
+
+        if (totals.length < numTables) {
+            totals = new long[Math.max(numTables, 2 * totals.length)];
+        }
+
+        Arrays.fill(colMargins, 0, numTables * cols, 0L);
+
+        int cell = 0;
+
+        for (int t = 0; t < numTables; t++) {
+            long total = 0;
+
+            for (int i = 0; i < rows; i++) {
+                long rowSum = 0;
+
+                for (int j = 0; j < cols; j++) {
+                    long count = counts[cell++];
+                    rowSum += count;
+                    colMargins[t * cols + j] += count;
+                }
+
+                rowMargins[t * rows + i] = rowSum;
+                total += rowSum;
             }
 
-            table.increment(coords, 1);
+            totals[t] = total;
         }
     }
 
+    /**
+     * Returns the number of conditional tables, as of the last call to
+     * calcMargins.
+     */
+    public final int getNumTables() {
+        return numTables;
+    }
+
+    /**
+     * Returns the count of x = row, y = col in the given conditional table.
+     */
+    public final long getCount(int table, int row, int col) {
+        return counts[(table * dims[0] + row) * dims[1] + col];
+    }
+
+    /**
+     * Returns the count of x = row in the given conditional table.
+     */
+    public final long getRowMargin(int table, int row) {
+        return rowMargins[table * dims[0] + row];
+    }
+
+    /**
+     * Returns the count of y = col in the given conditional table.
+     */
+    public final long getColMargin(int table, int col) {
+        return colMargins[table * dims[1] + col];
+    }
+
+    /**
+     * Returns the number of cases in the given conditional table.
+     */
+    public final long getTableTotal(int table) {
+        return totals[table];
+    }
+
     /**
      * Returns the number of values for the given variable.
      *
@@ -111,7 +313,7 @@ public final class CellTable {
      * @return the number of dimensions of the variable.
      */
     public final int getNumValues(int varIndex) {
-        return table.getDims(varIndex);
+        return dims[varIndex];
     }
 
     /**
@@ -126,24 +328,7 @@ public final class CellTable {
      * @return the marginal sum specified.
      */
     public final long calcMargin(int[] coords) {
-        internalCoordCopy(coords);
-
-        int sum = 0;
-        int i = -1;
-
-        while (++i < this.coordCopy.length) {
-            if (this.coordCopy[i] == -1) {
-                for (int j = 0; j < table.getDimension(i); j++) {
-                    this.coordCopy[i] = j;
-                    sum += calcMargin(this.coordCopy);
-                }
-
-                this.coordCopy[i] = -1;
-                return sum;
-            }
-        }
-
-        return table.getValue(this.coordCopy);
+        return calcMargin(coords, 0, 0);
     }
 
     /**
@@ -168,17 +353,98 @@ public final class CellTable {
         return calcMargin(this.coordCopy);
     }
 
+    /**
+     * Sums the cells that match coords in the variables from var on, starting
+     * at the given cell offset.
+     */
+    private long calcMargin(int[] coords, int var, int offset) {
+        if (var == coords.length) {
+            return counts[offset];
+        }
+
+        if (coords[var] != -1) {
+            return calcMargin(coords, var + 1, offset + coords[var] * strides[var]);
+        }
+
+        long sum = 0;
+
+        for (int j = 0; j < dims[var]; j++) {
+            sum += calcMargin(coords, var + 1, offset + j * strides[var]);
+        }
+
+        return sum;
+    }
+
     /**
      * Makes a copy of the coordinate array so that the original is not messed
      * up.
      */
     private void internalCoordCopy(int[] coords) {
+        System.arraycopy(coords, 0, coords(coords.length), 0, coords.length);
+    }
+
+    private int[] coords(int length) {
         if ((this.coordCopy == null) ||
-                (this.coordCopy.length != coords.length)) {
-            this.coordCopy = new int[coords.length];
+                (this.coordCopy.length != length)) {
+            this.coordCopy = new int[length];
+        }
+
+        return this.coordCopy;
+    }
+
+    /**
+     * Makes dataSet the data set of column(), reading its multipliers if it is
+     * not the one whose copies are kept or it changed since.
+     */
+    private void useData(DataSet dataSet) {
+        int modificationCount = dataSet instanceof ColtDataSet
+                ? ((ColtDataSet) dataSet).getModificationCount() : -1;
+
+        if (dataSet == this.dataSet && modificationCount != -1 &&
+                modificationCount == this.modificationCount) {
+            return;
+        }
+
+        this.dataSet = dataSet;
+        this.modificationCount = modificationCount;
+        this.numRows = dataSet.getNumRows();
+
+        if (columns.length != dataSet.getNumColumns()) {
+            columns = new int[dataSet.getNumColumns()][];
+            copied = new boolean[columns.length];
+        }
+
+        Arrays.fill(copied, false);
+
+        if (multipliers.length < numRows) {
+            multipliers = new long[numRows];
+        }
+
+        for (int n = 0; n < numRows; n++) {
+            multipliers[n] = dataSet.getMultiplier(n);
         }
+    }
+
+    /**
+     * The values of the given column of the data set of useData, copied on
+     * first use into an array that is reused for the next data sets.
+     */
+    private int[] column(int index) {
+        if (!copied[index]) {
+            if (columns[index] == null || columns[index].length < numRows) {
+                columns[index] = new int[numRows];
+            }
+
+            int[] column = columns[index];
+
+            for (int n = 0; n < numRows; n++) {
+                column[n] = dataSet.getInt(n, index);
+            }
 
-        System.arraycopy(coords, 0, coordCopy, 0, coords.length);
+            copied[index] = true;
+        }
+
+        return columns[index];
     }
 
     private int getMissingValue() {
@@ -190,9 +456,12 @@ public final class CellTable {
     }
 
     public long getValue(int[] testCell) {
-        return table.getValue(testCell);
-    }
-}
-
+        int cell = 0;
 
+        for (int i = 0; i < testCell.length; i++) {
+            cell += testCell[i] * strides[i];
+        }
 
+        return counts[cell];
+    }
+}
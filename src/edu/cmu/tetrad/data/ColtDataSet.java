@@ -143,6 +143,15 @@ public final class ColtDataSet
      */
     private Map<Integer, Long> multipliers = new HashMap<Integer, Long>();
 
+    /**
+     * Counts the changes of the values, variables and case multipliers made
+     * through the methods of this data set, so copies of its data (e.g. the
+     * columns that CellTable keeps) can tell that they are out of date.
+     * Changes through getDoubleDataNoCopy() or the data of subsetRows()
+     * views are not counted.
+     */
+    private transient int modificationCount;
+
     /**
      * The knowledge associated with this data.
      *
@@ -373,6 +382,7 @@ public final class ColtDataSet
      */
     @Override
 	public final void setInt(int row, int column, int value) {
+        modificationCount++;
         Node variable = getVariable(column);
 
         if (!(variable instanceof DiscreteVariable)) {
@@ -421,6 +431,7 @@ public final class ColtDataSet
      */
     @Override
 	public final void setDouble(int row, int column, double value) {
+        modificationCount++;
         if ((getVariable(column) instanceof DiscreteVariable)) {
 //            if (!(getVariable(column) instanceof ContinuousVariable)) {
                 throw new IllegalArgumentException(
@@ -534,6 +545,7 @@ public final class ColtDataSet
      */
     @Override
 	public final void addVariable(Node variable) {
+        modificationCount++;
         if (variables.contains(variable)) {
             throw new IllegalArgumentException("Expecting a new variable: " + variable);
         }
@@ -555,6 +567,7 @@ public final class ColtDataSet
      */
     @Override
 	public final void addVariable(int index, Node variable) {
+        modificationCount++;
         if (variables.contains(variable)) {
             throw new IllegalArgumentException("Expecting a new variable.");
         }
@@ -612,6 +625,7 @@ public final class ColtDataSet
     @Override
 	@SuppressWarnings({"ConstantConditions"})
     public final void changeVariable(Node from, Node to) {
+        modificationCount++;
         if (!(from instanceof DiscreteVariable &&
                 to instanceof DiscreteVariable)) {
             throw new IllegalArgumentException(
@@ -791,6 +805,7 @@ public final class ColtDataSet
      */
     @Override
 	public final void removeColumn(int index) {
+        modificationCount++;
         if (index < 0 || index >= variables.size()) {
             throw new IllegalArgumentException(
                     "Not a column in this data set: " + index);
@@ -908,6 +923,14 @@ public final class ColtDataSet
         return multiplierInt == null ? 1 : multiplierInt;
     }
 
+    /**
+     * Returns the number of changes made to this data set so far, see
+     * modificationCount.
+     */
+    public final int getModificationCount() {
+        return modificationCount;
+    }
+
     /**
      * Sets the case ID fo the given case numnber to the given value.
      *
@@ -1132,6 +1155,7 @@ public final class ColtDataSet
      */
     @Override
 	public final void setMultiplier(int caseNumber, long multiplier) {
+        modificationCount++;
         if (caseNumber < 0) {
             throw new IllegalArgumentException(
                     "Case numbers must be >= 0: " + caseNumber);
@@ -1324,6 +1348,7 @@ public final class ColtDataSet
      */
     @Override
 	public final void shiftColumnDown(int row, int col, int numRowsShifted) {
+        modificationCount++;
 
         // Find last row that does not consist entirely of missing values.
         if (row >= getNumRows() || col >= getNumColumns()) {
@@ -1356,6 +1381,7 @@ public final class ColtDataSet
      */
     @Override
 	public final void removeCols(int[] cols) {
+        modificationCount++;
 
         // TODO Check sanity of values in cols.
         int[] rows = new int[data.rows()];
@@ -1392,6 +1418,7 @@ public final class ColtDataSet
      */
     @Override
 	public final void removeRows(int[] selectedRows) {
+        modificationCount++;
 
         // TODO Check sanity of values in cols.
         int[] cols = new int[data.columns()];
@@ -1537,6 +1564,7 @@ public final class ColtDataSet
      */
     @Override
 	public void permuteRows() {
+        modificationCount++;
         List<Integer> permutation = new ArrayList<Integer>();
 
         for (int i = 0; i < getNumRows(); i++) {
@@ -1576,6 +1604,7 @@ public final class ColtDataSet
      * @param cols The number of columns in the redimensioned data.
      */
     private void resize(int rows, int cols) {
+        modificationCount++;
         DoubleMatrix2D _data = new DenseDoubleMatrix2D(rows, cols);
 
         for (int i = 0; i < _data.rows(); i++) {
@@ -410,6 +410,72 @@ public final class TestCellTable extends TestCase {
         }
     }
 
+    /**
+     * The table keeps the columns and multipliers of the data set it counted;
+     * changes through the data set are seen by the next count, changes behind
+     * its back after clearData().
+     */
+    public final void testChangedData() {
+        ColtDataSet dataSet = dataSet();
+        CellTable table = new CellTable(dims);
+        int[] indices = new int[]{2, 0};
+        table.addToTable(dataSet, indices);
+        long count = this.table.calcMargin(new int[]{1, -1, 0, -1});
+        assertEquals(count, table.getValue(new int[]{0, 1}));
+
+        dataSet.setInt(0, 0, 0);
+        dataSet.setInt(0, 2, 1);
+        dataSet.setMultiplier(1, 5);
+        table.addToTable(dataSet, indices);
+        assertEquals(count, table.getValue(new int[]{0, 1}));
+        assertEquals(4 + countRows(dataSet, 1, 0), table.getValue(new int[]{1, 0}));
+
+        // another data set with the same table, then the first one again
+        table.addToTable(dataSet(), indices);
+        assertEquals(count, table.getValue(new int[]{0, 1}));
+        table.addToTable(dataSet, new int[]{2, 0, 1});
+        assertEquals(4 + countRows(dataSet, 1, 0), table.calcMargin(new int[]{1, 0, -1}));
+
+        dataSet.getDoubleDataNoCopy().set(0, 2, 0);
+        table.addToTable(dataSet, indices);
+        assertEquals(4 + countRows(dataSet, 1, 0) + 1, table.getValue(new int[]{1, 0}));
+        table.clearData();
+        table.addToTable(dataSet, indices);
+        assertEquals(4 + countRows(dataSet, 1, 0), table.getValue(new int[]{1, 0}));
+    }
+
+    private ColtDataSet dataSet() {
+        List<Node> variables = new LinkedList<Node>();
+        for (int j = 0; j < data[0].length; j++) {
+            variables.add(new DiscreteVariable("X" + (j + 1), 2));
+        }
+
+        ColtDataSet dataSet = new ColtDataSet(data.length, variables);
+
+        for (int i = 0; i < data.length; i++) {
+            for (int j = 0; j < data[0].length; j++) {
+                dataSet.setInt(i, j, data[i][j]);
+            }
+        }
+
+        return dataSet;
+    }
+
+    /**
+     * The number of rows with X3 = x3 and X1 = x1.
+     */
+    private static int countRows(DataSet dataSet, int x3, int x1) {
+        int count = 0;
+
+        for (int i = 0; i < dataSet.getNumRows(); i++) {
+            if (dataSet.getInt(i, 2) == x3 && dataSet.getInt(i, 0) == x1) {
+                count++;
+            }
+        }
+
+        return count;
+    }
+
     private static int[] pickRandomCell(int size) {
 
         int[] cell = new int[size];
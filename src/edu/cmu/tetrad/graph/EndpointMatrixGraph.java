@@ -0,0 +1,2095 @@
+package edu.cmu.tetrad.graph;
+
+import java.beans.PropertyChangeListener;
+import java.beans.PropertyChangeSupport;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.util.*;
+
+/**
+ * <p>Stores a graph as a matrix of endpoints over the indices of its nodes,
+ * with a bit set of the adjacencies of each node, for the inner loops of the
+ * searches. Adjacency and endpoint queries are array lookups, the parents,
+ * children and neighbors of a node are read off its bit set, and the path
+ * queries (directed, semidirected, undirected paths, ancestors, descendants,
+ * treks, cycles) are breadth first searches over bit sets. Edge objects are
+ * only made when a method returns them.</p>
+ *
+ * <p>There is at most one edge between two nodes, and no edge from a node to
+ * itself; adding a second edge between two nodes throws an
+ * IllegalArgumentException. Otherwise the graph behaves like EdgeListGraph
+ * through the Graph interface; nodes and edges are listed in the order of the
+ * node indices, i.e. in the order in which the nodes were added.</p>
+ *
+ * <p>Copying an EndpointMatrixGraph (new EndpointMatrixGraph(graph)) is cheap:
+ * the two graphs share the rows of the matrix, and a row is copied by the
+ * first graph that changes it. This is meant for storing the graphs of a
+ * search as it goes, which are rarely changed afterwards.</p>
+ *
+ * <p>Queries allocate their own work arrays, so several threads may query or
+ * copy a graph at the same time as long as none of them changes it. Changes,
+ * and the accessors for ambiguous, underline and dotted underline triples
+ * (which drop the triples no longer in the graph), must not overlap with any
+ * other use of the graph.</p>
+ *
+ * @see EdgeListGraph
+ */
+public final class EndpointMatrixGraph implements Graph {
+    static final long serialVersionUID = 23L;
+
+    /**
+     * The endpoints in the matrix, indexed by their code; 0 means no edge.
+     */
+    private static final Endpoint[] ENDPOINTS = {null, Endpoint.TAIL, Endpoint.ARROW, Endpoint.CIRCLE};
+
+    private static final byte TAIL = 1;
+    private static final byte ARROW = 2;
+
+    /**
+     * A list of the nodes in the graph, in the order in which they were added.
+     *
+     * @serial
+     */
+    private final List<Node> nodes;
+
+    /**
+     * The index of each node in nodes. Rebuilt by a query that finds a node
+     * whose name changed, so it is volatile for concurrent queries.
+     *
+     * @serial
+     */
+    private volatile Map<Node, Integer> indices;
+
+    /**
+     * endpoints[i][j] is the code of the endpoint at node j of the edge
+     * between nodes i and j, 0 if they are not adjacent. Rows have the length
+     * of the capacity of the graph.
+     *
+     * @serial
+     */
+    private byte[][] endpoints;
+
+    /**
+     * Bit j of adjacent[i] is set iff nodes i and j are adjacent.
+     *
+     * @serial
+     */
+    private long[][] adjacent;
+
+    /**
+     * True for the rows this graph may change; the others are shared with a
+     * copy and are copied before they are changed.
+     */
+    private transient boolean[] ownRows;
+
+    /**
+     * @serial
+     */
+    private int numEdges;
+
+    /**
+     * These are the graph constraints currently used.
+     *
+     * @serial
+     */
+    private final List<GraphConstraint> graphConstraints;
+
+    /**
+     * True iff graph constraints will be checked for future graph
+     * modifications.
+     *
+     * @serial
+     */
+    private boolean graphConstraintsChecked = true;
+
+    /**
+     * Fires property change events; null until a listener is added.
+     */
+    private transient PropertyChangeSupport pcs;
+
+    /**
+     * @serial
+     */
+    private Set<Triple> ambiguousTriples = new HashSet<Triple>();
+
+    /**
+     * @serial
+     */
+    private Set<Triple> underLineTriples = new HashSet<Triple>();
+
+    /**
+     * @serial
+     */
+    private Set<Triple> dottedUnderLineTriples = new HashSet<Triple>();
+
+    /**
+     * True iff nodes or edges were removed since the last call to an accessor
+     * for ambiguous, underline, or dotted underline triples.
+     */
+    private boolean stuffRemovedSinceLastTripleAccess = false;
+
+    /**
+     * The set of highlighted edges.
+     */
+    private Set<Edge> highlightedEdges = new HashSet<Edge>();
+
+    //==============================CONSTUCTORS===========================//
+
+    /**
+     * Constructs a new (empty) EndpointMatrixGraph.
+     */
+    public EndpointMatrixGraph() {
+        this.graphConstraints = new LinkedList<GraphConstraint>();
+        this.nodes = new ArrayList<Node>();
+        this.indices = new HashMap<Node, Integer>();
+        this.endpoints = new byte[0][];
+        this.adjacent = new long[0][];
+        this.ownRows = new boolean[0];
+    }
+
+    /**
+     * Constructs a graph with the nodes and edges of the given graph. A copy
+     * of an EndpointMatrixGraph shares the rows of its matrix until one of the
+     * two graphs changes them. Graph constraints are not copied.
+     *
+     * @throws IllegalArgumentException if an edge cannot be added.
+     */
+    public EndpointMatrixGraph(Graph graph) throws IllegalArgumentException {
+        if (graph == null) {
+            throw new NullPointerException("Graph must not be null.");
+        }
+
+        this.graphConstraints = new LinkedList<GraphConstraint>();
+
+        if (graph instanceof EndpointMatrixGraph) {
+            EndpointMatrixGraph other = (EndpointMatrixGraph) graph;
+            this.nodes = new ArrayList<Node>(other.nodes);
+            this.indices = new HashMap<Node, Integer>(other.indices);
+            this.endpoints = other.endpoints.clone();
+            this.adjacent = other.adjacent.clone();
+            this.ownRows = new boolean[endpoints.length];
+            this.numEdges = other.numEdges;
+            Arrays.fill(other.ownRows, false);
+            this.highlightedEdges = new HashSet<Edge>(other.highlightedEdges);
+        } else {
+            this.nodes = new ArrayList<Node>();
+            this.indices = new HashMap<Node, Integer>();
+            this.endpoints = new byte[0][];
+            this.adjacent = new long[0][];
+            this.ownRows = new boolean[0];
+            transferNodesAndEdges(graph);
+
+            for (Edge edge : graph.getEdges()) {
+                if (graph.isHighlighted(edge)) {
+                    setHighlighted(edge, true);
+                }
+            }
+        }
+
+        this.ambiguousTriples = graph.getAmbiguousTriples();
+        this.underLineTriples = graph.getUnderLines();
+        this.dottedUnderLineTriples = graph.getDottedUnderlines();
+    }
+
+    /**
+     * Constructs a new graph, with no edges, using the the given variable
+     * names.
+     */
+    public EndpointMatrixGraph(List<Node> nodes) {
+        this();
+
+        if (nodes == null) {
+            throw new NullPointerException();
+        }
+
+        ensureCapacity(nodes.size());
+
+        for (Node variable : nodes) {
+            if (!addNode(variable)) {
+                throw new IllegalArgumentException();
+            }
+        }
+    }
+
+    /**
+     * Generates a simple exemplar of this class to test serialization.
+     *
+     * @see edu.cmu.TestSerialization
+     * @see edu.cmu.tetradapp.util.TetradSerializableUtils
+     */
+    public static EndpointMatrixGraph serializableInstance() {
+        return new EndpointMatrixGraph();
+    }
+
+    //===============================PUBLIC METHODS========================//
+
+    @Override
+	public boolean addGraphConstraint(GraphConstraint gc) {
+        if (!this.graphConstraints.contains(gc)) {
+            this.graphConstraints.add(gc);
+            return true;
+        } else {
+            return false;
+        }
+    }
+
+    @Override
+	public boolean addDirectedEdge(Node node1, Node node2) {
+        return addEdge(Edges.directedEdge(node1, node2));
+    }
+
+    @Override
+	public boolean addUndirectedEdge(Node node1, Node node2) {
+        return addEdge(Edges.undirectedEdge(node1, node2));
+    }
+
+    @Override
+	public boolean addNondirectedEdge(Node node1, Node node2) {
+        return addEdge(Edges.nondirectedEdge(node1, node2));
+    }
+
+    @Override
+	public boolean addPartiallyOrientedEdge(Node node1, Node node2) {
+        return addEdge(Edges.partiallyOrientedEdge(node1, node2));
+    }
+
+    @Override
+	public boolean addBidirectedEdge(Node node1, Node node2) {
+        return addEdge(Edges.bidirectedEdge(node1, node2));
+    }
+
+    /**
+     * Returns true iff there is a directed cycle, by removing nodes without
+     * parents until none are left.
+     */
+    @Override
+	public boolean existsDirectedCycle() {
+        int n = nodes.size();
+        int[] numParents = new int[n];
+        int[] queue = new int[n];
+        int head = 0, tail = 0;
+
+        for (int i = 0; i < n; i++) {
+            for (int j = nextAdjacent(i, 0); j >= 0; j = nextAdjacent(i, j + 1)) {
+                if (isDirected(j, i)) {
+                    numParents[i]++;
+                }
+            }
+
+            if (numParents[i] == 0) {
+                queue[tail++] = i;
+            }
+        }
+
+        while (head < tail) {
+            int i = queue[head++];
+
+            for (int j = nextAdjacent(i, 0); j >= 0; j = nextAdjacent(i, j + 1)) {
+                if (isDirected(i, j) && --numParents[j] == 0) {
+                    queue[tail++] = j;
+                }
+            }
+        }
+
+        return tail < n;
+    }
+
+    @Override
+	public boolean isDirectedFromTo(Node node1, Node node2) {
+        int i = indexOf(node1);
+        int j = indexOf(node2);
+        return i >= 0 && j >= 0 && isDirected(i, j);
+    }
+
+    @Override
+	public boolean isUndirectedFromTo(Node node1, Node node2) {
+        int i = indexOf(node1);
+        int j = indexOf(node2);
+        return i >= 0 && j >= 0 && endpoints[i][j] == TAIL && endpoints[j][i] == TAIL;
+    }
+
+    /**
+     * @return true if the given edge is definitely visible (Jiji, pg 25)
+     * @throws IllegalArgumentException if the given edge is not a directed edge
+     *                                  in the graph
+     */
+    @Override
+	public boolean defVisible(Edge edge) {
+        if (containsEdge(edge)) {
+            Node A = Edges.getDirectedEdgeTail(edge);
+            Node B = Edges.getDirectedEdgeHead(edge);
+
+            for (Node curr : getAdjacentNodes(A)) {
+                if (!isAdjacentTo(curr, B) && getEndpoint(curr, A) == Endpoint.ARROW) {
+                    return true;
+                }
+            }
+
+            return false;
+        } else {
+            throw new IllegalArgumentException(
+                    "Given edge is not in the graph.");
+        }
+    }
+
+    @Override
+	public boolean isDefNoncollider(Node node1, Node node2, Node node3) {
+        if (isDirectedFromTo(node2, node1) || isDirectedFromTo(node2, node3)) {
+            return true;
+        } else if (!isAdjacentTo(node1, node3)) {
+            boolean endpt1 = getEndpoint(node1, node2) == Endpoint.CIRCLE;
+            boolean endpt2 = getEndpoint(node3, node2) == Endpoint.CIRCLE;
+            return (endpt1 && endpt2);
+        } else {
+            return false;
+        }
+    }
+
+    @Override
+	public boolean isDefCollider(Node node1, Node node2, Node node3) {
+        return ((getEndpoint(node1, node2) == Endpoint.ARROW) &&
+                (getEndpoint(node3, node2) == Endpoint.ARROW));
+    }
+
+    /**
+     * Returns true iff there is a directed path from node1 to node2.
+     */
+    @Override
+	public boolean existsDirectedPathFromTo(Node node1, Node node2) {
+        int i = indexOf(node1);
+        int j = indexOf(node2);
+
+        if (i < 0 || j < 0) {
+            return false;
+        }
+
+        return isVisited(reach(i, DIRECTED, j), j);
+    }
+
+    @Override
+	public boolean existsUndirectedPathFromTo(Node node1, Node node2) {
+        int i = indexOf(node1);
+        int j = indexOf(node2);
+
+        if (i < 0 || j < 0) {
+            return false;
+        }
+
+        return isVisited(reach(i, ANY, j), j);
+    }
+
+    @Override
+	public boolean existsSemiDirectedPathFromTo(Node node1, Set<Node> nodes) {
+        int i = indexOf(node1);
+
+        if (i < 0) {
+            return false;
+        }
+
+        long[] visited = reach(i, SEMIDIRECTED, -1);
+
+        for (Node node : nodes) {
+            int j = indexOf(node);
+
+            if (j >= 0 && isVisited(visited, j)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Determines whether a trek exists between two nodes in the graph, i.e.
+     * whether they have a common ancestor (which may be one of them).
+     */
+    @Override
+	public boolean existsTrek(Node node1, Node node2) {
+        int i = indexOf(node1);
+        int j = indexOf(node2);
+
+        if (i < 0 || j < 0) {
+            return false;
+        }
+
+        long[] ancestors1 = reach(i, REVERSE_DIRECTED, -1);
+        setVisited(ancestors1, i);
+
+        long[] ancestors2 = reach(j, REVERSE_DIRECTED, -1);
+        setVisited(ancestors2, j);
+
+        for (int w = 0; w < ancestors1.length; w++) {
+            if ((ancestors1[w] & ancestors2[w]) != 0) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Returns the list of children for a node.
+     */
+    @Override
+	public List<Node> getChildren(Node node) {
+        List<Node> children = new ArrayList<Node>();
+        int i = indexOf(node);
+
+        if (i >= 0) {
+            for (int j = nextAdjacent(i, 0); j >= 0; j = nextAdjacent(i, j + 1)) {
+                if (isDirected(i, j)) {
+                    children.add(nodes.get(j));
+                }
+            }
+        }
+
+        return children;
+    }
+
+    @Override
+	public int getConnectivity() {
+        int connectivity = 0;
+
+        for (int i = 0; i < nodes.size(); i++) {
+            connectivity = Math.max(connectivity, degree(i));
+        }
+
+        return connectivity;
+    }
+
+    @Override
+	public List<Node> getDescendants(List<Node> nodes) {
+        return closure(nodes, DIRECTED);
+    }
+
+    /**
+     * Returns the edge connecting node1 and node2, or null if there is none.
+     */
+    @Override
+	public Edge getEdge(Node node1, Node node2) {
+        int i = indexOf(node1);
+        int j = indexOf(node2);
+
+        if (i < 0 || j < 0 || endpoints[i][j] == 0) {
+            return null;
+        }
+
+        return edge(i, j);
+    }
+
+    @Override
+	public Edge getDirectedEdge(Node node1, Node node2) {
+        int i = indexOf(node1);
+        int j = indexOf(node2);
+
+        if (i < 0 || j < 0 || !isDirected(i, j)) {
+            return null;
+        }
+
+        return edge(i, j);
+    }
+
+    /**
+     * Returns the list of parents for a node.
+     */
+    @Override
+	public List<Node> getParents(Node node) {
+        List<Node> parents = new ArrayList<Node>();
+        int i = indexOf(node);
+
+        if (i >= 0) {
+            for (int j = nextAdjacent(i, 0); j >= 0; j = nextAdjacent(i, j + 1)) {
+                if (isDirected(j, i)) {
+                    parents.add(nodes.get(j));
+                }
+            }
+        }
+
+        return parents;
+    }
+
+    /**
+     * Returns the number of edges into the given node.
+     */
+    @Override
+	public int getIndegree(Node node) {
+        int i = indexOf(node);
+        int indegree = 0;
+
+        if (i >= 0) {
+            for (int j = nextAdjacent(i, 0); j >= 0; j = nextAdjacent(i, j + 1)) {
+                if (isDirected(j, i)) {
+                    indegree++;
+                }
+            }
+        }
+
+        return indegree;
+    }
+
+    /**
+     * Returns the number of edges out of the given node.
+     */
+    @Override
+	public int getOutdegree(Node node) {
+        int i = indexOf(node);
+        int outdegree = 0;
+
+        if (i >= 0) {
+            for (int j = nextAdjacent(i, 0); j >= 0; j = nextAdjacent(i, j + 1)) {
+                if (isDirected(i, j)) {
+                    outdegree++;
+                }
+            }
+        }
+
+        return outdegree;
+    }
+
+    /**
+     * Determines whether some edge or other exists between two nodes.
+     */
+    @Override
+	public boolean isAdjacentTo(Node node1, Node node2) {
+        int i = indexOf(node1);
+        int j = indexOf(node2);
+        return i >= 0 && j >= 0 && endpoints[i][j] != 0;
+    }
+
+    /**
+     * Determines whether one node is an ancestor of another.
+     */
+    @Override
+	public boolean isAncestorOf(Node node1, Node node2) {
+        return (node1 == node2) || isProperAncestorOf(node1, node2);
+    }
+
+    @Override
+	public boolean possibleAncestor(Node node1, Node node2) {
+        return existsSemiDirectedPathFromTo(node1,
+                Collections.singleton(node2));
+    }
+
+    /**
+     * @return true iff node1 is a possible ancestor of at least one member of
+     *         nodes2
+     */
+    public boolean possibleAncestorSet(Node node1, List<Node> nodes2) {
+        return existsSemiDirectedPathFromTo(node1, new HashSet<Node>(nodes2));
+    }
+
+    @Override
+	public List<Node> getAncestors(List<Node> nodes) {
+        return closure(nodes, REVERSE_DIRECTED);
+    }
+
+    /**
+     * Determines whether one node is a child of another.
+     */
+    @Override
+	public boolean isChildOf(Node node1, Node node2) {
+        return isDirectedFromTo(node2, node1);
+    }
+
+    /**
+     * Determines whether one node is a descendent of another.
+     */
+    @Override
+	public boolean isDescendentOf(Node node1, Node node2) {
+        return (node1 == node2) || isProperDescendentOf(node1, node2);
+    }
+
+    /**
+     * @return true iff node2 is a definite nondecendent of node1
+     */
+    @Override
+	public boolean defNonDescendent(Node node1, Node node2) {
+        return !(possibleAncestor(node1, node2));
+    }
+
+    /**
+     * Determines whether node1 is d-connected to node2, given a list of
+     * conditioning nodes, by the path search of EdgeListGraph.isDConnectedTo.
+     *
+     * @see EdgeListGraph#isDConnectedTo
+     */
+    @Override
+	public boolean isDConnectedTo(Node node1, Node node2,
+                                  List<Node> conditioningNodes) {
+        int i = indexOf(node1);
+        int j = indexOf(node2);
+
+        if (i < 0 || j < 0) {
+            return false;
+        }
+
+        int n = nodes.size();
+        boolean[] conditioned = new boolean[n];
+
+        for (Node node : conditioningNodes) {
+            int k = indexOf(node);
+
+            if (k >= 0) {
+                conditioned[k] = true;
+            }
+        }
+
+        // The closure of the conditioning nodes under the parent relation.
+        boolean[] closure = new boolean[n];
+
+        for (int k = 0; k < n; k++) {
+            if (conditioned[k] && !closure[k]) {
+                long[] visited = reach(k, REVERSE_DIRECTED, -1);
+                closure[k] = true;
+
+                for (int a = 0; a < n; a++) {
+                    if (isVisited(visited, a)) {
+                        closure[a] = true;
+                    }
+                }
+            }
+        }
+
+        return isDConnectedToVisit(i, (byte) 0, (byte) 0, j, new boolean[n],
+                conditioned, closure);
+    }
+
+    @Override
+	public boolean isDSeparatedFrom(Node node1, Node node2, List<Node> z) {
+        return !isDConnectedTo(node1, node2, z);
+    }
+
+    /**
+     * The search of EdgeListGraph.possDConnectedTo. It visits each edge once,
+     * so, as there, the answer may depend on the order of the adjacencies.
+     *
+     * @see EdgeListGraph#possDConnectedTo
+     */
+    @Override
+	public boolean possDConnectedTo(Node node1, Node node2,
+                                    List<Node> condNodes) {
+        int n = nodes.size();
+        int n1x = indexOf(node1);
+        int n2x = indexOf(node2);
+
+        if (n1x < 0 || n2x < 0) {
+            return false;
+        }
+
+        boolean[][] edgeStage = new boolean[n][n];
+        edgeStage[n1x][n1x] = true;
+        edgeStage[n2x][n2x] = true;
+
+        List<int[]> currEdges;
+        List<int[]> nextEdges = new ArrayList<int[]>();
+        nextEdges.add(new int[]{n1x, n1x});
+        nextEdges.add(new int[]{n2x, n2x});
+
+        while (!nextEdges.isEmpty()) {
+            currEdges = nextEdges;
+            nextEdges = new ArrayList<int[]>();
+
+            for (int[] edge : currEdges) {
+                int center = edge[1];
+
+                for (int k = nextAdjacent(center, 0); k >= 0; k = nextAdjacent(center, k + 1)) {
+                    if (edgeStage[center][k]) {
+                        continue;
+                    }
+
+                    Node X = nodes.get(edge[0]);
+                    Node Y = nodes.get(center);
+                    Node Z = nodes.get(k);
+
+                    if (!((isDefNoncollider(X, Y, Z) && !(condNodes.contains(Y))) ||
+                            (isDefCollider(X, Y, Z) && possibleAncestorSet(Y, condNodes)))) {
+                        continue;
+                    }
+
+                    if (k == n2x) {
+                        return true;
+                    }
+
+                    nextEdges.add(new int[]{center, k});
+                    edgeStage[center][k] = true;
+                    edgeStage[k][center] = true;
+                }
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Determines whether an inducing path exists between node1 and node2, given
+     * a set O of observed nodes and a set sem of conditioned nodes.
+     *
+     * @see EdgeListGraph#existsInducingPath
+     */
+    @Override
+	public boolean existsInducingPath(Node node1, Node node2,
+                                      Set<Node> observedNodes, Set<Node> conditioningNodes) {
+        int i = indexOf(node1);
+        int j = indexOf(node2);
+
+        if (i < 0 || j < 0) {
+            return false;
+        }
+
+        int n = nodes.size();
+        boolean[] observed = new boolean[n];
+        boolean[] conditioned = new boolean[n];
+        boolean[] sClosure = new boolean[n];
+
+        for (int k = 0; k < n; k++) {
+            observed[k] = observedNodes.contains(nodes.get(k));
+            conditioned[k] = conditioningNodes.contains(nodes.get(k));
+        }
+
+        for (int k = 0; k < n; k++) {
+            if (conditioned[k] || k == i || k == j) {
+                long[] visited = reach(k, REVERSE_DIRECTED, -1);
+                sClosure[k] = true;
+
+                for (int a = 0; a < n; a++) {
+                    if (isVisited(visited, a)) {
+                        sClosure[a] = true;
+                    }
+                }
+            }
+        }
+
+        return existsInducingPathVisit(i, j, (byte) 0, new boolean[n], observed,
+                conditioned, sClosure);
+    }
+
+    /**
+     * Determines whether one node is a parent of another.
+     */
+    @Override
+	public boolean isParentOf(Node node1, Node node2) {
+        return isDirectedFromTo(node1, node2);
+    }
+
+    /**
+     * Determines whether one node is a proper ancestor of another.
+     */
+    @Override
+	public boolean isProperAncestorOf(Node node1, Node node2) {
+        return existsDirectedPathFromTo(node1, node2);
+    }
+
+    /**
+     * Determines whether one node is a proper decendent of another
+     */
+    @Override
+	public boolean isProperDescendentOf(Node node1, Node node2) {
+        return existsDirectedPathFromTo(node2, node1);
+    }
+
+    /**
+     * Transfers nodes and edges from one graph to another.
+     *
+     * @throws IllegalArgumentException This exception is thrown if adding some
+     *                                  node or edge violates one of the
+     *                                  basicConstraints of this graph.
+     */
+    @Override
+	public void transferNodesAndEdges(Graph graph)
+            throws IllegalArgumentException {
+        if (graph == null) {
+            throw new NullPointerException("No graph was provided.");
+        }
+
+        ensureCapacity(nodes.size() + graph.getNumNodes());
+
+        for (Node node : graph.getNodes()) {
+            if (!addNode(node)) {
+                throw new IllegalArgumentException();
+            }
+        }
+
+        for (Edge edge : graph.getEdges()) {
+            if (!addEdge(edge)) {
+                throw new IllegalArgumentException("Cannot add the edge " + edge);
+            }
+        }
+    }
+
+    /**
+     * Determines whether a node in a graph is exogenous.
+     */
+    @Override
+	public boolean isExogenous(Node node) {
+        return getIndegree(node) == 0;
+    }
+
+    /**
+     * Returns the nodes adjacent to the given node, in the order of the nodes.
+     */
+    @Override
+	public List<Node> getAdjacentNodes(Node node) {
+        List<Node> adjacentNodes = new ArrayList<Node>();
+        int i = indexOf(node);
+
+        if (i >= 0) {
+            for (int j = nextAdjacent(i, 0); j >= 0; j = nextAdjacent(i, j + 1)) {
+                adjacentNodes.add(nodes.get(j));
+            }
+        }
+
+        return adjacentNodes;
+    }
+
+    /**
+     * Removes the edge connecting the two given nodes.
+     */
+    @Override
+	public boolean removeEdge(Node node1, Node node2) {
+        Edge edge = getEdge(node1, node2);
+        return edge != null && removeEdge(edge);
+    }
+
+    /**
+     * Returns the endpoint along the edge from node to node2 at the node2 end.
+     */
+    @Override
+	public Endpoint getEndpoint(Node node1, Node node2) {
+        int i = indexOf(node1);
+        int j = indexOf(node2);
+
+        if (i < 0 || j < 0) {
+            return null;
+        }
+
+        return ENDPOINTS[endpoints[i][j]];
+    }
+
+    /**
+     * If there is currently an edge from node1 to node2, sets the endpoint at
+     * node2 to the given endpoint; if there is no such edge, adds an edge --#
+     * where # is the given endpoint. Setting an endpoint to null removes the
+     * edge.
+     *
+     * @throws IllegalArgumentException if the edge with the revised endpoint
+     *                                  cannot be added to the graph.
+     */
+    @Override
+	public boolean setEndpoint(Node from, Node to, Endpoint endPoint)
+            throws IllegalArgumentException {
+        int i = indexOf(from);
+        int j = indexOf(to);
+
+        if (endPoint == null) {
+            removeEdge(from, to);
+            return true;
+        } else if (i < 0 || j < 0 || endpoints[i][j] == 0) {
+            addEdge(new Edge(from, to, Endpoint.TAIL, endPoint));
+            return true;
+        }
+
+        if (endpoints[i][j] == code(endPoint)) {
+            return true;
+        }
+
+        if (pcs == null && highlightedEdges.isEmpty() &&
+                (!isGraphConstraintsChecked() || graphConstraints.isEmpty())) {
+            writeRow(i);
+            endpoints[i][j] = code(endPoint);
+            return true;
+        }
+
+        Edge currentEdge = edge(i, j);
+        Edge newEdge = new Edge(from, to, ENDPOINTS[endpoints[j][i]], endPoint);
+        removeEdge(currentEdge);
+
+        try {
+            if (addEdge(newEdge)) {
+                return true;
+            }
+        }
+        catch (IllegalArgumentException e) {
+            // Put the edge back.
+        }
+
+        addEdge(currentEdge);
+        return false;
+    }
+
+    /**
+     * Nodes adjacent to the given node with the given proximal endpoint.
+     */
+    @Override
+	public List<Node> getNodesInTo(Node node, Endpoint endpoint) {
+        List<Node> nodesInTo = new ArrayList<Node>();
+        int i = indexOf(node);
+        byte code = code(endpoint);
+
+        if (i >= 0) {
+            for (int j = nextAdjacent(i, 0); j >= 0; j = nextAdjacent(i, j + 1)) {
+                if (endpoints[j][i] == code) {
+                    nodesInTo.add(nodes.get(j));
+                }
+            }
+        }
+
+        return nodesInTo;
+    }
+
+    /**
+     * Nodes adjacent to the given node with the given distal endpoint.
+     */
+    @Override
+	public List<Node> getNodesOutTo(Node node, Endpoint endpoint) {
+        List<Node> nodesOutTo = new ArrayList<Node>();
+        int i = indexOf(node);
+        byte code = code(endpoint);
+
+        if (i >= 0) {
+            for (int j = nextAdjacent(i, 0); j >= 0; j = nextAdjacent(i, j + 1)) {
+                if (endpoints[i][j] == code) {
+                    nodesOutTo.add(nodes.get(j));
+                }
+            }
+        }
+
+        return nodesOutTo;
+    }
+
+    /**
+     * Returns a matrix of endpoints for the nodes in this graph, with nodes in
+     * the same order as getNodes().
+     */
+    @Override
+	public Endpoint[][] getEndpointMatrix() {
+        int size = nodes.size();
+        Endpoint[][] matrix = new Endpoint[size][size];
+
+        for (int i = 0; i < size; i++) {
+            for (int j = 0; j < size; j++) {
+                matrix[i][j] = ENDPOINTS[endpoints[i][j]];
+            }
+        }
+
+        return matrix;
+    }
+
+    /**
+     * Adds an edge to the graph if the graph constraints permit it.
+     *
+     * @param edge the edge to be added
+     * @return true if the edge was added, false if not.
+     * @throws IllegalArgumentException if the two nodes are the same or
+     *                                  already adjacent.
+     */
+    @Override
+	public boolean addEdge(Edge edge) {
+        if (isGraphConstraintsChecked() && !checkAddEdge(edge)) {
+            return false;
+        }
+
+        int i = indexOf(edge.getNode1());
+        int j = indexOf(edge.getNode2());
+
+        if (i < 0 || j < 0) {
+            throw new NullPointerException("Can't add an edge unless both " +
+                    "nodes are in the graph: " + edge);
+        }
+
+        if (i == j) {
+            throw new IllegalArgumentException(
+                    "Edges from a node to itself are not supported: " + edge);
+        }
+
+        if (endpoints[i][j] != 0) {
+            if (edge.equals(edge(i, j))) {
+                throw new IllegalArgumentException(
+                        "That edge is already in the graph: " + edge);
+            }
+
+            throw new IllegalArgumentException("There is already an edge " +
+                    "between " + edge.getNode1() + " and " + edge.getNode2() + ": " + edge);
+        }
+
+        writeRow(i);
+        writeRow(j);
+        endpoints[j][i] = code(edge.getEndpoint1());
+        endpoints[i][j] = code(edge.getEndpoint2());
+        adjacent[i][j >> 6] |= 1L << j;
+        adjacent[j][i >> 6] |= 1L << i;
+        numEdges++;
+
+        if (pcs != null) {
+            if (Edges.isDirectedEdge(edge)) {
+                Node node = Edges.getDirectedEdgeTail(edge);
+
+                if (node.getNodeType() == NodeType.ERROR) {
+                    pcs.firePropertyChange("nodeAdded", null, node);
+                }
+            }
+
+            pcs.firePropertyChange("edgeAdded", null, edge);
+        }
+
+        return true;
+    }
+
+    @Override
+	public void addPropertyChangeListener(PropertyChangeListener l) {
+        getPcs().addPropertyChangeListener(l);
+    }
+
+    /**
+     * Adds a node to the graph. Precondition: The proposed name of the node
+     * cannot already be used by any other node in the same graph.
+     *
+     * @param node the node to be added.
+     * @return true if the the node was added, false if not.
+     */
+    @Override
+	public boolean addNode(Node node) {
+        if (node == null) {
+            throw new NullPointerException();
+        }
+
+        if (getNode(node.getName()) != null || indexOf(node) >= 0) {
+            return false;
+        }
+
+        if (isGraphConstraintsChecked() && !checkAddNode(node)) {
+            return false;
+        }
+
+        ensureCapacity(nodes.size() + 1);
+        indices.put(node, nodes.size());
+        nodes.add(node);
+
+        if (pcs != null && node.getNodeType() != NodeType.ERROR) {
+            pcs.firePropertyChange("nodeAdded", null, node);
+        }
+
+        return true;
+    }
+
+    /**
+     * Returns the list of edges in the graph, in the order of their first
+     * nodes.
+     */
+    @Override
+	public List<Edge> getEdges() {
+        List<Edge> edges = new ArrayList<Edge>(numEdges);
+
+        for (int i = 0; i < nodes.size(); i++) {
+            for (int j = nextAdjacent(i, i + 1); j >= 0; j = nextAdjacent(i, j + 1)) {
+                edges.add(edge(i, j));
+            }
+        }
+
+        return edges;
+    }
+
+    /**
+     * Determines if the graph contains a particular edge.
+     */
+    @Override
+	public boolean containsEdge(Edge edge) {
+        int i = indexOf(edge.getNode1());
+        int j = indexOf(edge.getNode2());
+
+        return i >= 0 && j >= 0 && i != j
+                && endpoints[j][i] == code(edge.getEndpoint1())
+                && endpoints[i][j] == code(edge.getEndpoint2());
+    }
+
+    /**
+     * Determines whether the graph contains a particular node.
+     */
+    @Override
+	public boolean containsNode(Node node) {
+        return indexOf(node) >= 0;
+    }
+
+    /**
+     * Returns the list of edges connected to a particular node, in the order
+     * of the nodes at their other ends.
+     */
+    @Override
+	public List<Edge> getEdges(Node node) {
+        int i = indexOf(node);
+
+        if (i < 0) {
+            return Collections.emptyList();
+        }
+
+        List<Edge> edges = new ArrayList<Edge>(degree(i));
+
+        for (int j = nextAdjacent(i, 0); j >= 0; j = nextAdjacent(i, j + 1)) {
+            edges.add(edge(i, j));
+        }
+
+        return edges;
+    }
+
+    @Override
+	public int hashCode() {
+        int hashCode = 17;
+
+        for (Node node : nodes) {
+            hashCode += 23 * node.hashCode();
+        }
+
+        for (Edge edge : getEdges()) {
+            hashCode += 29 * edge.hashCode();
+        }
+
+        return hashCode;
+    }
+
+    /**
+     * Returns true iff the given object is a graph that is equal to this graph,
+     * in the sense that it contains the same nodes and the edges are
+     * isomorphic.
+     */
+    @Override
+	public boolean equals(Object o) {
+        if (o == null) {
+            return false;
+        }
+
+        Graph graph = (Graph) o;
+
+        if (!new HashSet<String>(graph.getNodeNames()).equals(new HashSet<String>(getNodeNames()))) {
+            return false;
+        }
+
+        return new HashSet<Edge>(graph.getEdges()).equals(new HashSet<Edge>(getEdges()));
+    }
+
+    /**
+     * Resets the graph so that it is fully connects it using #-# edges, where #
+     * is the given endpoint.
+     */
+    @Override
+	public void fullyConnect(Endpoint endpoint) {
+        clearEdges();
+
+        for (int i = 0; i < nodes.size(); i++) {
+            for (int j = i + 1; j < nodes.size(); j++) {
+                addEdge(new Edge(nodes.get(i), nodes.get(j), endpoint, endpoint));
+            }
+        }
+    }
+
+    @Override
+	public void reorientAllWith(Endpoint endpoint) {
+        for (Edge edge : getEdges()) {
+            Node a = edge.getNode1();
+            Node b = edge.getNode2();
+            setEndpoint(a, b, endpoint);
+            setEndpoint(b, a, endpoint);
+        }
+    }
+
+    /**
+     * Returns the node with the given name, or null if no such node exists.
+     */
+    @Override
+	public Node getNode(String name) {
+        for (Node node : nodes) {
+            if (node.getName().equals(name)) {
+                return node;
+            }
+        }
+
+        return null;
+    }
+
+    @Override
+	public int getNumNodes() {
+        return nodes.size();
+    }
+
+    @Override
+	public int getNumEdges() {
+        return numEdges;
+    }
+
+    @Override
+	public int getNumEdges(Node node) {
+        int i = indexOf(node);
+        return i < 0 ? 0 : degree(i);
+    }
+
+    @Override
+	public List<GraphConstraint> getGraphConstraints() {
+        return new LinkedList<GraphConstraint>(graphConstraints);
+    }
+
+    @Override
+	public boolean isGraphConstraintsChecked() {
+        return this.graphConstraintsChecked;
+    }
+
+    @Override
+	public void setGraphConstraintsChecked(boolean checked) {
+        this.graphConstraintsChecked = checked;
+    }
+
+    @Override
+	public List<Node> getNodes() {
+        return new ArrayList<Node>(nodes);
+    }
+
+    /**
+     * Removes all nodes (and therefore all edges) from the graph.
+     */
+    @Override
+	public void clear() {
+        if (pcs != null) {
+            for (Edge edge : getEdges()) {
+                pcs.firePropertyChange("edgeRemoved", edge, null);
+            }
+
+            for (Node node : nodes) {
+                pcs.firePropertyChange("nodeRemoved", node, null);
+            }
+        }
+
+        nodes.clear();
+        indices.clear();
+        endpoints = new byte[0][];
+        adjacent = new long[0][];
+        ownRows = new boolean[0];
+        numEdges = 0;
+        highlightedEdges.clear();
+        stuffRemovedSinceLastTripleAccess = true;
+    }
+
+    /**
+     * Removes an edge from the graph.
+     *
+     * @param edge the edge to remove.
+     * @return true if the edge was removed, false if not.
+     */
+    @Override
+	public boolean removeEdge(Edge edge) {
+        if (!containsEdge(edge) || !checkRemoveEdge(edge)) {
+            return false;
+        }
+
+        int i = indexOf(edge.getNode1());
+        int j = indexOf(edge.getNode2());
+        removeEdge(i, j);
+
+        if (!highlightedEdges.isEmpty()) {
+            highlightedEdges.remove(edge);
+        }
+
+        if (pcs != null) {
+            pcs.firePropertyChange("edgeRemoved", edge, null);
+        }
+
+        return true;
+    }
+
+    @Override
+	public boolean removeEdges(List<Edge> edges) {
+        boolean change = false;
+
+        for (Edge edge : edges) {
+            boolean _change = removeEdge(edge);
+            change = change || _change;
+        }
+
+        return change;
+    }
+
+    /**
+     * Removes all edges connecting node A to node B.
+     */
+    @Override
+	public boolean removeEdges(Node node1, Node node2) {
+        return removeEdges(getEdges(node1, node2));
+    }
+
+    /**
+     * Removes a node, with its edges, from the graph.
+     */
+    @Override
+	public boolean removeNode(Node node) {
+        int k = indexOf(node);
+
+        if (k < 0 || !checkRemoveNode(node)) {
+            return false;
+        }
+
+        boolean changed = false;
+
+        for (Edge edge : getEdges(node)) {
+            removeEdge(edge);
+            changed = true;
+        }
+
+        // Drop row and column k.
+        int n = nodes.size();
+
+        for (int i = k; i < n - 1; i++) {
+            endpoints[i] = endpoints[i + 1];
+            adjacent[i] = adjacent[i + 1];
+            ownRows[i] = ownRows[i + 1];
+        }
+
+        endpoints[n - 1] = new byte[endpoints.length];
+        adjacent[n - 1] = new long[words(endpoints.length)];
+        ownRows[n - 1] = true;
+
+        for (int i = 0; i < n - 1; i++) {
+            writeRow(i);
+            System.arraycopy(endpoints[i], k + 1, endpoints[i], k, n - 1 - k);
+            endpoints[i][n - 1] = 0;
+            Arrays.fill(adjacent[i], 0L);
+
+            for (int j = 0; j < n - 1; j++) {
+                if (endpoints[i][j] != 0) {
+                    adjacent[i][j >> 6] |= 1L << j;
+                }
+            }
+        }
+
+        nodes.remove(k);
+        reindex();
+        stuffRemovedSinceLastTripleAccess = true;
+
+        if (pcs != null) {
+            pcs.firePropertyChange("nodeRemoved", node, null);
+        }
+
+        return changed;
+    }
+
+    @Override
+	public boolean removeNodes(List<Node> newNodes) {
+        boolean changed = false;
+
+        for (Node newNode : newNodes) {
+            boolean _changed = removeNode(newNode);
+            changed = changed || _changed;
+        }
+
+        return changed;
+    }
+
+    /**
+     * Returns a string representation of the graph.
+     */
+    @Override
+	public String toString() {
+        StringBuilder buf = new StringBuilder();
+
+        buf.append("\nGraph Nodes:\n");
+
+        for (int i = 0; i < nodes.size(); i++) {
+            buf.append(nodes.get(i)).append(" ");
+            if ((i + 1) % 30 == 0) buf.append("\n");
+        }
+
+        buf.append("\n\nGraph Edges: ");
+
+        List<Edge> edges = getEdges();
+        Edges.sortEdges(edges);
+
+        for (int i = 0; i < edges.size(); i++) {
+            Edge edge = edges.get(i);
+            buf.append("\n").append(i + 1).append(". ").append(edge);
+        }
+
+        buf.append("\n");
+        buf.append("\n");
+
+        if (!ambiguousTriples.isEmpty()) {
+            buf.append("Ambiguous triples (i.e. list of triples for which there is ambiguous data" +
+                    "\nabout whether they are colliders or not): \n");
+
+            for (Triple triple : ambiguousTriples) {
+                buf.append(triple).append("\n");
+            }
+        }
+
+        if (!underLineTriples.isEmpty()) {
+            buf.append("Underline triples: \n");
+
+            for (Triple triple : underLineTriples) {
+                buf.append(triple).append("\n");
+            }
+        }
+
+        if (!dottedUnderLineTriples.isEmpty()) {
+            buf.append("Dotted underline triples: \n");
+
+            for (Triple triple : dottedUnderLineTriples) {
+                buf.append(triple).append("\n");
+            }
+        }
+
+        return buf.toString();
+    }
+
+    @Override
+	public Graph subgraph(List<Node> nodes) {
+        Graph graph = new EndpointMatrixGraph(nodes);
+
+        for (Edge edge : getEdges()) {
+            if (nodes.contains(edge.getNode1()) &&
+                    nodes.contains(edge.getNode2())) {
+                graph.addEdge(edge);
+            }
+        }
+
+        return graph;
+    }
+
+    /**
+     * Returns the edges connecting node1 and node2 (at most one).
+     */
+    @Override
+	public List<Edge> getEdges(Node node1, Node node2) {
+        List<Edge> edges = new ArrayList<Edge>(1);
+        Edge edge = getEdge(node1, node2);
+
+        if (edge != null) {
+            edges.add(edge);
+        }
+
+        return edges;
+    }
+
+    @Override
+	public Set<Triple> getAmbiguousTriples() {
+        removeTriplesNotInGraph();
+        return new HashSet<Triple>(ambiguousTriples);
+    }
+
+    @Override
+	public Set<Triple> getUnderLines() {
+        removeTriplesNotInGraph();
+        return new HashSet<Triple>(underLineTriples);
+    }
+
+    @Override
+	public Set<Triple> getDottedUnderlines() {
+        removeTriplesNotInGraph();
+        return new HashSet<Triple>(dottedUnderLineTriples);
+    }
+
+    /**
+     * States whether x-y-x is an underline triple or not.
+     */
+    @Override
+	public boolean isAmbiguousTriple(Node x, Node y, Node z) {
+        Triple triple = new Triple(x, y, z);
+        if (!triple.alongPathIn(this)) {
+            throw new IllegalArgumentException("<" + x + ", " + y + ", " + z + "> is not along a path.");
+        }
+        removeTriplesNotInGraph();
+        return ambiguousTriples.contains(triple);
+    }
+
+    /**
+     * States whether x-y-x is an underline triple or not.
+     */
+    @Override
+	public boolean isUnderlineTriple(Node x, Node y, Node z) {
+        removeTriplesNotInGraph();
+        return underLineTriples.contains(new Triple(x, y, z));
+    }
+
+    /**
+     * States whether x-y-x is an underline triple or not.
+     */
+    @Override
+	public boolean isDottedUnderlineTriple(Node x, Node y, Node z) {
+        Triple triple = new Triple(x, y, z);
+        if (!triple.alongPathIn(this)) {
+            throw new IllegalArgumentException("<" + x + ", " + y + ", " + z + "> is not along a path.");
+        }
+        removeTriplesNotInGraph();
+        return dottedUnderLineTriples.contains(triple);
+    }
+
+    @Override
+	public void addAmbiguousTriple(Node x, Node y, Node z) {
+        Triple triple = new Triple(x, y, z);
+
+        if (!triple.alongPathIn(this)) {
+            throw new IllegalArgumentException("<" + x + ", " + y + ", " + z + "> must lie along a path in the graph.");
+        }
+
+        ambiguousTriples.add(triple);
+    }
+
+    @Override
+	public void addUnderlineTriple(Node x, Node y, Node z) {
+        Triple triple = new Triple(x, y, z);
+
+        if (!triple.alongPathIn(this)) {
+            throw new IllegalArgumentException("<" + x + ", " + y + ", " + z + "> must lie along a path in the graph.");
+        }
+
+        underLineTriples.add(triple);
+    }
+
+    @Override
+	public void addDottedUnderlineTriple(Node x, Node y, Node z) {
+        Triple triple = new Triple(x, y, z);
+
+        if (!triple.alongPathIn(this)) {
+            throw new IllegalArgumentException("<" + x + ", " + y + ", " + z + "> must lie along a path in the graph.");
+        }
+
+        dottedUnderLineTriples.add(triple);
+    }
+
+    @Override
+	public void removeAmbiguousTriple(Node x, Node y, Node z) {
+        ambiguousTriples.remove(new Triple(x, y, z));
+    }
+
+    @Override
+	public void removeUnderlineTriple(Node x, Node y, Node z) {
+        underLineTriples.remove(new Triple(x, y, z));
+    }
+
+    @Override
+	public void removeDottedUnderlineTriple(Node x, Node y, Node z) {
+        dottedUnderLineTriples.remove(new Triple(x, y, z));
+    }
+
+    @Override
+	public void setAmbiguousTriples(Set<Triple> triples) {
+        ambiguousTriples.clear();
+
+        for (Triple triple : triples) {
+            addAmbiguousTriple(triple.getX(), triple.getY(), triple.getZ());
+        }
+    }
+
+    @Override
+	public void setUnderLineTriples(Set<Triple> triples) {
+        underLineTriples.clear();
+
+        for (Triple triple : triples) {
+            addUnderlineTriple(triple.getX(), triple.getY(), triple.getZ());
+        }
+    }
+
+    @Override
+	public void setDottedUnderLineTriples(Set<Triple> triples) {
+        dottedUnderLineTriples.clear();
+
+        for (Triple triple : triples) {
+            addDottedUnderlineTriple(triple.getX(), triple.getY(), triple.getZ());
+        }
+    }
+
+    @Override
+	public List<String> getNodeNames() {
+        List<String> names = new ArrayList<String>();
+
+        for (Node node : nodes) {
+            names.add(node.getName());
+        }
+
+        return names;
+    }
+
+    @Override
+	public List<Node> getTierOrdering() {
+        List<Node> found = new LinkedList<Node>();
+        Set<Node> notFound = new HashSet<Node>(nodes);
+
+        while (!notFound.isEmpty()) {
+            for (Iterator<Node> it = notFound.iterator(); it.hasNext();) {
+                Node node = it.next();
+
+                if (found.containsAll(getParents(node))) {
+                    found.add(node);
+                    it.remove();
+                }
+            }
+        }
+
+        return found;
+    }
+
+    @Override
+	public void setHighlighted(Edge edge, boolean highlighted) {
+        highlightedEdges.add(edge);
+    }
+
+    @Override
+	public boolean isHighlighted(Edge edge) {
+        return highlightedEdges.contains(edge);
+    }
+
+    @Override
+	public boolean isParameterizable(Node node) {
+        return true;
+    }
+
+    @Override
+	public boolean isTimeLagModel() {
+        return false;
+    }
+
+    @Override
+	public TimeLagGraph getTimeLagGraph() {
+        return null;
+    }
+
+    //===============================PRIVATE METHODS=======================//
+
+    private static final int DIRECTED = 0;
+    private static final int REVERSE_DIRECTED = 1;
+    private static final int SEMIDIRECTED = 2;
+    private static final int ANY = 3;
+
+    private static byte code(Endpoint endpoint) {
+        if (endpoint == Endpoint.TAIL) {
+            return 1;
+        } else if (endpoint == Endpoint.ARROW) {
+            return 2;
+        } else if (endpoint == Endpoint.CIRCLE) {
+            return 3;
+        }
+
+        return 0;
+    }
+
+    private static int words(int capacity) {
+        return (capacity + 63) >> 6;
+    }
+
+    /**
+     * The index of the node, -1 if it is not in the graph. Nodes whose names
+     * were changed since they were added are found by identity.
+     */
+    private int indexOf(Node node) {
+        Integer index = indices.get(node);
+
+        if (index != null) {
+            return index;
+        }
+
+        for (int i = 0; i < nodes.size(); i++) {
+            if (nodes.get(i) == node) {
+                reindex();
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    private void reindex() {
+        indices = new HashMap<Node, Integer>();
+
+        for (int i = 0; i < nodes.size(); i++) {
+            indices.put(nodes.get(i), i);
+        }
+    }
+
+    /**
+     * True iff i --> j.
+     */
+    private boolean isDirected(int i, int j) {
+        return endpoints[i][j] == ARROW && endpoints[j][i] == TAIL;
+    }
+
+    /**
+     * The edge between nodes i and j, which must be adjacent.
+     */
+    private Edge edge(int i, int j) {
+        if (i > j) {
+            return edge(j, i);
+        }
+
+        return new Edge(nodes.get(i), nodes.get(j), ENDPOINTS[endpoints[j][i]], ENDPOINTS[endpoints[i][j]]);
+    }
+
+    private void removeEdge(int i, int j) {
+        writeRow(i);
+        writeRow(j);
+        endpoints[i][j] = 0;
+        endpoints[j][i] = 0;
+        adjacent[i][j >> 6] &= ~(1L << j);
+        adjacent[j][i >> 6] &= ~(1L << i);
+        numEdges--;
+        stuffRemovedSinceLastTripleAccess = true;
+    }
+
+    private void clearEdges() {
+        for (int i = 0; i < nodes.size(); i++) {
+            for (int j = nextAdjacent(i, i + 1); j >= 0; j = nextAdjacent(i, j + 1)) {
+                Edge edge = pcs == null ? null : edge(i, j);
+                removeEdge(i, j);
+
+                if (edge != null) {
+                    pcs.firePropertyChange("edgeRemoved", edge, null);
+                }
+            }
+        }
+
+        highlightedEdges.clear();
+    }
+
+    /**
+     * The first node at or after from that is adjacent to node i, -1 if there
+     * is none.
+     */
+    private int nextAdjacent(int i, int from) {
+        long[] row = adjacent[i];
+        int w = from >> 6;
+
+        if (w >= row.length) {
+            return -1;
+        }
+
+        long word = row[w] & (-1L << from);
+
+        while (true) {
+            if (word != 0) {
+                return (w << 6) + Long.numberOfTrailingZeros(word);
+            }
+
+            if (++w == row.length) {
+                return -1;
+            }
+
+            word = row[w];
+        }
+    }
+
+    private int degree(int i) {
+        int degree = 0;
+
+        for (long word : adjacent[i]) {
+            degree += Long.bitCount(word);
+        }
+
+        return degree;
+    }
+
+    /**
+     * Copies row i if it is shared with a copy of the graph.
+     */
+    private void writeRow(int i) {
+        if (!ownRows[i]) {
+            endpoints[i] = endpoints[i].clone();
+            adjacent[i] = adjacent[i].clone();
+            ownRows[i] = true;
+        }
+    }
+
+    private void ensureCapacity(int size) {
+        int capacity = endpoints.length;
+
+        if (size <= capacity) {
+            return;
+        }
+
+        int newCapacity = Math.max(size, Math.max(8, 2 * capacity));
+        byte[][] newEndpoints = new byte[newCapacity][];
+        long[][] newAdjacent = new long[newCapacity][];
+
+        for (int i = 0; i < newCapacity; i++) {
+            newEndpoints[i] = new byte[newCapacity];
+            newAdjacent[i] = new long[words(newCapacity)];
+
+            if (i < capacity) {
+                System.arraycopy(endpoints[i], 0, newEndpoints[i], 0, capacity);
+                System.arraycopy(adjacent[i], 0, newAdjacent[i], 0, adjacent[i].length);
+            }
+        }
+
+        endpoints = newEndpoints;
+        adjacent = newAdjacent;
+        ownRows = new boolean[newCapacity];
+        Arrays.fill(ownRows, true);
+    }
+
+    private static boolean isVisited(long[] visited, int i) {
+        return (visited[i >> 6] & (1L << i)) != 0;
+    }
+
+    private static void setVisited(long[] visited, int i) {
+        visited[i >> 6] |= 1L << i;
+    }
+
+    /**
+     * Returns the bit set of the nodes reachable from node i by one or more
+     * steps of the given kind, stopping early once target (if not -1) is
+     * reached. Node i itself is only in it if it is on a cycle.
+     */
+    private long[] reach(int i, int kind, int target) {
+        int n = nodes.size();
+
+        // Room for each node, and the start node a second time.
+        int[] queue = new int[n + 1];
+        long[] visited = new long[words(n)];
+        int head = 0, tail = 0;
+        queue[tail++] = i;
+
+        while (head < tail) {
+            int a = queue[head++];
+
+            for (int b = nextAdjacent(a, 0); b >= 0; b = nextAdjacent(a, b + 1)) {
+                if ((visited[b >> 6] & (1L << b)) != 0 || !step(a, b, kind)) {
+                    continue;
+                }
+
+                visited[b >> 6] |= 1L << b;
+
+                if (b == target) {
+                    return visited;
+                }
+
+                queue[tail++] = b;
+            }
+        }
+
+        return visited;
+    }
+
+    private boolean step(int a, int b, int kind) {
+        switch (kind) {
+            case DIRECTED:
+                return isDirected(a, b);
+            case REVERSE_DIRECTED:
+                return isDirected(b, a);
+            case SEMIDIRECTED:
+                return endpoints[b][a] != ARROW;
+            default:
+                return true;
+        }
+    }
+
+    /**
+     * The given nodes with all nodes reachable from them by steps of the given
+     * kind.
+     */
+    private List<Node> closure(List<Node> nodes, int kind) {
+        boolean[] inClosure = new boolean[this.nodes.size()];
+
+        for (Node node : nodes) {
+            int i = indexOf(node);
+
+            if (i < 0 || inClosure[i]) {
+                continue;
+            }
+
+            inClosure[i] = true;
+            long[] visited = reach(i, kind, -1);
+
+            for (int a = 0; a < inClosure.length; a++) {
+                if (isVisited(visited, a)) {
+                    inClosure[a] = true;
+                }
+            }
+        }
+
+        List<Node> closure = new LinkedList<Node>();
+
+        for (int a = 0; a < inClosure.length; a++) {
+            if (inClosure[a]) {
+                closure.add(this.nodes.get(a));
+            }
+        }
+
+        return closure;
+    }
+
+    /**
+     * The path search of EdgeListGraph.isDConnectedToVisit over node indices;
+     * endpoints are codes, 0 for none.
+     */
+    private boolean isDConnectedToVisit(int current, byte actualInEdgeEndpoint,
+                                        byte inEdgeEndpoint, int target, boolean[] path,
+                                        boolean[] conditioned, boolean[] closure) {
+        if (current == target) {
+            return true;
+        }
+
+        if (path[current]) {
+            return false;
+        }
+
+        path[current] = true;
+
+        for (int next = nextAdjacent(current, 0); next >= 0; next = nextAdjacent(current, next + 1)) {
+            byte outEdgeEndpoint = endpoints[next][current];
+
+            boolean isCollider = (inEdgeEndpoint == ARROW) &&
+                    (outEdgeEndpoint == ARROW);
+            boolean passAsCollider = isCollider && closure[current] &&
+                    actualInEdgeEndpoint == ARROW;
+            boolean passAsNonCollider = !isCollider && !conditioned[current];
+
+            if (passAsCollider || passAsNonCollider) {
+                byte previousActual = endpoints[current][next];
+                byte previousEndpoint;
+
+                if (inEdgeEndpoint == ARROW && passAsNonCollider) {
+                    previousEndpoint = ARROW;
+                } else {
+                    previousEndpoint = previousActual;
+                }
+
+                if (isDConnectedToVisit(next, previousActual, previousEndpoint, target,
+                        path, conditioned, closure)) {
+                    return true;
+                }
+            }
+        }
+
+        path[current] = false;
+        return false;
+    }
+
+    /**
+     * The path search of EdgeListGraph.existsInducingPathVisit over node
+     * indices.
+     */
+    private boolean existsInducingPathVisit(int node1, int node2, byte inEnd,
+                                            boolean[] pathNodes, boolean[] observed,
+                                            boolean[] conditioned, boolean[] sClosure) {
+        if (node1 == node2) {
+            return true;
+        } else if (pathNodes[node1]) {
+            return false;
+        }
+
+        pathNodes[node1] = true;
+
+        for (int sub = nextAdjacent(node1, 0); sub >= 0; sub = nextAdjacent(node1, sub + 1)) {
+            byte outEnd = endpoints[sub][node1];
+
+            boolean isCollider = (inEnd == ARROW) && (outEnd == ARROW);
+            boolean passAsCollider = isCollider && sClosure[node1];
+            boolean passAsNonCollider = !isCollider &&
+                    !observed[node1] && !conditioned[node1];
+
+            if (passAsCollider || passAsNonCollider) {
+                if (existsInducingPathVisit(sub, node2, endpoints[node1][sub], pathNodes,
+                        observed, conditioned, sClosure)) {
+                    return true;
+                }
+            }
+        }
+
+        pathNodes[node1] = false;
+        return false;
+    }
+
+    private void removeTriplesNotInGraph() {
+        if (!stuffRemovedSinceLastTripleAccess) return;
+
+        for (Set<Triple> triples : Arrays.asList(ambiguousTriples, underLineTriples, dottedUnderLineTriples)) {
+            for (Iterator<Triple> it = triples.iterator(); it.hasNext();) {
+                Triple triple = it.next();
+
+                if (!containsNode(triple.getX()) || !containsNode(triple.getY()) || !containsNode(triple.getZ())
+                        || !isAdjacentTo(triple.getX(), triple.getY()) || !isAdjacentTo(triple.getY(), triple.getZ())) {
+                    it.remove();
+                }
+            }
+        }
+
+        stuffRemovedSinceLastTripleAccess = false;
+    }
+
+    private boolean checkAddNode(Node node) {
+        for (GraphConstraint gc : graphConstraints) {
+            if (!gc.isNodeAddable(node, this)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private boolean checkAddEdge(Edge edge) {
+        for (GraphConstraint gc : graphConstraints) {
+            if (!gc.isEdgeAddable(edge, this)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private boolean checkRemoveNode(Node node) {
+        for (GraphConstraint gc : graphConstraints) {
+            if (!gc.isNodeRemovable(node, this)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private boolean checkRemoveEdge(Edge edge) {
+        for (GraphConstraint gc : graphConstraints) {
+            if (!gc.isEdgeRemovable(edge, this)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private PropertyChangeSupport getPcs() {
+        if (pcs == null) {
+            pcs = new PropertyChangeSupport(this);
+        }
+        return pcs;
+    }
+
+    /**
+     * Adds semantic checks to the default deserialization method. The rows of
+     * a deserialized graph are its own.
+     *
+     * @throws java.io.IOException
+     * @throws ClassNotFoundException
+     */
+    private void readObject(ObjectInputStream s)
+            throws IOException, ClassNotFoundException {
+        s.defaultReadObject();
+
+        if (nodes == null || indices == null || endpoints == null || adjacent == null) {
+            throw new NullPointerException();
+        }
+
+        if (graphConstraints == null) {
+            throw new NullPointerException();
+        }
+
+        ownRows = new boolean[endpoints.length];
+        Arrays.fill(ownRows, true);
+
+        if (ambiguousTriples == null) {
+            ambiguousTriples = new HashSet<Triple>();
+        }
+
+        if (highlightedEdges == null) {
+            highlightedEdges = new HashSet<Edge>();
+        }
+
+        if (underLineTriples == null) {
+            underLineTriples = new HashSet<Triple>();
+        }
+
+        if (dottedUnderLineTriples == null) {
+            dottedUnderLineTriples = new HashSet<Triple>();
+        }
+    }
+}
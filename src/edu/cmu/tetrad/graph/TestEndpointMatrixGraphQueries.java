@@ -0,0 +1,212 @@
+package edu.cmu.tetrad.graph;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tests EndpointMatrixGraph against EdgeListGraph on random graphs with directed, undirected and bidirected edges
+ * (and directed cycles): the adjacencies, endpoints, path queries and d-connection of the two graphs agree, also after
+ * edges and nodes are removed, also on copies, and also when several threads query the same graph.
+ */
+public final class TestEndpointMatrixGraphQueries extends TestCase {
+
+    public TestEndpointMatrixGraphQueries(String name) {
+        super(name);
+    }
+
+    public void testQueries() {
+        Random random = new Random(41);
+        for (int run = 0; run < 40; run++) {
+            Graph expected = randomGraph(random, 3 + random.nextInt(6));
+            Graph graph = new EndpointMatrixGraph(expected);
+            assertSameQueries(expected, graph, random);
+
+            // remove some edges and a node from both
+            for (Edge edge : new ArrayList<Edge>(expected.getEdges())) {
+                if (random.nextInt(4) == 0) {
+                    expected.removeEdge(edge);
+                    graph.removeEdge(edge);
+                }
+            }
+            Node node = expected.getNodes().get(random.nextInt(expected.getNumNodes()));
+            expected.removeNode(node);
+            graph.removeNode(node);
+            assertSameQueries(expected, graph, random);
+        }
+    }
+
+    public void testCopy() {
+        Random random = new Random(43);
+        for (int run = 0; run < 20; run++) {
+            Graph expected = randomGraph(random, 4 + random.nextInt(5));
+            EndpointMatrixGraph graph = new EndpointMatrixGraph(expected);
+            EndpointMatrixGraph copy = new EndpointMatrixGraph(graph);
+            Graph expectedCopy = new EdgeListGraph(expected);
+
+            // change the copy, then the original, then a copy of the copy
+            List<Node> nodes = expected.getNodes();
+            Node x = nodes.get(0);
+            Node y = nodes.get(1);
+            if (expectedCopy.isAdjacentTo(x, y)) {
+                expectedCopy.removeEdge(x, y);
+                copy.removeEdge(x, y);
+            } else {
+                expectedCopy.addDirectedEdge(x, y);
+                copy.addDirectedEdge(x, y);
+            }
+            Node z = nodes.get(2);
+            expected.removeEdges(new ArrayList<Edge>(expected.getEdges(z)));
+            graph.removeEdges(graph.getEdges(z));
+            Graph copy2 = new EndpointMatrixGraph(copy);
+            copy2.removeNode(y);
+
+            assertSameQueries(expected, graph, random);
+            assertSameQueries(expectedCopy, copy, random);
+            assertEquals(expectedCopy.getNumEdges() - expectedCopy.getEdges(y).size(), copy2.getNumEdges());
+        }
+    }
+
+    public void testSecondEdge() {
+        Graph graph = new EndpointMatrixGraph();
+        Node x = new GraphNode("X");
+        Node y = new GraphNode("Y");
+        graph.addNode(x);
+        graph.addNode(y);
+        graph.addDirectedEdge(x, y);
+        try {
+            graph.addDirectedEdge(y, x);
+            fail("Added a second edge between X and Y.");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        assertEquals(1, graph.getNumEdges());
+        assertEquals(Endpoint.ARROW, graph.getEndpoint(x, y));
+    }
+
+    public void testConcurrentQueries() throws Exception {
+        Random random = new Random(47);
+        final Graph expected = randomGraph(random, 40);
+        final Graph graph = new EndpointMatrixGraph(expected);
+        final List<Node> nodes = expected.getNodes();
+        final AtomicInteger wrong = new AtomicInteger();
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int t = 0; t < 4; t++) {
+            final int first = t;
+            threads.add(new Thread() {
+                public void run() {
+                    for (int i = first; i < nodes.size(); i += 4) {
+                        for (Node y : nodes) {
+                            Node x = nodes.get(i);
+                            if (expected.existsDirectedPathFromTo(x, y) != graph.existsDirectedPathFromTo(x, y)
+                                    || expected.existsUndirectedPathFromTo(x, y) != graph.existsUndirectedPathFromTo(x, y)
+                                    || expected.existsTrek(x, y) != graph.existsTrek(x, y)
+                                    || !set(expected.getAncestors(Collections.singletonList(x)))
+                                    .equals(set(graph.getAncestors(Collections.singletonList(x))))) {
+                                wrong.incrementAndGet();
+                            }
+                        }
+                    }
+                }
+            });
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(0, wrong.get());
+    }
+
+    /**
+     * An EdgeListGraph over n nodes with at most one edge per pair: directed in either direction, so that there may
+     * be directed cycles, undirected or bidirected.
+     */
+    private static Graph randomGraph(Random random, int n) {
+        Graph graph = new EdgeListGraph();
+        for (int i = 0; i < n; i++) {
+            graph.addNode(new GraphNode("X" + i));
+        }
+        List<Node> nodes = graph.getNodes();
+        double p = 2.0 / n;
+        for (int i = 0; i < n; i++) {
+            for (int j = i + 1; j < n; j++) {
+                if (random.nextDouble() >= p) {
+                    continue;
+                }
+                Node x = nodes.get(i);
+                Node y = nodes.get(j);
+                switch (random.nextInt(6)) {
+                    case 0:
+                        graph.addUndirectedEdge(x, y);
+                        break;
+                    case 1:
+                        graph.addBidirectedEdge(x, y);
+                        break;
+                    case 2:
+                        graph.addDirectedEdge(y, x);
+                        break;
+                    default:
+                        graph.addDirectedEdge(x, y);
+                }
+            }
+        }
+        return graph;
+    }
+
+    private static void assertSameQueries(Graph expected, Graph graph, Random random) {
+        List<Node> nodes = expected.getNodes();
+        assertEquals(nodes, graph.getNodes());
+        assertEquals(set(expected.getEdges()), set(graph.getEdges()));
+        assertEquals(expected.getNumEdges(), graph.getNumEdges());
+        assertEquals(expected.existsDirectedCycle(), graph.existsDirectedCycle());
+
+        for (Node x : nodes) {
+            assertEquals(set(expected.getAdjacentNodes(x)), set(graph.getAdjacentNodes(x)));
+            assertEquals(set(expected.getParents(x)), set(graph.getParents(x)));
+            assertEquals(set(expected.getChildren(x)), set(graph.getChildren(x)));
+            assertEquals(set(expected.getEdges(x)), set(graph.getEdges(x)));
+            List<Node> single = Collections.singletonList(x);
+            assertEquals(set(expected.getAncestors(single)), set(graph.getAncestors(single)));
+            assertEquals(set(expected.getDescendants(single)), set(graph.getDescendants(single)));
+
+            for (Node y : nodes) {
+                if (x == y) {
+                    continue;
+                }
+                String pair = x + " " + y + " in " + expected;
+                assertEquals(pair, expected.getEndpoint(x, y), graph.getEndpoint(x, y));
+                assertEquals(pair, expected.existsDirectedPathFromTo(x, y), graph.existsDirectedPathFromTo(x, y));
+                assertEquals(pair, expected.existsUndirectedPathFromTo(x, y), graph.existsUndirectedPathFromTo(x, y));
+                assertEquals(pair, expected.existsSemiDirectedPathFromTo(x, Collections.singleton(y)),
+                        graph.existsSemiDirectedPathFromTo(x, Collections.singleton(y)));
+                assertEquals(pair, expected.existsTrek(x, y), graph.existsTrek(x, y));
+
+                List<Node> z = new ArrayList<Node>();
+                for (Node w : nodes) {
+                    if (w != x && w != y && random.nextInt(3) == 0) {
+                        z.add(w);
+                    }
+                }
+                assertEquals(pair + " | " + z, expected.isDConnectedTo(x, y, z), graph.isDConnectedTo(x, y, z));
+            }
+        }
+    }
+
+    private static <T> Set<T> set(List<T> list) {
+        return new HashSet<T>(list);
+    }
+
+    public static Test suite() {
+        return new TestSuite(TestEndpointMatrixGraphQueries.class);
+    }
+}
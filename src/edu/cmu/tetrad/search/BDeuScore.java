@@ -23,7 +23,9 @@ package edu.cmu.tetrad.search;
 
 import edu.cmu.tetrad.util.ProbUtils;
 import edu.cmu.tetrad.data.DataSet;
-import edu.cmu.tetrad.data.DiscreteVariable;
+
+import java.io.IOException;
+import java.util.Arrays;
 
 /**
  * Created by IntelliJ IDEA. User: jdramsey Date: Apr 19, 2009 Time: 7:28:45 PM To change this template use File |
@@ -32,6 +34,8 @@ import edu.cmu.tetrad.data.DiscreteVariable;
 public class BDeuScore implements LocalDiscreteScore {
     private final LocalScoreCache localScoreCache = new LocalScoreCache();
     private DataSet dataSet;
+    private volatile FamilyCounts familyCounts;
+    private volatile Long fingerprint;
 
     private double samplePrior = 10;
     private double structurePrior = 1.0;
@@ -46,127 +50,165 @@ public class BDeuScore implements LocalDiscreteScore {
         this.structurePrior = structurePrior;
     }
 
+    /**
+     * A score whose counts were compiled from the same data set elsewhere, e.g. by the count index of a CT table
+     * (ct.CountIndex), instead of the first time a score is asked for.
+     */
+    public BDeuScore(DataSet dataSet, FamilyCounts familyCounts, double samplePrior, double structurePrior) {
+        this(dataSet, samplePrior, structurePrior);
+        this.familyCounts = familyCounts;
+    }
+
     @Override
 	public double localScore(int i, int parents[]) {
-    	//System.out.println("zqian##########Entering BDeuScore.localScore() .");
-    //	System.out.println(" for Node " + i +" and it's parents ");
-//    	for (int temp=0; temp<parents.length;temp ++){
-//    		System.out.print(parents[temp] +",");
-//    	}
-   // 	System.out.println("");
- //   	System.out.println("check if already computed or not.");
         double oldScore = localScoreCache.get(i, parents);
-  //  	System.out.println("zqian##########Entering BDeuScore.localScore().localScoreCache.get(i, parents), oldScore: "+ i + ", "+parents+", "+ oldScore);
 
         if (!Double.isNaN(oldScore)) {
-  //      	System.out.println("using the old Score ");
             return oldScore;
         }
-   //     System.out.println("zqian########## computing the NEW score ");
-        // Number of categories for i.
-        int r = numCategories(i);
 
-        // Numbers of categories of parents.
-        int dims[] = new int[parents.length];
+        LocalScoreStore store = LocalScoreStore.getDefault();
+        String parentNames[] = null;
 
-        for (int p = 0; p < parents.length; p++) {
-            dims[p] = numCategories(parents[p]);
-        }
-       
-        // Number of parent states.
-        int q = 1;
-        for (int p = 0; p < parents.length; p++) {
-            q *= dims[p];
-        }
-   //     System.out.println("q "+ q);
-        // Conditional cell counts of data for i given parents(i).
-        long n_ijk[][] = new long[q][r];
-      //  int n_ij[] = new int[q];
-        long n_ij[] = new long[q]; // change data type from int to long, zqian
-//        long n_ijk1[][] = new long[q][r];
-        int values[] = new int[parents.length];
-
-        for (int n = 0; n < sampleSize(); n++) {
+        if (store != null) {
+            parentNames = new String[parents.length];
             for (int p = 0; p < parents.length; p++) {
-                int parentValue = dataSet().getInt(n, parents[p]);
+                parentNames[p] = dataSet.getVariable(parents[p]).getName();
+            }
 
-                if (parentValue == -99) {
-                    throw new IllegalStateException("Please remove or impute " +
-                            "missing values.");
-                }
+            double storedScore = store.get(fingerprint(), dataSet.getVariable(i).getName(), parentNames,
+                    samplePrior, structurePrior);
 
-                values[p] = parentValue;
+            if (!Double.isNaN(storedScore)) {
+                localScoreCache.add(i, parents, storedScore);
+                return storedScore;
             }
+        }
 
-            int childValue = dataSet().getInt(n, i);
+        // The score is a function of the parent set; counting in ascending order lets the counts reuse the
+        // parent configurations of earlier families.
+        int sortedParents[] = parents.clone();
+        Arrays.sort(sortedParents);
 
-            if (childValue == -99) {
-                throw new IllegalStateException("Please remove or impute missing " +
-                        "values (record " + n + " column " + i + ")");
+        FamilyCounts counts = familyCounts();
 
-            }
+        // Number of categories for i.
+        int r = counts.getNumCategories(i);
+
+        // Conditional cell counts of data for i given parents(i), n_ijk at j * r + k.
+        long n_ijk[] = counts.counts(i, sortedParents);
+
+        double score = n_ijk == null
+                ? sparseScore(r, counts.getNumConfigurations(sortedParents), counts.sparseCounts(i, sortedParents))
+                : denseScore(r, n_ijk.length / r, n_ijk);
 
-            //Oct 9th,2013 zqian            
-     /*       for (int m = 0; m < dataSet().getMultiplier(n); m++){ // case expander May 1st, @zqian
-             	n_ijk[getRowIndex(dims, values)][childValue]++;
-             	}      */      
-     
-             n_ijk[getRowIndex(dims, values)][childValue] = n_ijk[getRowIndex(dims, values)][childValue] +  dataSet().getMultiplier(n);
+        localScoreCache.add(i, parents, score);
+
+        if (store != null) {
+            try {
+                store.put(fingerprint(), dataSet.getVariable(i).getName(), parentNames, samplePrior,
+                        structurePrior, score);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
         }
-        
-      //  System.out.println("n_ijk is done");
+
+        return score;
+    }
+
+    private double denseScore(int r, int q, long n_ijk[]) {
         // Row sums.
+        long n_ij[] = new long[q];
+
         for (int j = 0; j < q; j++) {
             for (int k = 0; k < r; k++) {
-                n_ij[j] += n_ijk[j][k];
+                n_ij[j] += n_ijk[j * r + k];
             }
         }
-     //   System.out.println("n_ij is done");
-        
+
         //Finally, compute the score
         double score = (r - 1) * q * Math.log(getStructurePrior());
 
         for (int j = 0; j < q; j++) {
             for (int k = 0; k < r; k++) {
-                score += ProbUtils.lngamma(getSamplePrior() / (r * q) + n_ijk[j][k]);
+                score += ProbUtils.lngamma(getSamplePrior() / (r * q) + n_ijk[j * r + k]);
             }
             score -= ProbUtils.lngamma(getSamplePrior() / q + n_ij[j]);
         }
 
         score += q * ProbUtils.lngamma(getSamplePrior() / q);
         score -= (r * q) * ProbUtils.lngamma(getSamplePrior() / (r * q));
-//        score -= r * ProbUtils.lngamma(getSamplePrior() / (r * q));
-  //      System.out.println("score is done");
-        
-        localScoreCache.add(i, parents, score);
-    	//System.out.println("####Entering BDeuScore.localScore().localScoreCache.add(i, parents, score): "+ i + ", "+parents+", "+ score);
-    
+
         return score;
     }
 
-    @Override
-	public DataSet getDataSet() {
-        return dataSet;
-    }
+    /**
+     * The same score for families with too many parent configurations to count densely. A configuration that does
+     * not occur adds r * lngamma(a / rq) - lngamma(a / q), which cancels against the last two terms of
+     * denseScore, so only the occurring configurations are summed.
+     */
+    private double sparseScore(int r, double q, FamilyCounts.SparseCounts n_ijk) {
+        double score = (r - 1) * q * Math.log(getStructurePrior());
 
-    private int getRowIndex(int[] dim, int[] values) {
-        int rowIndex = 0;
-        for (int i = 0; i < dim.length; i++) {
-            rowIndex *= dim[i];
-            rowIndex += values[i];
+        for (int j = 0; j < n_ijk.getNumOccupied(); j++) {
+            long n_ij = 0;
+
+            for (int k = 0; k < r; k++) {
+                n_ij += n_ijk.getCount(j, k);
+                score += ProbUtils.lngamma(getSamplePrior() / (r * q) + n_ijk.getCount(j, k));
+            }
+
+            score -= ProbUtils.lngamma(getSamplePrior() / q + n_ij);
         }
-        return rowIndex;
+
+        score += n_ijk.getNumOccupied() * ProbUtils.lngamma(getSamplePrior() / q);
+        score -= (r * n_ijk.getNumOccupied()) * ProbUtils.lngamma(getSamplePrior() / (r * q));
+
+        return score;
     }
 
-    private int sampleSize() {
-        return dataSet().getNumRows();
+    /**
+     * The counts are compiled from the data set the first time a score is asked for.
+     */
+    private FamilyCounts familyCounts() {
+        FamilyCounts counts = familyCounts;
+
+        if (counts == null) {
+            synchronized (this) {
+                counts = familyCounts;
+
+                if (counts == null) {
+                    counts = new FamilyCounts(dataSet);
+                    familyCounts = counts;
+                }
+            }
+        }
+
+        return counts;
     }
 
-    private int numCategories(int i) {
-        return ((DiscreteVariable) dataSet().getVariable(i)).getNumCategories();
+    /**
+     * The fingerprint of the data set for the local score store, computed the first time it is needed.
+     */
+    private long fingerprint() {
+        Long result = fingerprint;
+
+        if (result == null) {
+            synchronized (this) {
+                result = fingerprint;
+
+                if (result == null) {
+                    result = LocalScoreStore.fingerprint(dataSet);
+                    fingerprint = result;
+                }
+            }
+        }
+
+        return result;
     }
 
-    private DataSet dataSet() {
+    @Override
+	public DataSet getDataSet() {
         return dataSet;
     }
 
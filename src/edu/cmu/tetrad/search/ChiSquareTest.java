@@ -93,92 +93,59 @@ public class ChiSquareTest {
     public ChiSquareTest.Result calcChiSquare(int[] testIndices) {
 
         // Reset the cell table for the columns referred to in
-        // 'testIndices.' Do cell counts for those columns.
-        this.getCellTable().addToTable(getDataSet(), testIndices);
-
-        // Indicator arrays to tell the cell table which margins
-        // to calculate. For x _||_ y | z1, z2, ..., we want to
-        // calculate the margin for x, the margin for y, and the
-        // margin for x and y. (These will be used later.)
-        int[] firstVar = new int[]{0};
-        int[] secondVar = new int[]{1};
-        int[] bothVars = new int[]{0, 1};
+        // 'testIndices.' Do cell counts for those columns, and
+        // calculate the margins of x and y in each conditional
+        // table for x _||_ y | z1, z2, ...
+        CellTable cellTable = this.getCellTable();
+        cellTable.addToTable(getDataSet(), testIndices);
+        cellTable.calcMargins();
 
         double xSquare = 0.0;
         int df = 0;
 
-        int[] condDims = new int[testIndices.length - 2];
-        System.arraycopy(selectFromArray(getDims(), testIndices), 2, condDims, 0,
-                condDims.length);
-
-        int[] coords = new int[testIndices.length];
-        int numRows = this.getCellTable().getNumValues(0);
-        int numCols = this.getCellTable().getNumValues(1);
-
-        boolean[] attestedRows = new boolean[numRows];
-        boolean[] attestedCols = new boolean[numCols];
-
-        CombinationIterator combinationIterator =
-                new CombinationIterator(condDims);
-
-        while (combinationIterator.hasNext()) {
-            int[] combination = (int[]) combinationIterator.next();
-
-            System.arraycopy(combination, 0, coords, 2, combination.length);
-            Arrays.fill(attestedRows, true);
-            Arrays.fill(attestedCols, true);
+        int numRows = cellTable.getNumValues(0);
+        int numCols = cellTable.getNumValues(1);
 
-            long total = this.getCellTable().calcMargin(coords, bothVars);
+        for (int table = 0; table < cellTable.getNumTables(); table++) {
+            long total = cellTable.getTableTotal(table);
 
             if (total == 0) {
                 continue;
             }
 
+            // Rows or columns that consist entirely of zeros are
+            // not attested and do not count towards df.
+            int numAttestedRows = 0;
+            int numAttestedCols = 0;
+
+            for (int j = 0; j < numCols; j++) {
+                if (cellTable.getColMargin(table, j) != 0) {
+                    numAttestedCols++;
+                }
+            }
+
             for (int i = 0; i < numRows; i++) {
-                for (int j = 0; j < numCols; j++) {
-                    coords[0] = i;
-                    coords[1] = j;
+                long sumRow = cellTable.getRowMargin(table, i);
 
-                    long sumRow = this.getCellTable().calcMargin(coords, secondVar);
-                    long sumCol = this.getCellTable().calcMargin(coords, firstVar);
-                    long observed = (int) this.getCellTable().getValue(coords);
+                if (sumRow == 0) {
+                    continue;
+                }
 
-                    boolean skip = false;
+                numAttestedRows++;
 
-                    if (sumRow == 0) {
-                        attestedRows[i] = false;
-                        skip = true;
-                    }
+                for (int j = 0; j < numCols; j++) {
+                    long sumCol = cellTable.getColMargin(table, j);
 
                     if (sumCol == 0) {
-                        attestedCols[j] = false;
-                        skip = true;
-                    }
-
-                    if (skip) {
                         continue;
                     }
 
+                    long observed = cellTable.getCount(table, i, j);
                     double expected = (double) (sumCol * sumRow) / (double) total;
                     xSquare += Math.pow(observed - expected, 2.0) / expected;
                 }
             }
 
-            int numAttestedRows = 0;
-            int numAttestedCols = 0;
-
-            for (boolean attestedRow : attestedRows) {
-                if (attestedRow) {
-                    numAttestedRows++;
-                }
-            }
-
-            for (boolean attestedCol : attestedCols) {
-                if (attestedCol) {
-                    numAttestedCols++;
-                }
-            }
-
             df += (numAttestedRows - 1) * (numAttestedCols - 1);
         }
 
@@ -54,6 +54,18 @@ public final class Cpc implements GraphSearch {
      */
     private int depth = 1000;
 
+    /**
+     * Number of threads that run the independence tests of the adjacency search (Fas5); the tests that classify
+     * the unshielded triples run on one thread.
+     */
+    private int numThreads = 1;
+
+    /**
+     * True if the adjacency search with more than one thread should find the adjacencies of the search with one
+     * thread.
+     */
+    private boolean serialResult = false;
+
     /**
      * The graph that's constructed during the search.
      */
@@ -191,6 +203,35 @@ public final class Cpc implements GraphSearch {
         return depth;
     }
 
+    public int getNumThreads() {
+        return numThreads;
+    }
+
+    /**
+     * Sets the number of threads that run the independence tests of the adjacency search; see Fas5.setNumThreads.
+     * Only the adjacencies are found concurrently: CPC classifies each unshielded triple with tests of its own on one
+     * thread, so with setSerialResult(true) the whole result is the one found with one thread.
+     */
+    public void setNumThreads(int numThreads) {
+        if (numThreads < 1) {
+            throw new IllegalArgumentException("Number of threads must be at least 1: " + numThreads);
+        }
+        this.numThreads = numThreads;
+    }
+
+    public boolean isSerialResult() {
+        return serialResult;
+    }
+
+    /**
+     * If true, the adjacency search with more than one thread removes the same edges with the same sepsets as with
+     * one thread; see Fas5.setSerialResult. The triples are classified on those adjacencies, so CPC returns the graph
+     * it finds with one thread. Has no effect with one thread.
+     */
+    public void setSerialResult(boolean serialResult) {
+        this.serialResult = serialResult;
+    }
+
     /**
      * Returns the set of ambiguous triples found during the most recent run of the algorithm. Non-null after a call to
      * <code>search()</code>.
@@ -261,6 +302,8 @@ public final class Cpc implements GraphSearch {
         Fas5 fas = new Fas5(graph, getIndependenceTest());
         fas.setKnowledge(getKnowledge());
         fas.setDepth(getDepth());
+        fas.setNumThreads(numThreads);
+        fas.setSerialResult(serialResult);
 
         // Note that we are ignoring the sepset map returned by this method
         // on purpose; it is not used in this search.
@@ -0,0 +1,376 @@
+package edu.cmu.tetrad.search;
+
+import edu.cmu.tetrad.data.DataSet;
+import edu.cmu.tetrad.data.DiscreteVariable;
+import edu.cmu.tetrad.graph.Node;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Sufficient statistics of a discrete data set with case multipliers (a CT table), for the local scores of the
+ * structure search.
+ * <p>
+ * The discrete columns of the data set are copied once into int arrays and the case multipliers into a long array,
+ * so counting a family is a pass over primitive arrays without getInt/getMultiplier calls. For a family
+ * (child, parents) the parents are taken in ascending column order; the configuration index of the parents in each
+ * row (mixed radix, the last parent varies fastest) is kept for recently used parent sets. A parent set that is a
+ * kept one plus one more variable, which is what the search asks for when it adds or removes an edge, costs one pass
+ * over that variable's column to index.
+ * <p>
+ * Families with more than MAX_DENSE_CELLS cells are counted in a hash table over the parent configurations that
+ * occur in the data.
+ * <p>
+ * Thread safe once constructed.
+ */
+public final class FamilyCounts {
+
+    /**
+     * Families with more cells (parent configurations times child categories) are counted sparsely.
+     */
+    public static final int MAX_DENSE_CELLS = 1 << 22;
+
+    /**
+     * Memory for the kept parent configuration indices.
+     */
+    private static final long INDEX_CACHE_BYTES = 64L << 20;
+
+    private final int numRows;
+    private final int[][] columns;
+    private final int[] numCategories;
+    private final boolean[] hasMissing;
+    private final long[] multipliers;
+
+    private final Map<ParentSet, int[]> indices;
+
+    public FamilyCounts(DataSet dataSet) {
+        numRows = dataSet.getNumRows();
+        int numColumns = dataSet.getNumColumns();
+        columns = new int[numColumns][];
+        numCategories = new int[numColumns];
+        hasMissing = new boolean[numColumns];
+
+        for (int c = 0; c < numColumns; c++) {
+            Node variable = dataSet.getVariable(c);
+
+            if (!(variable instanceof DiscreteVariable)) {
+                continue;
+            }
+
+            numCategories[c] = ((DiscreteVariable) variable).getNumCategories();
+            int[] column = new int[numRows];
+
+            for (int n = 0; n < numRows; n++) {
+                column[n] = dataSet.getInt(n, c);
+
+                if (column[n] == -99) {
+                    hasMissing[c] = true;
+                }
+            }
+
+            columns[c] = column;
+        }
+
+        multipliers = new long[numRows];
+
+        for (int n = 0; n < numRows; n++) {
+            multipliers[n] = dataSet.getMultiplier(n);
+        }
+
+        final int maxIndices = (int) Math.max(4, INDEX_CACHE_BYTES / (4L * Math.max(1, numRows)));
+
+        indices = new LinkedHashMap<ParentSet, int[]>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<ParentSet, int[]> eldest) {
+                return size() > maxIndices;
+            }
+        };
+    }
+
+    public int getNumRows() {
+        return numRows;
+    }
+
+    public int getNumCategories(int column) {
+        return numCategories[column];
+    }
+
+    /**
+     * Returns the number of parent configurations of the given (ascending) parents, as a double since it may not
+     * fit in an int.
+     */
+    public double getNumConfigurations(int[] parents) {
+        double q = 1;
+        for (int p : parents) {
+            q *= numCategories[p];
+        }
+        return q;
+    }
+
+    /**
+     * Returns the weighted counts n_ijk of child given parents as a q * r array, n_ijk at j * r + k, where r is the
+     * number of categories of child and j is the configuration of the parents in mixed radix with the last parent
+     * varying fastest. Returns null if the family has more than MAX_DENSE_CELLS cells; use sparseCounts then.
+     *
+     * @param parents the parent columns in ascending order.
+     */
+    public long[] counts(int child, int[] parents) {
+        checkFamily(child, parents);
+        int r = numCategories[child];
+
+        if (getNumConfigurations(parents) * r > MAX_DENSE_CELLS) {
+            return null;
+        }
+
+        int q = (int) getNumConfigurations(parents);
+        long[] n_ijk = new long[q * r];
+        int[] childColumn = columns[child];
+
+        if (parents.length == 0) {
+            for (int n = 0; n < numRows; n++) {
+                n_ijk[childColumn[n]] += multipliers[n];
+            }
+        } else {
+            int[] index = parentIndex(parents);
+
+            for (int n = 0; n < numRows; n++) {
+                n_ijk[index[n] * r + childColumn[n]] += multipliers[n];
+            }
+        }
+
+        return n_ijk;
+    }
+
+    /**
+     * Returns the weighted counts of child given parents for the parent configurations that occur in the data,
+     * for families too large for counts(child, parents).
+     *
+     * @param parents the parent columns in ascending order.
+     */
+    public SparseCounts sparseCounts(int child, int[] parents) {
+        checkFamily(child, parents);
+        int r = numCategories[child];
+
+        if (getNumConfigurations(parents) >= Long.MAX_VALUE) {
+            throw new IllegalArgumentException("Too many parent configurations for " + child + " given "
+                    + Arrays.toString(parents));
+        }
+
+        // at most min(rows, q) configurations occur, keep the table at most half full
+        int expected = (int) Math.max(2, Math.min(numRows, Math.min(getNumConfigurations(parents), 1 << 28)));
+        int capacity = Integer.highestOneBit(expected * 2 - 1) << 1;
+        int mask = capacity - 1;
+        long[] keys = new long[capacity];
+        int[] slots = new int[capacity];
+        Arrays.fill(slots, -1);
+        long[] configurations = new long[16];
+        long[] n_ijk = new long[16 * r];
+        int occupied = 0;
+        int[] childColumn = columns[child];
+
+        for (int n = 0; n < numRows; n++) {
+            long key = 0;
+            for (int p : parents) {
+                key = key * numCategories[p] + columns[p][n];
+            }
+
+            int h = (int) (key ^ (key >>> 32)) * 0x9E3779B9 & mask;
+            while (slots[h] != -1 && keys[h] != key) {
+                h = (h + 1) & mask;
+            }
+
+            if (slots[h] == -1) {
+                if (occupied == configurations.length) {
+                    configurations = Arrays.copyOf(configurations, occupied * 2);
+                    n_ijk = Arrays.copyOf(n_ijk, occupied * 2 * r);
+                }
+                keys[h] = key;
+                slots[h] = occupied;
+                configurations[occupied++] = key;
+            }
+
+            n_ijk[slots[h] * r + childColumn[n]] += multipliers[n];
+        }
+
+        // report the configurations in ascending order, so scores do not depend on the hashing
+        Integer[] order = new Integer[occupied];
+        for (int j = 0; j < occupied; j++) {
+            order[j] = j;
+        }
+        final long[] _configurations = configurations;
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                return Long.compare(_configurations[a], _configurations[b]);
+            }
+        });
+
+        long[] sortedConfigurations = new long[occupied];
+        long[] sortedCounts = new long[occupied * r];
+        for (int j = 0; j < occupied; j++) {
+            sortedConfigurations[j] = configurations[order[j]];
+            System.arraycopy(n_ijk, order[j] * r, sortedCounts, j * r, r);
+        }
+
+        return new SparseCounts(sortedConfigurations, sortedCounts, r);
+    }
+
+    /**
+     * The parent configuration of each row, reusing a kept index of the same parents or of all parents but one.
+     */
+    private int[] parentIndex(int[] parents) {
+        ParentSet key = new ParentSet(parents);
+        int[] index;
+
+        synchronized (indices) {
+            index = indices.get(key);
+        }
+
+        if (index != null) {
+            return index;
+        }
+
+        for (int m = parents.length - 1; m >= 0 && index == null; m--) {
+            int[] smaller = new int[parents.length - 1];
+            System.arraycopy(parents, 0, smaller, 0, m);
+            System.arraycopy(parents, m + 1, smaller, m, parents.length - m - 1);
+
+            int[] base;
+            synchronized (indices) {
+                base = smaller.length == 0 ? null : indices.get(new ParentSet(smaller));
+            }
+
+            if (base != null || smaller.length == 0) {
+                index = insertParent(base, parents, m);
+            }
+        }
+
+        if (index == null) {
+            index = new int[numRows];
+            for (int p : parents) {
+                int dim = numCategories[p];
+                int[] column = columns[p];
+                for (int n = 0; n < numRows; n++) {
+                    index[n] = index[n] * dim + column[n];
+                }
+            }
+        }
+
+        synchronized (indices) {
+            indices.put(key, index);
+        }
+
+        return index;
+    }
+
+    /**
+     * The index of parents from the index of parents without parents[m] (null if that is empty).
+     */
+    private int[] insertParent(int[] base, int[] parents, int m) {
+        int low = 1;
+        for (int p = m + 1; p < parents.length; p++) {
+            low *= numCategories[parents[p]];
+        }
+
+        int dim = numCategories[parents[m]];
+        int[] column = columns[parents[m]];
+        int[] index = new int[numRows];
+
+        if (base == null) {
+            System.arraycopy(column, 0, index, 0, numRows);
+        } else if (low == 1) {
+            for (int n = 0; n < numRows; n++) {
+                index[n] = base[n] * dim + column[n];
+            }
+        } else {
+            for (int n = 0; n < numRows; n++) {
+                int b = base[n];
+                index[n] = (b / low) * (dim * low) + column[n] * low + b % low;
+            }
+        }
+
+        return index;
+    }
+
+    private void checkFamily(int child, int[] parents) {
+        for (int p : parents) {
+            if (columns[p] == null) {
+                throw new IllegalArgumentException("Not a discrete column: " + p);
+            }
+
+            if (hasMissing[p]) {
+                throw new IllegalStateException("Please remove or impute " +
+                        "missing values.");
+            }
+        }
+
+        if (columns[child] == null) {
+            throw new IllegalArgumentException("Not a discrete column: " + child);
+        }
+
+        if (hasMissing[child]) {
+            int n = 0;
+            while (columns[child][n] != -99) n++;
+            throw new IllegalStateException("Please remove or impute missing " +
+                    "values (record " + n + " column " + child + ")");
+        }
+    }
+
+    /**
+     * Counts of a family over the parent configurations that occur in the data.
+     */
+    public static final class SparseCounts {
+        private final long[] configurations;
+        private final long[] counts;
+        private final int numChildCategories;
+
+        private SparseCounts(long[] configurations, long[] counts, int numChildCategories) {
+            this.configurations = configurations;
+            this.counts = counts;
+            this.numChildCategories = numChildCategories;
+        }
+
+        /**
+         * Number of parent configurations that occur in the data.
+         */
+        public int getNumOccupied() {
+            return configurations.length;
+        }
+
+        /**
+         * Mixed radix index of the j'th occurring parent configuration; ascending in j.
+         */
+        public long getConfiguration(int j) {
+            return configurations[j];
+        }
+
+        /**
+         * Weighted count of child category k in the j'th occurring parent configuration.
+         */
+        public long getCount(int j, int k) {
+            return counts[j * numChildCategories + k];
+        }
+    }
+
+    private static final class ParentSet {
+        private final int[] parents;
+        private final int hash;
+
+        ParentSet(int[] parents) {
+            this.parents = parents;
+            this.hash = Arrays.hashCode(parents);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof ParentSet && Arrays.equals(parents, ((ParentSet) o).parents);
+        }
+    }
+}
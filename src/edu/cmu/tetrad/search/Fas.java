@@ -37,6 +37,8 @@ import edu.cmu.tetrad.util.TetradLogger;
 import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 /**
  * Implements the "fast adjacency search" used in several causal algorithms in this package. In the fast adjacency
@@ -46,6 +48,12 @@ import java.util.List;
  * the maximum depth or else the first such depth at which no edges can be removed. The interpretation of this adjacency
  * search is different for different algorithms, depending on the assumptions of the algorithm. A mapping from {x, y} to
  * S({x, y}) is returned for edges x *-* y that have been removed.
+ * <p>
+ * With more than one thread the tests of a depth are run concurrently, against adjacencies that are not changed while
+ * they run, and the removals are applied afterwards in the order of the serial search. By default all pairs of a depth
+ * are tested against the adjacencies at the start of the depth, so the result does not depend on the order of the
+ * nodes; with serialResult the pairs of each node are tested against the adjacencies the serial search would see,
+ * which gives exactly the serial result at the cost of retesting the pairs after a removal.
  *
  * @author Joseph Ramsey.
  */
@@ -109,6 +117,26 @@ public class Fas {
      */
     private boolean fci = false;
 
+    /**
+     * Number of threads that run the independence tests, 1 for the serial search.
+     */
+    private int numThreads = 1;
+
+    /**
+     * True if the parallel search should give exactly the result of the serial search.
+     */
+    private boolean serialResult = false;
+
+    /**
+     * The pool for the tests while a search with numThreads > 1 runs, null otherwise.
+     */
+    private transient ForkJoinPool pool;
+
+    /**
+     * The copy of the independence test used by each thread of the pool.
+     */
+    private transient ThreadLocal<IndependenceTest> threadTests;
+
 //    private List<Double> pValues = new ArrayList<Double>();
 
     //==========================CONSTRUCTORS=============================//
@@ -167,16 +195,30 @@ public class Fas {
             _depth = 1000;
         }
 
-        for (int d = 0; d <= _depth; d++) {
-//            System.out.println("Depth " + d);
+        startPool();
 
-            boolean more = searchAtDepth(graph, test, getKnowledge(), sepset, d);
+        try {
+            for (int d = 0; d <= _depth; d++) {
+//                System.out.println("Depth " + d);
+
+                boolean more;
+
+                if (pool == null) {
+                    more = searchAtDepth(graph, test, getKnowledge(), sepset, d);
+                } else if (serialResult) {
+                    more = searchAtDepthSerialOrder(graph, getKnowledge(), sepset, d);
+                } else {
+                    more = searchAtDepthConcurrently(graph, getKnowledge(), sepset, d);
+                }
 
-//            System.out.println("more = " + more);
+//                System.out.println("more = " + more);
 
-            if (!more) {
-                break;
+                if (!more) {
+                    break;
+                }
             }
+        } finally {
+            stopPool();
         }
 
 //        verifySepsetIntegrity(sepset);
@@ -226,6 +268,35 @@ public class Fas {
         this.knowledge = knowledge;
     }
 
+    public int getNumThreads() {
+        return numThreads;
+    }
+
+    /**
+     * Sets the number of threads that run the independence tests. Each thread tests with its own copy of the test,
+     * made with indTestSubset over all of its variables; a test whose indTestSubset returns the test itself must be
+     * safe to use from several threads. Comparisons with a true graph (setTrueGraph) are only done by the serial
+     * search.
+     */
+    public void setNumThreads(int numThreads) {
+        if (numThreads < 1) {
+            throw new IllegalArgumentException("Number of threads must be at least 1: " + numThreads);
+        }
+        this.numThreads = numThreads;
+    }
+
+    public boolean isSerialResult() {
+        return serialResult;
+    }
+
+    /**
+     * If true, the parallel search removes the same edges with the same sepsets as the serial search. Otherwise
+     * (the default) each depth tests all pairs against the adjacencies at its start.
+     */
+    public void setSerialResult(boolean serialResult) {
+        this.serialResult = serialResult;
+    }
+
     //==============================PRIVATE METHODS======================/
 
     /**
@@ -369,6 +440,208 @@ public class Fas {
         return more;
     }
 
+    /**
+     * A pair x, y to test at some depth, with the possible parents of x (other than y) to choose the conditioning
+     * sets from, and the outcome: the first conditioning set that separates x and y, or null.
+     */
+    private static final class PairTest {
+        private final Node x;
+        private final Node y;
+        private final List<Node> ppx;
+        private List<Node> sepset;
+        private int numTests;
+
+        private PairTest(Node x, Node y, List<Node> ppx) {
+            this.x = x;
+            this.y = y;
+            this.ppx = ppx;
+        }
+    }
+
+    /**
+     * The tests of x with each of ys, against the current adjacencies of x. Pairs whose edge is required are left
+     * out, since they cannot be removed.
+     */
+    private List<PairTest> pairTests(Graph graph, IKnowledge knowledge, Node x, List<Node> ys, int depth) {
+        List<PairTest> pairs = new ArrayList<PairTest>();
+        List<Node> adj = graph.getAdjacentNodes(x);
+
+        for (Node y : ys) {
+            if (!knowledge.noEdgeRequired(x.getName(), y.getName())) {
+                continue;
+            }
+
+            List<Node> adjx = new ArrayList<Node>(adj);
+            adjx.remove(y);
+            List<Node> ppx = possibleParents(x, adjx, knowledge);
+
+            if (ppx.size() >= depth) {
+                pairs.add(new PairTest(x, y, ppx));
+            }
+        }
+
+        return pairs;
+    }
+
+    /**
+     * Runs the tests of each pair, in the order of ChoiceGenerator until one finds x and y independent, on the
+     * threads of the pool.
+     */
+    private void runTests(final List<PairTest> pairs, final int depth) {
+        final int chunk = Math.max(1, pairs.size() / (8 * numThreads));
+
+        class TestRange extends RecursiveAction {
+            private static final long serialVersionUID = 1L;
+
+            private final int from, to;
+
+            TestRange(int from, int to) {
+                this.from = from;
+                this.to = to;
+            }
+
+            @Override
+            protected void compute() {
+                if (to - from <= chunk) {
+                    IndependenceTest test = threadTests.get();
+
+                    for (int k = from; k < to; k++) {
+                        runTests(test, pairs.get(k), depth);
+                    }
+                } else {
+                    int mid = (from + to) >>> 1;
+                    invokeAll(new TestRange(from, mid), new TestRange(mid, to));
+                }
+            }
+        }
+
+        if (!pairs.isEmpty()) {
+            pool.invoke(new TestRange(0, pairs.size()));
+        }
+    }
+
+    private void runTests(IndependenceTest test, PairTest pair, int depth) {
+        ChoiceGenerator cg = new ChoiceGenerator(pair.ppx.size(), depth);
+        int[] choice;
+
+        while ((choice = cg.next()) != null) {
+            List<Node> condSet = GraphUtils.asList(choice, pair.ppx);
+
+            boolean independent;
+            try {
+                independent = test.isIndependent(pair.x, pair.y, condSet);
+            } catch (Exception e) {
+                independent = false;
+            }
+            pair.numTests++;
+
+            if (independent) {
+                pair.sepset = new LinkedList<Node>(condSet);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Removes the edge of a pair found independent, if it is still in the graph.
+     */
+    private boolean apply(Graph graph, SepsetMap sepset, PairTest pair) {
+        numIndependenceTests += pair.numTests;
+
+        if (pair.sepset == null || !graph.isAdjacentTo(pair.x, pair.y)) {
+            return false;
+        }
+
+        graph.removeEdge(pair.x, pair.y);
+        sepset.set(pair.x, pair.y, pair.sepset);
+        return true;
+    }
+
+    /**
+     * One depth step in which every pair is tested against the adjacencies at the start of the step. The edges are
+     * removed in the order of the serial search; a pair whose edge was already removed through the other direction
+     * is skipped.
+     */
+    private boolean searchAtDepthConcurrently(Graph graph, IKnowledge knowledge, SepsetMap sepset, int depth) {
+        List<Node> nodes = new LinkedList<Node>(graph.getNodes());
+        List<PairTest> pairs = new ArrayList<PairTest>();
+
+        for (Node x : nodes) {
+            pairs.addAll(pairTests(graph, knowledge, x, graph.getAdjacentNodes(x), depth));
+        }
+
+        runTests(pairs, depth);
+
+        for (PairTest pair : pairs) {
+            apply(graph, sepset, pair);
+        }
+
+        for (Node x : nodes) {
+            if (graph.getAdjacentNodes(x).size() - 1 > depth) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * One depth step with the result of searchAtDepth. The pairs of a node x are tested concurrently against the
+     * current adjacencies of x; when one of them removes an edge, the adjacencies of x change, so the pairs after it
+     * are tested again.
+     */
+    private boolean searchAtDepthSerialOrder(Graph graph, IKnowledge knowledge, SepsetMap sepset, int depth) {
+        boolean more = false;
+        List<Node> nodes = new LinkedList<Node>(graph.getNodes());
+
+        for (Node x : nodes) {
+            List<Node> b = new ArrayList<Node>(graph.getAdjacentNodes(x));
+            int from = 0;
+
+            while (from < b.size()) {
+                List<PairTest> pairs = pairTests(graph, knowledge, x, b.subList(from, b.size()), depth);
+                runTests(pairs, depth);
+                from = b.size();
+
+                for (PairTest pair : pairs) {
+                    if (apply(graph, sepset, pair)) {
+                        from = b.indexOf(pair.y) + 1;
+                        break;
+                    }
+                }
+            }
+
+            if (graph.getAdjacentNodes(x).size() - 1 > depth) {
+                more = true;
+            }
+        }
+
+        return more;
+    }
+
+    private void startPool() {
+        if (numThreads > 1 && trueGraph == null) {
+            final IndependenceTest test = this.test;
+
+            threadTests = new ThreadLocal<IndependenceTest>() {
+                @Override
+                protected IndependenceTest initialValue() {
+                    return test.indTestSubset(test.getVariables());
+                }
+            };
+
+            pool = new ForkJoinPool(numThreads);
+        }
+    }
+
+    private void stopPool() {
+        if (pool != null) {
+            pool.shutdown();
+            pool = null;
+            threadTests = null;
+        }
+    }
+
     public int getNumIndependenceTests() {
         return numIndependenceTests;
     }
@@ -31,6 +31,8 @@ import edu.cmu.tetrad.util.ChoiceGenerator;
 import edu.cmu.tetrad.util.TetradLogger;
 
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 /**
  * Implements the "fast adjacency search" used in several causal algorithms in this package. In the fast adjacency
@@ -40,6 +42,13 @@ import java.util.*;
  * the maximum depth or else the first such depth at which no edges can be removed. The interpretation of this adjacency
  * search is different for different algorithms, depending on the assumptions of the algorithm. A mapping from {x, y} to
  * S({x, y}) is returned for edges x *-* y that have been removed.
+ * <p>
+ * With more than one thread the tests are run concurrently, on the same pairs and conditioning sets as with one
+ * thread (a pair with a required edge is tested but never removed), and the results are applied in the order of the
+ * serial search. At depth 0 this gives the serial result. At higher depths all pairs are tested by default against the
+ * adjacencies at the start of the depth; with serialResult the pairs of each node are tested against the adjacencies
+ * the serial search would see, which gives exactly the serial result at the cost of retesting the pairs after a
+ * removal.
  *
  * @author Joseph Ramsey.
  */
@@ -103,6 +112,26 @@ public class Fas5 {
      */
     private boolean fci = false;
 
+    /**
+     * Number of threads that run the independence tests, 1 for the serial search.
+     */
+    private int numThreads = 1;
+
+    /**
+     * True if the parallel search should give exactly the result of the serial search.
+     */
+    private boolean serialResult = false;
+
+    /**
+     * The pool for the tests while a search with numThreads > 1 runs, null otherwise.
+     */
+    private transient ForkJoinPool pool;
+
+    /**
+     * The copy of the independence test used by each thread of the pool.
+     */
+    private transient ThreadLocal<IndependenceTest> threadTests;
+
 //    private List<Double> pValues = new ArrayList<Double>();
 
     //==========================CONSTRUCTORS=============================//
@@ -147,20 +176,34 @@ public class Fas5 {
             adjacencies.put(node, new HashSet<Node>());
         }
 
-        for (int d = 0; d <= _depth; d++) {
-//            System.out.println("Depth " + d);
+        startPool();
 
-            boolean more;
+        try {
+            for (int d = 0; d <= _depth; d++) {
+//                System.out.println("Depth " + d);
 
-            if (d == 0) {
-                more = searchAtDepth0(nodes, test, adjacencies);
-            } else {
-                more = searchAtDepth(nodes, test, adjacencies, d);
-            }
+                boolean more;
 
-            if (!more) {
-                break;
+                if (pool == null) {
+                    if (d == 0) {
+                        more = searchAtDepth0(nodes, test, adjacencies);
+                    } else {
+                        more = searchAtDepth(nodes, test, adjacencies, d);
+                    }
+                } else if (d == 0) {
+                    more = searchAtDepth0Concurrently(nodes, adjacencies);
+                } else if (serialResult) {
+                    more = searchAtDepthSerialOrder(nodes, adjacencies, d);
+                } else {
+                    more = searchAtDepthConcurrently(nodes, adjacencies, d);
+                }
+
+                if (!more) {
+                    break;
+                }
             }
+        } finally {
+            stopPool();
         }
 
 //        System.out.println("Adding edges to graph.");
@@ -205,6 +248,34 @@ public class Fas5 {
         this.knowledge = knowledge;
     }
 
+    public int getNumThreads() {
+        return numThreads;
+    }
+
+    /**
+     * Sets the number of threads that run the independence tests. Each thread tests with its own copy of the test,
+     * made with indTestSubset over all of its variables; a test whose indTestSubset returns the test itself must be
+     * safe to use from several threads.
+     */
+    public void setNumThreads(int numThreads) {
+        if (numThreads < 1) {
+            throw new IllegalArgumentException("Number of threads must be at least 1: " + numThreads);
+        }
+        this.numThreads = numThreads;
+    }
+
+    public boolean isSerialResult() {
+        return serialResult;
+    }
+
+    /**
+     * If true, the parallel search removes the same edges with the same sepsets as the serial search. Otherwise
+     * (the default) each depth above 0 tests all pairs against the adjacencies at its start.
+     */
+    public void setSerialResult(boolean serialResult) {
+        this.serialResult = serialResult;
+    }
+
     //==============================PRIVATE METHODS======================/
 
     /**/
@@ -325,6 +396,230 @@ public class Fas5 {
     }
 
 
+    /**
+     * A pair x, y to test at some depth, with the possible parents of x (other than y) to choose the conditioning
+     * sets from, and the outcome: the first conditioning set that separates x and y, or null. A pair whose edge is
+     * required is tested with every conditioning set, as in the serial search, and never separated.
+     */
+    private static final class PairTest {
+        private final Node x;
+        private final Node y;
+        private final List<Node> ppx;
+        private final boolean noEdgeRequired;
+        private List<Node> sepset;
+        private int numTests;
+
+        private PairTest(Node x, Node y, List<Node> ppx, boolean noEdgeRequired) {
+            this.x = x;
+            this.y = y;
+            this.ppx = ppx;
+            this.noEdgeRequired = noEdgeRequired;
+        }
+    }
+
+    /**
+     * The tests of x with each of ys at a depth above 0, against the current adjacencies of x, as searchAtDepth
+     * makes them.
+     */
+    private List<PairTest> pairTests(Map<Node, Set<Node>> adjacencies, Node x, List<Node> ys, int depth) {
+        List<PairTest> pairs = new ArrayList<PairTest>();
+
+        for (Node y : ys) {
+            List<Node> _adjx = new ArrayList<Node>(adjacencies.get(x));
+            _adjx.remove(y);
+            List<Node> ppx = possibleParents(x, _adjx, knowledge);
+
+            if (ppx.size() >= depth) {
+                pairs.add(new PairTest(x, y, ppx, knowledge.noEdgeRequired(x.getName(), y.getName())));
+            }
+        }
+
+        return pairs;
+    }
+
+    /**
+     * Runs the tests of each pair, in the order of ChoiceGenerator until one separates x and y, on the threads of the
+     * pool.
+     */
+    private void runTests(final List<PairTest> pairs, final int depth) {
+        final int chunk = Math.max(1, pairs.size() / (8 * numThreads));
+
+        class TestRange extends RecursiveAction {
+            private static final long serialVersionUID = 1L;
+
+            private final int from, to;
+
+            TestRange(int from, int to) {
+                this.from = from;
+                this.to = to;
+            }
+
+            @Override
+            protected void compute() {
+                if (to - from <= chunk) {
+                    IndependenceTest test = threadTests.get();
+
+                    for (int k = from; k < to; k++) {
+                        runTests(test, pairs.get(k), depth);
+                    }
+                } else {
+                    int mid = (from + to) >>> 1;
+                    invokeAll(new TestRange(from, mid), new TestRange(mid, to));
+                }
+            }
+        }
+
+        if (!pairs.isEmpty()) {
+            pool.invoke(new TestRange(0, pairs.size()));
+        }
+    }
+
+    private void runTests(IndependenceTest test, PairTest pair, int depth) {
+        ChoiceGenerator cg = new ChoiceGenerator(pair.ppx.size(), depth);
+        int[] choice;
+
+        while ((choice = cg.next()) != null) {
+            List<Node> condSet = GraphUtils.asList(choice, pair.ppx);
+
+            boolean independent;
+
+            try {
+                independent = test.isIndependent(pair.x, pair.y, condSet);
+            } catch (Exception e) {
+                independent = false;
+            }
+
+            pair.numTests++;
+
+            if (independent && pair.noEdgeRequired) {
+                pair.sepset = condSet;
+                return;
+            }
+        }
+    }
+
+    /**
+     * Removes the edge of a pair that was separated, if it is still there.
+     */
+    private boolean apply(Map<Node, Set<Node>> adjacencies, PairTest pair) {
+        if (pair.sepset == null || !adjacencies.get(pair.x).contains(pair.y)) {
+            return false;
+        }
+
+        adjacencies.get(pair.x).remove(pair.y);
+        adjacencies.get(pair.y).remove(pair.x);
+        getSepsets().set(pair.x, pair.y, pair.sepset);
+        return true;
+    }
+
+    /**
+     * searchAtDepth0 with the tests run concurrently; the adjacencies are added in the same order.
+     */
+    private boolean searchAtDepth0Concurrently(List<Node> nodes, Map<Node, Set<Node>> adjacencies) {
+        List<Node> empty = Collections.emptyList();
+        List<PairTest> pairs = new ArrayList<PairTest>();
+
+        for (int i = 0; i < nodes.size(); i++) {
+            for (int j = i + 1; j < nodes.size(); j++) {
+                Node x = nodes.get(i);
+                Node y = nodes.get(j);
+                pairs.add(new PairTest(x, y, empty, knowledge.noEdgeRequired(x.getName(), y.getName())));
+            }
+        }
+
+        runTests(pairs, 0);
+
+        for (PairTest pair : pairs) {
+            numIndependenceTests += pair.numTests;
+
+            if (pair.sepset != null) {
+                getSepsets().set(pair.x, pair.y, empty);
+            } else if (!forbiddenEdge(pair.x, pair.y)) {
+                adjacencies.get(pair.x).add(pair.y);
+                adjacencies.get(pair.y).add(pair.x);
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * One depth step in which every pair is tested against the adjacencies at the start of the step. The edges are
+     * removed in the order of the serial search; a pair whose edge was already removed through the other direction
+     * is skipped.
+     */
+    private boolean searchAtDepthConcurrently(List<Node> nodes, Map<Node, Set<Node>> adjacencies, int depth) {
+        List<PairTest> pairs = new ArrayList<PairTest>();
+
+        for (Node x : nodes) {
+            pairs.addAll(pairTests(adjacencies, x, new ArrayList<Node>(adjacencies.get(x)), depth));
+        }
+
+        runTests(pairs, depth);
+        int numRemoved = 0;
+
+        for (PairTest pair : pairs) {
+            if (apply(adjacencies, pair)) {
+                numRemoved++;
+            }
+        }
+
+        return numRemoved > 0;
+    }
+
+    /**
+     * One depth step with the result of searchAtDepth. The pairs of a node x are tested concurrently against the
+     * current adjacencies of x; when one of them removes an edge, the adjacencies of x change, so the pairs after it
+     * are tested again.
+     */
+    private boolean searchAtDepthSerialOrder(List<Node> nodes, Map<Node, Set<Node>> adjacencies, int depth) {
+        int numRemoved = 0;
+
+        for (Node x : nodes) {
+            List<Node> adjx = new ArrayList<Node>(adjacencies.get(x));
+            int from = 0;
+
+            while (from < adjx.size()) {
+                List<PairTest> pairs = pairTests(adjacencies, x, adjx.subList(from, adjx.size()), depth);
+                runTests(pairs, depth);
+                from = adjx.size();
+
+                for (PairTest pair : pairs) {
+                    if (apply(adjacencies, pair)) {
+                        numRemoved++;
+                        from = adjx.indexOf(pair.y) + 1;
+                        break;
+                    }
+                }
+            }
+        }
+
+        return numRemoved > 0;
+    }
+
+    private void startPool() {
+        if (numThreads > 1) {
+            final IndependenceTest test = this.test;
+
+            threadTests = new ThreadLocal<IndependenceTest>() {
+                @Override
+                protected IndependenceTest initialValue() {
+                    return test.indTestSubset(test.getVariables());
+                }
+            };
+
+            pool = new ForkJoinPool(numThreads);
+        }
+    }
+
+    private void stopPool() {
+        if (pool != null) {
+            pool.shutdown();
+            pool = null;
+            threadTests = null;
+        }
+    }
+
 //    private boolean searchAtDepth(List<Node> nodes, IndependenceTest test, Map<Node, Set<Node>> adjacencies, int depth) {
 //        int numRemoved = 0;
 //        int count = 0;
@@ -21,12 +21,10 @@
 
 package edu.cmu.tetrad.search;
 
+import edu.cmu.tetrad.data.CellTable;
 import edu.cmu.tetrad.data.DataSet;
-import edu.cmu.tetrad.util.CombinationIterator;
 import edu.cmu.tetrad.util.ProbUtils;
 
-import java.util.Arrays;
-
 /**
  * Performs conditional independence tests of discrete data using the G Square method. Degrees of freedom are calculated
  * as in Fienberg, The Analysis of Cross-Classified Categorical Data, 2nd Edition, 142.
@@ -85,74 +83,55 @@ public final class GSquareTest extends ChiSquareTest {
     public GSquareTest.Result calcGSquare(int[] testIndices) {
 
         // Reset the cell table for the columns referred to in
-        // 'testIndices.' Do cell counts for those columns.
-        getCellTable().addToTable(getDataSet(), testIndices);
-
-        // Indicator arrays to tell the cell table which margins
-        // to calculate. For x _||_ y | z1, z2, ..., we want to
-        // calculate the margin for x, the margin for y, and the
-        // margin for x and y. (These will be used later.)
-        int[] firstVar = new int[]{0};
-        int[] secondVar = new int[]{1};
-        int[] bothVars = new int[]{0, 1};
+        // 'testIndices.' Do cell counts for those columns, and
+        // calculate the margins of x and y in each conditional
+        // table for x _||_ y | z1, z2, ...
+        CellTable cellTable = this.getCellTable();
+        cellTable.addToTable(getDataSet(), testIndices);
+        cellTable.calcMargins();
 
         double g2 = 0.0;
         int df = 0;
 
-        int[] condDims = new int[testIndices.length - 2];
-        System.arraycopy(selectFromArray(getDims(), testIndices), 2, condDims, 0,
-                condDims.length);
-
-        int[] coords = new int[testIndices.length];
-        int numRows = this.getCellTable().getNumValues(0);
-        int numCols = this.getCellTable().getNumValues(1);
-
-        boolean[] attestedRows = new boolean[numRows];
-        boolean[] attestedCols = new boolean[numCols];
+        int numRows = cellTable.getNumValues(0);
+        int numCols = cellTable.getNumValues(1);
 
-        CombinationIterator combinationIterator =
-                new CombinationIterator(condDims);
-
-        while (combinationIterator.hasNext()) {
-            int[] combination = (int[]) combinationIterator.next();
-
-            System.arraycopy(combination, 0, coords, 2, combination.length);
-            Arrays.fill(attestedRows, true);
-            Arrays.fill(attestedCols, true);
-
-            long total = this.getCellTable().calcMargin(coords, bothVars);
+        for (int table = 0; table < cellTable.getNumTables(); table++) {
+            long total = cellTable.getTableTotal(table);
 
             if (total == 0) {
                 continue;
             }
 
+            // Rows or columns that consist entirely of zeros are
+            // not attested and do not count towards df.
+            int numAttestedRows = 0;
+            int numAttestedCols = 0;
+
+            for (int j = 0; j < numCols; j++) {
+                if (cellTable.getColMargin(table, j) != 0) {
+                    numAttestedCols++;
+                }
+            }
+
             for (int i = 0; i < numRows; i++) {
-                for (int j = 0; j < numCols; j++) {
-                    coords[0] = i;
-                    coords[1] = j;
+                long sumRow = cellTable.getRowMargin(table, i);
 
-                    long sumRow = this.getCellTable().calcMargin(coords, secondVar);
-                    long sumCol = this.getCellTable().calcMargin(coords, firstVar);
-                    long observed = (int) this.getCellTable().getValue(coords);
+                if (sumRow == 0) {
+                    continue;
+                }
 
-                    boolean skip = false;
+                numAttestedRows++;
 
-                    if (sumRow == 0) {
-                        attestedRows[i] = false;
-                        skip = true;
-                    }
+                for (int j = 0; j < numCols; j++) {
+                    long sumCol = cellTable.getColMargin(table, j);
 
                     if (sumCol == 0) {
-                        attestedCols[j] = false;
-                        skip = true;
-                    }
-
-                    if (skip) {
                         continue;
                     }
 
-                    double expected =
-                            (double) (sumCol * sumRow) / (double) total;
+                    long observed = cellTable.getCount(table, i, j);
+                    double expected = (double) (sumCol * sumRow) / (double) total;
 
                     if (observed != 0) {
                         g2 += 2.0 * observed * Math.log(observed / expected);
@@ -160,21 +139,6 @@ public final class GSquareTest extends ChiSquareTest {
                 }
             }
 
-            int numAttestedRows = 0;
-            int numAttestedCols = 0;
-
-            for (boolean attestedRow : attestedRows) {
-                if (attestedRow) {
-                    numAttestedRows++;
-                }
-            }
-
-            for (boolean attestedCol : attestedCols) {
-                if (attestedCol) {
-                    numAttestedCols++;
-                }
-            }
-
             df += (numAttestedRows - 1) * (numAttestedCols - 1);
         }
 
@@ -33,6 +33,8 @@ import java.beans.PropertyChangeEvent;
 import java.beans.PropertyChangeListener;
 import java.text.NumberFormat;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 /**
  * GesSearch is an implentation of the GES algorithm, as specified in Chickering (2002) "Optimal structure
@@ -172,10 +174,23 @@ public final class Ges3 implements GraphSearch, GraphScorer {
     Set<Arrow>[][] lookupArrows;
     SortedSet<Arrow> sortedArrowsBackwards;
     Set<Arrow>[][] lookupArrowsBackwards;
-    Map<Node, Map<Set<Node>, Double>> scoreHash;
+    /**
+     * Local scores of (node, parent set) seen in the current search, keyed by the indices of hashIndices.
+     */
+    LocalScoreCache scoreHash;
     private Map<Node, Integer> nodesHash;
     private boolean storeGraphs = true;
 
+    /**
+     * Number of threads that score arrows in fes and bes, 1 for the serial search. The result does not depend on it.
+     */
+    private int numThreads = 1;
+
+    /**
+     * The pool for the arrow scoring while a search with numThreads > 1 runs, null otherwise.
+     */
+    private transient ForkJoinPool pool;
+
 
     //===========================CONSTRUCTORS=============================//
 
@@ -230,13 +245,9 @@ public final class Ges3 implements GraphSearch, GraphScorer {
                     "Please remove or impute missing values first.");
         }
 
-        Graph graph = new EdgeListGraph(new LinkedList<Node>(getVariables()));
-
-        scoreHash = new WeakHashMap<Node, Map<Set<Node>, Double>>();
+        Graph graph = new EndpointMatrixGraph(new LinkedList<Node>(getVariables()));
 
-        for (Node node : graph.getNodes()) {
-            scoreHash.put(node, new HashMap<Set<Node>, Double>());
-        }
+        scoreHash = new LocalScoreCache();
 
         fireGraphChange(graph);
         buildIndexing(graph);
@@ -250,15 +261,20 @@ public final class Ges3 implements GraphSearch, GraphScorer {
         System.out.println("zqian########## get the score for input Graph :"+score);
         //Oct 30, bug? Arrow implies non-ancestor
         //score=0;
-        storeGraph(new EdgeListGraph(graph), score);
+        storeGraph(new EndpointMatrixGraph(graph), score);
         
        // System.out.println("######## finished the storing");
+        startPool();
+        try {
         // Do forward search.
         score = fes(graph, score);
 //zqian
        System.out.println("Fes Search is Done, here is the final BDeu Score "+ score +"\n");
         // Do backward search.
         score = bes(graph, score);
+        } finally {
+            stopPool();
+        }
 //zqian        
  //       System.out.println("Bes Search is Done, here is  BDeu Score "+ score +"\n");
 //        score = fes(graph, score);
@@ -290,20 +306,16 @@ public final class Ges3 implements GraphSearch, GraphScorer {
         if (dataSet != null && DataUtils.containsMissingValue(dataSet)) {
             throw new IllegalArgumentException("Please remove or impute missing values first.");
         }
-        Graph graph = new EdgeListGraph(new LinkedList<Node>(getVariables()));
+        Graph graph = new EndpointMatrixGraph(new LinkedList<Node>(getVariables()));
 
-        scoreHash = new WeakHashMap<Node, Map<Set<Node>, Double>>();
-
-        for (Node node : graph.getNodes()) {
-            scoreHash.put(node, new HashMap<Set<Node>, Double>());
-        }
+        scoreHash = new LocalScoreCache();
 
         fireGraphChange(graph);
         buildIndexing(graph);
         addRequiredEdges(graph);
 
         double score = scoreGraph(graph);
-        storeGraph(new EdgeListGraph(graph), score);
+        storeGraph(new EndpointMatrixGraph(graph), score);
       
         System.out.println("NO FES search, score before BES :"+ score +"\n");
         // Do backward search.
@@ -327,7 +339,7 @@ public final class Ges3 implements GraphSearch, GraphScorer {
                     "All of the nodes must be in " + "the supplied data set.");
         }
 
-        Graph graph = new EdgeListGraph(nodes);
+        Graph graph = new EndpointMatrixGraph(nodes);
         buildIndexing(graph);
         addRequiredEdges(graph);
         double score = 0; //scoreGraph(graph);
@@ -445,6 +457,22 @@ public final class Ges3 implements GraphSearch, GraphScorer {
         this.storeGraphs = storeGraphs;
     }
 
+    public int getNumThreads() {
+        return numThreads;
+    }
+
+    /**
+     * Sets the number of threads that score the candidate arrows of the forward and backward search. Arrows are
+     * still added to the search in the serial order, so the resulting graph and score are the same for any number
+     * of threads.
+     */
+    public void setNumThreads(int numThreads) {
+        if (numThreads < 1) {
+            throw new IllegalArgumentException("Number of threads must be at least 1: " + numThreads);
+        }
+        this.numThreads = numThreads;
+    }
+
 
     //===========================PRIVATE METHODS========================//
 
@@ -492,12 +520,12 @@ public final class Ges3 implements GraphSearch, GraphScorer {
             }
 
             if (!findNaYX(_x, _y, graph).equals(arrow.getNaYX())) {
-                reevaluateFoward(graph, nodes, arrow);
+                reevaluateFoward(graph, nodes, arrow, Collections.<Node>emptySet());
                 continue;
             }
 
             if (!new HashSet<Node>(getTNeighbors(_x, _y, graph)).containsAll(arrow.getHOrT())) {
-                reevaluateFoward(graph, nodes, arrow);
+                reevaluateFoward(graph, nodes, arrow, Collections.<Node>emptySet());
                 continue;
             }
 
@@ -530,12 +558,13 @@ public final class Ges3 implements GraphSearch, GraphScorer {
             }
 
             score = score + bump;
+            Map<NodePair, Edge> before = edgesBetween(graph, x, y, t);
             insert(x, y, t, graph, score, true, bump);
-            rebuildPattern(graph);
+            Set<Node> changed = rebuildPattern(graph, before, x, y, t);
 
             storeGraph(graph, score);
 
-            reevaluateFoward(graph, nodes, arrow);
+            reevaluateFoward(graph, nodes, arrow, changed);
 
             if (getMaxEdgesAdded() != -1 && graph.getNumEdges() >= getMaxEdgesAdded()) {
                 break;
@@ -570,12 +599,12 @@ public final class Ges3 implements GraphSearch, GraphScorer {
             }
 
             if (!findNaYX(_x, _y, graph).equals(arrow.getNaYX())) {
-                reevaluateBackward(graph, nodes, arrow);
+                reevaluateBackward(graph, nodes, arrow, Collections.<Node>emptySet());
                 continue;
             }
 
             if (!new HashSet<Node>(getHNeighbors(_x, _y, graph)).containsAll(arrow.getHOrT())) {
-                reevaluateBackward(graph, nodes, arrow);
+                reevaluateBackward(graph, nodes, arrow, Collections.<Node>emptySet());
                 continue;
             }
 
@@ -589,12 +618,13 @@ public final class Ges3 implements GraphSearch, GraphScorer {
             double bump = arrow.getBump();
 
             score = score + bump;
+            Map<NodePair, Edge> before = edgesBetween(graph, x, y, h);
             delete(x, y, h, graph, score, true, bump);
-            rebuildPattern(graph);
+            Set<Node> changed = rebuildPattern(graph, before, x, y, h);
 
             storeGraph(graph, score);
 
-            reevaluateBackward(graph, nodes, arrow);
+            reevaluateBackward(graph, nodes, arrow, changed);
         }
 
         return score;
@@ -626,12 +656,12 @@ public final class Ges3 implements GraphSearch, GraphScorer {
             }
 
             if (!findNaYX(_x, _y, graph).equals(arrow.getNaYX())) {
-            	Pruning_reevaluateBackward(graph, nodes, arrow);
+            	Pruning_reevaluateBackward(graph, nodes, arrow, Collections.<Node>emptySet());
                 continue;
             }
 
             if (!new HashSet<Node>(getHNeighbors(_x, _y, graph)).containsAll(arrow.getHOrT())) {
-            	Pruning_reevaluateBackward(graph, nodes, arrow);
+            	Pruning_reevaluateBackward(graph, nodes, arrow, Collections.<Node>emptySet());
                 continue;
             }
 
@@ -645,58 +675,70 @@ public final class Ges3 implements GraphSearch, GraphScorer {
             double bump = arrow.getBump();
 
             score = score + bump;
+            Map<NodePair, Edge> before = edgesBetween(graph, x, y, h);
             delete(x, y, h, graph, score, true, bump);
-            Pruning_rebuildPattern(graph);
+            Set<Node> changed = rebuildPattern(graph, before, x, y, h);
 
             storeGraph(graph, score);
 
-            Pruning_reevaluateBackward(graph, nodes, arrow);
+            Pruning_reevaluateBackward(graph, nodes, arrow, changed);
         }
 
         return score;
     }
 
     
-    private void initializeArrowsForward(List<Node> nodes, Graph graph) {
-        Set<Node> empty = Collections.emptySet();
+    private void initializeArrowsForward(final List<Node> nodes, final Graph graph) {
+        List<int[]> pairs = new ArrayList<int[]>();
 
         for (int j = 0; j < nodes.size(); j++) {
-
             for (int i = 0; i < nodes.size(); i++) {
                 if (j == i) continue;
+                pairs.add(new int[]{i, j});
+            }
+        }
 
-                Node _x = nodes.get(i);
-                Node _y = nodes.get(j);
-
-                if (getKnowledge().edgeForbidden(_x.getName(),_y.getName())) {
-                    continue;
-                }
+        applyArrowsForward(pairs, scoreArrows(pairs, new ArrowScorer() {
+            @Override
+            public List<Arrow> score(int i, int j) {
+                return initialArrowForward(i, j, nodes, graph);
+            }
+        }));
+    }
 
-                Set<Node> naYX = empty;
-                Set<Node> t = empty;
+    /**
+     * The arrow i->j in the empty graph, if it improves the score; an empty list otherwise.
+     */
+    private List<Arrow> initialArrowForward(int i, int j, List<Node> nodes, Graph graph) {
+        Set<Node> empty = Collections.emptySet();
+        Node _x = nodes.get(i);
+        Node _y = nodes.get(j);
 
-                if (!validSetByKnowledge(_x, _y, t, true)) {
-                    continue;
-                }
+        if (getKnowledge().edgeForbidden(_x.getName(),_y.getName())) {
+            return Collections.emptyList();
+        }
 
-                double bump = insertEval(_x, _y, t, naYX, graph);
+        Set<Node> naYX = empty;
+        Set<Node> t = empty;
 
-                if (bump > minJump) {
-                    Arrow arrow = new Arrow(bump, i, j, t, naYX, nodes);
-                    lookupArrows[i][j] = new HashSet<Arrow>();
-                    sortedArrows.add(arrow);
-                    lookupArrows[i][j].add(arrow);
-                }
-            }
+        if (!validSetByKnowledge(_x, _y, t, true)) {
+            return Collections.emptyList();
         }
 
+        double bump = insertEval(_x, _y, t, naYX, graph);
+
+        if (bump > minJump) {
+            return Collections.singletonList(new Arrow(bump, i, j, t, naYX, nodes));
+        }
 
+        return Collections.emptyList();
     }
 
     private void initializeArrowsBackward(Graph graph) {
         List<Node> nodes = graph.getNodes();
         sortedArrowsBackwards = new TreeSet<Arrow>();
         lookupArrowsBackwards = new HashSet[nodes.size()][nodes.size()];
+        List<int[]> pairs = new ArrayList<int[]>();
         
 
         List<Edge> graphEdges = graph.getEdges();
@@ -715,14 +757,16 @@ public final class Ges3 implements GraphSearch, GraphScorer {
             }
             if (Edges.isDirectedEdge(edge)) {
             	
-            	calculateArrowsBackward(i, j, nodes, graph);
+            	pairs.add(new int[]{i, j});
                 
             } else {
-                calculateArrowsBackward(i, j, nodes, graph);
-                calculateArrowsBackward(j, i, nodes, graph);
+                pairs.add(new int[]{i, j});
+                pairs.add(new int[]{j, i});
             }
 
         }
+
+        calculateArrowsBackward(pairs, nodes, graph);
     }
 
     private void Pruning_initializeArrowsBackward(Graph graph) {
@@ -760,9 +804,14 @@ public final class Ges3 implements GraphSearch, GraphScorer {
         }
     }
 
-    private void reevaluateFoward(Graph graph, List<Node> nodes, Arrow arrow) {
+    /**
+     * Rescores the insertions next to the arrow and, since their scores depend on the parents and neighbors of their
+     * heads, the insertions into the nodes in changed.
+     */
+    private void reevaluateFoward(Graph graph, List<Node> nodes, Arrow arrow, Set<Node> changed) {
         Node x = nodes.get(arrow.getX());
         Node y = nodes.get(arrow.getY());
+        List<int[]> pairs = new ArrayList<int[]>();
 
         for (int _w = 0; _w < nodes.size(); _w++) {
             Node w = nodes.get(_w);
@@ -770,43 +819,81 @@ public final class Ges3 implements GraphSearch, GraphScorer {
             if (w == y) continue;
 
             if (!graph.isAdjacentTo(w, x)) {
-                calculateArrowsForward(_w, arrow.getX(), nodes, graph);
+                pairs.add(new int[]{_w, arrow.getX()});
 
                 if (graph.isAdjacentTo(w, y)) {
-                    calculateArrowsForward(arrow.getX(), _w, nodes, graph);
+                    pairs.add(new int[]{arrow.getX(), _w});
                 }
             }
 
             if (!graph.isAdjacentTo(w, y)) {
-                calculateArrowsForward(_w, arrow.getY(), nodes, graph);
+                pairs.add(new int[]{_w, arrow.getY()});
 
                 if (graph.isAdjacentTo(w, x)) {
-                    calculateArrowsForward(arrow.getY(), _w, nodes, graph);
+                    pairs.add(new int[]{arrow.getY(), _w});
                 }
             }
         }
+
+        for (Node v : changed) {
+            if (v == x || v == y) continue;
+            int _v = nodesHash.get(v);
+
+            for (int _w = 0; _w < nodes.size(); _w++) {
+                Node w = nodes.get(_w);
+                if (w == v || graph.isAdjacentTo(w, v)) continue;
+
+                // Already there as an arrow out of x or y.
+                if (w == x && graph.isAdjacentTo(v, y)) continue;
+                if (w == y && graph.isAdjacentTo(v, x)) continue;
+
+                pairs.add(new int[]{_w, _v});
+            }
+        }
+
+        calculateArrowsForward(pairs, nodes, graph);
     }
 
-    private void reevaluateBackward(Graph graph, List<Node> nodes, Arrow arrow) {
+    /**
+     * Rescores the deletions next to the arrow and those of the edges at the nodes in changed.
+     */
+    private void reevaluateBackward(Graph graph, List<Node> nodes, Arrow arrow, Set<Node> changed) {
         Node x = nodes.get(arrow.getX());
         Node y = nodes.get(arrow.getY());
+        List<int[]> pairs = new ArrayList<int[]>();
 
         for (Node w : graph.getAdjacentNodes(x)) {
             int _w = nodesHash.get(w);
 
-            calculateArrowsBackward(_w, arrow.getX(), nodes, graph);
-            calculateArrowsBackward(arrow.getX(), _w, nodes, graph);
+            pairs.add(new int[]{_w, arrow.getX()});
+            pairs.add(new int[]{arrow.getX(), _w});
         }
 
         for (Node w : graph.getAdjacentNodes(y)) {
             int _w = nodesHash.get(w);
 
-            calculateArrowsBackward(_w, arrow.getX(), nodes, graph);
-            calculateArrowsBackward(arrow.getX(), _w, nodes, graph);
+            pairs.add(new int[]{_w, arrow.getX()});
+            pairs.add(new int[]{arrow.getX(), _w});
+        }
+
+        for (Node v : changed) {
+            if (v == x) continue;
+            int _v = nodesHash.get(v);
+
+            for (Node w : graph.getAdjacentNodes(v)) {
+                if (w == x) continue;
+                int _w = nodesHash.get(w);
+                if (_w < _v && changed.contains(w)) continue;
+
+                pairs.add(new int[]{_w, _v});
+                pairs.add(new int[]{_v, _w});
+            }
         }
+
+        calculateArrowsBackward(pairs, nodes, graph);
     }
 
-    private void Pruning_reevaluateBackward(Graph graph, List<Node> nodes, Arrow arrow) {
+    private void Pruning_reevaluateBackward(Graph graph, List<Node> nodes, Arrow arrow, Set<Node> changed) {
         Node x = nodes.get(arrow.getX());
         Node y = nodes.get(arrow.getY());
 
@@ -823,35 +910,68 @@ public final class Ges3 implements GraphSearch, GraphScorer {
             calculateArrowsBackward(_w, arrow.getX(), nodes, graph);
             calculateArrowsBackward(arrow.getX(), _w, nodes, graph);
         }
+
+        for (Node v : changed) {
+            if (v == x) continue;
+            int _v = nodesHash.get(v);
+
+            for (Node w : graph.getAdjacentNodes(v)) {
+                if (w == x) continue;
+                int _w = nodesHash.get(w);
+                if (_w < _v && changed.contains(w)) continue;
+
+                calculateArrowsBackward(_w, _v, nodes, graph);
+                calculateArrowsBackward(_v, _w, nodes, graph);
+            }
+        }
     }
 
     
-    private void calculateArrowsForward(int i, int j, List<Node> nodes, Graph graph) {
+    private void calculateArrowsForward(final List<int[]> pairs, final List<Node> nodes, final Graph graph) {
+        applyArrowsForward(pairs, scoreArrows(pairs, new ArrowScorer() {
+            @Override
+            public List<Arrow> score(int i, int j) {
+                return arrowsForward(i, j, nodes, graph);
+            }
+        }));
+    }
+
+    private void calculateArrowsBackward(final List<int[]> pairs, final List<Node> nodes, final Graph graph) {
+        applyArrowsBackward(pairs, scoreArrows(pairs, new ArrowScorer() {
+            @Override
+            public List<Arrow> score(int i, int j) {
+                return arrowsBackward(i, j, nodes, graph);
+            }
+        }));
+    }
+
+    private void calculateArrowsBackward(int i, int j, List<Node> nodes, Graph graph) {
+        applyArrows(i, j, arrowsBackward(i, j, nodes, graph), sortedArrowsBackwards, lookupArrowsBackwards);
+    }
+
+    /**
+     * The arrows i->j that improve the score, or null if i->j is not a candidate at all (and the arrows found before
+     * for i->j stay). Only reads the graph and the search state, so it can run on several pairs at once.
+     */
+    private List<Arrow> arrowsForward(int i, int j, List<Node> nodes, Graph graph) {
         if (i == j) {
-            return;
+            return null;
         }
 
         Node _x = nodes.get(i);
         Node _y = nodes.get(j);
 
         if (graph.isAdjacentTo(_x, _y)) {
-            return;
+            return null;
         }
 
         if (getKnowledge().edgeForbidden(_x.getName(),
                 _y.getName())) {
-            return;
+            return null;
         }
 
         Set<Node> naYX = findNaYX(_x, _y, graph);
-
-        if (lookupArrows[i][j] != null) {
-            for (Arrow arrow : lookupArrows[i][j]) {
-                sortedArrows.remove(arrow);
-            }
-
-            lookupArrows[i][j] = null;
-        }
+        List<Arrow> arrows = new ArrayList<Arrow>();
 
         List<Node> tNeighbors = getTNeighbors(_x, _y, graph);
         List<Set<Node>> tSubsets = powerSet(tNeighbors);
@@ -867,42 +987,35 @@ public final class Ges3 implements GraphSearch, GraphScorer {
 //            System.out.println(arrow);
 
             if (bump > minJump) {
-                if (lookupArrows[i][j] == null) {
-                    lookupArrows[i][j] = new HashSet<Arrow>();
-                }
-                sortedArrows.add(arrow);
-                lookupArrows[i][j].add(arrow);
+                arrows.add(arrow);
             }
         }
+
+        return arrows;
     }
 
-    private void calculateArrowsBackward(int i, int j, List<Node> nodes, Graph graph) {
+    /**
+     * Same as arrowsForward for the removal of i->j.
+     */
+    private List<Arrow> arrowsBackward(int i, int j, List<Node> nodes, Graph graph) {
         if (i == j) {
-            return;
+            return null;
         }
 
         Node _x = nodes.get(i);
         Node _y = nodes.get(j);
 
         if (!graph.isAdjacentTo(_x, _y)) {
-            return;
+            return null;
         }
 
         if (!getKnowledge().noEdgeRequired(_x.getName(),
                 _y.getName())) {
-            return;
+            return null;
         }
 
         Set<Node> naYX = findNaYX(_x, _y, graph);
-
-
-        if (lookupArrowsBackwards[i][j] != null) {
-            for (Arrow arrow : lookupArrowsBackwards[i][j]) {
-                sortedArrowsBackwards.remove(arrow);
-            }
-
-            lookupArrowsBackwards[i][j] = null;
-        }
+        List<Arrow> arrows = new ArrayList<Arrow>();
 
         List<Node> hNeighbors = getHNeighbors(_x, _y, graph);
         List<Set<Node>> hSubsets = powerSet(hNeighbors);
@@ -914,14 +1027,108 @@ public final class Ges3 implements GraphSearch, GraphScorer {
 //            System.out.println("Calculate backwards " + arrow);
 
             if (bump > minNeg) {
-                if (lookupArrowsBackwards[i][j] == null) {
-                    lookupArrowsBackwards[i][j] = new HashSet<Arrow>();
-                }
+                arrows.add(arrow);
+            }
+        }
 
-                sortedArrowsBackwards.add(arrow);
-                lookupArrowsBackwards[i][j].add(arrow);
+        return arrows;
+    }
+
+    private void applyArrowsForward(List<int[]> pairs, List<List<Arrow>> arrows) {
+        for (int k = 0; k < pairs.size(); k++) {
+            applyArrows(pairs.get(k)[0], pairs.get(k)[1], arrows.get(k), sortedArrows, lookupArrows);
+        }
+    }
+
+    private void applyArrowsBackward(List<int[]> pairs, List<List<Arrow>> arrows) {
+        for (int k = 0; k < pairs.size(); k++) {
+            applyArrows(pairs.get(k)[0], pairs.get(k)[1], arrows.get(k), sortedArrowsBackwards, lookupArrowsBackwards);
+        }
+    }
+
+    /**
+     * Replaces the arrows of i->j in sorted and lookup by arrows (nothing happens if arrows is null).
+     */
+    private static void applyArrows(int i, int j, List<Arrow> arrows, SortedSet<Arrow> sorted, Set<Arrow>[][] lookup) {
+        if (arrows == null) {
+            return;
+        }
+
+        if (lookup[i][j] != null) {
+            for (Arrow arrow : lookup[i][j]) {
+                sorted.remove(arrow);
+            }
+
+            lookup[i][j] = null;
+        }
+
+        for (Arrow arrow : arrows) {
+            if (lookup[i][j] == null) {
+                lookup[i][j] = new HashSet<Arrow>();
+            }
+            sorted.add(arrow);
+            lookup[i][j].add(arrow);
+        }
+    }
+
+    private interface ArrowScorer {
+        List<Arrow> score(int i, int j);
+    }
+
+    /**
+     * scorer.score for every pair, in the order of pairs. With numThreads > 1 the pairs are scored on the fork-join
+     * pool; the graph is not changed while they are scored, and the results are applied in the order of pairs
+     * afterwards, which is the order of the serial search.
+     */
+    private List<List<Arrow>> scoreArrows(final List<int[]> pairs, final ArrowScorer scorer) {
+        final List<List<Arrow>> results = new ArrayList<List<Arrow>>(Collections.<List<Arrow>>nCopies(pairs.size(), null));
+
+        if (pool == null || pairs.size() < 2) {
+            for (int k = 0; k < pairs.size(); k++) {
+                results.set(k, scorer.score(pairs.get(k)[0], pairs.get(k)[1]));
+            }
+            return results;
+        }
+
+        final int chunk = Math.max(1, pairs.size() / (8 * numThreads));
+
+        class ScoreRange extends RecursiveAction {
+            private static final long serialVersionUID = 1L;
+            private final int from, to;
+
+            ScoreRange(int from, int to) {
+                this.from = from;
+                this.to = to;
+            }
+
+            @Override
+            protected void compute() {
+                if (to - from <= chunk) {
+                    for (int k = from; k < to; k++) {
+                        results.set(k, scorer.score(pairs.get(k)[0], pairs.get(k)[1]));
+                    }
+                } else {
+                    int mid = (from + to) >>> 1;
+                    invokeAll(new ScoreRange(from, mid), new ScoreRange(mid, to));
+                }
             }
         }
+
+        pool.invoke(new ScoreRange(0, pairs.size()));
+        return results;
+    }
+
+    private void startPool() {
+        if (numThreads > 1) {
+            pool = new ForkJoinPool(numThreads);
+        }
+    }
+
+    private void stopPool() {
+        if (pool != null) {
+            pool.shutdown();
+            pool = null;
+        }
     }
 
     private void Pruning_calculateArrowsBackward(int i, int j, List<Node> nodes, Graph graph) {
@@ -1457,36 +1664,64 @@ public final class Ges3 implements GraphSearch, GraphScorer {
     }
 
     /**
-     * Completes a pattern that was modified by an insertion/deletion operator Based on the algorithm described on
-     * Appendix C of (Chickering, 2002).
+     * The edges (null for none) between x and y and between each of them and the nodes of subset: the pairs whose
+     * edges an insertion or deletion of x and y with subset as T or H changes.
      */
-    private void rebuildPattern(Graph graph) {
-        SearchGraphUtils.basicPattern(graph);
-        addRequiredEdges(graph);
-        pdagWithBk(graph, getKnowledge());
-
-        TetradLogger.getInstance().log("rebuiltPatterns", "Rebuilt pattern = " + graph);
-    }
+    static Map<NodePair, Edge> edgesBetween(Graph graph, Node x, Node y, Set<Node> subset) {
+        Map<NodePair, Edge> edges = new HashMap<NodePair, Edge>();
+        edges.put(new NodePair(x, y), graph.getEdge(x, y));
 
-    private void Pruning_rebuildPattern(Graph graph) {
-        SearchGraphUtils.basicPattern(graph);
-        addRequiredEdges(graph);
-        pdagWithBk(graph, getKnowledge());
+        for (Node node : subset) {
+            edges.put(new NodePair(x, node), graph.getEdge(x, node));
+            edges.put(new NodePair(y, node), graph.getEdge(y, node));
+        }
 
-        TetradLogger.getInstance().log("rebuiltPatterns", "Rebuilt pattern = " + graph);
+        return edges;
     }
-    
+
     /**
-     * Fully direct a graph with background knowledge. I am not sure how to adapt Chickering's suggested algorithm above
-     * (dagToPdag) to incorporate background knowledge, so I am also implementing this algorithm based on Meek's 1995
-     * UAI paper. Notice it is the same implemented in PcSearch. </p> *IMPORTANT!* *It assumes all colliders are
-     * oriented, as well as arrows dictated by time order.*
+     * Completes a pattern that was modified by an insertion/deletion operator Based on the algorithm described on
+     * Appendix C of (Chickering, 2002). Only the part that the operator can have changed is redone: the edges into
+     * x, y, the nodes of subset and the nodes adjacent to both x and y are reverted to the unshielded colliders, as
+     * are the edges below them where an edge was undirected, and Meek's rules are applied from there.
+     *
+     * @param before the edges of the pairs the operator changed, as they were before it; see edgesBetween.
+     * @return the nodes whose edges are not the same as before the operator, i.e. whose parents or neighbors changed.
      */
-    private void pdagWithBk(Graph graph, Knowledge knowledge) {
+    Set<Node> rebuildPattern(Graph graph, Map<NodePair, Edge> before, Node x, Node y, Set<Node> subset) {
+        List<Node> common = graph.getAdjacentNodes(x);
+        common.retainAll(graph.getAdjacentNodes(y));
+
+        Set<Node> touched = new HashSet<Node>(subset);
+        touched.add(x);
+        touched.add(y);
+        touched.addAll(common);
+
         MeekRules rules = new MeekRules();
         rules.setAggressivelyPreventCycles(this.aggressivelyPreventCycles);
-        rules.setKnowledge(knowledge);
-        rules.orientImplied(graph);
+        rules.setKnowledge(getKnowledge());
+        rules.revertToUnshieldedColliders(touched, graph);
+        addRequiredEdges(graph);
+        rules.orientImplied(graph, touched);
+
+        // The rules record the edge of each pair they change as it was before their first change; for the pairs
+        // the operator changed, that is the edge before the operator.
+        Map<NodePair, Edge> edgesBefore = new HashMap<NodePair, Edge>(rules.getEdgesBefore());
+        edgesBefore.putAll(before);
+        Set<Node> changed = new HashSet<Node>();
+
+        for (NodePair pair : edgesBefore.keySet()) {
+            Edge edge = graph.getEdge(pair.getFirst(), pair.getSecond());
+            Edge edgeBefore = edgesBefore.get(pair);
+
+            if (edge == null ? edgeBefore != null : !edge.equals(edgeBefore)) {
+                changed.add(pair.getFirst());
+                changed.add(pair.getSecond());
+            }
+        }
+
+        TetradLogger.getInstance().log("rebuiltPatterns", "Rebuilt pattern = " + graph);
+        return changed;
     }
 
     private void setDataSet(DataSet dataSet) {
@@ -1583,47 +1818,32 @@ public final class Ges3 implements GraphSearch, GraphScorer {
     private double scoreGraphChange(Node y, Set<Node> parents1,Set<Node> parents2) {
         int yIndex = hashIndices.get(y);
 
-        Double score1 = scoreHash.get(y).get(parents1);
-
-        if (score1 == null) {
-            int parentIndices1[] = new int[parents1.size()];
-
-            int count = 0;
-            for (Node aParents1 : parents1) {
-                parentIndices1[count++] = (hashIndices.get(aParents1));
-            }
+        // That is, the score for the variable set that contains x minus the score
+        // for the variable set that does not contain x.
+        return cachedLocalScore(yIndex, parents1) - cachedLocalScore(yIndex, parents2);
+    }
 
-            if (isDiscrete()) {
-                score1 = localDiscreteScore(yIndex, parentIndices1);
-            } else {
-                score1 = localSemScore(yIndex, parentIndices1);
-            }
+    private double cachedLocalScore(int yIndex, Set<Node> parents) {
+        int parentIndices[] = new int[parents.size()];
 
-            scoreHash.get(y).put(parents1, score1);
+        int count = 0;
+        for (Node parent : parents) {
+            parentIndices[count++] = (hashIndices.get(parent));
         }
 
-        Double score2 = scoreHash.get(y).get(parents2);
-
-        if (score2 == null) {
-            int parentIndices2[] = new int[parents2.size()];
-
-            int count2 = 0;
-            for (Node aParents2 : parents2) {
-                parentIndices2[count2++] = (hashIndices.get(aParents2));
-            }
+        double score = scoreHash.get(yIndex, parentIndices);
 
+        if (Double.isNaN(score)) {
             if (isDiscrete()) {
-                score2 = localDiscreteScore(yIndex, parentIndices2);
+                score = localDiscreteScore(yIndex, parentIndices);
             } else {
-                score2 = localSemScore(yIndex, parentIndices2);
+                score = localSemScore(yIndex, parentIndices);
             }
 
-            scoreHash.get(y).put(parents2, score2);
+            scoreHash.add(yIndex, parentIndices, score);
         }
 
-        // That is, the score for the variable set that contains x minus the score
-        // for the variable set that does not contain x.
-        return score1 - score2;
+        return score;
     }
 
     /**
@@ -1801,7 +2021,7 @@ public final class Ges3 implements GraphSearch, GraphScorer {
 
         if (topGraphs.isEmpty() || score > topGraphs.first().getScore()) { // compare with the lowest score
         	//Oct 30, bug? Arrow implies non-ancestor 
-        	Graph graphCopy = new EdgeListGraph(graph);
+        	Graph graphCopy = new EndpointMatrixGraph(graph);
 
             //System.out.println("Storing " + score + " " + graphCopy);
             if (topGraphs.size() > getNumPatternsToStore()) {  //should also check the size  before adding 
@@ -30,7 +30,9 @@ import edu.cmu.tetrad.util.TetradLogger;
 import java.text.NumberFormat;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Arrays;
 
 /**
@@ -54,6 +56,16 @@ public final class IndTestChiSquare implements IndependenceTest {
      */
     private final List<Node> variables;
 
+    /**
+     * The index of each variable in the data set.
+     */
+    private final Map<Node, Integer> indices;
+
+    /**
+     * The indices of x, y, z1, ..., zn of the current test. (Reused.)
+     */
+    private int[] testIndices = new int[0];
+
     /**
      * The dataset of discrete variables.
      */
@@ -104,6 +116,11 @@ public final class IndTestChiSquare implements IndependenceTest {
         this.dataSet = dataSet;
 
         this.variables = new ArrayList<Node>(dataSet.getVariables());
+        this.indices = new HashMap<Node, Integer>();
+
+        for (int i = 0; i < this.variables.size(); i++) {
+            this.indices.put(this.variables.get(i), i);
+        }
 
         int[] numVals = new int[this.variables.size()];
 
@@ -197,13 +214,15 @@ public final class IndTestChiSquare implements IndependenceTest {
 
         // For testing x, y given z1,...,zn, set up an array of length
         // n + 2 containing the indices of these variables in order.
-        int[] testIndices = new int[2 + z.size()];
+        if (testIndices.length != 2 + z.size()) {
+            testIndices = new int[2 + z.size()];
+        }
 
-        testIndices[0] = variables.indexOf(x);
-        testIndices[1] = variables.indexOf(y);
+        testIndices[0] = indexOf(x);
+        testIndices[1] = indexOf(y);
 
         for (int i = 0; i < z.size(); i++) {
-            testIndices[i + 2] = variables.indexOf(z.get(i));
+            testIndices[i + 2] = indexOf(z.get(i));
         }
 
         // the following is lame code--need a better test
@@ -220,6 +239,10 @@ public final class IndTestChiSquare implements IndependenceTest {
         this.pValue = result.getPValue();
 
 
+        if (!TetradLogger.getInstance().isLogging()) {
+            return result.isIndep();
+        }
+
         if (result.isIndep()) {
             StringBuilder sb = new StringBuilder();
             sb.append("INDEPENDENCE ACCEPTED: ");
@@ -392,7 +415,13 @@ public final class IndTestChiSquare implements IndependenceTest {
 	public DataSet getData() {
         return dataSet;
     }
-}
-
-
 
+    /**
+     * Returns the index of the variable in the data set, -1 if it is not one of its variables. Nodes that are only
+     * equal to a variable (not the same class) are looked up in the list.
+     */
+    private int indexOf(Node variable) {
+        Integer index = indices.get(variable);
+        return index == null ? variables.indexOf(variable) : index;
+    }
+}
@@ -21,46 +21,387 @@
 
 package edu.cmu.tetrad.search;
 
-import org.apache.commons.collections.map.MultiKeyMap;
-
-import java.util.HashSet;
-import java.util.Set;
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.StampedLock;
 
 /**
  * Stores a map from (variable, parents) to score.
+ * <p>
+ * The parents are a set, so the key is the variable followed by its sorted parent indices. Keys are packed into
+ * int arrays and scores are kept as primitive doubles in open addressing tables, so neither get nor add allocates
+ * (apart from growing the tables). The cache is split into segments by hash; a lookup is an optimistic read
+ * without locking, writers lock only their segment, so several search threads can share one cache.
+ * <p>
+ * The memory used by the tables can be capped with setMaxBytes (or setDefaultMaxBytes for caches created
+ * afterwards). A segment that goes over its share of the cap is emptied.
  *
  * @author Joseph Ramsey
  */
 public class LocalScoreCache {
-    private MultiKeyMap map;
+    private static final int NUM_SEGMENTS = 16;
+
+    private static volatile long defaultMaxBytes = Long.MAX_VALUE;
+
+    private final Segment[] segments = new Segment[NUM_SEGMENTS];
+    private volatile long maxBytes;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    private final ThreadLocal<int[]> sortBuffer = new ThreadLocal<int[]>() {
+        @Override
+        protected int[] initialValue() {
+            return new int[16];
+        }
+    };
 
     public LocalScoreCache() {
-        map = new MultiKeyMap();
+        this(defaultMaxBytes);
     }
 
-    public void add(int variable, int[] parents, double score) {
-        Set<Integer> _parents = new HashSet<Integer>(parents.length);
-
-        for (int parent : parents) {
-            _parents.add(parent);
+    /**
+     * @param maxBytes upper bound on the memory used by the cache tables.
+     */
+    public LocalScoreCache(long maxBytes) {
+        setMaxBytes(maxBytes);
+        for (int i = 0; i < NUM_SEGMENTS; i++) {
+            segments[i] = new Segment();
         }
+    }
 
-        map.put(variable, _parents, score);
+    public void add(int variable, int[] parents, double score) {
+        int[] sorted = sorted(parents);
+        int hash = hash(variable, sorted, parents.length);
+        Segment segment = segmentFor(hash);
+        if (segment.put(hash, variable, sorted, parents.length, score, maxBytes / NUM_SEGMENTS)) {
+            evictions.increment();
+        }
     }
 
+    /**
+     * @return the score stored for (variable, parents), or Double.NaN if there is none.
+     */
     public double get(int variable, int[] parents) {
-        Set<Integer> _parents = new HashSet<Integer>(parents.length);
+        int[] sorted = sorted(parents);
+        int hash = hash(variable, sorted, parents.length);
+        double score = segmentFor(hash).get(hash, variable, sorted, parents.length);
 
-        for (int parent : parents) {
-            _parents.add(parent);
+        if (Double.isNaN(score)) {
+            misses.increment();
+        } else {
+            hits.increment();
         }
 
-        Double _score = (Double) map.get(variable, _parents);
-        return _score == null ? Double.NaN : (_score);
+        return score;
     }
 
     public void clear() {
-        map.clear();
+        for (Segment segment : segments) {
+            segment.clear();
+        }
     }
-}
 
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * @return the number of times a segment was emptied because the cache went over its memory cap.
+     */
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    /**
+     * @return the memory used by the cache tables, in bytes.
+     */
+    public long getMemoryUsage() {
+        long bytes = 0;
+        for (Segment segment : segments) {
+            bytes += segment.memoryUsage();
+        }
+        return bytes;
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    public void setMaxBytes(long maxBytes) {
+        if (maxBytes <= 0) {
+            throw new IllegalArgumentException("Cache size must be positive: " + maxBytes);
+        }
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Sets the memory cap of caches created from now on.
+     */
+    public static void setDefaultMaxBytes(long maxBytes) {
+        if (maxBytes <= 0) {
+            throw new IllegalArgumentException("Cache size must be positive: " + maxBytes);
+        }
+        defaultMaxBytes = maxBytes;
+    }
+
+    public static long getDefaultMaxBytes() {
+        return defaultMaxBytes;
+    }
+
+    @Override
+    public String toString() {
+        return "LocalScoreCache: " + size() + " scores, " + getMemoryUsage() + " bytes, " + getHits() + " hits, "
+                + getMisses() + " misses, " + getEvictions() + " evictions";
+    }
+
+    //==============================PRIVATE METHODS=========================//
+
+    /**
+     * The parents in ascending order, either the array itself or a per thread buffer.
+     */
+    private int[] sorted(int[] parents) {
+        boolean ascending = true;
+        for (int i = 1; i < parents.length && ascending; i++) {
+            ascending = parents[i - 1] < parents[i];
+        }
+        if (ascending) {
+            return parents;
+        }
+
+        int[] buffer = sortBuffer.get();
+        if (buffer.length < parents.length) {
+            buffer = new int[Math.max(parents.length, 2 * buffer.length)];
+            sortBuffer.set(buffer);
+        }
+        System.arraycopy(parents, 0, buffer, 0, parents.length);
+        Arrays.sort(buffer, 0, parents.length);
+        return buffer;
+    }
+
+    private static int hash(int variable, int[] parents, int numParents) {
+        int h = variable * 0x9E3779B9;
+        for (int i = 0; i < numParents; i++) {
+            h = 31 * h + parents[i];
+        }
+        h ^= h >>> 16;
+        h *= 0x85EBCA6B;
+        h ^= h >>> 13;
+        return h;
+    }
+
+    private Segment segmentFor(int hash) {
+        return segments[(hash >>> 28) & (NUM_SEGMENTS - 1)];
+    }
+
+    /**
+     * One open addressing table. Entry i is empty if offsets[i] == -1, otherwise keys[offsets[i]] is the variable,
+     * keys[offsets[i] + 1] the number of parents, followed by the parents.
+     */
+    private static final class Segment {
+        private static final int INITIAL_CAPACITY = 64;
+
+        private final StampedLock lock = new StampedLock();
+
+        private int[] offsets;
+        private int[] hashes;
+        private double[] values;
+        private int[] keys;
+        private int keysUsed;
+        private int size;
+
+        Segment() {
+            reset();
+        }
+
+        double get(int hash, int variable, int[] parents, int numParents) {
+            long stamp = lock.tryOptimisticRead();
+            if (stamp != 0) {
+                double score = find(hash, variable, parents, numParents);
+                if (lock.validate(stamp)) {
+                    return score;
+                }
+            }
+
+            stamp = lock.readLock();
+            try {
+                return find(hash, variable, parents, numParents);
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+
+        /**
+         * @return true if the segment had to be emptied to stay below maxBytes.
+         */
+        boolean put(int hash, int variable, int[] parents, int numParents, double score, long maxBytes) {
+            long stamp = lock.writeLock();
+            try {
+                int slot = slot(hash, variable, parents, numParents);
+                if (offsets[slot] != -1) {
+                    values[slot] = score;
+                    return false;
+                }
+
+                // memory after this insert, counting the tables that have to grow for it
+                boolean grow = 4 * (size + 1) > 3 * offsets.length;
+                int keysNeeded = keysUsed + numParents + 2;
+                long bytes = 16L * (grow ? 2 * offsets.length : offsets.length)
+                        + 4L * (keysNeeded > keys.length ? Math.max(2 * keys.length, keysNeeded) : keys.length);
+
+                boolean evicted = false;
+                if (bytes > maxBytes && size > 0) {
+                    reset();
+                    evicted = true;
+                } else if (grow) {
+                    rehash(2 * offsets.length);
+                }
+                slot = slot(hash, variable, parents, numParents);
+
+                if (keysUsed + numParents + 2 > keys.length) {
+                    keys = Arrays.copyOf(keys, Math.max(2 * keys.length, keysUsed + numParents + 2));
+                }
+                keys[keysUsed] = variable;
+                keys[keysUsed + 1] = numParents;
+                System.arraycopy(parents, 0, keys, keysUsed + 2, numParents);
+
+                hashes[slot] = hash;
+                values[slot] = score;
+                offsets[slot] = keysUsed;
+                keysUsed += numParents + 2;
+                size++;
+                return evicted;
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+
+        void clear() {
+            long stamp = lock.writeLock();
+            try {
+                reset();
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+
+        int size() {
+            long stamp = lock.readLock();
+            try {
+                return size;
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+
+        long memoryUsage() {
+            return 16L * offsets.length + 4L * keys.length;
+        }
+
+        /**
+         * Lookup that is safe to run without the lock: it may see a table that is being changed, in which case the
+         * result is thrown away by the caller, but it never leaves the bounds of the arrays.
+         */
+        private double find(int hash, int variable, int[] parents, int numParents) {
+            int[] offsets = this.offsets;
+            int[] hashes = this.hashes;
+            double[] values = this.values;
+            int[] keys = this.keys;
+            int capacity = offsets.length;
+            if (hashes.length != capacity || values.length != capacity) {
+                return Double.NaN;
+            }
+
+            int slot = hash & (capacity - 1);
+            for (int probe = 0; probe < capacity; probe++) {
+                int offset = offsets[slot];
+                if (offset == -1) {
+                    return Double.NaN;
+                }
+                if (hashes[slot] == hash && offset >= 0 && offset + numParents + 2 <= keys.length
+                        && matches(keys, offset, variable, parents, numParents)) {
+                    return values[slot];
+                }
+                slot = (slot + 1) & (capacity - 1);
+            }
+            return Double.NaN;
+        }
+
+        /**
+         * The slot of the key, or the empty slot where it would go. Needs the lock.
+         */
+        private int slot(int hash, int variable, int[] parents, int numParents) {
+            int slot = hash & (offsets.length - 1);
+            while (offsets[slot] != -1) {
+                if (hashes[slot] == hash && matches(keys, offsets[slot], variable, parents, numParents)) {
+                    return slot;
+                }
+                slot = (slot + 1) & (offsets.length - 1);
+            }
+            return slot;
+        }
+
+        private static boolean matches(int[] keys, int offset, int variable, int[] parents, int numParents) {
+            if (keys[offset] != variable || keys[offset + 1] != numParents) {
+                return false;
+            }
+            for (int i = 0; i < numParents; i++) {
+                if (keys[offset + 2 + i] != parents[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private void rehash(int capacity) {
+            int[] oldOffsets = offsets;
+            int[] oldHashes = hashes;
+            double[] oldValues = values;
+
+            int[] newOffsets = new int[capacity];
+            int[] newHashes = new int[capacity];
+            double[] newValues = new double[capacity];
+            Arrays.fill(newOffsets, -1);
+
+            for (int i = 0; i < oldOffsets.length; i++) {
+                if (oldOffsets[i] == -1) {
+                    continue;
+                }
+                int slot = oldHashes[i] & (capacity - 1);
+                while (newOffsets[slot] != -1) {
+                    slot = (slot + 1) & (capacity - 1);
+                }
+                newOffsets[slot] = oldOffsets[i];
+                newHashes[slot] = oldHashes[i];
+                newValues[slot] = oldValues[i];
+            }
+
+            offsets = newOffsets;
+            hashes = newHashes;
+            values = newValues;
+        }
+
+        private void reset() {
+            offsets = new int[INITIAL_CAPACITY];
+            Arrays.fill(offsets, -1);
+            hashes = new int[INITIAL_CAPACITY];
+            values = new double[INITIAL_CAPACITY];
+            keys = new int[4 * INITIAL_CAPACITY];
+            keysUsed = 0;
+            size = 0;
+        }
+    }
+}
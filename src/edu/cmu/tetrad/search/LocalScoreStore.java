@@ -0,0 +1,368 @@
+package edu.cmu.tetrad.search;
+
+import edu.cmu.tetrad.data.DataSet;
+import edu.cmu.tetrad.data.DiscreteVariable;
+import edu.cmu.tetrad.graph.Node;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Local scores kept on disk, so they are shared by all searches of a run and by later runs.
+ * <p>
+ * A score is keyed by the fingerprint of the data set it was computed from (see fingerprint), the name of the
+ * variable, the names of its parents as a set, and the sample and structure priors. The key is stored as a 128 bit
+ * hash. Entries live in open addressing tables in memory mapped files, so a rerun on the same CT table, or with
+ * priors that were tried before, reads the scores instead of counting the families again.
+ * <p>
+ * The first table is in the file of the store, when a table is 3/4 full the next one, of twice the size, is added
+ * in file.1, file.2, ... A lookup asks the newest table first. No file is ever deleted, renamed or resized while it is
+ * mapped, which Windows does not allow.
+ * <p>
+ * The store sits behind the in-memory caches (LocalScoreCache), it is only asked on their misses. Lookups share a
+ * read lock and run in parallel, put takes the write lock.
+ */
+public class LocalScoreStore {
+    private static final int MAGIC = 0x424c5353;
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 32;
+    private static final int ENTRY_BYTES = 24;
+    private static final int INITIAL_CAPACITY = 1 << 16;
+
+    /**
+     * Largest table that fits into one mapped buffer.
+     */
+    private static final int MAX_CAPACITY = 1 << 26;
+
+    private static volatile LocalScoreStore defaultStore;
+
+    private final File file;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final AtomicLong hits = new AtomicLong(), misses = new AtomicLong();
+
+    /**
+     * The tables, oldest first; only the last one takes new entries.
+     */
+    private final List<Table> tables = new ArrayList<Table>();
+    private boolean full, closed;
+
+    /**
+     * Opens the store in file, creating it if it does not exist or is not a store of this version.
+     */
+    public LocalScoreStore(File file) throws IOException {
+        this.file = file;
+        if (file.getParentFile() != null) {
+            file.getParentFile().mkdirs();
+        }
+        for (int i = 0; ; i++) {
+            File segment = segment(i);
+            if (i > 0 && !segment.exists()) {
+                break;
+            }
+            if (!isValid(segment, INITIAL_CAPACITY << i)) {
+                tables.add(new Table(segment, INITIAL_CAPACITY << i));
+                // the tables after an invalid one belong to an older store
+                for (int j = i + 1; segment(j).exists(); j++) {
+                    segment(j).delete();
+                }
+                break;
+            }
+            tables.add(new Table(segment, 0));
+        }
+    }
+
+    /**
+     * The store used by BDeuScore, null if there is none.
+     */
+    public static LocalScoreStore getDefault() {
+        return defaultStore;
+    }
+
+    public static void setDefault(LocalScoreStore store) {
+        defaultStore = store;
+    }
+
+    /**
+     * Writes the default store to disk and closes it.
+     */
+    public static void closeDefault() throws IOException {
+        LocalScoreStore store = defaultStore;
+        defaultStore = null;
+        if (store != null) {
+            store.close();
+        }
+    }
+
+    /**
+     * @return the stored score, or Double.NaN if there is none.
+     */
+    public double get(long fingerprint, String variable, String[] parents, double samplePrior,
+                      double structurePrior) {
+        long[] key = key(fingerprint, variable, parents, samplePrior, structurePrior);
+        lock.readLock().lock();
+        try {
+            for (int i = tables.size() - 1; i >= 0 && !closed; i--) {
+                Table table = tables.get(i);
+                int offset = table.offset(table.slot(key[0], key[1]));
+                if (table.matches(offset, key[0], key[1])) {
+                    hits.incrementAndGet();
+                    return table.buffer.getDouble(offset + 16);
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        misses.incrementAndGet();
+        return Double.NaN;
+    }
+
+    public void put(long fingerprint, String variable, String[] parents, double samplePrior,
+                    double structurePrior, double score) throws IOException {
+        long[] key = key(fingerprint, variable, parents, samplePrior, structurePrior);
+        lock.writeLock().lock();
+        try {
+            if (closed) {
+                return;
+            }
+            for (Table table : tables) {
+                int offset = table.offset(table.slot(key[0], key[1]));
+                if (table.matches(offset, key[0], key[1])) {
+                    table.buffer.putDouble(offset + 16, score);
+                    return;
+                }
+            }
+            Table table = tables.get(tables.size() - 1);
+            if (4 * (table.size + 1) > 3L * table.capacity) {
+                if (2 * table.capacity > MAX_CAPACITY) {
+                    if (!full) {
+                        System.out.println("Local score store " + file + " is full, new scores are not stored");
+                        full = true;
+                    }
+                    return;
+                }
+                table.buffer.force();
+                table = new Table(segment(tables.size()), 2 * table.capacity);
+                tables.add(table);
+            }
+            table.put(key[0], key[1], score);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public long size() {
+        lock.readLock().lock();
+        try {
+            long size = 0;
+            for (Table table : tables) {
+                size += table.size;
+            }
+            return size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public void flush() {
+        lock.writeLock().lock();
+        try {
+            if (!closed) {
+                tables.get(tables.size() - 1).buffer.force();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void close() throws IOException {
+        lock.writeLock().lock();
+        try {
+            if (!closed) {
+                closed = true;
+                for (Table table : tables) {
+                    table.buffer.force();
+                    table.close();
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "LocalScoreStore " + file + ": " + size() + " scores, " + hits + " hits, " + misses + " misses";
+    }
+
+    /**
+     * Hash of the data a score depends on: the variables with their categories, the cell values and the
+     * multipliers. BDeuScore computes it once, with a pass over the data set.
+     */
+    public static long fingerprint(DataSet dataSet) {
+        long h = 0x9E3779B97F4A7C15L;
+        for (int c = 0; c < dataSet.getNumColumns(); c++) {
+            Node node = dataSet.getVariable(c);
+            h = mix(h, node.getName());
+            if (node instanceof DiscreteVariable) {
+                for (String category : ((DiscreteVariable) node).getCategories()) {
+                    h = mix(h, category);
+                }
+            }
+        }
+        for (int r = 0; r < dataSet.getNumRows(); r++) {
+            for (int c = 0; c < dataSet.getNumColumns(); c++) {
+                h = mix(h, dataSet.getInt(r, c));
+            }
+            h = mix(h, dataSet.getMultiplier(r));
+        }
+        return h;
+    }
+
+    //==============================PRIVATE METHODS=========================//
+
+    /**
+     * Whether target holds a table of this version with the expected capacity, read before it is mapped, since a
+     * mapped file cannot be recreated on Windows.
+     */
+    private static boolean isValid(File target, int expectedCapacity) throws IOException {
+        if (target.length() != HEADER_BYTES + (long) expectedCapacity * ENTRY_BYTES) {
+            return false;
+        }
+        RandomAccessFile raf = new RandomAccessFile(target, "r");
+        try {
+            int magic = raf.readInt();
+            int version = raf.readInt();
+            raf.seek(16);
+            return magic == MAGIC && version == VERSION && raf.readInt() == expectedCapacity;
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * The file of table i: the file of the store for the first one, file.i for the others.
+     */
+    private File segment(int i) {
+        return i == 0 ? file : new File(file.getPath() + "." + i);
+    }
+
+    /**
+     * Two independent 64 bit hashes of the key, never both 0 (which marks an empty entry).
+     */
+    private static long[] key(long fingerprint, String variable, String[] parents, double samplePrior,
+                              double structurePrior) {
+        String[] sorted = parents.clone();
+        Arrays.sort(sorted);
+
+        long h1 = mix(0x243F6A8885A308D3L, fingerprint);
+        long h2 = mix(0x13198A2E03707344L, fingerprint);
+        h1 = mix(mix(h1, Double.doubleToLongBits(samplePrior)), Double.doubleToLongBits(structurePrior));
+        h2 = mix(mix(h2, Double.doubleToLongBits(structurePrior)), Double.doubleToLongBits(samplePrior));
+        h1 = mix(h1, variable);
+        h2 = mix(h2, variable);
+        for (String parent : sorted) {
+            h1 = mix(h1, parent);
+            h2 = mix(mix(h2, parent), sorted.length);
+        }
+        if (h1 == 0 && h2 == 0) {
+            h2 = 1;
+        }
+        return new long[]{h1, h2};
+    }
+
+    private static long mix(long h, String s) {
+        h = mix(h, s.length());
+        for (int i = 0; i < s.length(); i++) {
+            h = mix(h, s.charAt(i));
+        }
+        return h;
+    }
+
+    private static long mix(long h, long value) {
+        h ^= value;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB9FE1A85EC53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    /**
+     * One open addressing table in a memory mapped file.
+     */
+    private static class Table {
+        private final RandomAccessFile raf;
+        private final MappedByteBuffer buffer;
+        private final int capacity;
+        private long size;
+
+        /**
+         * Maps target; with newCapacity > 0 the file is (re)created empty with that capacity, otherwise it is a valid
+         * table (see isValid) and its header is read.
+         */
+        Table(File target, int newCapacity) throws IOException {
+            raf = new RandomAccessFile(target, "rw");
+            if (newCapacity > 0) {
+                raf.setLength(0);
+                raf.setLength(HEADER_BYTES + (long) newCapacity * ENTRY_BYTES);
+            }
+            buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, raf.length());
+            if (newCapacity > 0) {
+                buffer.putInt(0, MAGIC);
+                buffer.putInt(4, VERSION);
+                buffer.putLong(8, 0);
+                buffer.putInt(16, newCapacity);
+            }
+            capacity = buffer.getInt(16);
+            size = buffer.getLong(8);
+        }
+
+        /**
+         * The slot of the key, or the empty slot where it would go.
+         */
+        int slot(long h1, long h2) {
+            int slot = (int) (h1 ^ (h1 >>> 32)) & (capacity - 1);
+            while (true) {
+                int offset = offset(slot);
+                long k1 = buffer.getLong(offset);
+                long k2 = buffer.getLong(offset + 8);
+                if ((k1 == 0 && k2 == 0) || (k1 == h1 && k2 == h2)) {
+                    return slot;
+                }
+                slot = (slot + 1) & (capacity - 1);
+            }
+        }
+
+        int offset(int slot) {
+            return HEADER_BYTES + slot * ENTRY_BYTES;
+        }
+
+        boolean matches(int offset, long h1, long h2) {
+            return buffer.getLong(offset) == h1 && buffer.getLong(offset + 8) == h2;
+        }
+
+        void put(long h1, long h2, double score) {
+            int offset = offset(slot(h1, h2));
+            if (buffer.getLong(offset) == 0 && buffer.getLong(offset + 8) == 0) {
+                size++;
+                buffer.putLong(8, size);
+            }
+            buffer.putLong(offset, h1);
+            buffer.putLong(offset + 8, h2);
+            buffer.putDouble(offset + 16, score);
+        }
+
+        void close() throws IOException {
+            raf.close();
+        }
+    }
+}
@@ -63,6 +63,16 @@ public class MeekRules implements ImpliedOrientation {
     private Queue<Node> rule3Queue = new LinkedList<Node>();
     private Queue<Node> rule4Queue = new LinkedList<Node>();
 
+    /**
+     * The nodes at the ends of the edges that were undirected or oriented.
+     */
+    private Set<Node> visited = new HashSet<Node>();
+
+    /**
+     * The edge between each pair of nodes that was undirected or oriented, as it was before the first change.
+     */
+    private Map<NodePair, Edge> edgesBefore = new HashMap<NodePair, Edge>();
+
 //    private Set<Node> colliderNodes = null;
 
     /**
@@ -87,13 +97,114 @@ public class MeekRules implements ImpliedOrientation {
         this.knowledge = knowledge;
     }
 
+    /**
+     * Completes the orientation of a pattern of which only the edges at the given nodes have changed since its
+     * orientation was last completed. The rules are applied at these nodes, at the nodes visited by
+     * revertToUnshieldedColliders, and at their neighbors; from there orientations propagate as far as they go.
+     */
+    public void orientImplied(Graph graph, Collection<Node> nodes) {
+        Set<Node> start = new LinkedHashSet<Node>(nodes);
+        start.addAll(visited);
+
+        for (Node node : new ArrayList<Node>(start)) {
+            start.addAll(graph.getAdjacentNodes(node));
+        }
+
+        List<Node> ordered = new ArrayList<Node>();
+
+        for (Node node : graph.getNodes()) {
+            if (start.contains(node)) {
+                ordered.add(node);
+            }
+        }
+
+        TetradLogger.getInstance().log("impliedOrientations", "Starting Orientation Step D.");
+        orientUsingMeekRulesLocally(knowledge, graph, ordered);
+        TetradLogger.getInstance().log("impliedOrientations", "Finishing Orientation Step D.");
+    }
+
+    /**
+     * The local version of SearchGraphUtils.basicPattern: undirects the edges into the given nodes that are not part
+     * of an unshielded collider (or required by the knowledge). Where an edge into a node is undirected, the
+     * orientations of the edges out of it may no longer be implied, so its children are reverted in turn; the nodes
+     * given are always treated so, since their edges were changed by the caller.
+     */
+    public void revertToUnshieldedColliders(Collection<Node> nodes, Graph graph) {
+        Set<Node> done = new HashSet<Node>();
+        LinkedList<Node> queue = new LinkedList<Node>();
+
+        for (Node node : graph.getNodes()) {
+            if (nodes.contains(node)) {
+                queue.add(node);
+            }
+        }
+
+        Set<Node> given = new HashSet<Node>(queue);
+
+        while (!queue.isEmpty()) {
+            Node y = queue.removeFirst();
+
+            if (!done.add(y)) {
+                continue;
+            }
+
+            List<Node> parents = graph.getParents(y);
+            List<Node> children = graph.getChildren(y);
+            boolean reverted = false;
+
+            NEXT_PARENT:
+            for (Node x : parents) {
+                for (Node parent : parents) {
+                    if (parent != x && !graph.isAdjacentTo(parent, x)) {
+                        continue NEXT_PARENT;
+                    }
+                }
+
+                if (knowledge != null && (knowledge.edgeRequired(x.getName(), y.getName())
+                        || knowledge.edgeForbidden(y.getName(), x.getName()))) {
+                    continue;
+                }
+
+                Edge before = graph.getEdge(x, y);
+                graph.removeEdge(before);
+                graph.addUndirectedEdge(x, y);
+                changedEdges.put(graph.getEdge(x, y), before);
+                recordChange(before);
+                reverted = true;
+            }
+
+            if (reverted || given.contains(y)) {
+                queue.addAll(children);
+            }
+        }
+    }
+
+    /**
+     * @return the nodes at the ends of the edges that were undirected or oriented.
+     */
+    public Set<Node> getVisited() {
+        return visited;
+    }
+
+    /**
+     * @return for each pair of nodes whose edge was undirected or oriented, the edge as it was before the first
+     * change. The edge now in the graph may be the same again.
+     */
+    public Map<NodePair, Edge> getEdgesBefore() {
+        return edgesBefore;
+    }
+
     //============================== Private Methods ===================================//
 
     private void orientUsingMeekRulesLocally(IKnowledge knowledge, Graph graph) {
+        orientUsingMeekRulesLocally(knowledge, graph, graph.getNodes());
+    }
+
+    private void orientUsingMeekRulesLocally(IKnowledge knowledge, Graph graph, List<Node> nodes) {
 //        List<Node> colliderNodes = getColliderNodes(graph);
 
         // Previously oriented, probably by knowledge.
-        for (Node node : graph.getNodes()) {
+        for (Node node : nodes) {
             if (!graph.getParents(node).isEmpty()) {
                 meekR1Locally(node, graph, knowledge);
                 meekR2(node, graph, knowledge);
@@ -205,7 +316,7 @@ public class MeekRules implements ImpliedOrientation {
                     Edge before = graph.getEdge(a, c);
                     graph.setEndpoint(a, c, Endpoint.ARROW);
                     Edge after = graph.getEdge(a, c);
-                    queueVisits(after);
+                    queueVisits(before, after);
                     changedEdges.put(after, before);
 
                     TetradLogger.getInstance().log("impliedOrientations", SearchLogUtils.edgeOrientedMsg(
@@ -220,7 +331,7 @@ public class MeekRules implements ImpliedOrientation {
                     Edge before = graph.getEdge(a, b);
                     graph.setEndpoint(a, b, Endpoint.ARROW);
                     Edge after = graph.getEdge(a, b);
-                    queueVisits(after);
+                    queueVisits(before, after);
                     changedEdges.put(after, before);
 
                     TetradLogger.getInstance().log("impliedOrientations", SearchLogUtils.edgeOrientedMsg(
@@ -230,10 +341,12 @@ public class MeekRules implements ImpliedOrientation {
         }
     }
 
-    private void queueVisits(Edge edge) {
+    private void queueVisits(Edge before, Edge edge) {
         Node x = edge.getNode1();
         Node y = edge.getNode2();
 
+        recordChange(before);
+
         rule2Queue.add(x);
         rule4Queue.add(x);
 
@@ -246,6 +359,19 @@ public class MeekRules implements ImpliedOrientation {
         }
     }
 
+    private void recordChange(Edge before) {
+        Node x = before.getNode1();
+        Node y = before.getNode2();
+        NodePair pair = new NodePair(x, y);
+
+        if (!edgesBefore.containsKey(pair)) {
+            edgesBefore.put(pair, before);
+        }
+
+        visited.add(x);
+        visited.add(y);
+    }
+
     /**
      * If b-->a-->c, b--c, then b-->c.
      */
@@ -270,7 +396,7 @@ public class MeekRules implements ImpliedOrientation {
                     Edge before = graph.getEdge(b, c);
                     graph.setEndpoint(b, c, Endpoint.ARROW);
                     Edge after = graph.getEdge(b, c);
-                    queueVisits(after);
+                    queueVisits(before, after);
                     changedEdges.put(after, before);
                     TetradLogger.getInstance().log("impliedOrientations", SearchLogUtils.edgeOrientedMsg("Meek R2", graph.getEdge(b, c)));
                 }
@@ -281,7 +407,7 @@ public class MeekRules implements ImpliedOrientation {
                     Edge before = graph.getEdge(c, b);
                     graph.setEndpoint(c, b, Endpoint.ARROW);
                     Edge after = graph.getEdge(c, b);
-                    queueVisits(after);
+                    queueVisits(before, after);
                     changedEdges.put(after, before);
                     TetradLogger.getInstance().log("impliedOrientations", SearchLogUtils.edgeOrientedMsg("Meek R2", graph.getEdge(c, b)));
                 }
@@ -337,7 +463,7 @@ public class MeekRules implements ImpliedOrientation {
                         Edge before = graph.getEdge(b, a);
                         graph.setEndpoint(b, a, Endpoint.ARROW);
                         Edge after = graph.getEdge(b, a);
-                        queueVisits(after);
+                        queueVisits(before, after);
                         changedEdges.put(after, before);
 
                         TetradLogger.getInstance().log("impliedOrientations", SearchLogUtils.edgeOrientedMsg("Meek R3", graph.getEdge(a, b)));
@@ -386,7 +512,7 @@ public class MeekRules implements ImpliedOrientation {
                             Edge before = graph.getEdge(d, c);
                             graph.setEndpoint(d, c, Endpoint.ARROW);
                             Edge after = graph.getEdge(d, c);
-                            queueVisits(after);
+                            queueVisits(before, after);
                             changedEdges.put(after, before);
 
                             TetradLogger.getInstance().log("impliedOientations", SearchLogUtils.edgeOrientedMsg("Meek R4", graph.getEdge(a, c)));
@@ -403,7 +529,7 @@ public class MeekRules implements ImpliedOrientation {
                             Edge before = graph.getEdge(d, c);
                             graph.setEndpoint(d, c, Endpoint.ARROW);
                             Edge after = graph.getEdge(d, c);
-                            queueVisits(after);
+                            queueVisits(before, after);
                             changedEdges.put(after, before);
 
                             TetradLogger.getInstance().log("impliedOientations", SearchLogUtils.edgeOrientedMsg("Meek R4", graph.getEdge(a, c)));
@@ -63,6 +63,17 @@ public class Pc implements GraphSearch {
      */
     private int depth = 1000;
 
+    /**
+     * Number of threads that run the independence tests of the adjacency search (Fas5).
+     */
+    private int numThreads = 1;
+
+    /**
+     * True if the adjacency search with more than one thread should find the adjacencies and sepsets of the search
+     * with one thread.
+     */
+    private boolean serialResult = false;
+
     /**
      * The graph that's constructed during the search.
      */
@@ -206,6 +217,35 @@ public class Pc implements GraphSearch {
         this.depth = depth;
     }
 
+    public int getNumThreads() {
+        return numThreads;
+    }
+
+    /**
+     * Sets the number of threads that run the independence tests of the adjacency search; see Fas5.setNumThreads.
+     * The colliders are oriented from the sepsets of the adjacency search, so unless setSerialResult(true) is used
+     * the pattern may differ from the one found with one thread in its orientations as well as its adjacencies.
+     */
+    public void setNumThreads(int numThreads) {
+        if (numThreads < 1) {
+            throw new IllegalArgumentException("Number of threads must be at least 1: " + numThreads);
+        }
+        this.numThreads = numThreads;
+    }
+
+    public boolean isSerialResult() {
+        return serialResult;
+    }
+
+    /**
+     * If true, the adjacency search with more than one thread removes the same edges with the same sepsets as with
+     * one thread (see Fas5.setSerialResult), so the search returns the pattern found with one thread. Has no effect
+     * with one thread.
+     */
+    public void setSerialResult(boolean serialResult) {
+        this.serialResult = serialResult;
+    }
+
     /**
      * Runs PC starting with a complete graph over all nodes of the given conditional independence test, using the given
      * independence test and knowledge and returns the resultant graph. The returned graph will be a pattern if the
@@ -251,6 +291,8 @@ public class Pc implements GraphSearch {
         Fas5 fas = new Fas5(graph, getIndependenceTest());
         fas.setKnowledge(getKnowledge());
         fas.setDepth(getDepth());
+        fas.setNumThreads(numThreads);
+        fas.setSerialResult(serialResult);
 
         // Note that we are ignoring the sepset map returned by this method
         // on purpose; it is not used in this search.
@@ -0,0 +1,264 @@
+package edu.cmu.tetrad.search;
+
+import edu.cmu.tetrad.data.ColtDataSet;
+import edu.cmu.tetrad.data.DataSet;
+import edu.cmu.tetrad.data.DiscreteVariable;
+import edu.cmu.tetrad.graph.Node;
+import edu.cmu.tetrad.util.ProbUtils;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+/**
+ * Tests FamilyCounts and the BDeu scores computed from it against counts and scores taken row by row with getInt
+ * and getMultiplier, which is how BDeuScore.localScore counted families before.
+ */
+public final class TestFamilyCounts extends TestCase {
+
+    public TestFamilyCounts(String name) {
+        super(name);
+    }
+
+    public void testDenseCounts() {
+        Random random = new Random(17);
+        DataSet data = randomData(random, 7, 2, 3, 300);
+        FamilyCounts counts = new FamilyCounts(data);
+
+        for (int run = 0; run < 200; run++) {
+            int child = random.nextInt(data.getNumColumns());
+            int[] parents = randomParents(random, data.getNumColumns(), child, 0, 4);
+            int r = counts.getNumCategories(child);
+
+            long[] expected = rowCounts(data, child, parents);
+            long[] actual = counts.counts(child, parents);
+
+            assertEquals(expected.length, actual.length);
+            assertEquals(expected.length, (int) counts.getNumConfigurations(parents) * r);
+            assertTrue(Arrays.equals(expected, actual));
+        }
+    }
+
+    public void testSparseCounts() {
+        Random random = new Random(5);
+        DataSet data = randomData(random, 14, 4, 5, 400);
+        FamilyCounts counts = new FamilyCounts(data);
+
+        for (int run = 0; run < 50; run++) {
+            int child = random.nextInt(data.getNumColumns());
+            int[] parents = randomParents(random, data.getNumColumns(), child, 11, 13);
+            int r = counts.getNumCategories(child);
+
+            Map<Long, long[]> expected = rowSparseCounts(data, child, parents);
+            FamilyCounts.SparseCounts actual = counts.sparseCounts(child, parents);
+
+            assertEquals(expected.size(), actual.getNumOccupied());
+            int j = 0;
+            for (Map.Entry<Long, long[]> entry : expected.entrySet()) {
+                assertEquals(entry.getKey().longValue(), actual.getConfiguration(j));
+                for (int k = 0; k < r; k++) {
+                    assertEquals(entry.getValue()[k], actual.getCount(j, k));
+                }
+                j++;
+            }
+        }
+    }
+
+    /**
+     * Dense families score exactly as the row by row loop, whatever the order of the parents.
+     */
+    public void testDenseScores() {
+        Random random = new Random(29);
+        DataSet data = randomData(random, 8, 2, 3, 500);
+        BDeuScore score = new BDeuScore(data, 10, 0.5);
+
+        for (int run = 0; run < 200; run++) {
+            int child = random.nextInt(data.getNumColumns());
+            int[] parents = randomParents(random, data.getNumColumns(), child, 0, 4);
+            double expected = rowScore(data, child, parents, 10, 0.5);
+
+            assertEquals(expected, score.localScore(child, parents), 0.0);
+
+            int[] shuffled = parents.clone();
+            shuffle(random, shuffled);
+            assertEquals(expected, new BDeuScore(data, 10, 0.5).localScore(child, shuffled), 0.0);
+        }
+    }
+
+    /**
+     * Families too large to count densely score as the row by row loop would, up to rounding.
+     */
+    public void testSparseScores() {
+        Random random = new Random(41);
+        DataSet data = randomData(random, 14, 4, 5, 400);
+        BDeuScore score = new BDeuScore(data, 10, 1.0);
+
+        for (int run = 0; run < 20; run++) {
+            int child = random.nextInt(data.getNumColumns());
+            int[] parents = randomParents(random, data.getNumColumns(), child, 11, 13);
+            assertTrue(new FamilyCounts(data).counts(child, parents) == null);
+
+            double expected = rowSparseScore(data, child, parents, 10, 1.0);
+            assertEquals(expected, score.localScore(child, parents), 1e-6 * Math.abs(expected));
+        }
+    }
+
+    //=============================PRIVATE METHODS=========================//
+
+    private static DataSet randomData(Random random, int numVariables, int minCategories, int maxCategories,
+                                      int numRows) {
+        List<Node> variables = new ArrayList<Node>();
+        for (int v = 0; v < numVariables; v++) {
+            variables.add(new DiscreteVariable("X" + v,
+                    minCategories + random.nextInt(maxCategories - minCategories + 1)));
+        }
+
+        DataSet data = new ColtDataSet(numRows, variables);
+        for (int n = 0; n < numRows; n++) {
+            // correlated columns, so that most parent configurations are empty
+            int base = random.nextInt(maxCategories);
+            for (int v = 0; v < numVariables; v++) {
+                int categories = ((DiscreteVariable) variables.get(v)).getNumCategories();
+                int value = random.nextInt(4) == 0 ? random.nextInt(categories) : base % categories;
+                data.setInt(n, v, value);
+            }
+            data.setMultiplier(n, random.nextInt(3) == 0 ? 1 : 1 + random.nextInt(1000));
+        }
+        return data;
+    }
+
+    private static int[] randomParents(Random random, int numVariables, int child, int minParents,
+                                       int maxParents) {
+        List<Integer> candidates = new ArrayList<Integer>();
+        for (int v = 0; v < numVariables; v++) {
+            if (v != child) {
+                candidates.add(v);
+            }
+        }
+
+        int numParents = minParents + random.nextInt(Math.min(maxParents, candidates.size()) - minParents + 1);
+        int[] parents = new int[numParents];
+        for (int p = 0; p < numParents; p++) {
+            parents[p] = candidates.remove(random.nextInt(candidates.size()));
+        }
+        Arrays.sort(parents);
+        return parents;
+    }
+
+    private static void shuffle(Random random, int[] array) {
+        for (int i = array.length - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int t = array[i];
+            array[i] = array[j];
+            array[j] = t;
+        }
+    }
+
+    private static int numCategories(DataSet data, int column) {
+        return ((DiscreteVariable) data.getVariable(column)).getNumCategories();
+    }
+
+    private static long configuration(DataSet data, int n, int[] parents) {
+        long j = 0;
+        for (int p : parents) {
+            j = j * numCategories(data, p) + data.getInt(n, p);
+        }
+        return j;
+    }
+
+    private static long[] rowCounts(DataSet data, int child, int[] parents) {
+        int r = numCategories(data, child);
+        int q = 1;
+        for (int p : parents) {
+            q *= numCategories(data, p);
+        }
+
+        long[] n_ijk = new long[q * r];
+        for (int n = 0; n < data.getNumRows(); n++) {
+            n_ijk[(int) configuration(data, n, parents) * r + data.getInt(n, child)] += data.getMultiplier(n);
+        }
+        return n_ijk;
+    }
+
+    private static Map<Long, long[]> rowSparseCounts(DataSet data, int child, int[] parents) {
+        int r = numCategories(data, child);
+        Map<Long, long[]> n_ijk = new TreeMap<Long, long[]>();
+        for (int n = 0; n < data.getNumRows(); n++) {
+            long j = configuration(data, n, parents);
+            if (!n_ijk.containsKey(j)) {
+                n_ijk.put(j, new long[r]);
+            }
+            n_ijk.get(j)[data.getInt(n, child)] += data.getMultiplier(n);
+        }
+        return n_ijk;
+    }
+
+    /**
+     * The BDeu score as the row by row loop computed it.
+     */
+    private static double rowScore(DataSet data, int child, int[] parents, double samplePrior,
+                                   double structurePrior) {
+        int r = numCategories(data, child);
+        long[] n_ijk = rowCounts(data, child, parents);
+        int q = n_ijk.length / r;
+
+        double score = (r - 1) * q * Math.log(structurePrior);
+
+        for (int j = 0; j < q; j++) {
+            long n_ij = 0;
+            for (int k = 0; k < r; k++) {
+                n_ij += n_ijk[j * r + k];
+            }
+            for (int k = 0; k < r; k++) {
+                score += ProbUtils.lngamma(samplePrior / (r * q) + n_ijk[j * r + k]);
+            }
+            score -= ProbUtils.lngamma(samplePrior / q + n_ij);
+        }
+
+        score += q * ProbUtils.lngamma(samplePrior / q);
+        score -= (r * q) * ProbUtils.lngamma(samplePrior / (r * q));
+        return score;
+    }
+
+    /**
+     * The BDeu score of the row by row loop, with the terms of every parent configuration that does not occur
+     * added in closed form rather than one by one.
+     */
+    private static double rowSparseScore(DataSet data, int child, int[] parents, double samplePrior,
+                                         double structurePrior) {
+        int r = numCategories(data, child);
+        double q = 1;
+        for (int p : parents) {
+            q *= numCategories(data, p);
+        }
+        Map<Long, long[]> n_ijk = rowSparseCounts(data, child, parents);
+
+        double score = (r - 1) * q * Math.log(structurePrior);
+
+        for (long[] counts : n_ijk.values()) {
+            long n_ij = 0;
+            for (int k = 0; k < r; k++) {
+                n_ij += counts[k];
+                score += ProbUtils.lngamma(samplePrior / (r * q) + counts[k]);
+            }
+            score -= ProbUtils.lngamma(samplePrior / q + n_ij);
+        }
+
+        double empty = q - n_ijk.size();
+        score += empty * (r * ProbUtils.lngamma(samplePrior / (r * q)) - ProbUtils.lngamma(samplePrior / q));
+
+        score += q * ProbUtils.lngamma(samplePrior / q);
+        score -= (r * q) * ProbUtils.lngamma(samplePrior / (r * q));
+        return score;
+    }
+
+    public static Test suite() {
+        return new TestSuite(TestFamilyCounts.class);
+    }
+}
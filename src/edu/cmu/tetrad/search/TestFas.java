@@ -0,0 +1,171 @@
+package edu.cmu.tetrad.search;
+
+import edu.cmu.tetrad.data.DataSet;
+import edu.cmu.tetrad.data.Knowledge;
+import edu.cmu.tetrad.graph.Dag;
+import edu.cmu.tetrad.graph.EdgeListGraph;
+import edu.cmu.tetrad.graph.Endpoint;
+import edu.cmu.tetrad.graph.Graph;
+import edu.cmu.tetrad.graph.GraphUtils;
+import edu.cmu.tetrad.graph.Node;
+import edu.cmu.tetrad.sem.SemIm;
+import edu.cmu.tetrad.sem.SemPm;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import java.util.List;
+
+/**
+ * Tests that Fas and Fas5 with more than one thread and serialResult remove the same edges with the same sepsets as
+ * with one thread, also with required and forbidden edges, and that Pc and Cpc with four threads and serialResult
+ * return the graph they return with one thread.
+ */
+public final class TestFas extends TestCase {
+
+    public TestFas(String name) {
+        super(name);
+    }
+
+    public void testSerialResult() {
+        for (int run = 0; run < 5; run++) {
+            IndependenceTest test = independenceTest(run);
+            Knowledge knowledge = new Knowledge();
+            List<Node> nodes = test.getVariables();
+            knowledge.setEdgeRequired(nodes.get(0).getName(), nodes.get(1).getName(), true);
+            knowledge.setEdgeForbidden(nodes.get(2).getName(), nodes.get(3).getName(), true);
+            knowledge.setEdgeForbidden(nodes.get(3).getName(), nodes.get(2).getName(), true);
+
+            Fas serial = fas(test, knowledge, 1);
+            Graph expected = serial.search();
+            for (int numThreads : new int[]{2, 4}) {
+                Fas parallel = fas(test, knowledge, numThreads);
+                parallel.setSerialResult(true);
+                Graph graph = parallel.search();
+                assertAdjacencies(nodes, expected, graph);
+                assertSepsets(nodes, serial.getSepsets(), parallel.getSepsets());
+            }
+        }
+    }
+
+    public void testFas5SerialResult() {
+        for (int run = 0; run < 5; run++) {
+            IndependenceTest test = independenceTest(run);
+            Knowledge knowledge = knowledge(test.getVariables());
+            List<Node> nodes = test.getVariables();
+
+            Fas5 serial = fas5(test, knowledge, 1);
+            Graph expected = serial.search();
+            assertTrue(expected.isAdjacentTo(nodes.get(0), nodes.get(1)));
+            assertFalse(expected.isAdjacentTo(nodes.get(2), nodes.get(3)));
+
+            for (int numThreads : new int[]{2, 4}) {
+                Fas5 parallel = fas5(test, knowledge, numThreads);
+                parallel.setSerialResult(true);
+                assertEquals(expected, parallel.search());
+                assertSepsets(nodes, serial.getSepsets(), parallel.getSepsets());
+                assertEquals(serial.getNumIndependenceTests(), parallel.getNumIndependenceTests());
+            }
+
+            // depth 0 gives the serial result without serialResult too
+            Fas5 serial0 = fas5(test, knowledge, 1);
+            serial0.setDepth(0);
+            Fas5 parallel0 = fas5(test, knowledge, 4);
+            parallel0.setDepth(0);
+            assertEquals(serial0.search(), parallel0.search());
+            assertSepsets(nodes, serial0.getSepsets(), parallel0.getSepsets());
+        }
+    }
+
+    public void testPcAndCpc() {
+        for (int run = 0; run < 3; run++) {
+            IndependenceTest test = independenceTest(10 + run);
+            Knowledge knowledge = knowledge(test.getVariables());
+            List<Node> nodes = test.getVariables();
+
+            Pc serialPc = new Pc(test);
+            serialPc.setKnowledge(knowledge);
+            Graph expectedPc = serialPc.search();
+            Pc pc = new Pc(test);
+            pc.setKnowledge(knowledge);
+            pc.setNumThreads(4);
+            pc.setSerialResult(true);
+            assertEquals(expectedPc, pc.search());
+            assertSepsets(nodes, serialPc.getSepsets(), pc.getSepsets());
+
+            Cpc serialCpc = new Cpc(test);
+            serialCpc.setKnowledge(knowledge);
+            Graph expectedCpc = serialCpc.search();
+            Cpc cpc = new Cpc(test);
+            cpc.setKnowledge(knowledge);
+            cpc.setNumThreads(4);
+            cpc.setSerialResult(true);
+            assertEquals(expectedCpc, cpc.search());
+            assertSepsets(nodes, serialCpc.getSepsets(), cpc.getSepsets());
+            assertEquals(serialCpc.getAmbiguousTriples(), cpc.getAmbiguousTriples());
+        }
+    }
+
+    /**
+     * Requires the edge between the first two nodes and forbids the one between the next two.
+     */
+    private static Knowledge knowledge(List<Node> nodes) {
+        Knowledge knowledge = new Knowledge();
+        knowledge.setEdgeRequired(nodes.get(0).getName(), nodes.get(1).getName(), true);
+        knowledge.setEdgeForbidden(nodes.get(2).getName(), nodes.get(3).getName(), true);
+        knowledge.setEdgeForbidden(nodes.get(3).getName(), nodes.get(2).getName(), true);
+        return knowledge;
+    }
+
+    private static Fas5 fas5(IndependenceTest test, Knowledge knowledge, int numThreads) {
+        Fas5 fas = new Fas5(new EdgeListGraph(test.getVariables()), test);
+        fas.setKnowledge(knowledge);
+        fas.setNumThreads(numThreads);
+        return fas;
+    }
+
+    private static Fas fas(IndependenceTest test, Knowledge knowledge, int numThreads) {
+        Graph graph = new EdgeListGraph(test.getVariables());
+        graph.fullyConnect(Endpoint.TAIL);
+        Fas fas = new Fas(graph, test);
+        fas.setKnowledge(knowledge);
+        fas.setNumThreads(numThreads);
+        return fas;
+    }
+
+    /**
+     * A Fisher Z test on data simulated from a random DAG; the size of the DAG varies with run.
+     */
+    private static IndependenceTest independenceTest(int run) {
+        int numNodes = 10 + 2 * (run % 4);
+        Dag dag = GraphUtils.randomDag(numNodes, 0, 2 * numNodes, 4, 3, 3, false);
+        SemIm im = new SemIm(new SemPm(dag));
+        DataSet data = im.simulateData(300, false);
+        return new IndTestFisherZ(data, 0.05);
+    }
+
+    private static void assertAdjacencies(List<Node> nodes, Graph expected, Graph graph) {
+        for (Node x : nodes) {
+            for (Node y : nodes) {
+                if (x != y) {
+                    assertEquals(x + " " + y, expected.isAdjacentTo(x, y),
+                            graph.isAdjacentTo(graph.getNode(x.getName()), graph.getNode(y.getName())));
+                }
+            }
+        }
+    }
+
+    private static void assertSepsets(List<Node> nodes, SepsetMap expected, SepsetMap sepsets) {
+        for (Node x : nodes) {
+            for (Node y : nodes) {
+                if (x != y) {
+                    assertEquals(x + " " + y, expected.get(x, y), sepsets.get(x, y));
+                }
+            }
+        }
+    }
+
+    public static Test suite() {
+        return new TestSuite(TestFas.class);
+    }
+}
@@ -0,0 +1,169 @@
+package edu.cmu.tetrad.search;
+
+import edu.cmu.tetrad.data.ColtDataSet;
+import edu.cmu.tetrad.data.DataSet;
+import edu.cmu.tetrad.data.DiscreteVariable;
+import edu.cmu.tetrad.graph.Node;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Tests GSquareTest and ChiSquareTest on a CT table, one row per cell with its count as case multiplier, against the
+ * cases it stands for, and that a data set changed in place after a test is counted again by the next one.
+ */
+public final class TestGSquareTest extends TestCase {
+
+    public TestGSquareTest(String name) {
+        super(name);
+    }
+
+    public void testMultipliers() {
+        Random random = new Random(31);
+        for (int run = 0; run < 20; run++) {
+            int[] numCategories = new int[2 + random.nextInt(3)];
+            for (int v = 0; v < numCategories.length; v++) {
+                numCategories[v] = 2 + random.nextInt(3);
+            }
+            DataSet cases = cases(random, numCategories, 50 + random.nextInt(400));
+            DataSet ct = collapse(cases);
+            assertTrue(ct.getNumRows() < cases.getNumRows());
+
+            GSquareTest gCases = new GSquareTest(cases, 0.05);
+            GSquareTest gCt = new GSquareTest(ct, 0.05);
+            ChiSquareTest xCases = new ChiSquareTest(cases, 0.05);
+            ChiSquareTest xCt = new ChiSquareTest(ct, 0.05);
+            for (int[] indices : testIndices(numCategories.length)) {
+                assertEquals(gCases.calcGSquare(indices), gCt.calcGSquare(indices));
+                assertEquals(xCases.calcChiSquare(indices), xCt.calcChiSquare(indices));
+            }
+        }
+    }
+
+    public void testChangedInPlace() {
+        Random random = new Random(37);
+        DataSet dataSet = cases(random, new int[]{3, 2, 2}, 200);
+        GSquareTest gSquare = new GSquareTest(dataSet, 0.05);
+        ChiSquareTest chiSquare = new ChiSquareTest(dataSet, 0.05);
+        int[] indices = {0, 1, 2};
+        gSquare.calcGSquare(indices);
+        chiSquare.calcChiSquare(indices);
+
+        for (int i = 0; i < 100; i++) {
+            dataSet.setInt(i, 0, 0);
+            dataSet.setInt(i, 1, 1);
+        }
+        dataSet.setMultiplier(150, 20);
+
+        DataSet copy = new ColtDataSet((ColtDataSet) dataSet);
+        assertEquals(new GSquareTest(copy, 0.05).calcGSquare(indices), gSquare.calcGSquare(indices));
+        assertEquals(new ChiSquareTest(copy, 0.05).calcChiSquare(indices), chiSquare.calcChiSquare(indices));
+    }
+
+    private static void assertEquals(GSquareTest.Result expected, GSquareTest.Result actual) {
+        assertEquals(expected.getGSquare(), actual.getGSquare(), 1e-9);
+        assertEquals(expected.getPValue(), actual.getPValue(), 1e-9);
+        assertEquals(expected.getDf(), actual.getDf());
+        assertEquals(expected.isIndep(), actual.isIndep());
+    }
+
+    private static void assertEquals(ChiSquareTest.Result expected, ChiSquareTest.Result actual) {
+        assertEquals(expected.getXSquare(), actual.getXSquare(), 1e-9);
+        assertEquals(expected.getPValue(), actual.getPValue(), 1e-9);
+        assertEquals(expected.getDf(), actual.getDf());
+        assertEquals(expected.isIndep(), actual.isIndep());
+    }
+
+    /**
+     * Cases where each variable depends on the one before it, so that some tests come out dependent; a few values
+     * are missing.
+     */
+    private static DataSet cases(Random random, int[] numCategories, int numCases) {
+        List<Node> variables = new ArrayList<Node>();
+        for (int v = 0; v < numCategories.length; v++) {
+            variables.add(new DiscreteVariable("X" + v, numCategories[v]));
+        }
+        DataSet dataSet = new ColtDataSet(numCases, variables);
+        for (int i = 0; i < numCases; i++) {
+            for (int v = 0; v < numCategories.length; v++) {
+                int previous = v > 0 ? dataSet.getInt(i, v - 1) : DiscreteVariable.MISSING_VALUE;
+                int value = previous != DiscreteVariable.MISSING_VALUE && random.nextBoolean()
+                        ? previous % numCategories[v]
+                        : random.nextInt(numCategories[v]);
+                if (random.nextInt(50) == 0) {
+                    value = DiscreteVariable.MISSING_VALUE;
+                }
+                dataSet.setInt(i, v, value);
+            }
+        }
+        return dataSet;
+    }
+
+    /**
+     * The CT table of the cases: one row per distinct case, with the number of cases as multiplier.
+     */
+    private static DataSet collapse(DataSet cases) {
+        Map<List<Integer>, Long> counts = new LinkedHashMap<List<Integer>, Long>();
+        for (int i = 0; i < cases.getNumRows(); i++) {
+            Integer[] row = new Integer[cases.getNumColumns()];
+            for (int v = 0; v < row.length; v++) {
+                row[v] = cases.getInt(i, v);
+            }
+            Long count = counts.get(Arrays.asList(row));
+            counts.put(Arrays.asList(row), count == null ? 1 : count + 1);
+        }
+        DataSet ct = new ColtDataSet(counts.size(), cases.getVariables());
+        int i = 0;
+        for (List<Integer> row : counts.keySet()) {
+            for (int v = 0; v < row.size(); v++) {
+                ct.setInt(i, v, row.get(v));
+            }
+            ct.setMultiplier(i++, counts.get(row));
+        }
+        return ct;
+    }
+
+    /**
+     * x _||_ y | z for all pairs x, y and all z among the other variables, in order.
+     */
+    private static List<int[]> testIndices(int numVariables) {
+        List<int[]> tests = new ArrayList<int[]>();
+        for (int x = 0; x < numVariables; x++) {
+            for (int y = 0; y < numVariables; y++) {
+                if (x == y) {
+                    continue;
+                }
+                List<Integer> others = new ArrayList<Integer>();
+                for (int z = 0; z < numVariables; z++) {
+                    if (z != x && z != y) {
+                        others.add(z);
+                    }
+                }
+                for (int subset = 0; subset < 1 << others.size(); subset++) {
+                    int[] indices = new int[2 + Integer.bitCount(subset)];
+                    indices[0] = x;
+                    indices[1] = y;
+                    int k = 2;
+                    for (int z = 0; z < others.size(); z++) {
+                        if ((subset & 1 << z) != 0) {
+                            indices[k++] = others.get(z);
+                        }
+                    }
+                    tests.add(indices);
+                }
+            }
+        }
+        return tests;
+    }
+
+    public static Test suite() {
+        return new TestSuite(TestGSquareTest.class);
+    }
+}
@@ -0,0 +1,245 @@
+package edu.cmu.tetrad.search;
+
+import edu.cmu.tetrad.bayes.BayesPm;
+import edu.cmu.tetrad.bayes.MlBayesIm;
+import edu.cmu.tetrad.data.DataSet;
+import edu.cmu.tetrad.data.Knowledge;
+import edu.cmu.tetrad.graph.Dag;
+import edu.cmu.tetrad.graph.Edge;
+import edu.cmu.tetrad.graph.Edges;
+import edu.cmu.tetrad.graph.EndpointMatrixGraph;
+import edu.cmu.tetrad.graph.Graph;
+import edu.cmu.tetrad.graph.GraphUtils;
+import edu.cmu.tetrad.graph.Node;
+import edu.cmu.tetrad.graph.NodePair;
+import edu.cmu.tetrad.util.RandomUtil;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Tests that Ges3 learns the same pattern and score whether the candidate arrows are scored serially or on the
+ * fork-join pool (setNumThreads), and that its local rebuild of the pattern after an insertion or deletion gives the
+ * pattern of the full rebuild (basicPattern and Meek's rules over the whole graph) and reports the nodes whose edges
+ * changed.
+ */
+public final class TestGes3 extends TestCase {
+
+    public TestGes3(String name) {
+        super(name);
+    }
+
+    public void testParallelMatchesSerial() {
+        RandomUtil.getInstance().setSeed(38284L);
+
+        for (int run = 0; run < 5; run++) {
+            Dag dag = GraphUtils.randomDag(12, 0, 14, 4, 4, 4, false);
+            MlBayesIm im = new MlBayesIm(new BayesPm(dag, 2, 3), MlBayesIm.RANDOM);
+            DataSet data = im.simulateData(500, false);
+
+            Ges3 serial = new Ges3(data);
+            Graph expected = serial.search();
+
+            for (int numThreads : new int[]{2, 4}) {
+                Ges3 parallel = new Ges3(data);
+                parallel.setNumThreads(numThreads);
+                Graph actual = parallel.search();
+
+                assertEquals(expected.getEdges(), actual.getEdges());
+                assertEquals(serial.scoreGraph(expected), parallel.scoreGraph(actual), 1e-9);
+            }
+        }
+    }
+
+    public void testParallelMatchesSerialWithKnowledge() {
+        RandomUtil.getInstance().setSeed(1297L);
+
+        Dag dag = GraphUtils.randomDag(10, 0, 12, 4, 4, 4, false);
+        MlBayesIm im = new MlBayesIm(new BayesPm(dag, 2, 3), MlBayesIm.RANDOM);
+        DataSet data = im.simulateData(500, false);
+
+        Knowledge knowledge = new Knowledge();
+        knowledge.setEdgeForbidden(dag.getNodes().get(0).getName(), dag.getNodes().get(1).getName(), true);
+        knowledge.setEdgeRequired(dag.getNodes().get(2).getName(), dag.getNodes().get(3).getName(), true);
+
+        Ges3 serial = new Ges3(data);
+        serial.setKnowledge(knowledge);
+        Graph expected = serial.search();
+
+        Ges3 parallel = new Ges3(data);
+        parallel.setKnowledge(knowledge);
+        parallel.setNumThreads(3);
+
+        assertEquals(expected.getEdges(), parallel.search().getEdges());
+    }
+
+    public void testLocalRebuild() {
+        RandomUtil.getInstance().setSeed(5113L);
+        Random random = new Random(5113L);
+        int operators = 0;
+
+        for (int run = 0; run < 40; run++) {
+            int numNodes = 6 + random.nextInt(10);
+            Dag dag = GraphUtils.randomDag(numNodes, 0, numNodes + random.nextInt(numNodes), 5, 4, 4, false);
+            Ges3 ges = new Ges3(new MlBayesIm(new BayesPm(dag, 2, 2), MlBayesIm.RANDOM).simulateData(10, false));
+            Graph pattern = new EndpointMatrixGraph(dag);
+            fullRebuild(pattern);
+            List<Node> nodes = pattern.getNodes();
+
+            for (int step = 0; step < 30; step++) {
+                Node x = nodes.get(random.nextInt(numNodes));
+                Node y = nodes.get(random.nextInt(numNodes));
+                Edge edge = pattern.getEdge(x, y);
+
+                if (x == y || edge != null && !Edges.isUndirectedEdge(edge) && !edge.pointsTowards(y)) {
+                    continue;
+                }
+
+                // NaYX, and a random subset of the T or H neighbors of y
+                Set<Node> naYX = new HashSet<Node>();
+                List<Node> candidates = new ArrayList<Node>();
+                for (Node z : pattern.getAdjacentNodes(y)) {
+                    if (z != x && Edges.isUndirectedEdge(pattern.getEdge(z, y))) {
+                        if (pattern.isAdjacentTo(z, x)) {
+                            naYX.add(z);
+                        }
+                        if (pattern.isAdjacentTo(z, x) == (edge != null)) {
+                            candidates.add(z);
+                        }
+                    }
+                }
+                Set<Node> subset = new HashSet<Node>();
+                for (Node z : candidates) {
+                    if (random.nextBoolean()) {
+                        subset.add(z);
+                    }
+                }
+
+                Graph local = new EndpointMatrixGraph(pattern);
+                Graph full = new EndpointMatrixGraph(pattern);
+                Map<NodePair, Edge> before;
+
+                if (edge == null) {
+                    Set<Node> clique = new HashSet<Node>(naYX);
+                    clique.addAll(subset);
+                    if (!isClique(pattern, clique) || existsSemiDirectedPath(pattern, y, x, clique)) {
+                        continue;
+                    }
+                    before = Ges3.edgesBetween(local, x, y, subset);
+                    insert(local, x, y, subset);
+                    insert(full, x, y, subset);
+                } else {
+                    Set<Node> clique = new HashSet<Node>(naYX);
+                    clique.removeAll(subset);
+                    if (!isClique(pattern, clique)) {
+                        continue;
+                    }
+                    before = Ges3.edgesBetween(local, x, y, subset);
+                    delete(local, x, y, subset);
+                    delete(full, x, y, subset);
+                }
+
+                Set<Node> changed = ges.rebuildPattern(local, before, x, y, subset);
+                fullRebuild(full);
+                assertEquals(new HashSet<Edge>(full.getEdges()), new HashSet<Edge>(local.getEdges()));
+
+                Set<Node> expected = new HashSet<Node>();
+                for (Node node : nodes) {
+                    if (!new HashSet<Edge>(pattern.getEdges(node)).equals(new HashSet<Edge>(local.getEdges(node)))) {
+                        expected.add(node);
+                    }
+                }
+                assertEquals(expected, changed);
+
+                pattern = local;
+                operators++;
+            }
+        }
+
+        assertTrue(operators > 200);
+    }
+
+    /**
+     * The rebuild Ges3 did before, over the whole graph.
+     */
+    private static void fullRebuild(Graph graph) {
+        SearchGraphUtils.basicPattern(graph);
+        new MeekRules().orientImplied(graph);
+    }
+
+    /**
+     * Ges3.insert: x --> y, and t --> y for t in subset.
+     */
+    private static void insert(Graph graph, Node x, Node y, Set<Node> subset) {
+        graph.addDirectedEdge(x, y);
+        for (Node t : subset) {
+            graph.removeEdge(t, y);
+            graph.addDirectedEdge(t, y);
+        }
+    }
+
+    /**
+     * Ges3.delete: removes x *-- y, directs y --> h for h in subset, and x --> h where x --- h.
+     */
+    private static void delete(Graph graph, Node x, Node y, Set<Node> subset) {
+        graph.removeEdge(x, y);
+        for (Node h : subset) {
+            graph.removeEdge(y, h);
+            graph.addDirectedEdge(y, h);
+            if (Edges.isUndirectedEdge(graph.getEdge(x, h))) {
+                graph.removeEdge(x, h);
+                graph.addDirectedEdge(x, h);
+            }
+        }
+    }
+
+    private static boolean isClique(Graph graph, Set<Node> nodes) {
+        for (Node a : nodes) {
+            for (Node b : nodes) {
+                if (a != b && !graph.isAdjacentTo(a, b)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * True iff there is a path from y to x of undirected edges and edges directed away from y that does not go
+     * through blocked.
+     */
+    private static boolean existsSemiDirectedPath(Graph graph, Node y, Node x, Set<Node> blocked) {
+        Set<Node> visited = new HashSet<Node>();
+        LinkedList<Node> queue = new LinkedList<Node>();
+        queue.add(y);
+        visited.add(y);
+        while (!queue.isEmpty()) {
+            Node a = queue.removeFirst();
+            for (Node b : graph.getAdjacentNodes(a)) {
+                Edge edge = graph.getEdge(a, b);
+                if (visited.contains(b) || blocked.contains(b)
+                        || !Edges.isUndirectedEdge(edge) && !edge.pointsTowards(b)) {
+                    continue;
+                }
+                if (b == x) {
+                    return true;
+                }
+                visited.add(b);
+                queue.add(b);
+            }
+        }
+        return false;
+    }
+
+    public static Test suite() {
+        return new TestSuite(TestGes3.class);
+    }
+}
@@ -0,0 +1,315 @@
+package edu.cmu.tetrad.search;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import org.apache.commons.collections.map.MultiKeyMap;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Tests LocalScoreCache against the MultiKeyMap from (variable, set of parents) to score it replaced, its memory cap
+ * (a segment that goes over its share is emptied, the others keep their scores), its hit, miss and eviction counters,
+ * and concurrent adds and gets, which must only ever see no score or the score that was added for a key.
+ */
+public final class TestLocalScoreCache extends TestCase {
+
+    private static final int NUM_VARIABLES = 12;
+
+    public TestLocalScoreCache(String name) {
+        super(name);
+    }
+
+    public void testMultiKeyMap() {
+        Random random = new Random(41);
+        LocalScoreCache cache = new LocalScoreCache();
+        MultiKeyMap map = new MultiKeyMap();
+
+        for (int i = 0; i < 20000; i++) {
+            int variable = random.nextInt(NUM_VARIABLES);
+            int[] parents = parents(random, variable);
+
+            if (random.nextInt(3) == 0) {
+                double score = random.nextInt(4) == 0 ? -random.nextDouble() : random.nextGaussian();
+                cache.add(variable, parents, score);
+                map.put(variable, set(parents), score);
+            } else {
+                Double expected = (Double) map.get(variable, set(parents));
+                double score = cache.get(variable, parents);
+                assertEquals(expected == null ? Double.valueOf(Double.NaN) : expected, Double.valueOf(score));
+            }
+
+            if (i == 15000) {
+                cache.clear();
+                map.clear();
+                assertEquals(0, cache.size());
+            }
+        }
+
+        assertEquals(map.size(), cache.size());
+        assertTrue(Double.isNaN(cache.get(0, new int[]{NUM_VARIABLES})));
+    }
+
+    public void testMemoryCap() {
+        // each of the 16 segments may use 4096 bytes: a table of 64 or 128 slots, not 256
+        long maxBytes = 16 * 4096;
+        LocalScoreCache cache = new LocalScoreCache(maxBytes);
+        Random random = new Random(43);
+        List<int[]> keys = new ArrayList<int[]>();
+        int emptied = 0;
+
+        for (int i = 0; i < 4000; i++) {
+            int variable = random.nextInt(NUM_VARIABLES);
+            int[] parents = parents(random, variable);
+            if (!Double.isNaN(cache.get(variable, parents))) {
+                continue;
+            }
+
+            int sizeBefore = cache.size();
+            long evictionsBefore = cache.getEvictions();
+            long memoryBefore = cache.getMemoryUsage();
+            cache.add(variable, parents, score(variable, parents));
+            keys.add(key(variable, parents));
+            assertTrue(cache.getMemoryUsage() <= maxBytes);
+
+            if (cache.getEvictions() == evictionsBefore) {
+                assertEquals(sizeBefore + 1, cache.size());
+                continue;
+            }
+
+            // one segment was emptied before the score was added: every other score is still there
+            assertEquals(evictionsBefore + 1, cache.getEvictions());
+            assertTrue(cache.getMemoryUsage() < memoryBefore);
+            int dropped = sizeBefore + 1 - cache.size();
+            assertTrue(dropped > 1);
+
+            int missing = 0;
+            for (int[] key : keys) {
+                double score = cache.get(key[0], parents(key));
+                if (Double.isNaN(score)) {
+                    missing++;
+                } else {
+                    assertEquals(score(key[0], parents(key)), score, 0.0);
+                }
+            }
+            assertEquals(dropped, missing);
+            assertEquals(score(variable, parents), cache.get(variable, parents), 0.0);
+
+            List<int[]> kept = new ArrayList<int[]>();
+            for (int[] key : keys) {
+                if (!Double.isNaN(cache.get(key[0], parents(key)))) {
+                    kept.add(key);
+                }
+            }
+            keys = kept;
+            emptied++;
+        }
+
+        assertTrue(emptied > 1);
+        assertEquals(keys.size(), cache.size());
+
+        LocalScoreCache.setDefaultMaxBytes(maxBytes);
+        try {
+            assertEquals(maxBytes, new LocalScoreCache().getMaxBytes());
+        } finally {
+            LocalScoreCache.setDefaultMaxBytes(Long.MAX_VALUE);
+        }
+
+        try {
+            cache.setMaxBytes(0);
+            fail("no exception");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    public void testCounters() {
+        LocalScoreCache cache = new LocalScoreCache();
+        assertTrue(Double.isNaN(cache.get(1, new int[]{2, 3})));
+        cache.add(1, new int[]{3, 2}, -4.5);
+        cache.add(1, new int[]{}, -1.5);
+        assertEquals(-4.5, cache.get(1, new int[]{2, 3}), 0.0);
+        assertEquals(-4.5, cache.get(1, new int[]{3, 2}), 0.0);
+        assertEquals(-1.5, cache.get(1, new int[0]), 0.0);
+        assertTrue(Double.isNaN(cache.get(2, new int[]{1, 3})));
+
+        // a score added again replaces the old one
+        cache.add(1, new int[]{2, 3}, -2.5);
+        assertEquals(-2.5, cache.get(1, new int[]{3, 2}), 0.0);
+
+        assertEquals(4, cache.getHits());
+        assertEquals(2, cache.getMisses());
+        assertEquals(0, cache.getEvictions());
+        assertEquals(2, cache.size());
+
+        cache.clear();
+        assertTrue(Double.isNaN(cache.get(1, new int[]{2, 3})));
+        assertEquals(3, cache.getMisses());
+        assertEquals(0, cache.size());
+    }
+
+    public void testConcurrentAddAndGet() throws InterruptedException {
+        concurrentAddAndGet(Long.MAX_VALUE);
+    }
+
+    public void testConcurrentAddAndGetWithEvictions() throws InterruptedException {
+        concurrentAddAndGet(16 * 4096);
+    }
+
+    /**
+     * Eight threads add and get random keys of a shared cache at the same time; a get must return NaN or the score
+     * of its key. Without a cap, every key that was added is there afterwards.
+     */
+    private void concurrentAddAndGet(long maxBytes) throws InterruptedException {
+        final LocalScoreCache cache = new LocalScoreCache(maxBytes);
+        final int numThreads = 8;
+        final int numOperations = 50000;
+        final CountDownLatch start = new CountDownLatch(1);
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        final AtomicLong gets = new AtomicLong();
+        final Set<List<Integer>> added = Collections.synchronizedSet(new HashSet<List<Integer>>());
+        List<Thread> threads = new ArrayList<Thread>();
+
+        for (int t = 0; t < numThreads; t++) {
+            final Random random = new Random(47 + t);
+            final boolean writer = t % 2 == 0;
+
+            Thread thread = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+
+                        for (int i = 0; i < numOperations; i++) {
+                            int variable = random.nextInt(NUM_VARIABLES);
+                            int[] parents = parents(random, variable);
+
+                            if (writer && random.nextBoolean()) {
+                                cache.add(variable, parents, score(variable, parents));
+                                added.add(list(key(variable, parents)));
+                            } else {
+                                double score = cache.get(variable, parents);
+                                gets.incrementAndGet();
+
+                                if (!Double.isNaN(score) && score != score(variable, parents)) {
+                                    throw new AssertionError("score " + score + " for " + list(key(variable, parents)));
+                                }
+                            }
+                        }
+                    } catch (Throwable e) {
+                        failure.compareAndSet(null, e);
+                    }
+                }
+            };
+
+            threads.add(thread);
+            thread.start();
+        }
+
+        start.countDown();
+
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        if (failure.get() != null) {
+            throw new AssertionError(failure.get());
+        }
+
+        assertEquals(gets.get(), cache.getHits() + cache.getMisses());
+        assertTrue(cache.getHits() > 0);
+        assertTrue(cache.getMemoryUsage() <= maxBytes);
+
+        if (maxBytes == Long.MAX_VALUE) {
+            assertEquals(0, cache.getEvictions());
+            assertEquals(added.size(), cache.size());
+
+            for (List<Integer> key : added) {
+                int[] parents = new int[key.size() - 1];
+                for (int i = 0; i < parents.length; i++) {
+                    parents[i] = key.get(i + 1);
+                }
+                assertEquals(score(key.get(0), parents), cache.get(key.get(0), parents), 0.0);
+            }
+        } else {
+            assertTrue(cache.getEvictions() > 0);
+            assertTrue(cache.size() < added.size());
+        }
+    }
+
+    /**
+     * Up to four distinct parents of variable, in random order.
+     */
+    private static int[] parents(Random random, int variable) {
+        List<Integer> candidates = new ArrayList<Integer>();
+        for (int v = 0; v < NUM_VARIABLES; v++) {
+            if (v != variable) {
+                candidates.add(v);
+            }
+        }
+        Collections.shuffle(candidates, random);
+
+        int[] parents = new int[random.nextInt(5)];
+        for (int i = 0; i < parents.length; i++) {
+            parents[i] = candidates.get(i);
+        }
+        return parents;
+    }
+
+    /**
+     * A score that only depends on the variable and the set of parents.
+     */
+    private static double score(int variable, int[] parents) {
+        int mask = 0;
+        for (int parent : parents) {
+            mask |= 1 << parent;
+        }
+        return -(variable * (1 << NUM_VARIABLES) + mask) - 0.5;
+    }
+
+    /**
+     * The variable followed by its parents in ascending order.
+     */
+    private static int[] key(int variable, int[] parents) {
+        int[] key = new int[parents.length + 1];
+        key[0] = variable;
+        System.arraycopy(parents, 0, key, 1, parents.length);
+        Arrays.sort(key, 1, key.length);
+        return key;
+    }
+
+    private static int[] parents(int[] key) {
+        int[] parents = new int[key.length - 1];
+        System.arraycopy(key, 1, parents, 0, parents.length);
+        return parents;
+    }
+
+    private static List<Integer> list(int[] key) {
+        List<Integer> list = new ArrayList<Integer>();
+        for (int k : key) {
+            list.add(k);
+        }
+        return list;
+    }
+
+    private static Set<Integer> set(int[] parents) {
+        Set<Integer> set = new HashSet<Integer>();
+        for (int parent : parents) {
+            set.add(parent);
+        }
+        return set;
+    }
+
+    public static Test suite() {
+        return new TestSuite(TestLocalScoreCache.class);
+    }
+}
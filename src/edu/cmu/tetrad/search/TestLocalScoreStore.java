@@ -0,0 +1,136 @@
+package edu.cmu.tetrad.search;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tests LocalScoreStore: scores put are read back, also after the store grew into further tables, after it was closed
+ * and opened again, and while other threads put; a file that is not a store is started over.
+ */
+public final class TestLocalScoreStore extends TestCase {
+
+    private File dir;
+
+    public TestLocalScoreStore(String name) {
+        super(name);
+    }
+
+    public void setUp() throws Exception {
+        dir = File.createTempFile("TestLocalScoreStore", "");
+        dir.delete();
+        dir.mkdirs();
+    }
+
+    public void tearDown() {
+        for (File file : dir.listFiles()) {
+            file.delete();
+        }
+        dir.delete();
+    }
+
+    public void testGrowAndReopen() throws Exception {
+        File file = new File(dir, "scores");
+        LocalScoreStore store = new LocalScoreStore(file);
+        int n = 200000;
+        for (int i = 0; i < n; i++) {
+            store.put(i % 7, "x" + i, parents(i), 10, 1, score(i));
+        }
+        assertEquals(n, store.size());
+        assertTrue(new File(dir, "scores.2").exists());
+        assertScores(store, n);
+        store.close();
+
+        store = new LocalScoreStore(file);
+        assertEquals(n, store.size());
+        assertScores(store, n);
+        store.put(2, "x2", parents(2), 10, 1, -1.5);
+        assertEquals(n, store.size());
+        assertEquals(-1.5, store.get(2, "x2", new String[]{"p1", "p0"}, 10, 1), 0.0);
+        store.close();
+    }
+
+    public void testInvalidFile() throws Exception {
+        File file = new File(dir, "scores");
+        LocalScoreStore store = new LocalScoreStore(file);
+        for (int i = 0; i < 60000; i++) {
+            store.put(i % 7, "x" + i, parents(i), 10, 1, score(i));
+        }
+        store.close();
+        assertTrue(new File(dir, "scores.1").exists());
+
+        FileOutputStream out = new FileOutputStream(file);
+        out.write(new byte[]{1, 2, 3});
+        out.close();
+        store = new LocalScoreStore(file);
+        assertEquals(0, store.size());
+        assertTrue(Double.isNaN(store.get(0, "x0", parents(0), 10, 1)));
+        assertFalse(new File(dir, "scores.1").exists());
+        store.close();
+    }
+
+    public void testConcurrent() throws Exception {
+        final LocalScoreStore store = new LocalScoreStore(new File(dir, "scores"));
+        final int n = 120000;
+        final AtomicInteger wrong = new AtomicInteger();
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int t = 0; t < 4; t++) {
+            final int first = t;
+            threads.add(new Thread() {
+                public void run() {
+                    try {
+                        for (int i = first; i < n; i += 4) {
+                            store.put(i % 7, "x" + i, parents(i), 10, 1, score(i));
+                            int j = i / 2;
+                            double score = store.get(j % 7, "x" + j, parents(j), 10, 1);
+                            if (!Double.isNaN(score) && score != score(j)) {
+                                wrong.incrementAndGet();
+                            }
+                        }
+                    } catch (Exception e) {
+                        wrong.incrementAndGet();
+                    }
+                }
+            });
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(0, wrong.get());
+        assertEquals(n, store.size());
+        assertScores(store, n);
+        store.close();
+    }
+
+    private static void assertScores(LocalScoreStore store, int n) {
+        for (int i = 0; i < n; i += 13) {
+            assertEquals(score(i), store.get(i % 7, "x" + i, parents(i), 10, 1), 0.0);
+            assertTrue(Double.isNaN(store.get(i % 7, "x" + i, parents(i), 1, 1)));
+        }
+    }
+
+    private static String[] parents(int i) {
+        String[] parents = new String[i % 3];
+        for (int p = 0; p < parents.length; p++) {
+            parents[p] = "p" + p;
+        }
+        return parents;
+    }
+
+    private static double score(int i) {
+        return -i / 3.0;
+    }
+
+    public static Test suite() {
+        return new TestSuite(TestLocalScoreStore.class);
+    }
+}
@@ -11,13 +11,14 @@ import java.io.FileNotFoundException;
 import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
-import java.sql.DriverManager;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.ArrayList;
 import java.util.Properties;
 
+import database.ConnectionPool;
+
 import lattice.short_rnid_LatticeGenerator;
 
 import org.apache.commons.lang.StringUtils;
@@ -809,7 +810,7 @@ public class fmt
 		
 		try
 		{
-			con = (Connection) DriverManager.getConnection( CONN_STR, 
+			con = (Connection) ConnectionPool.getConnection( "fmt", CONN_STR, 
 															username, 
 															password );
 		}
@@ -0,0 +1,204 @@
+package lattice;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+
+import testing.MemoryDatabase;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/*
+ * Tests short_rnid_LatticeGenerator.generate, which builds the lattice over BitSets and writes it with batches,
+ * against the tables of the generator it replaces, redone here on the same RNodes: the rnids a, b, ... in the order
+ * of RNodes, lattice_set read back per length, one "insert ignore" per set, relation and member, checkConstraints
+ * with the pvids of every member, and lattice_mapping from the orig_rnid of every member. The tables are in a
+ * MemoryDatabase.
+ */
+public final class TestShort_rnid_LatticeGenerator extends TestCase {
+
+    static final String DB = "test_BN";
+
+    public TestShort_rnid_LatticeGenerator(String name) {
+        super(name);
+    }
+
+    public void testGenerate() throws Exception {
+        Random random = new Random(17);
+        for (int run = 0; run < 30; run++) {
+            String[] pvids = new String[2 + random.nextInt(4)];
+            for (int v = 0; v < pvids.length; v++) {
+                pvids[v] = "x" + v;
+            }
+            List<String[]> rnodes = new ArrayList<String[]>();
+            int numRNodes = 1 + random.nextInt(6);
+            for (int r = 0; r < numRNodes; r++) {
+                String pvid1 = pvids[random.nextInt(pvids.length)];
+                String pvid2 = random.nextInt(5) == 0 ? null : pvids[random.nextInt(pvids.length)];
+                rnodes.add(new String[] { "`r" + r + "(" + pvid1 + (pvid2 == null ? "" : "," + pvid2) + ")`", pvid1, pvid2 });
+            }
+            Collections.shuffle(rnodes, random);
+            assertLattice(rnodes);
+        }
+    }
+
+    /*
+     * a chain r0(x0,x1), r1(x1,x2), ...: the sets of 10 or more RNodes have more than maxNumberOfPVars population
+     * variables and are not in the lattice
+     */
+    public void testMaxNumberOfPVars() throws Exception {
+        List<String[]> rnodes = new ArrayList<String[]>();
+        for (int r = 0; r < 11; r++) {
+            rnodes.add(new String[] { "`r" + r + "(x" + r + ",x" + (r + 1) + ")`", "x" + r, "x" + (r + 1) });
+        }
+        assertLattice(rnodes);
+        assertEquals(9, sqlLattice(rnodes).maxLength);
+    }
+
+    static void assertLattice(List<String[]> rnodes) throws Exception {
+        MemoryDatabase db = MemoryDatabase.get("TestShort_rnid_LatticeGenerator", true);
+        Object[][] rows = new Object[rnodes.size()][];
+        for (int r = 0; r < rows.length; r++) {
+            rows[r] = new Object[] { rnodes.get(r)[0], null, rnodes.get(r)[1], rnodes.get(r)[2] };
+        }
+        db.createTable(DB, "RNodes", new String[] { "orig_rnid", "rnid", "pvid1", "pvid2" }, rows);
+        com.mysql.jdbc.Connection con = db.connectMySql(db.url(DB), DB);
+        int maxNumberOfMembers = short_rnid_LatticeGenerator.generate(con);
+        con.close();
+
+        SqlLattice expected = sqlLattice(rnodes);
+        assertEquals(rnodes.size(), maxNumberOfMembers);
+        assertEquals(expected.rnids, rows(db, "RNodes", "orig_rnid", "rnid"));
+        assertEquals(expected.sets, rows(db, "lattice_set", "name", "length"));
+        assertEquals(expected.rels, rows(db, "lattice_rel", "parent", "child", "removed"));
+        assertEquals(expected.members, rows(db, "lattice_membership", "name", "member"));
+        assertEquals(expected.mapping, rows(db, "lattice_mapping", "orig_rnid", "rnid"));
+    }
+
+    /*
+     * the rows of the four lattice tables and the rnids of RNodes, as "column|column..."
+     */
+    static class SqlLattice {
+        TreeSet<String> rnids = new TreeSet<String>(), sets = new TreeSet<String>(), rels = new TreeSet<String>(),
+                members = new TreeSet<String>(), mapping = new TreeSet<String>();
+        int maxLength;
+    }
+
+    /*
+     * generate as it was before the BitSets, with the tables kept here; rnodes: orig_rnid, pvid1, pvid2
+     */
+    static SqlLattice sqlLattice(List<String[]> rnodes) {
+        SqlLattice lattice = new SqlLattice();
+
+        // update RNodes set rnid = '`a`' ..., in the order of "select orig_rnid from RNodes"
+        HashMap<String, String> origRnid = new HashMap<String, String>();
+        HashMap<String, String[]> keys = new HashMap<String, String[]>();
+        List<String> firstSets = new ArrayList<String>();
+        int fc = 97;
+        for (String[] rnode : rnodes) {
+            String rnid = String.valueOf((char) fc++);
+            lattice.rnids.add(rnode[0] + "|`" + rnid + "`");
+            origRnid.put(rnid, rnode[0]);
+            keys.put(rnid, new String[] { rnode[1], rnode[2] });
+            firstSets.add(rnid);
+        }
+
+        // init
+        LinkedHashMap<String, Integer> latticeSet = new LinkedHashMap<String, Integer>();
+        LinkedHashMap<String, String> latticeRel = new LinkedHashMap<String, String>();
+        for (String set : firstSets) {
+            latticeSet.put("`" + set + "`", 1);
+            latticeRel.put("EmptySet|`" + set + "`", "`" + set + "`");
+            lattice.members.add("`" + set + "`|`" + set + "`");
+        }
+
+        // generateTree: the sets of each length from lattice_set, then createNewSets with insert ignore
+        for (int setLength = 1; setLength < firstSets.size(); setLength++) {
+            ArrayList<String> sets = new ArrayList<String>();
+            for (String name : latticeSet.keySet()) {
+                if (latticeSet.get(name) == setLength) {
+                    sets.add(name.substring(1, name.length() - 1));
+                }
+            }
+            for (String firstSet : firstSets) {
+                for (String secondSet : sets) {
+                    HashSet<String> newSet = new HashSet<String>();
+                    String[] secondSetParts = short_rnid_LatticeGenerator.nodeSplit(secondSet);
+                    if (!checkConstraints(keys, firstSet, secondSetParts)) continue;
+                    newSet.add(firstSet);
+                    Collections.addAll(newSet, secondSetParts);
+                    String newSetName = short_rnid_LatticeGenerator.nodeJoin(newSet);
+                    if (newSetName.compareTo(secondSet) != 0) {
+                        newSetName = "`" + newSetName + "`";
+                        if (!latticeSet.containsKey(newSetName)) {
+                            latticeSet.put(newSetName, newSet.size());
+                        }
+                        String rel = "`" + secondSet + "`|" + newSetName;
+                        if (!latticeRel.containsKey(rel)) {
+                            latticeRel.put(rel, "`" + firstSet + "`");
+                        }
+                        lattice.members.add(newSetName + "|`" + firstSet + "`");
+                        for (String member : newSet) {
+                            lattice.members.add(newSetName + "|`" + member + "`");
+                        }
+                    }
+                }
+            }
+        }
+        for (String name : latticeSet.keySet()) {
+            lattice.sets.add(name + "|" + latticeSet.get(name));
+            lattice.maxLength = Math.max(lattice.maxLength, latticeSet.get(name));
+        }
+        for (String rel : latticeRel.keySet()) {
+            lattice.rels.add(rel + "|" + latticeRel.get(rel));
+        }
+
+        // mapping_rnid: the orig_rnids of the members of every set, without the back quotes
+        for (String name : latticeSet.keySet()) {
+            String temp = "";
+            for (String n : name.substring(1, name.length() - 1).split(",")) {
+                temp = temp + origRnid.get(n) + ",";
+            }
+            temp = temp.substring(1, temp.length() - 1);
+            lattice.mapping.add("`" + temp.replace("`", "") + "`|" + name);
+        }
+        return lattice;
+    }
+
+    static boolean checkConstraints(HashMap<String, String[]> keys, String firstSet, String[] secondSetParts) {
+        HashSet<String> firstSetKeys = new HashSet<String>();
+        HashSet<String> secondSetKeys = new HashSet<String>();
+        Collections.addAll(firstSetKeys, keys.get(firstSet));
+        for (String secondSet : secondSetParts) {
+            Collections.addAll(secondSetKeys, keys.get(secondSet));
+        }
+        HashSet<String> unionSetKeys = new HashSet<String>(firstSetKeys);
+        unionSetKeys.addAll(secondSetKeys);
+        if (unionSetKeys.size() > short_rnid_LatticeGenerator.maxNumberOfPVars) return false;
+        firstSetKeys.retainAll(secondSetKeys);
+        return !firstSetKeys.isEmpty();
+    }
+
+    static TreeSet<String> rows(MemoryDatabase db, String table, String... columns) {
+        MemoryDatabase.Table t = db.getTable(DB, table);
+        TreeSet<String> rows = new TreeSet<String>();
+        for (Object[] row : t.rows) {
+            String s = "";
+            for (String column : columns) {
+                s += (s.isEmpty() ? "" : "|") + row[t.indexOf(column)];
+            }
+            assertTrue(s, rows.add(s));
+        }
+        return rows;
+    }
+
+    public static Test suite() {
+        return new TestSuite(TestShort_rnid_LatticeGenerator.class);
+    }
+}
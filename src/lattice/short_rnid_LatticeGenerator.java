@@ -4,13 +4,18 @@ package lattice;
 import com.mysql.jdbc.Connection;
  
 import java.sql.DriverManager;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 public class short_rnid_LatticeGenerator {
 
@@ -27,29 +32,49 @@ public class short_rnid_LatticeGenerator {
 	static String dbPassword;
 	static String dbaddress;
 
+    /*
+     * The lattice is built in memory and written at the end with batched inserts
+     * -a set of RNodes is a BitSet over members, the rnids in alphabetical order, so its name (the rnids joined in
+     *  alphabetical order, see nodeJoin) follows from the bit pattern
+     * -the population variables of a set are a BitSet over the pvids of RNodes, for checkConstraints
+     */
+    static String[] members;
+    static HashMap<String, Integer> memberIndex;
+    //orig_rnid and population variables of members[i]
+    static String[] origRnids;
+    static BitSet[] memberKeys;
+    //all sets in the order they were created, the sets of the last level with their population variables
+    static ArrayList<BitSet> lattice;
+    static LinkedHashMap<BitSet, BitSet> level;
+    //rows of lattice_rel: parent, child, removed
+    static ArrayList<String[]> relRows;
+    final static int batchSize = 1000;
+
     public static int generate(Connection con) throws SQLException {
         //connect to db using jdbc
-        con2 = con;
-        Statement tempst=con2.createStatement();
-        //int len=tempst.execute("SELECT count(*) FROM unielwin_lattice.RNodes;");
+        con2 = con;
+        Statement tempst=con2.createStatement();
         
         
-        //generate shorter rnid, from a to z
+        //generate shorter rnid, from a to z
         int fc=97; 
-        char short_rnid;
-        ResultSet temprs=tempst.executeQuery("select orig_rnid from RNodes;");
-        ArrayList<String> tempList=new ArrayList<String>();
+        char short_rnid;
+        ResultSet temprs=tempst.executeQuery("select orig_rnid from RNodes;");
+        ArrayList<String> tempList=new ArrayList<String>();
         while(temprs.next()) {
             tempList.add(temprs.getString("orig_rnid"));
-        }
-        for(int i=0;i<tempList.size();i++) {
+        }
+        tempst.close();
+        PreparedStatement updateSt = con2.prepareStatement("update RNodes set rnid = ? where orig_rnid = ?");
+        int rows = 0;
+        for(int i=0;i<tempList.size();i++) {
         	short_rnid=(char)fc;           //explict type casting to convert integer to character
-        	fc++;
-        	tempst.execute("update RNodes set rnid='`" + short_rnid + "`' where orig_rnid='" + tempList.get(i) + "';");
-        }
-        tempst.close();
-	
-
+        	fc++;
+        	rows = addRow(updateSt, rows, "`" + short_rnid + "`", tempList.get(i));
+        }
+        flush(updateSt);
+	
+
 
 
         //LATTICE read first sest from RFunctors
@@ -70,8 +95,6 @@ public class short_rnid_LatticeGenerator {
     public static int generateTarget(Connection con) throws SQLException {
         //connect to db using jdbc
         con2 = con;
-        Statement tempst=con2.createStatement();
-        //int len=tempst.execute("SELECT count(*) FROM unielwin_lattice.RNodes;");
         
         
       /* // Aug. 21, 2014, do not need to do this step, since it's copied form _setup database
@@ -111,26 +134,47 @@ public class short_rnid_LatticeGenerator {
     }
 
     //change orig_rnid to rnid, make it shorter
+    //RNodes is read once, with the orig_rnid and the population variables of every rnid
     public static void readFirstSets() throws SQLException {
         firstSets = new ArrayList<String>();
         wholeSets = new ArrayList<String>();
+        ArrayList<String> orig = new ArrayList<String>();
+        ArrayList<String[]> keys = new ArrayList<String[]>();
         Statement st = con2.createStatement();
-        ResultSet rs = st.executeQuery("select rnid from RNodes;");
+        ResultSet rs = st.executeQuery("select rnid, orig_rnid, pvid1, pvid2 from RNodes;");
         
-        // while(rs.next())
-        //System.out.println(rs.getString(1));
-     
         while(rs.next()){
-            /*firstSets.add(rs.getString("rnid"));*/
         	firstSets.add(rs.getString("rnid").substring(1,rs.getString("rnid").length()-1));
+        	orig.add(rs.getString("orig_rnid"));
+        	keys.add(new String[] { rs.getString("pvid1"), rs.getString("pvid2") });
         }
-/*        System.out.println("***********");
-        for(String g:firstSets)
-        	System.out.println(g);*/
         st.close();
+
+        List<String> sorted = new ArrayList<String>(firstSets);
+        Collections.sort(sorted);
+        members = sorted.toArray(new String[sorted.size()]);
+        memberIndex = new HashMap<String, Integer>();
+        for (int i = 0; i < members.length; i++) {
+            memberIndex.put(members[i], i);
+        }
+        origRnids = new String[members.length];
+        memberKeys = new BitSet[members.length];
+        //a null pvid2 counts as a population variable, as it did in the sets of checkConstraints
+        HashMap<String, Integer> pvids = new HashMap<String, Integer>();
+        for (int i = 0; i < firstSets.size(); i++) {
+            int member = memberIndex.get(firstSets.get(i));
+            origRnids[member] = orig.get(i);
+            memberKeys[member] = new BitSet();
+            for (String pvid : keys.get(i)) {
+                if (!pvids.containsKey(pvid)) {
+                    pvids.put(pvid, pvids.size());
+                }
+                memberKeys[member].set(pvids.get(pvid));
+            }
+        }
     }
 
-    public static void init() throws SQLException {
+    public static void init() throws SQLException {
         
         maxNumberOfMembers = firstSets.size();
         Statement st = con2.createStatement();
@@ -141,102 +185,81 @@ public class short_rnid_LatticeGenerator {
 
         st.execute("truncate lattice_rel;");
         st.execute("truncate lattice_membership;");
-        st.execute("truncate lattice_set;");
-        
+        st.execute("truncate lattice_set;");
+        st.close();
 
+        lattice = new ArrayList<BitSet>();
+        level = new LinkedHashMap<BitSet, BitSet>();
+        relRows = new ArrayList<String[]>();
         for(String set : firstSets){
-            st.execute("insert into lattice_set (name,length) values ('`" + set + "`',1);");   //adding apostrophe `
-            st.execute("insert into lattice_rel (parent,child,removed) values ('EmptySet','`" + set + "`','`" + set + "`');");
-            st.execute("insert into lattice_membership (name, member) values ('`" + set + "`', '`" + set + "`');");
+            int member = memberIndex.get(set);
+            BitSet firstSet = new BitSet();
+            firstSet.set(member);
+            lattice.add(firstSet);
+            level.put(firstSet, memberKeys[member]);
+            relRows.add(new String[] { "EmptySet", "`" + set + "`", "`" + set + "`" });   //adding apostrophe `
         }
-        st.close();
     }
 
+    /*
+     * builds the levels 2 .. maxNumberOfMembers in memory, then writes lattice_set, lattice_rel and
+     * lattice_membership
+     */
     public static void generateTree() throws SQLException {
-        Statement st = con2.createStatement();
         for(int setLength = 1; setLength < maxNumberOfMembers; setLength++){
-            ArrayList<String> sets = new ArrayList<String>();
-            ResultSet rs = st.executeQuery("select name from lattice_set where length = " + setLength + ";");
-            int tem=0;
-            while(rs.next()){
-                String h= rs.getString("name").substring(1,rs.getString("name").length()-1 ) ;   //deleting apostrophe from beginning and end
-                sets.add(h);
-                //System.out.println(rs.getString("name").length());
-            }
-            
-//            System.out.println(sets.size());
-//            for (String s : sets)
-//            System.out.println(s);
-//            System.out.println(setLength);
-//            System.out.println(sets);
-            
-            createNewSets(sets);
+            level = createNewSets(level);
         }
-        st.close();
+        writeLattice();
     }
 
-    public static void createNewSets(ArrayList<String> sets) throws SQLException {
+    /*
+     * the sets of the next level: every set of this level plus one RNode that shares a population variable with it
+     * -sets: set -> its population variables
+     * -the lattice_rel row (set, new set, added RNode) is kept for every pair, a new set is kept once
+     */
+    public static LinkedHashMap<BitSet, BitSet> createNewSets(LinkedHashMap<BitSet, BitSet> sets) {
+        LinkedHashMap<BitSet, BitSet> newSets = new LinkedHashMap<BitSet, BitSet>();
         for(String firstSet : firstSets){
-            for(String secondSet : sets){
-            	//System.out.println(secondSet);
-                HashSet<String> newSet = new HashSet<String>();
-                String[] secondSetParts = nodeSplit(secondSet);
-                //String[] secondSetParts = secondSet;
-                
-                
-                //System.out.println("size of secondset:"+ secondSet.length());
-                
-//                System.out.println("********************");
-//                System.out.println();
-//                System.out.println(secondSetParts);
- //               for (String s : secondSetParts)
- //               System.out.print(s + " ");
-//                System.out.println();
-//                System.out.println(checkConstraints(firstSet, secondSetParts));
-//                System.out.println("********************");
-                
-                //System.out.println(checkConstraints(firstSet, secondSetParts));
-                if (!checkConstraints(firstSet, secondSetParts)) continue;
-                //System.out.println("*****()*****");
-
-                //add set with length 1
-                newSet.add(firstSet);
-               
-                //add all members of the set with length 1 less
-                Collections.addAll(newSet, secondSetParts);
-
-                int newSetLength = newSet.size();
-                String newSetName = nodeJoin(newSet);  
-                //System.out.println(newSetName.compareTo(secondSet));
-
-                //add it to db and createdSet
-                if(newSetName.compareTo(secondSet) != 0) {
-                    wholeSets.add(newSetName);
-                    // insert ignore is used to remove duplicates by primary keys
-                    // is this really necessary? I'd like to enforce foreign key constraints. O.S.
-                    Statement st = con2.createStatement();
-                    // add new set
-                    //System.out.print(newSetName+"     ");
-                    
-                    //adding apostrophe `
-                    newSetName="`"+newSetName+"`";
-                    secondSet = "`" + secondSet + "`";
-                    
-                    st.execute("insert ignore into lattice_set (name,length) values ('" + newSetName + "'," + newSetLength + ");");
-                    // add relation
-                    // added first set to the tablse, first set is the removed child from the child to build the parent
-					st.execute("insert ignore into lattice_rel (parent,child,removed) values ('" + secondSet + "','" + newSetName + "','`" + firstSet + "`');");
-                    // add members
-                    // add first member
-                    st.execute("insert ignore into lattice_membership (name,member) values ('" + newSetName +"','`" + firstSet + "`');");
-                    // add the rest
-                    for (String secondSetMembers : newSet){
-                        st.execute("insert ignore into lattice_membership (name,member) values ('" + newSetName + "','`" + secondSetMembers + "`');");
-                    }
-                    st.close();
+            int first = memberIndex.get(firstSet);
+            for(Map.Entry<BitSet, BitSet> secondSet : sets.entrySet()){
+                if (secondSet.getKey().get(first) || !checkConstraints(first, secondSet.getValue())) continue;
+
+                BitSet newSet = (BitSet) secondSet.getKey().clone();
+                newSet.set(first);
+                if (!newSets.containsKey(newSet)) {
+                    BitSet newKeys = (BitSet) secondSet.getValue().clone();
+                    newKeys.or(memberKeys[first]);
+                    newSets.put(newSet, newKeys);
+                    lattice.add(newSet);
+                    wholeSets.add(nodeName(newSet));
                 }
+                // added first set to the tablse, first set is the removed child from the child to build the parent
+                relRows.add(new String[] { "`" + nodeName(secondSet.getKey()) + "`", "`" + nodeName(newSet) + "`", "`" + firstSet + "`" });
+            }
+        }
+        return newSets;
+    }
+
+    static void writeLattice() throws SQLException {
+        PreparedStatement setSt = con2.prepareStatement("insert into lattice_set (name,length) values (?,?)");
+        PreparedStatement memberSt = con2.prepareStatement("insert into lattice_membership (name,member) values (?,?)");
+        int setRows = 0, memberRows = 0;
+        for (BitSet set : lattice) {
+            String name = "`" + nodeName(set) + "`";
+            setRows = addRow(setSt, setRows, name, set.cardinality());
+            for (int i = set.nextSetBit(0); i >= 0; i = set.nextSetBit(i + 1)) {
+                memberRows = addRow(memberSt, memberRows, name, "`" + members[i] + "`");
             }
         }
+        flush(setSt);
+        flush(memberSt);
+
+        PreparedStatement relSt = con2.prepareStatement("insert into lattice_rel (parent,child,removed) values (?,?,?)");
+        int rows = 0;
+        for (String[] rel : relRows) {
+            rows = addRow(relSt, rows, (Object[]) rel);
+        }
+        flush(relSt);
     }
 
     /*   orig_rnid													rind
@@ -245,113 +268,63 @@ public class short_rnid_LatticeGenerator {
 		`registration(course0,student0)` 							`b`
       * */
     
-public static void mapping_rnid() throws SQLException{
+    public static void mapping_rnid() throws SQLException{
     	
     	Statement st=con2.createStatement();
     	st.execute("drop table if exists lattice_mapping ;");
     	st.execute("create table if not exists lattice_mapping(orig_rnid VARCHAR(200), rnid VARCHAR(20), PRIMARY KEY(orig_rnid,rnid));"); //zqian, max key length limitation, Oct 11, 2013
-    
-    	
-    	ResultSet rst=st.executeQuery("select name from lattice_set order by length;");//getting nodes from lattice_set table
-    	
-    	ArrayList <String>list_rnid =new ArrayList<String>(); //for storing lattice_set name
-    	
-    	
-    	while(rst.next()){
-    		
-    		String temp="";
-    		
-    			for(int i=0;i<rst.getString(1).length()-1;i++)
-    			{if(rst.getString(1).charAt(i)!='`') 
-    				temp=temp+rst.getString(1).charAt(i);
-    			}
-    		
-    		temp="`"+temp+"`";
-    		list_rnid.add(temp);
-    		//System.out.println(temp);
-    	
-    		  	}
-    	
-    	
-    	
-    	for(int i=0;i<list_rnid.size();i++){
-    		
-    		String n[]=list_rnid.get(i).substring(1, list_rnid.get(i).length()-1).split(",");
-    		String temp="";
-    		
-    		for(int j=0;j<n.length;j++){
-    			n[j]="`"+n[j]+"`";
-    			ResultSet rst2=st.executeQuery("select orig_rnid from RNodes where rnid='"+n[j]+"';" );//getting orignal Rnodes from Rnodes table
-    			  rst2.absolute(1);			
-    		     
-    			temp=temp+rst2.getString(1)+",";
-    			
-    		}
-    		
-    		temp=temp.substring(1, temp.length()-1);
-    		
-    		String orig_rnid="";
-    		for(int k=0;k<temp.length();k++){
-    			if(temp.charAt(k)!='`')
-    				orig_rnid=orig_rnid+temp.charAt(k);
+    	st.close();
+
+    	PreparedStatement mapSt = con2.prepareStatement("insert into lattice_mapping (orig_rnid,rnid) values (?,?)");
+    	int rows = 0;
+    	for (BitSet set : lattice) {
+    		String orig_rnid = "";
+    		for (int i = set.nextSetBit(0); i >= 0; i = set.nextSetBit(i + 1)) {
+    			orig_rnid = orig_rnid + delimiter + origRnids[i].replace("`", "");
     		}
-    		orig_rnid="`"+orig_rnid+"`";
-    		//System.out.println(orig_rnid);
-    		
-    		
-    		
-    		st.execute("insert into lattice_mapping (orig_rnid,rnid) values('"+orig_rnid+"','"+list_rnid.get(i)+"');");
-    		//System.out.println(temp+"  "+list.get(i));
+    		rows = addRow(mapSt, rows, "`" + orig_rnid.substring(1) + "`", "`" + nodeName(set) + "`");
     	}
-    	
-    	st.close();
+    	flush(mapSt);
     }
     
-    
-    
-    
-    public static boolean checkConstraints(String firstSet, String[] secondSetParts) throws SQLException {
-        
-//    	System.out.println(firstSet);
-    	
-    	HashSet<String> firstSetKeys = new HashSet<String>();
-        HashSet<String> secondSetKeys = new HashSet<String>();
-        Statement st = con2.createStatement();
-
-        // get primary key for first set
-        
-        //use rnid, the shorter one
-        ResultSet rs = st.executeQuery("select pvid1, pvid2 from RNodes where rnid = '`" + firstSet + "`';");
-        while(rs.next()){
-            firstSetKeys.add(rs.getString("pvid1"));
-            firstSetKeys.add(rs.getString("pvid2"));
+    //adds a row to the batch of st, the batch is sent every batchSize rows
+    static int addRow(PreparedStatement st, int rows, Object... values) throws SQLException {
+        for (int i = 0; i < values.length; i++) {
+            st.setObject(i + 1, values[i]);
         }
-
-        // get primary key for second set
-        //System.out.println(secondSetParts);
-        for (String secondSet : secondSetParts)
-        {
-            rs = st.executeQuery("select pvid1, pvid2 from RNodes where rnid = '`" + secondSet + "`';");
-            while(rs.next()){
-                secondSetKeys.add(rs.getString("pvid1"));
-                secondSetKeys.add(rs.getString("pvid2"));
-            }
+        st.addBatch();
+        if (++rows % batchSize == 0) {
+            st.executeBatch();
         }
+        return rows;
+    }
+
+    static void flush(PreparedStatement st) throws SQLException {
+        st.executeBatch();
         st.close();
+    }
+    
+    
+    public static boolean checkConstraints(int firstSet, BitSet secondSetKeys) {
+        BitSet firstSetKeys = memberKeys[firstSet];
 
         // check if the number of population variables exceeds the limit
-        HashSet<String> unionSetKeys = new HashSet<String>(firstSetKeys);
-        unionSetKeys.addAll(secondSetKeys);
-        if (unionSetKeys.size() > maxNumberOfPVars) return false;
-
-//        System.out.println("*************************");
-//        System.out.println(firstSetKeys);
-//        System.out.println(secondSetKeys);
-//        System.out.println("*************************");
-        
+        BitSet unionSetKeys = (BitSet) firstSetKeys.clone();
+        unionSetKeys.or(secondSetKeys);
+        if (unionSetKeys.cardinality() > maxNumberOfPVars) return false;
+
         // check if there is a shared primary key
-        firstSetKeys.retainAll(secondSetKeys);
-        return !firstSetKeys.isEmpty();
+        return firstSetKeys.intersects(secondSetKeys);
+    }
+
+    // name of a lattice node from its bits, the members are in alphabetical order as in nodeJoin
+    public static String nodeName(BitSet set) {
+        StringBuilder name = new StringBuilder();
+        for (int i = set.nextSetBit(0); i >= 0; i = set.nextSetBit(i + 1)) {
+            if (name.length() > 0) name.append(delimiter);
+            name.append(members[i]);
+        }
+        return name.toString();
     }
 
     // generate a new lattice node by join a list of relation nodes
@@ -23,12 +23,17 @@
 
 
 import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.ArrayList;
 
+import database.ConnectionPool;
+
+import ct.CPEstimator;
+import ct.CTCursor;
+import ct.DictionarySet;
+
 
 public class local_CP {
 	
@@ -42,6 +47,7 @@ public class local_CP {
 	 static String rchain ;
 	 static int maxNumberOfMembers = 0;
 	 private static boolean linkAnalysis;
+	 static boolean inMemoryCP; // InMemoryCP = 1: local CP tables computed in memory from the local CT tables (estimate)
 
 	 //static long total_sum;
 	 
@@ -132,6 +138,12 @@ public class local_CP {
 			 parents.add(rst.getString(1));
 		 }
 		 
+		 if (inMemoryCP) {
+			 estimate(FID, parents, CTtable, localtable, con1);
+			 st.close();
+			 return;
+		 }
+		 
 		 //create local cp table
 		 String createtable = "CREATE TABLE IF NOT EXISTS " + localtable + "( MULT decimal(41,0), `" + FID + "` varchar(20), ";
 		 for (int i=0; i<parents.size(); ++i) {
@@ -211,6 +223,12 @@ public class local_CP {
 		 
 		 st.execute("Drop table if exists " + localtable + ";");
 		 
+		 if (inMemoryCP) {
+			 estimate(FID, new ArrayList<String>(), CTtable, localtable, con1);
+			 st.close();
+			 return;
+		 }
+		 
 		 //create local table
 		 String createtable = "CREATE TABLE IF NOT EXISTS " + localtable + " (MULT decimal(41,0), `" + FID + "` VARCHAR(20), CP float(7,6), prior float(7,6));";
 		 System.out.println("local: " + createtable);
@@ -234,6 +252,19 @@ public class local_CP {
 		 st.close();
 	 }
 	 
+	 // same local CP table (FID, parents, CP, prior) from one pass over the local CT table, written with one bulk insert
+	 public static void estimate(String FID, ArrayList<String> parents, String CTtable, String localtable, Connection con1) throws SQLException {
+		 CPEstimator.Family family = new CPEstimator.Family(FID, parents.toArray(new String[0]));
+		 ArrayList<CPEstimator.Family> families = new ArrayList<CPEstimator.Family>();
+		 families.add(family);
+		 CPEstimator.estimate(CTCursor.readTable(con1, CTtable, new DictionarySet()), families);
+		 
+		 String[] layout = parents.isEmpty() ? new String[] { CPEstimator.CHILD, CPEstimator.CP, CPEstimator.PRIOR }
+				 : new String[] { CPEstimator.CHILD, CPEstimator.PARENTS, CPEstimator.CP, CPEstimator.PRIOR };
+		 System.out.println("local: " + localtable);
+		 CPEstimator.write(con1, family, localtable, layout);
+	 }
+	 
 	 public static void sumCP1(String FID, Connection con1) throws SQLException {
 		 
 		 Statement st = con1.createStatement();
@@ -280,6 +311,7 @@ public class local_CP {
 		{
 			linkAnalysis = false;
 		}
+		inMemoryCP = BayesBaseCT_SortMerge.getOptionalProperty(conf, "InMemoryCP", "0").equals("1");
 	 	 
 	 }
 	  
@@ -291,7 +323,7 @@ public class local_CP {
 	 	 } catch (Exception ex) {
 	 	 	 System.err.println("Unable to load MySQL JDBC driver");
 	 	 }
-	 	 con1 = DriverManager.getConnection(CONN_STR1, dbUsername, dbPassword);
+	 	 con1 = ConnectionPool.getConnection("local_CP", CONN_STR1, dbUsername, dbPassword);
 	 	 java.sql.Statement st = con1.createStatement();
 	 	 ResultSet maxl = st.executeQuery("Select max(length) From " + databaseName + ".lattice_set;");
 	 	 maxl.absolute(1);
@@ -0,0 +1,1492 @@
+/*
+ * MemoryDatabase.java
+ *
+ * A small in-memory SQL database behind a JDBC driver for the unit tests (urls jdbc:memory:<name>/<database>), so
+ * that the stages can be run on fixtures without a MySQL server
+ * -tables live in schemas (the databases of the urls, or db.table), names are case insensitive, values are Long,
+ *  Double, String or null
+ * -statements: show columns / show tables, select [distinct] ... from one table [where] [group by] [order by] [limit]
+ *  with count(*) and sum(..), insert ... values / insert ... select, update, delete, create table (like, columns),
+ *  drop table, truncate table, use, create / drop database, load data [local] infile (the values are kept as
+ *  strings, \N is null); alter table (indexes) is ignored
+ * -any other query (joins over the metadata tables, ...) has to be given with canned(sql, columns, rows), it is
+ *  matched on the exact string
+ * -every statement that is run is kept in the log
+ */
+
+package testing;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.Driver;
+import java.sql.DriverManager;
+import java.sql.DriverPropertyInfo;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+
+public class MemoryDatabase {
+
+	public static final String PREFIX = "jdbc:memory:";
+
+	static final HashMap<String, MemoryDatabase> databases = new HashMap<String, MemoryDatabase>();
+
+	static {
+		try {
+			DriverManager.registerDriver(new MemoryDriver());
+		} catch (SQLException e) {
+			throw new ExceptionInInitializerError(e);
+		}
+	}
+
+	/*
+	 * A table: column names and rows
+	 */
+	public static class Table {
+		public final String name;
+		public final ArrayList<String> columns = new ArrayList<String>();
+		public final ArrayList<Object[]> rows = new ArrayList<Object[]>();
+
+		Table(String name, List<String> columns) {
+			this.name = name;
+			this.columns.addAll(columns);
+		}
+
+		public int indexOf(String column) {
+			for (int i = 0; i < columns.size(); i++) {
+				if (columns.get(i).equalsIgnoreCase(column)) {
+					return i;
+				}
+			}
+			return -1;
+		}
+	}
+
+	static class Canned {
+		final String[] columns;
+		final Object[][] rows;
+
+		Canned(String[] columns, Object[][] rows) {
+			this.columns = columns;
+			this.rows = rows;
+		}
+	}
+
+	final String name;
+	final TreeMap<String, Table> tables = new TreeMap<String, Table>();
+	final HashMap<String, Canned> canned = new HashMap<String, Canned>();
+	public final ArrayList<String> log = new ArrayList<String>();
+
+	MemoryDatabase(String name) {
+		this.name = name;
+	}
+
+	/*
+	 * The database of the urls jdbc:memory:<name>/..., a new empty one if reset
+	 */
+	public static synchronized MemoryDatabase get(String name, boolean reset) {
+		MemoryDatabase db = databases.get(name);
+		if (db == null || reset) {
+			db = new MemoryDatabase(name);
+			databases.put(name, db);
+		}
+		return db;
+	}
+
+	public String url(String schema) {
+		return PREFIX + name + "/" + schema;
+	}
+
+	/*
+	 * Creates (or replaces) schema.table with the given columns and rows
+	 */
+	public synchronized Table createTable(String schema, String table, String[] columns, Object[]... rows) {
+		Table t = new Table(table, Arrays.asList(columns));
+		for (Object[] row : rows) {
+			t.rows.add(row.clone());
+		}
+		tables.put(key(schema, table), t);
+		return t;
+	}
+
+	public synchronized Table getTable(String schema, String table) {
+		return tables.get(key(schema, table));
+	}
+
+	public synchronized List<String> getTableNames(String schema) {
+		ArrayList<String> names = new ArrayList<String>();
+		String prefix = schema.toLowerCase() + ".";
+		for (String key : tables.keySet()) {
+			if (key.startsWith(prefix)) {
+				names.add(tables.get(key).name);
+			}
+		}
+		return names;
+	}
+
+	/*
+	 * The answer to a query the engine cannot run itself
+	 */
+	public synchronized void canned(String sql, String[] columns, Object[]... rows) {
+		canned.put(sql.trim(), new Canned(columns, rows));
+	}
+
+	/*
+	 * Answer with one column "Entries", as for the queries of the ADT_* lists
+	 */
+	public void cannedEntries(String sql, String... entries) {
+		Object[][] rows = new Object[entries.length][];
+		for (int i = 0; i < entries.length; i++) {
+			rows[i] = new Object[] { entries[i] };
+		}
+		canned(sql, new String[] { "Entries" }, rows);
+	}
+
+	static String key(String schema, String table) {
+		return (schema + "." + table).toLowerCase();
+	}
+
+	//==============================ENGINE=======================//
+
+	/*
+	 * Result of a statement: a result set (columns and rows) or an update count
+	 */
+	static class Result {
+		String[] columns;
+		List<Object[]> rows;
+		int updateCount = -1;
+
+		Result(String[] columns, List<Object[]> rows) {
+			this.columns = columns;
+			this.rows = rows;
+		}
+
+		Result(int updateCount) {
+			this.updateCount = updateCount;
+		}
+	}
+
+	synchronized Result run(Session session, String sql, Object[] params) throws SQLException {
+		log.add(sql);
+		Canned c = canned.get(sql.trim());
+		if (c != null) {
+			ArrayList<Object[]> rows = new ArrayList<Object[]>();
+			for (Object[] row : c.rows) {
+				rows.add(row.clone());
+			}
+			return new Result(c.columns, rows);
+		}
+		Parser p = new Parser(sql, params);
+		try {
+			Result result = statement(session, p);
+			p.accept(";");
+			if (!p.atEnd()) {
+				throw p.error("unexpected " + p.peek());
+			}
+			return result;
+		} catch (IndexOutOfBoundsException e) {
+			throw new SQLException("MemoryDatabase cannot run: " + sql, "42000");
+		}
+	}
+
+	Result statement(Session session, Parser p) throws SQLException {
+		if (p.acceptWord("show")) {
+			if (p.acceptWord("columns") || p.acceptWord("fields")) {
+				p.expectWord("from");
+				Table t = table(session, p.name(), true);
+				ArrayList<Object[]> rows = new ArrayList<Object[]>();
+				for (String col : t.columns) {
+					rows.add(new Object[] { col, "varchar(45)", "YES", "", null, "" });
+				}
+				return new Result(new String[] { "Field", "Type", "Null", "Key", "Default", "Extra" }, rows);
+			}
+			p.expectWord("tables");
+			String schema = session.catalog;
+			if (p.acceptWord("from") || p.acceptWord("in")) {
+				schema = p.identifier();
+			}
+			ArrayList<Object[]> rows = new ArrayList<Object[]>();
+			for (String name : getTableNames(schema)) {
+				rows.add(new Object[] { name });
+			}
+			return new Result(new String[] { "Tables_in_" + schema }, rows);
+		}
+		if (p.peekWord("select")) {
+			return select(session, p);
+		}
+		if (p.acceptWord("insert")) {
+			p.acceptWord("ignore");
+			p.expectWord("into");
+			Table t = table(session, p.name(), true);
+			int[] target = new int[t.columns.size()];
+			for (int i = 0; i < target.length; i++) {
+				target[i] = i;
+			}
+			if (p.accept("(")) {
+				ArrayList<Integer> cols = new ArrayList<Integer>();
+				do {
+					cols.add(column(t, p.identifier()));
+				} while (p.accept(","));
+				p.expect(")");
+				target = new int[cols.size()];
+				for (int i = 0; i < target.length; i++) {
+					target[i] = cols.get(i);
+				}
+			}
+			List<Object[]> values = new ArrayList<Object[]>();
+			if (p.acceptWord("values")) {
+				do {
+					p.expect("(");
+					ArrayList<Object> row = new ArrayList<Object>();
+					do {
+						row.add(p.expression().eval(null, null));
+					} while (p.accept(","));
+					p.expect(")");
+					values.add(row.toArray());
+				} while (p.accept(","));
+			} else {
+				values = select(session, p).rows;
+			}
+			for (Object[] v : values) {
+				if (v.length != target.length) {
+					throw p.error("column count does not match");
+				}
+				Object[] row = new Object[t.columns.size()];
+				for (int i = 0; i < target.length; i++) {
+					row[target[i]] = v[i];
+				}
+				t.rows.add(row);
+			}
+			return new Result(values.size());
+		}
+		if (p.acceptWord("update")) {
+			Table t = table(session, p.name(), true);
+			p.expectWord("set");
+			ArrayList<Integer> cols = new ArrayList<Integer>();
+			ArrayList<Expression> exprs = new ArrayList<Expression>();
+			do {
+				cols.add(column(t, p.identifier()));
+				p.expect("=");
+				exprs.add(p.expression());
+			} while (p.accept(","));
+			Expression where = p.acceptWord("where") ? p.expression() : null;
+			int count = 0;
+			for (Object[] row : t.rows) {
+				if (where == null || truth(where.eval(t, row))) {
+					Object[] values = new Object[cols.size()];
+					for (int i = 0; i < values.length; i++) {
+						values[i] = exprs.get(i).eval(t, row);
+					}
+					for (int i = 0; i < values.length; i++) {
+						row[cols.get(i)] = values[i];
+					}
+					count++;
+				}
+			}
+			return new Result(count);
+		}
+		if (p.acceptWord("delete")) {
+			p.expectWord("from");
+			Table t = table(session, p.name(), true);
+			Expression where = p.acceptWord("where") ? p.expression() : null;
+			int before = t.rows.size();
+			for (int r = t.rows.size() - 1; r >= 0; r--) {
+				if (where == null || truth(where.eval(t, t.rows.get(r)))) {
+					t.rows.remove(r);
+				}
+			}
+			return new Result(before - t.rows.size());
+		}
+		if (p.acceptWord("truncate")) {
+			p.acceptWord("table");
+			table(session, p.name(), true).rows.clear();
+			return new Result(0);
+		}
+		if (p.acceptWord("drop")) {
+			if (p.acceptWord("database") || p.acceptWord("schema")) {
+				if (p.acceptWord("if")) {
+					p.expectWord("exists");
+				}
+				String prefix = p.identifier().toLowerCase() + ".";
+				for (String key : new ArrayList<String>(tables.keySet())) {
+					if (key.startsWith(prefix)) {
+						tables.remove(key);
+					}
+				}
+				return new Result(0);
+			}
+			p.expectWord("table");
+			boolean ifExists = false;
+			if (p.acceptWord("if")) {
+				p.expectWord("exists");
+				ifExists = true;
+			}
+			do {
+				String[] name = p.name();
+				if (tables.remove(key(schema(session, name), name[1])) == null && !ifExists) {
+					throw new SQLException("Unknown table " + name[1], "42S02");
+				}
+			} while (p.accept(","));
+			return new Result(0);
+		}
+		if (p.acceptWord("create")) {
+			if (p.acceptWord("database") || p.acceptWord("schema")) {
+				if (p.acceptWord("if")) {
+					p.expectWord("not");
+					p.expectWord("exists");
+				}
+				p.identifier();
+				return new Result(0);
+			}
+			p.acceptWord("temporary");
+			p.expectWord("table");
+			boolean ifNotExists = false;
+			if (p.acceptWord("if")) {
+				p.expectWord("not");
+				p.expectWord("exists");
+				ifNotExists = true;
+			}
+			String[] name = p.name();
+			String key = key(schema(session, name), name[1]);
+			if (tables.containsKey(key)) {
+				if (ifNotExists) {
+					p.skipRest();
+					return new Result(0);
+				}
+				throw new SQLException("Table " + name[1] + " already exists", "42S01");
+			}
+			Table t;
+			if (p.acceptWord("like")) {
+				t = new Table(name[1], table(session, p.name(), true).columns);
+			} else if (p.accept("(")) {
+				ArrayList<String> columns = new ArrayList<String>();
+				do {
+					if (p.peekWord("index") || p.peekWord("key") || p.peekWord("primary") || p.peekWord("unique")) {
+						p.skipDefinition();
+					} else {
+						columns.add(p.identifier());
+						p.skipDefinition();
+					}
+				} while (p.accept(","));
+				p.expect(")");
+				p.skipOptions();
+				t = new Table(name[1], columns);
+			} else {
+				p.acceptWord("as");
+				Result r = select(session, p);
+				t = new Table(name[1], Arrays.asList(r.columns));
+				t.rows.addAll(r.rows);
+			}
+			tables.put(key, t);
+			return new Result(0);
+		}
+		if (p.acceptWord("alter")) {
+			p.expectWord("table");
+			table(session, p.name(), true);
+			p.skipRest();
+			return new Result(0);
+		}
+		if (p.acceptWord("use")) {
+			session.catalog = p.identifier();
+			return new Result(0);
+		}
+		if (p.acceptWord("load")) {
+			p.expectWord("data");
+			p.acceptWord("local");
+			p.expectWord("infile");
+			String file = p.string();
+			p.expectWord("into");
+			p.expectWord("table");
+			Table t = table(session, p.name(), true);
+			String fields = "\t", lines = "\n";
+			if (p.acceptWord("fields")) {
+				p.expectWord("terminated");
+				p.expectWord("by");
+				fields = p.string();
+			}
+			if (p.acceptWord("lines")) {
+				p.expectWord("terminated");
+				p.expectWord("by");
+				lines = p.string();
+			}
+			String content;
+			try {
+				content = new String(Files.readAllBytes(Paths.get(file)), "UTF-8");
+			} catch (IOException e) {
+				throw new SQLException("MemoryDatabase cannot read " + file + ": " + e.getMessage(), "HY000");
+			}
+			int count = 0;
+			for (String line : content.split(Pattern.quote(lines))) {
+				if (line.isEmpty()) {
+					continue;
+				}
+				String[] values = line.split(Pattern.quote(fields), -1);
+				Object[] row = new Object[t.columns.size()];
+				for (int i = 0; i < row.length && i < values.length; i++) {
+					row[i] = values[i].equals("\\N") ? null : values[i];
+				}
+				t.rows.add(row);
+				count++;
+			}
+			return new Result(count);
+		}
+		throw p.error("statement not supported");
+	}
+
+	Result select(Session session, Parser p) throws SQLException {
+		p.expectWord("select");
+		boolean distinct = p.acceptWord("distinct");
+		ArrayList<Expression> items = new ArrayList<Expression>();
+		ArrayList<String> labels = new ArrayList<String>();
+		boolean star = false;
+		do {
+			if (p.accept("*")) {
+				star = true;
+				continue;
+			}
+			Expression e = p.expression();
+			String label = e.label;
+			if (p.acceptWord("as")) {
+				label = p.identifier();
+			} else if (p.peekIdentifier()) {
+				label = p.identifier();
+			}
+			items.add(e);
+			labels.add(label);
+		} while (p.accept(","));
+		p.expectWord("from");
+		Table t = table(session, p.name(), true);
+		if (p.acceptWord("as")) {
+			p.identifier();
+		} else if (p.peekIdentifier()) {
+			p.identifier();
+		}
+		if (star) {
+			for (String col : t.columns) {
+				items.add(new Expression(Expression.COLUMN, col, null, null));
+				labels.add(col);
+			}
+		}
+		Expression where = p.acceptWord("where") ? p.expression() : null;
+		ArrayList<Expression> groupBy = new ArrayList<Expression>();
+		if (p.acceptWord("group")) {
+			p.expectWord("by");
+			do {
+				groupBy.add(p.expression());
+			} while (p.accept(","));
+		}
+		final ArrayList<Integer> order = new ArrayList<Integer>();
+		final ArrayList<Boolean> descending = new ArrayList<Boolean>();
+		ArrayList<Expression> orderBy = new ArrayList<Expression>();
+		if (p.acceptWord("order")) {
+			p.expectWord("by");
+			do {
+				orderBy.add(p.expression());
+				boolean desc = p.acceptWord("desc");
+				if (!desc) {
+					p.acceptWord("asc");
+				}
+				descending.add(desc);
+			} while (p.accept(","));
+		}
+		int limit = Integer.MAX_VALUE;
+		if (p.acceptWord("limit")) {
+			limit = ((Number) p.expression().eval(null, null)).intValue();
+		}
+
+		ArrayList<Object[]> matching = new ArrayList<Object[]>();
+		for (Object[] row : t.rows) {
+			if (where == null || truth(where.eval(t, row))) {
+				matching.add(row);
+			}
+		}
+
+		boolean aggregate = !groupBy.isEmpty();
+		for (Expression e : items) {
+			aggregate |= e.isAggregate();
+		}
+		ArrayList<Object[]> result = new ArrayList<Object[]>();
+		if (aggregate) {
+			LinkedHashMap<List<Object>, ArrayList<Object[]>> groups = new LinkedHashMap<List<Object>, ArrayList<Object[]>>();
+			for (Object[] row : matching) {
+				ArrayList<Object> k = new ArrayList<Object>();
+				for (Expression e : groupBy) {
+					k.add(normalize(e.eval(t, row)));
+				}
+				ArrayList<Object[]> group = groups.get(k);
+				if (group == null) {
+					group = new ArrayList<Object[]>();
+					groups.put(k, group);
+				}
+				group.add(row);
+			}
+			if (groupBy.isEmpty() && groups.isEmpty()) {
+				groups.put(new ArrayList<Object>(), new ArrayList<Object[]>());
+			}
+			for (ArrayList<Object[]> group : groups.values()) {
+				Object[] out = new Object[items.size()];
+				for (int i = 0; i < out.length; i++) {
+					out[i] = items.get(i).aggregate(t, group);
+				}
+				result.add(out);
+			}
+		} else {
+			for (Object[] row : matching) {
+				Object[] out = new Object[items.size()];
+				for (int i = 0; i < out.length; i++) {
+					out[i] = items.get(i).eval(t, row);
+				}
+				result.add(out);
+			}
+		}
+		if (distinct) {
+			LinkedHashMap<List<Object>, Object[]> seen = new LinkedHashMap<List<Object>, Object[]>();
+			for (Object[] row : result) {
+				ArrayList<Object> k = new ArrayList<Object>();
+				for (Object v : row) {
+					k.add(normalize(v));
+				}
+				if (!seen.containsKey(k)) {
+					seen.put(k, row);
+				}
+			}
+			result = new ArrayList<Object[]>(seen.values());
+		}
+		if (!orderBy.isEmpty()) {
+			// order by expressions are resolved against the select list
+			for (Expression e : orderBy) {
+				int index = -1;
+				for (int i = 0; i < items.size() && index < 0; i++) {
+					if (labels.get(i).equalsIgnoreCase(e.label) || (items.get(i).kind == Expression.COLUMN && items.get(i).label.equalsIgnoreCase(e.label))) {
+						index = i;
+					}
+				}
+				if (index < 0) {
+					throw p.error("order by column not in select list: " + e.label);
+				}
+				order.add(index);
+			}
+			Collections.sort(result, new Comparator<Object[]>() {
+				public int compare(Object[] a, Object[] b) {
+					for (int i = 0; i < order.size(); i++) {
+						int c = compareValues(a[order.get(i)], b[order.get(i)]);
+						if (c != 0) {
+							return descending.get(i) ? -c : c;
+						}
+					}
+					return 0;
+				}
+			});
+		}
+		if (result.size() > limit) {
+			result = new ArrayList<Object[]>(result.subList(0, limit));
+		}
+		return new Result(labels.toArray(new String[labels.size()]), result);
+	}
+
+	String schema(Session session, String[] name) {
+		return name[0] != null ? name[0] : session.catalog;
+	}
+
+	Table table(Session session, String[] name, boolean mustExist) throws SQLException {
+		Table t = tables.get(key(schema(session, name), name[1]));
+		if (t == null && mustExist) {
+			throw new SQLException("Table '" + schema(session, name) + "." + name[1] + "' doesn't exist", "42S02");
+		}
+		return t;
+	}
+
+	static int column(Table t, String name) throws SQLException {
+		int index = t.indexOf(name);
+		if (index < 0) {
+			throw new SQLException("Unknown column '" + name + "' in " + t.name, "42S22");
+		}
+		return index;
+	}
+
+	static boolean truth(Object value) {
+		return value instanceof Number && ((Number) value).doubleValue() != 0;
+	}
+
+	/*
+	 * Numbers compare by value, everything else by its string
+	 */
+	static Object normalize(Object value) {
+		if (value instanceof Number) {
+			return ((Number) value).doubleValue();
+		}
+		return value == null ? null : value.toString();
+	}
+
+	static int compareValues(Object a, Object b) {
+		if (a == null || b == null) {
+			return a == null ? (b == null ? 0 : -1) : 1;
+		}
+		if (a instanceof Number && b instanceof Number) {
+			return Double.compare(((Number) a).doubleValue(), ((Number) b).doubleValue());
+		}
+		return a.toString().compareTo(b.toString());
+	}
+
+	static Number toNumber(Object value) {
+		if (value == null) {
+			return null;
+		}
+		if (value instanceof Number) {
+			return (Number) value;
+		}
+		String s = value.toString().trim();
+		try {
+			return Long.parseLong(s);
+		} catch (NumberFormatException e) {
+			try {
+				return Double.parseDouble(s);
+			} catch (NumberFormatException e2) {
+				return 0L;
+			}
+		}
+	}
+
+	static Object arithmetic(String op, Object a, Object b) {
+		Number x = toNumber(a), y = toNumber(b);
+		if (x == null || y == null) {
+			return null;
+		}
+		boolean integral = !(x instanceof Double || x instanceof Float) && !(y instanceof Double || y instanceof Float) && !op.equals("/");
+		if (integral) {
+			long u = x.longValue(), v = y.longValue();
+			return op.equals("+") ? u + v : op.equals("-") ? u - v : u * v;
+		}
+		double u = x.doubleValue(), v = y.doubleValue();
+		if (op.equals("/")) {
+			return v == 0 ? null : u / v;
+		}
+		return op.equals("+") ? u + v : op.equals("-") ? u - v : u * v;
+	}
+
+	static boolean equalValues(Object a, Object b) {
+		if (a instanceof Number || b instanceof Number) {
+			Number x = toNumber(a), y = toNumber(b);
+			return x.doubleValue() == y.doubleValue();
+		}
+		return a.toString().equals(b.toString());
+	}
+
+	//==============================EXPRESSIONS=======================//
+
+	static class Expression {
+		static final int LITERAL = 0, COLUMN = 1, BINARY = 2, COUNT = 3, SUM = 4, NOT = 5, IS_NULL = 6;
+
+		final int kind;
+		final String label;
+		final Object value;
+		final Expression left, right;
+
+		Expression(int kind, String label, Object value, Expression left) {
+			this(kind, label, value, left, null);
+		}
+
+		Expression(int kind, String label, Object value, Expression left, Expression right) {
+			this.kind = kind;
+			this.label = label;
+			this.value = value;
+			this.left = left;
+			this.right = right;
+		}
+
+		boolean isAggregate() {
+			return kind == COUNT || kind == SUM || (left != null && left.isAggregate()) || (right != null && right.isAggregate());
+		}
+
+		Object eval(Table t, Object[] row) throws SQLException {
+			switch (kind) {
+			case LITERAL:
+				return value;
+			case COLUMN:
+				if (t == null) {
+					throw new SQLException("Unknown column '" + label + "'", "42S22");
+				}
+				return row[column(t, label)];
+			case NOT:
+				return truth(left.eval(t, row)) ? 0L : 1L;
+			case IS_NULL:
+				boolean isNull = left.eval(t, row) == null;
+				return (value == null ? isNull : !isNull) ? 1L : 0L;
+			case BINARY:
+				String op = (String) value;
+				if (op.equals("and")) {
+					return truth(left.eval(t, row)) && truth(right.eval(t, row)) ? 1L : 0L;
+				}
+				if (op.equals("or")) {
+					return truth(left.eval(t, row)) || truth(right.eval(t, row)) ? 1L : 0L;
+				}
+				Object a = left.eval(t, row), b = right.eval(t, row);
+				if (op.equals("<=>")) {
+					return (a == null ? b == null : b != null && equalValues(a, b)) ? 1L : 0L;
+				}
+				if (op.equals("+") || op.equals("-") || op.equals("*") || op.equals("/")) {
+					return arithmetic(op, a, b);
+				}
+				if (a == null || b == null) {
+					return null;
+				}
+				if (op.equals("=")) {
+					return equalValues(a, b) ? 1L : 0L;
+				}
+				if (op.equals("!=") || op.equals("<>")) {
+					return equalValues(a, b) ? 0L : 1L;
+				}
+				int c = a instanceof Number || b instanceof Number ? Double.compare(toNumber(a).doubleValue(), toNumber(b).doubleValue()) : a.toString().compareTo(b.toString());
+				if (op.equals("<")) {
+					return c < 0 ? 1L : 0L;
+				}
+				if (op.equals("<=")) {
+					return c <= 0 ? 1L : 0L;
+				}
+				if (op.equals(">")) {
+					return c > 0 ? 1L : 0L;
+				}
+				return c >= 0 ? 1L : 0L;
+			default:
+				throw new SQLException("Aggregate " + label + " outside of a group", "42000");
+			}
+		}
+
+		Object aggregate(Table t, List<Object[]> group) throws SQLException {
+			if (kind == COUNT) {
+				return (long) group.size();
+			}
+			if (kind == SUM) {
+				Object sum = null;
+				for (Object[] row : group) {
+					Object v = left.eval(t, row);
+					if (v != null) {
+						sum = sum == null ? toNumber(v) : arithmetic("+", sum, v);
+					}
+				}
+				return sum;
+			}
+			if (kind == BINARY) {
+				Expression l = new Expression(LITERAL, null, left.aggregate(t, group), null);
+				Expression r = new Expression(LITERAL, null, right.aggregate(t, group), null);
+				return new Expression(BINARY, label, value, l, r).eval(null, null);
+			}
+			return group.isEmpty() ? null : eval(t, group.get(0));
+		}
+	}
+
+	//==============================PARSER=======================//
+
+	static class Parser {
+		final String sql;
+		final Object[] params;
+		final ArrayList<String> tokens = new ArrayList<String>();
+		// 'i' identifier (quoted or not), 's' string, 'n' number, 'p' parameter, 'o' operator / punctuation
+		final ArrayList<Character> types = new ArrayList<Character>();
+		int pos = 0, param = 0;
+
+		Parser(String sql, Object[] params) throws SQLException {
+			this.sql = sql;
+			this.params = params;
+			int i = 0;
+			while (i < sql.length()) {
+				char c = sql.charAt(i);
+				if (Character.isWhitespace(c)) {
+					i++;
+				} else if (c == '`') {
+					int end = sql.indexOf('`', i + 1);
+					tokens.add(sql.substring(i + 1, end));
+					types.add('q');
+					i = end + 1;
+				} else if (c == '\'' || c == '"') {
+					StringBuilder sb = new StringBuilder();
+					int j = i + 1;
+					while (true) {
+						char d = sql.charAt(j);
+						if (d == '\\') {
+							char e = sql.charAt(j + 1);
+							sb.append(e == 'n' ? '\n' : e == 't' ? '\t' : e);
+							j += 2;
+						} else if (d == c && j + 1 < sql.length() && sql.charAt(j + 1) == c) {
+							sb.append(c);
+							j += 2;
+						} else if (d == c) {
+							break;
+						} else {
+							sb.append(d);
+							j++;
+						}
+					}
+					tokens.add(sb.toString());
+					types.add('s');
+					i = j + 1;
+				} else if (Character.isDigit(c)) {
+					int j = i;
+					while (j < sql.length() && (Character.isDigit(sql.charAt(j)) || sql.charAt(j) == '.')) {
+						j++;
+					}
+					tokens.add(sql.substring(i, j));
+					types.add('n');
+					i = j;
+				} else if (Character.isLetter(c) || c == '_' || c == '$') {
+					int j = i;
+					while (j < sql.length() && (Character.isLetterOrDigit(sql.charAt(j)) || sql.charAt(j) == '_' || sql.charAt(j) == '$')) {
+						j++;
+					}
+					tokens.add(sql.substring(i, j));
+					types.add('i');
+					i = j;
+				} else if (c == '?') {
+					tokens.add("?");
+					types.add('p');
+					i++;
+				} else if (sql.startsWith("<=>", i)) {
+					tokens.add("<=>");
+					types.add('o');
+					i += 3;
+				} else if (sql.startsWith("<=", i) || sql.startsWith(">=", i) || sql.startsWith("!=", i) || sql.startsWith("<>", i)) {
+					tokens.add(sql.substring(i, i + 2));
+					types.add('o');
+					i += 2;
+				} else {
+					tokens.add(String.valueOf(c));
+					types.add('o');
+					i++;
+				}
+			}
+		}
+
+		SQLException error(String message) {
+			return new SQLException("MemoryDatabase: " + message + " in: " + sql, "42000");
+		}
+
+		boolean atEnd() {
+			return pos >= tokens.size();
+		}
+
+		String peek() {
+			return atEnd() ? "<end>" : tokens.get(pos);
+		}
+
+		boolean peekWord(String word) {
+			return !atEnd() && types.get(pos) == 'i' && tokens.get(pos).equalsIgnoreCase(word);
+		}
+
+		static final List<String> KEYWORDS = Arrays.asList("from", "where", "group", "order", "limit", "as", "on", "and", "or", "not", "is", "null", "asc", "desc", "values", "set", "select", "like", "union", "join");
+
+		boolean peekIdentifier() {
+			return !atEnd() && (types.get(pos) == 'q' || (types.get(pos) == 'i' && !KEYWORDS.contains(tokens.get(pos).toLowerCase())));
+		}
+
+		boolean acceptWord(String word) {
+			if (peekWord(word)) {
+				pos++;
+				return true;
+			}
+			return false;
+		}
+
+		void expectWord(String word) throws SQLException {
+			if (!acceptWord(word)) {
+				throw error("expected " + word + " instead of " + peek());
+			}
+		}
+
+		boolean accept(String symbol) {
+			if (!atEnd() && types.get(pos) == 'o' && tokens.get(pos).equals(symbol)) {
+				pos++;
+				return true;
+			}
+			return false;
+		}
+
+		void expect(String symbol) throws SQLException {
+			if (!accept(symbol)) {
+				throw error("expected " + symbol + " instead of " + peek());
+			}
+		}
+
+		String identifier() throws SQLException {
+			if (atEnd() || (types.get(pos) != 'i' && types.get(pos) != 'q')) {
+				throw error("expected a name instead of " + peek());
+			}
+			return tokens.get(pos++);
+		}
+
+		String string() throws SQLException {
+			if (atEnd() || types.get(pos) != 's') {
+				throw error("expected a string instead of " + peek());
+			}
+			return tokens.get(pos++);
+		}
+
+		/*
+		 * [schema.]table as {schema or null, table}
+		 */
+		String[] name() throws SQLException {
+			String first = identifier();
+			if (accept(".")) {
+				return new String[] { first, identifier() };
+			}
+			return new String[] { null, first };
+		}
+
+		void skipDefinition() {
+			int depth = 0;
+			while (!atEnd()) {
+				String t = tokens.get(pos);
+				if (types.get(pos) == 'o' && depth == 0 && (t.equals(",") || t.equals(")"))) {
+					return;
+				}
+				if (types.get(pos) == 'o' && t.equals("(")) {
+					depth++;
+				} else if (types.get(pos) == 'o' && t.equals(")")) {
+					depth--;
+				}
+				pos++;
+			}
+		}
+
+		void skipOptions() {
+			while (!atEnd() && !(types.get(pos) == 'o' && tokens.get(pos).equals(";"))) {
+				pos++;
+			}
+		}
+
+		void skipRest() {
+			pos = tokens.size();
+		}
+
+		Expression expression() throws SQLException {
+			Expression e = andExpression();
+			while (acceptWord("or")) {
+				e = new Expression(Expression.BINARY, e.label, "or", e, andExpression());
+			}
+			return e;
+		}
+
+		Expression andExpression() throws SQLException {
+			Expression e = comparison();
+			while (acceptWord("and")) {
+				e = new Expression(Expression.BINARY, e.label, "and", e, comparison());
+			}
+			return e;
+		}
+
+		Expression comparison() throws SQLException {
+			if (acceptWord("not")) {
+				return new Expression(Expression.NOT, "not", null, comparison());
+			}
+			Expression e = additive();
+			if (acceptWord("is")) {
+				boolean not = acceptWord("not");
+				expectWord("null");
+				return new Expression(Expression.IS_NULL, e.label, not ? "not" : null, e);
+			}
+			for (String op : new String[] { "<=>", "=", "!=", "<>", "<=", ">=", "<", ">" }) {
+				if (accept(op)) {
+					return new Expression(Expression.BINARY, e.label, op, e, additive());
+				}
+			}
+			return e;
+		}
+
+		Expression additive() throws SQLException {
+			Expression e = multiplicative();
+			while (true) {
+				if (accept("+")) {
+					e = new Expression(Expression.BINARY, e.label, "+", e, multiplicative());
+				} else if (accept("-")) {
+					e = new Expression(Expression.BINARY, e.label, "-", e, multiplicative());
+				} else {
+					return e;
+				}
+			}
+		}
+
+		Expression multiplicative() throws SQLException {
+			Expression e = primary();
+			while (true) {
+				if (accept("*")) {
+					e = new Expression(Expression.BINARY, e.label, "*", e, primary());
+				} else if (accept("/")) {
+					e = new Expression(Expression.BINARY, e.label, "/", e, primary());
+				} else {
+					return e;
+				}
+			}
+		}
+
+		Expression primary() throws SQLException {
+			if (atEnd()) {
+				throw error("unexpected end");
+			}
+			String token = tokens.get(pos);
+			char type = types.get(pos);
+			if (accept("(")) {
+				Expression e = expression();
+				expect(")");
+				return e;
+			}
+			if (accept("-")) {
+				Expression e = primary();
+				return new Expression(Expression.BINARY, "-" + e.label, "-", new Expression(Expression.LITERAL, "0", 0L, null), e);
+			}
+			pos++;
+			if (type == 'n') {
+				Object value = token.contains(".") ? (Object) Double.parseDouble(token) : (Object) Long.parseLong(token);
+				return new Expression(Expression.LITERAL, token, value, null);
+			}
+			if (type == 's') {
+				return new Expression(Expression.LITERAL, token, token, null);
+			}
+			if (type == 'p') {
+				if (params == null || param >= params.length) {
+					throw error("parameter " + (param + 1) + " is not set");
+				}
+				Object value = params[param++];
+				return new Expression(Expression.LITERAL, "?", value, null);
+			}
+			if (type == 'i' && token.equalsIgnoreCase("null")) {
+				return new Expression(Expression.LITERAL, "NULL", null, null);
+			}
+			if (type == 'i' && (token.equalsIgnoreCase("count") || token.equalsIgnoreCase("sum")) && accept("(")) {
+				if (token.equalsIgnoreCase("count")) {
+					if (!accept("*")) {
+						expression();
+					}
+					expect(")");
+					return new Expression(Expression.COUNT, "count(*)", null, null);
+				}
+				Expression e = expression();
+				expect(")");
+				return new Expression(Expression.SUM, "sum(" + e.label + ")", null, e);
+			}
+			if (type == 'i' || type == 'q') {
+				String name = token;
+				while (accept(".")) {
+					name = identifier();
+				}
+				return new Expression(Expression.COLUMN, name, null, null);
+			}
+			throw error("unexpected " + token);
+		}
+	}
+
+	//==============================JDBC=======================//
+
+	static class Session {
+		String catalog;
+		boolean closed, autoCommit = true;
+
+		Session(String catalog) {
+			this.catalog = catalog;
+		}
+	}
+
+	public static class MemoryDriver implements Driver {
+
+		public Connection connect(String url, Properties info) throws SQLException {
+			if (!acceptsURL(url)) {
+				return null;
+			}
+			String rest = url.substring(PREFIX.length());
+			if (rest.contains("?")) {
+				rest = rest.substring(0, rest.indexOf('?'));
+			}
+			int slash = rest.indexOf('/');
+			String name = slash < 0 ? rest : rest.substring(0, slash);
+			String catalog = slash < 0 ? "" : rest.substring(slash + 1);
+			return get(name, false).connect(url, catalog);
+		}
+
+		public boolean acceptsURL(String url) {
+			return url != null && url.startsWith(PREFIX);
+		}
+
+		public DriverPropertyInfo[] getPropertyInfo(String url, Properties info) {
+			return new DriverPropertyInfo[0];
+		}
+
+		public int getMajorVersion() {
+			return 1;
+		}
+
+		public int getMinorVersion() {
+			return 0;
+		}
+
+		public boolean jdbcCompliant() {
+			return false;
+		}
+
+		public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+			throw new SQLFeatureNotSupportedException();
+		}
+	}
+
+	/*
+	 * A connection to this database with the given current schema
+	 */
+	public Connection connect(final String url, String catalog) {
+		final Session session = new Session(catalog);
+		return (Connection) Proxy.newProxyInstance(MemoryDatabase.class.getClassLoader(), new Class<?>[] { Connection.class }, new InvocationHandler() {
+			public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+				String name = method.getName();
+				if (name.equals("close")) {
+					session.closed = true;
+					return null;
+				}
+				if (name.equals("isClosed")) {
+					return session.closed;
+				}
+				if (name.equals("isValid")) {
+					return !session.closed;
+				}
+				if (session.closed) {
+					throw new SQLException("Connection is closed.");
+				}
+				if (name.equals("createStatement")) {
+					return statement(session, (Connection) proxy, null);
+				}
+				if (name.equals("prepareStatement")) {
+					return statement(session, (Connection) proxy, (String) args[0]);
+				}
+				if (name.equals("getCatalog") || name.equals("getSchema")) {
+					return session.catalog;
+				}
+				if (name.equals("setCatalog") || name.equals("setSchema")) {
+					session.catalog = (String) args[0];
+					return null;
+				}
+				if (name.equals("getAutoCommit")) {
+					return session.autoCommit;
+				}
+				if (name.equals("setAutoCommit")) {
+					session.autoCommit = (Boolean) args[0];
+					return null;
+				}
+				if (name.equals("commit") || name.equals("rollback") || name.equals("clearWarnings") || name.equals("setReadOnly")) {
+					return null;
+				}
+				if (name.equals("getWarnings")) {
+					return null;
+				}
+				if (name.equals("getMetaData")) {
+					return Proxy.newProxyInstance(MemoryDatabase.class.getClassLoader(), new Class<?>[] { DatabaseMetaData.class }, new InvocationHandler() {
+						public Object invoke(Object p, Method m, Object[] a) {
+							if (m.getName().equals("getURL")) {
+								return url;
+							}
+							if (m.getName().equals("getDatabaseProductName")) {
+								return "MemoryDatabase";
+							}
+							throw new UnsupportedOperationException("DatabaseMetaData." + m.getName());
+						}
+					});
+				}
+				if (name.equals("toString")) {
+					return "MemoryDatabase connection " + url;
+				}
+				if (name.equals("hashCode")) {
+					return System.identityHashCode(proxy);
+				}
+				if (name.equals("equals")) {
+					return proxy == args[0];
+				}
+				throw new UnsupportedOperationException("Connection." + name);
+			}
+		});
+	}
+
+	/*
+	 * connect(url, catalog) as a com.mysql.jdbc.Connection with cursor fetch on, for the stages that take a
+	 * Connector/J connection; the other Connector/J methods are not supported
+	 */
+	public com.mysql.jdbc.Connection connectMySql(String url, String catalog) {
+		final Connection memory = connect(url, catalog);
+		return (com.mysql.jdbc.Connection) Proxy.newProxyInstance(MemoryDatabase.class.getClassLoader(), new Class<?>[] { com.mysql.jdbc.Connection.class }, new InvocationHandler() {
+			public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+				if (method.getName().equals("getUseCursorFetch")) {
+					return true;
+				}
+				if (!method.getDeclaringClass().isInstance(memory)) {
+					throw new UnsupportedOperationException("Connection." + method.getName());
+				}
+				try {
+					return method.invoke(memory, args);
+				} catch (InvocationTargetException e) {
+					throw e.getCause();
+				}
+			}
+		});
+	}
+
+	/*
+	 * A statement, or a prepared statement if sql is not null
+	 */
+	Statement statement(final Session session, final Connection connection, final String sql) {
+		final Class<?> type = sql == null ? Statement.class : PreparedStatement.class;
+		return (Statement) Proxy.newProxyInstance(MemoryDatabase.class.getClassLoader(), new Class<?>[] { type }, new InvocationHandler() {
+			final TreeMap<Integer, Object> params = new TreeMap<Integer, Object>();
+			final ArrayList<Object> batch = new ArrayList<Object>();
+			Result last;
+			int fetchSize;
+
+			Object[] parameters() {
+				Object[] values = new Object[params.isEmpty() ? 0 : params.lastKey()];
+				for (Integer i : params.keySet()) {
+					values[i - 1] = params.get(i);
+				}
+				return values;
+			}
+
+			public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+				String name = method.getName();
+				if (name.equals("close") || name.equals("clearWarnings") || name.equals("setMaxRows") || name.equals("setQueryTimeout") || name.equals("setEscapeProcessing")) {
+					return null;
+				}
+				if (name.equals("setFetchSize")) {
+					fetchSize = (Integer) args[0];
+					return null;
+				}
+				if (name.equals("getFetchSize")) {
+					return fetchSize;
+				}
+				if (name.equals("getConnection")) {
+					return connection;
+				}
+				if (name.equals("getWarnings")) {
+					return null;
+				}
+				if (name.equals("clearParameters")) {
+					params.clear();
+					return null;
+				}
+				if (name.startsWith("set") && args != null && args.length >= 2 && args[0] instanceof Integer) {
+					Object value = args[1];
+					if (name.equals("setNull")) {
+						value = null;
+					} else if (value instanceof Integer || value instanceof Short || value instanceof Byte) {
+						value = ((Number) value).longValue();
+					} else if (value instanceof Float) {
+						value = ((Float) value).doubleValue();
+					} else if (value instanceof Boolean) {
+						value = ((Boolean) value) ? 1L : 0L;
+					} else if (value instanceof java.math.BigDecimal) {
+						java.math.BigDecimal d = (java.math.BigDecimal) value;
+						value = d.scale() <= 0 ? (Object) d.longValue() : (Object) d.doubleValue();
+					}
+					params.put((Integer) args[0], value);
+					return null;
+				}
+				if (name.equals("addBatch")) {
+					batch.add(args == null || args.length == 0 ? parameters() : args[0]);
+					return null;
+				}
+				if (name.equals("clearBatch")) {
+					batch.clear();
+					return null;
+				}
+				if (name.equals("executeBatch")) {
+					int[] counts = new int[batch.size()];
+					for (int i = 0; i < counts.length; i++) {
+						Object b = batch.get(i);
+						counts[i] = b instanceof String ? run(session, (String) b, null).updateCount : run(session, sql, (Object[]) b).updateCount;
+					}
+					batch.clear();
+					return counts;
+				}
+				if (name.startsWith("execute")) {
+					String query = args != null && args.length > 0 ? (String) args[0] : sql;
+					last = run(session, query, args != null && args.length > 0 ? null : parameters());
+					if (name.equals("executeQuery")) {
+						if (last.columns == null) {
+							throw new SQLException("Not a query: " + query);
+						}
+						return resultSet(last, (Statement) proxy);
+					}
+					if (name.equals("executeUpdate") || name.equals("executeLargeUpdate")) {
+						return last.updateCount < 0 ? 0 : last.updateCount;
+					}
+					return last.columns != null;
+				}
+				if (name.equals("getResultSet")) {
+					return last != null && last.columns != null ? resultSet(last, (Statement) proxy) : null;
+				}
+				if (name.equals("getUpdateCount")) {
+					return last == null ? -1 : last.updateCount;
+				}
+				if (name.equals("getMoreResults")) {
+					return false;
+				}
+				if (name.equals("hashCode")) {
+					return System.identityHashCode(proxy);
+				}
+				if (name.equals("equals")) {
+					return proxy == args[0];
+				}
+				throw new UnsupportedOperationException(type.getSimpleName() + "." + name);
+			}
+		});
+	}
+
+	static ResultSet resultSet(final Result result, final Statement statement) {
+		return (ResultSet) Proxy.newProxyInstance(MemoryDatabase.class.getClassLoader(), new Class<?>[] { ResultSet.class }, new InvocationHandler() {
+			int row = -1;
+			boolean wasNull, closed;
+
+			int index(Object column) throws SQLException {
+				if (column instanceof Integer) {
+					return (Integer) column - 1;
+				}
+				for (int i = 0; i < result.columns.length; i++) {
+					if (result.columns[i] != null && result.columns[i].equalsIgnoreCase((String) column)) {
+						return i;
+					}
+				}
+				throw new SQLException("Column '" + column + "' not found.", "S0022");
+			}
+
+			public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+				String name = method.getName();
+				int size = result.rows.size();
+				if (name.equals("next")) {
+					row = Math.min(row + 1, size);
+					return row < size;
+				}
+				if (name.equals("close")) {
+					closed = true;
+					return null;
+				}
+				if (name.equals("isClosed")) {
+					return closed;
+				}
+				if (name.equals("beforeFirst")) {
+					row = -1;
+					return null;
+				}
+				if (name.equals("first")) {
+					row = 0;
+					return size > 0;
+				}
+				if (name.equals("last")) {
+					row = size - 1;
+					return size > 0;
+				}
+				if (name.equals("absolute")) {
+					int i = (Integer) args[0];
+					row = i > 0 ? i - 1 : size + i;
+					return row >= 0 && row < size;
+				}
+				if (name.equals("getRow")) {
+					return row >= 0 && row < size ? row + 1 : 0;
+				}
+				if (name.equals("getStatement")) {
+					return statement;
+				}
+				if (name.equals("setFetchSize") || name.equals("clearWarnings")) {
+					return null;
+				}
+				if (name.equals("getWarnings")) {
+					return null;
+				}
+				if (name.equals("wasNull")) {
+					return wasNull;
+				}
+				if (name.equals("findColumn")) {
+					return index(args[0]) + 1;
+				}
+				if (name.equals("getMetaData")) {
+					return metaData(result);
+				}
+				if (name.startsWith("get") && args != null && args.length >= 1) {
+					if (row < 0 || row >= size) {
+						throw new SQLException("No current row.");
+					}
+					Object value = result.rows.get(row)[index(args[0])];
+					wasNull = value == null;
+					Class<?> type = method.getReturnType();
+					if (type == String.class) {
+						if (value instanceof Double && ((Double) value) == Math.rint((Double) value) && !Double.isInfinite((Double) value)) {
+							return value.toString();
+						}
+						return value == null ? null : value.toString();
+					}
+					if (type == long.class) {
+						return value == null ? 0L : toNumber(value).longValue();
+					}
+					if (type == int.class) {
+						return value == null ? 0 : toNumber(value).intValue();
+					}
+					if (type == double.class) {
+						return value == null ? 0.0 : toNumber(value).doubleValue();
+					}
+					if (type == float.class) {
+						return value == null ? 0.0f : toNumber(value).floatValue();
+					}
+					if (type == boolean.class) {
+						return value != null && toNumber(value).doubleValue() != 0;
+					}
+					if (type == java.math.BigDecimal.class) {
+						return value == null ? null : new java.math.BigDecimal(value.toString());
+					}
+					return value;
+				}
+				if (name.equals("hashCode")) {
+					return System.identityHashCode(proxy);
+				}
+				if (name.equals("equals")) {
+					return proxy == args[0];
+				}
+				throw new UnsupportedOperationException("ResultSet." + name);
+			}
+		});
+	}
+
+	static ResultSetMetaData metaData(final Result result) {
+		return (ResultSetMetaData) Proxy.newProxyInstance(MemoryDatabase.class.getClassLoader(), new Class<?>[] { ResultSetMetaData.class }, new InvocationHandler() {
+			public Object invoke(Object proxy, Method method, Object[] args) {
+				String name = method.getName();
+				if (name.equals("getColumnCount")) {
+					return result.columns.length;
+				}
+				if (name.equals("getColumnName") || name.equals("getColumnLabel")) {
+					return result.columns[(Integer) args[0] - 1];
+				}
+				if (name.equals("getColumnType")) {
+					return Types.VARCHAR;
+				}
+				if (name.equals("getColumnTypeName")) {
+					return "VARCHAR";
+				}
+				if (name.equals("getTableName") || name.equals("getCatalogName") || name.equals("getSchemaName")) {
+					return "";
+				}
+				throw new UnsupportedOperationException("ResultSetMetaData." + name);
+			}
+		});
+	}
+}